@@ -0,0 +1,171 @@
+import com.google.common.base.Preconditions;
+
+/**
+ * Bounded map of {@link Cacheable} items by ID, kept in least-recently-used order, which does the job of the
+ * ConcurrentHashMap of {@link DoublyLinkedList.Node}s and the DoublyLinkedList which {@link LRUCache} combines for
+ * it, without allocating anything per item.
+ * <p>
+ * The map's value slot and the list node are fused into one <em>entry</em>: an index into parallel arrays holding
+ * the item and its ID's hash, and into the {@link IndexedLruList} threaded through the entries.  IDs are found
+ * through an open-addressing hash table of entry indexes, with linear probing and at most 50% load, whose deletions
+ * shift later entries of a probe sequence back rather than leaving tombstones.  Everything is allocated up front
+ * for the maximum capacity, and an evicted item's entry is reused by the item replacing it, so an item costs about
+ * 24 to 32 bytes besides itself, against about 100 bytes for a Node and map entry.
+ * <p>
+ * Not thread-safe, and not used by the cache itself: it lives here as the array-backed baseline that
+ * {@code LruMapBenchmark} compares the cache's Node-based map against.
+ *
+ * @param <T> type of the items
+ */
+class ArrayLruMap<T extends Cacheable> {
+    private static final int NONE = IndexedLruList.NONE;
+
+    // per entry
+    private final Object[] items;
+    private final int[] hashes;
+    private final IndexedLruList lruList;
+
+    // hash table of entry index + 1, where 0 marks an empty slot
+    private final int[] table;
+    private final int tableMask;
+
+    /**
+     * Creates an empty map
+     * @param maxCapacity maximum number of items, past which putting a new item evicts the least recently used
+     */
+    ArrayLruMap(int maxCapacity) {
+        Preconditions.checkArgument(maxCapacity > 0 && maxCapacity <= (1 << 29),
+                "maxCapacity must be between 1 and 2^29");
+        items = new Object[maxCapacity];
+        hashes = new int[maxCapacity];
+        lruList = new IndexedLruList(maxCapacity);
+        table = new int[Integer.highestOneBit(maxCapacity - 1 | 1) << 2];
+        tableMask = table.length - 1;
+    }
+
+    /**
+     * Returns the item with the given ID, marking it as the most recently used
+     * @param id unique ID of the item
+     * @return the item, or NULL if there is none with that ID
+     */
+    T get(String id) {
+        int entry = find(id, hash(id));
+        if (entry == NONE) {
+            return null;
+        }
+        lruList.moveToHead(entry);
+        return item(entry);
+    }
+
+    /**
+     * Adds an item as the most recently used, replacing any item with the same ID, and evicting the least recently
+     * used item if the map is full
+     * @param item the item to add
+     * @return the evicted item, or NULL if nothing was evicted
+     */
+    T put(T item) {
+        Preconditions.checkArgument(item != null, "item cannot be NULL");
+        String id = item.getID();
+        int hash = hash(id);
+        int entry = find(id, hash);
+        if (entry != NONE) {
+            items[entry] = item;
+            lruList.moveToHead(entry);
+            return null;
+        }
+
+        T evicted = null;
+        entry = lruList.allocate();
+        if (entry == NONE) {
+            int eldest = lruList.tail();
+            evicted = item(eldest);
+            delete(eldest);
+            entry = lruList.allocate();
+        }
+
+        items[entry] = item;
+        hashes[entry] = hash;
+        int slot = hash & tableMask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & tableMask;
+        }
+        table[slot] = entry + 1;
+        return evicted;
+    }
+
+    /**
+     * Removes the item with the given ID
+     * @param id unique ID of the item
+     * @return the removed item, or NULL if there was none with that ID
+     */
+    T remove(String id) {
+        int entry = find(id, hash(id));
+        if (entry == NONE) {
+            return null;
+        }
+        T removed = item(entry);
+        delete(entry);
+        return removed;
+    }
+
+    /**
+     * Returns the least recently used item, i.e. the next to be evicted, without changing its position
+     * @return the item, or NULL if the map is empty
+     */
+    T eldest() {
+        int tail = lruList.tail();
+        return (tail == NONE) ? null : item(tail);
+    }
+
+    /**
+     * Returns the number of items in the map
+     */
+    int size() {
+        return lruList.size();
+    }
+
+    private int find(String id, int hash) {
+        for (int slot = hash & tableMask; table[slot] != 0; slot = (slot + 1) & tableMask) {
+            int entry = table[slot] - 1;
+            if (hashes[entry] == hash && item(entry).getID().equals(id)) {
+                return entry;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Removes an entry from the hash table and the LRU list, and returns it to the free list
+     */
+    private void delete(int entry) {
+        int slot = hashes[entry] & tableMask;
+        while (table[slot] != entry + 1) {
+            slot = (slot + 1) & tableMask;
+        }
+
+        // shift back any later entry of the probe sequence that would no longer be reachable past the gap
+        int gap = slot;
+        for (int i = (gap + 1) & tableMask; table[i] != 0; i = (i + 1) & tableMask) {
+            int home = hashes[table[i] - 1] & tableMask;
+            if (((i - home) & tableMask) >= ((i - gap) & tableMask)) {
+                table[gap] = table[i];
+                gap = i;
+            }
+        }
+        table[gap] = 0;
+
+        lruList.release(entry);
+        items[entry] = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T item(int entry) {
+        return (T) items[entry];
+    }
+
+    private static int hash(String id) {
+        // String's hash code puts little entropy in its low bits for short IDs, so mix in the high ones
+        int h = id.hashCode() * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
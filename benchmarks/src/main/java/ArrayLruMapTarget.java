@@ -0,0 +1,38 @@
+import benchmarks.LruMapTarget;
+
+public class ArrayLruMapTarget implements LruMapTarget {
+    private BenchmarkItem[] items;
+    private ArrayLruMap<BenchmarkItem> map;
+    private int next;
+
+    @Override
+    public void setUp(int capacity) {
+        items = new BenchmarkItem[2 * capacity];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new BenchmarkItem(Integer.toString(i));
+        }
+        fill();
+    }
+
+    @Override
+    public void fill() {
+        int capacity = items.length / 2;
+        map = new ArrayLruMap<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            map.put(items[i]);
+        }
+        next = capacity;
+    }
+
+    @Override
+    public Object get(int item) {
+        return map.get(items[item].getID());
+    }
+
+    @Override
+    public Object putEvicting() {
+        BenchmarkItem item = items[next];
+        next = (next + 1) % items.length;
+        return map.put(item);
+    }
+}
@@ -0,0 +1,18 @@
+import java.util.Optional;
+
+/**
+ * Data source that answers immediately, so benchmarks measure the cache rather than the backend.  Knows about
+ * IDs 0 (inclusive) to knownIDs (exclusive)
+ */
+class BenchmarkDataSource implements DataSource<BenchmarkItem> {
+    private final int knownIDs;
+
+    BenchmarkDataSource(int knownIDs) {
+        this.knownIDs = knownIDs;
+    }
+
+    @Override
+    public Optional<BenchmarkItem> getFromDataSource(String ID) {
+        return Integer.parseInt(ID) < knownIDs ? Optional.of(new BenchmarkItem(ID)) : Optional.empty();
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * Item cached by the benchmarks
+ */
+class BenchmarkItem implements Cacheable {
+    private final String id;
+
+    BenchmarkItem(String id) {
+        this.id = id;
+    }
+
+    @Override
+    public String getID() {
+        return id;
+    }
+}
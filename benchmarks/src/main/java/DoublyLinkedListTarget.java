@@ -0,0 +1,48 @@
+import benchmarks.ListTarget;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DoublyLinkedListTarget implements ListTarget {
+    private DoublyLinkedList<BenchmarkItem> list;
+    private List<DoublyLinkedList.Node<BenchmarkItem>> nodes;
+    private DoublyLinkedList.Node<BenchmarkItem> spare;
+
+    @Override
+    public void setUp(int size) {
+        list = new DoublyLinkedList<>();
+        nodes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            DoublyLinkedList.Node<BenchmarkItem> node = new DoublyLinkedList.Node<>(new BenchmarkItem(Integer.toString(i)));
+            nodes.add(node);
+            list.insertAsHead(node);
+        }
+        spare = new DoublyLinkedList.Node<>(new BenchmarkItem(Integer.toString(size)));
+    }
+
+    @Override
+    public void insertAsHeadThenRemoveTail() {
+        DoublyLinkedList.Node<BenchmarkItem> newHead = spare;
+        spare = list.tail;
+        list.insertAsHead(newHead);
+        list.removeTail();
+    }
+
+    @Override
+    public void removeThenInsertAsHead(int position) {
+        // nodes are never discarded, only moved, so any node at this index is still in the list
+        DoublyLinkedList.Node<BenchmarkItem> node = nodes.get(position);
+        if (node == spare) {
+            return;
+        }
+        list.remove(node);
+        list.insertAsHead(node);
+    }
+
+    @Override
+    public void removeTailThenInsertAsHead() {
+        DoublyLinkedList.Node<BenchmarkItem> oldTail = list.tail;
+        list.removeTail();
+        list.insertAsHead(oldTail);
+    }
+}
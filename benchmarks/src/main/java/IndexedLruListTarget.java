@@ -0,0 +1,37 @@
+import benchmarks.ListTarget;
+
+public class IndexedLruListTarget implements ListTarget {
+    private IndexedLruList list;
+    private int spare;
+
+    @Override
+    public void setUp(int size) {
+        // one slot more than the list holds, so that a slot can be inserted before the tail is removed
+        list = new IndexedLruList(size + 1);
+        for (int i = 0; i < size; i++) {
+            list.allocate();
+        }
+        spare = size;
+    }
+
+    @Override
+    public void insertAsHeadThenRemoveTail() {
+        list.allocate();
+        spare = list.tail();
+        list.release(spare);
+    }
+
+    @Override
+    public void removeThenInsertAsHead(int position) {
+        // slots are never discarded, only reused, so any slot other than the spare one is in the list
+        if (position == spare) {
+            return;
+        }
+        list.moveToHead(position);
+    }
+
+    @Override
+    public void removeTailThenInsertAsHead() {
+        list.moveToHead(list.tail());
+    }
+}
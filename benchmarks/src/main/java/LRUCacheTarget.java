@@ -0,0 +1,15 @@
+import benchmarks.CacheTarget;
+
+public class LRUCacheTarget implements CacheTarget {
+    private LRUCache<BenchmarkItem> cache;
+
+    @Override
+    public void setUp(int maxCapacity, int knownIDs) {
+        cache = new LRUCache<>(new BenchmarkDataSource(knownIDs), maxCapacity);
+    }
+
+    @Override
+    public Object getFromCache(String id) throws DataSourceRetrievalException {
+        return cache.getFromCache(id);
+    }
+}
@@ -0,0 +1,60 @@
+import benchmarks.LruMapTarget;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The ConcurrentHashMap of Nodes and DoublyLinkedList combination used by LRUCache, sized the same way
+ */
+public class NodeLruMapTarget implements LruMapTarget {
+    private BenchmarkItem[] items;
+    private Map<String, DoublyLinkedList.Node<BenchmarkItem>> map;
+    private DoublyLinkedList<BenchmarkItem> list;
+    private int next;
+
+    @Override
+    public void setUp(int capacity) {
+        items = new BenchmarkItem[2 * capacity];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new BenchmarkItem(Integer.toString(i));
+        }
+        fill();
+    }
+
+    @Override
+    public void fill() {
+        int capacity = items.length / 2;
+        map = new ConcurrentHashMap<>(2 * capacity - 1);
+        list = new DoublyLinkedList<>();
+        for (int i = 0; i < capacity; i++) {
+            DoublyLinkedList.Node<BenchmarkItem> node = new DoublyLinkedList.Node<>(items[i]);
+            map.put(items[i].getID(), node);
+            list.insertAsHead(node);
+        }
+        next = capacity;
+    }
+
+    @Override
+    public Object get(int item) {
+        DoublyLinkedList.Node<BenchmarkItem> node = map.get(items[item].getID());
+        if (node == null) {
+            return null;
+        }
+        list.remove(node);
+        list.insertAsHead(node);
+        return node.getData();
+    }
+
+    @Override
+    public Object putEvicting() {
+        BenchmarkItem evicted = list.removeTail();
+        map.remove(evicted.getID());
+
+        BenchmarkItem item = items[next];
+        next = (next + 1) % items.length;
+        DoublyLinkedList.Node<BenchmarkItem> node = new DoublyLinkedList.Node<>(item);
+        map.put(item.getID(), node);
+        list.insertAsHead(node);
+        return evicted;
+    }
+}
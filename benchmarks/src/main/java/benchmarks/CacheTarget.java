@@ -0,0 +1,24 @@
+package benchmarks;
+
+/**
+ * A cache implementation under benchmark.  The caches live in the unnamed package, which JMH benchmark classes
+ * cannot refer to, so each one is wrapped by an implementation of this interface in the unnamed package and
+ * looked up by class name through {@link Targets}.
+ */
+public interface CacheTarget {
+    /**
+     * Creates the cache being measured
+     * @param maxCapacity maximum number of items the cache may hold
+     * @param knownIDs the backing data source returns an item for IDs 0 (inclusive) to knownIDs (exclusive), and
+     *                 nothing for any other ID
+     */
+    void setUp(int maxCapacity, int knownIDs);
+
+    /**
+     * Looks up the given ID, loading it from the backing data source on a miss
+     * @param id the ID to look up
+     * @return the cached item, if there is one, so the benchmark can consume it
+     * @throws Exception if the lookup fails
+     */
+    Object getFromCache(String id) throws Exception;
+}
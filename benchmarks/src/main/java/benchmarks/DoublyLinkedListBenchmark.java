@@ -0,0 +1,49 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmarks of the DoublyLinkedList operations performed by LRUCache on every hit and eviction, against the
+ * same operations on the array-backed IndexedLruList.  Neither list is thread-safe, so these only make sense
+ * single-threaded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class DoublyLinkedListBenchmark {
+    @Param({"DoublyLinkedList", "IndexedLruList"})
+    String list;
+
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    private ListTarget target;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        target = Targets.list(list);
+        target.setUp(size);
+    }
+
+    @Benchmark
+    public void insertAsHeadThenRemoveTail() {
+        target.insertAsHeadThenRemoveTail();
+    }
+
+    @Benchmark
+    public void removeThenInsertAsHead() {
+        target.removeThenInsertAsHead(ThreadLocalRandom.current().nextInt(size));
+    }
+
+    @Benchmark
+    public void removeTailThenInsertAsHead() {
+        target.removeTailThenInsertAsHead();
+    }
+}
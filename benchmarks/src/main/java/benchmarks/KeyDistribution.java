@@ -0,0 +1,96 @@
+package benchmarks;
+
+import java.util.Random;
+
+/**
+ * Ways of picking the sequence of IDs looked up by a benchmark
+ */
+public enum KeyDistribution {
+    /**
+     * Every ID in the key space is equally likely
+     */
+    UNIFORM {
+        @Override
+        int[] generate(int keySpace, int count, Random random) {
+            int[] keys = new int[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = random.nextInt(keySpace);
+            }
+            return keys;
+        }
+    },
+
+    /**
+     * A few IDs are very popular and most are rarely used, as is typical of production traffic.  Uses the
+     * Zipfian generator from the YCSB benchmark, with a skew of 0.99
+     */
+    ZIPFIAN {
+        @Override
+        int[] generate(int keySpace, int count, Random random) {
+            double theta = 0.99;
+            double zetaN = zeta(keySpace, theta);
+            double zeta2 = zeta(2, theta);
+            double alpha = 1.0 / (1.0 - theta);
+            double eta = (1 - Math.pow(2.0 / keySpace, 1 - theta)) / (1 - zeta2 / zetaN);
+
+            int[] keys = new int[count];
+            for (int i = 0; i < count; i++) {
+                double u = random.nextDouble();
+                double uz = u * zetaN;
+                if (uz < 1.0) {
+                    keys[i] = 0;
+                } else if (uz < 1.0 + Math.pow(0.5, theta)) {
+                    keys[i] = 1;
+                } else {
+                    keys[i] = Math.min(keySpace - 1, (int) (keySpace * Math.pow(eta * u - eta + 1, alpha)));
+                }
+            }
+            return keys;
+        }
+
+        private double zeta(int n, double theta) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+    },
+
+    /**
+     * IDs are visited in order and the sequence wraps around, like a batch job walking the whole key space
+     */
+    SCAN {
+        @Override
+        int[] generate(int keySpace, int count, Random random) {
+            int[] keys = new int[count];
+            int start = random.nextInt(keySpace);
+            for (int i = 0; i < count; i++) {
+                keys[i] = (start + i) % keySpace;
+            }
+            return keys;
+        }
+    };
+
+    /**
+     * Generates a sequence of IDs between 0 (inclusive) and keySpace (exclusive)
+     * @param keySpace number of distinct IDs to choose from
+     * @param count length of the sequence
+     * @param random source of randomness, seeded by the caller so runs are repeatable
+     * @return the sequence of IDs
+     */
+    abstract int[] generate(int keySpace, int count, Random random);
+
+    /**
+     * Generates a sequence of IDs as Strings, offset by the given amount, so no time is spent formatting IDs
+     * while measuring
+     */
+    String[] generateIDs(int keySpace, int offset, int count, long seed) {
+        int[] keys = generate(keySpace, count, new Random(seed));
+        String[] ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = Integer.toString(offset + keys[i]);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,82 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures getFromCache throughput on its hit, miss and eviction paths.
+ * <ul>
+ *     <li>{@code hit}: the cache is preloaded with every ID that is looked up</li>
+ *     <li>{@code miss}: every lookup is for an ID the data source does not know about, so nothing is cached</li>
+ *     <li>{@code eviction}: lookups range over four times the cache's capacity, so most of them load an item
+ *     and evict another</li>
+ * </ul>
+ * Thread count cannot be a JMH parameter, so run once per thread count with {@code -t}, e.g.
+ * {@code java -jar benchmarks/target/benchmarks.jar LRUCacheBenchmark -t 64}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LRUCacheBenchmark {
+    private static final int KEY_COUNT = 1 << 16;
+    private static final int KEY_MASK = KEY_COUNT - 1;
+
+    @Param({"LRUCache", "SegmentedLRUCache"})
+    String cache;
+
+    @Param({"1000", "100000"})
+    int maxCapacity;
+
+    @Param({"UNIFORM", "ZIPFIAN", "SCAN"})
+    KeyDistribution distribution;
+
+    private CacheTarget target;
+    private String[] hitIDs;
+    private String[] missIDs;
+    private String[] evictionIDs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        int knownIDs = 4 * maxCapacity;
+        target = Targets.cache(cache);
+        target.setUp(maxCapacity, knownIDs);
+
+        hitIDs = distribution.generateIDs(maxCapacity, 0, KEY_COUNT, 1);
+        missIDs = distribution.generateIDs(maxCapacity, knownIDs, KEY_COUNT, 2);
+        evictionIDs = distribution.generateIDs(knownIDs, 0, KEY_COUNT, 3);
+
+        for (int i = 0; i < maxCapacity; i++) {
+            target.getFromCache(Integer.toString(i));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int index = ThreadLocalRandom.current().nextInt(KEY_COUNT);
+
+        String next(String[] ids) {
+            return ids[index++ & KEY_MASK];
+        }
+    }
+
+    @Benchmark
+    public void hit(Cursor cursor, Blackhole blackhole) throws Exception {
+        blackhole.consume(target.getFromCache(cursor.next(hitIDs)));
+    }
+
+    @Benchmark
+    public void miss(Cursor cursor, Blackhole blackhole) throws Exception {
+        blackhole.consume(target.getFromCache(cursor.next(missIDs)));
+    }
+
+    @Benchmark
+    public void eviction(Cursor cursor, Blackhole blackhole) throws Exception {
+        blackhole.consume(target.getFromCache(cursor.next(evictionIDs)));
+    }
+}
@@ -0,0 +1,30 @@
+package benchmarks;
+
+/**
+ * Wraps a DoublyLinkedList or IndexedLruList, which are package-private to the unnamed package, for
+ * {@link DoublyLinkedListBenchmark}.  Every operation leaves the list at the size it was set up with, so measurements stay at steady state.
+ */
+public interface ListTarget {
+    /**
+     * Creates a list holding the given number of nodes
+     * @param size number of nodes in the list
+     */
+    void setUp(int size);
+
+    /**
+     * Inserts a node that is not in the list as the new head, then removes the tail to restore the list's size
+     */
+    void insertAsHeadThenRemoveTail();
+
+    /**
+     * Removes the node at the given position, counting from the head, and inserts it as the new head.  This is
+     * the relinking performed for a cache hit
+     * @param position index of the node to move, between 0 and size - 1
+     */
+    void removeThenInsertAsHead(int position);
+
+    /**
+     * Removes the tail and inserts that node as the new head.  This is the relinking performed for an eviction
+     */
+    void removeTailThenInsertAsHead();
+}
@@ -0,0 +1,54 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ConcurrentHashMap of Nodes and DoublyLinkedList used by LRUCache ("NodeLruMap") against the
+ * array-backed ArrayLruMap, single-threaded, on a hit, on an eviction, and on filling a new map.  The last one is
+ * the footprint comparison: run it with {@code -prof gc}, and gc.alloc.rate.norm divided by the capacity is the
+ * number of bytes each structure spends per item, besides the item itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class LruMapBenchmark {
+    @Param({"NodeLruMap", "ArrayLruMap"})
+    String map;
+
+    @Param({"1000", "100000", "1000000"})
+    int capacity;
+
+    private LruMapTarget target;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        target = Targets.lruMap(map);
+        target.setUp(capacity);
+    }
+
+    @Benchmark
+    public Object hit() {
+        return target.get(ThreadLocalRandom.current().nextInt(capacity));
+    }
+
+    @Benchmark
+    public Object putEvicting() {
+        return target.putEvicting();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public void fill() {
+        target.fill();
+    }
+}
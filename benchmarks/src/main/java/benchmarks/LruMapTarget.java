@@ -0,0 +1,32 @@
+package benchmarks;
+
+/**
+ * Wraps a map of cached items kept in least-recently-used order, i.e. the ID lookup and LRU list of a cache
+ * without its concurrency control, for {@link LruMapBenchmark}.  Items are numbered from 0 to twice the capacity,
+ * and created up front so that creating them is not measured.
+ */
+public interface LruMapTarget {
+    /**
+     * Creates the items for a map of the given capacity, then fills it with items 0 to capacity - 1
+     * @param capacity maximum number of items in the map
+     */
+    void setUp(int capacity);
+
+    /**
+     * Builds a new map holding items 0 to capacity - 1, and makes it the current one
+     */
+    void fill();
+
+    /**
+     * Looks up an item by ID, marking it as the most recently used
+     * @param item number of the item
+     * @return the item, or null if it is not in the map
+     */
+    Object get(int item);
+
+    /**
+     * Adds the next item not in the map, evicting the least recently used one
+     * @return the evicted item
+     */
+    Object putEvicting();
+}
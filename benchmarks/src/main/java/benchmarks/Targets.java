@@ -0,0 +1,44 @@
+package benchmarks;
+
+/**
+ * Instantiates the benchmark adapters in the unnamed package, which cannot be referenced from named packages
+ */
+final class Targets {
+    private Targets() {
+    }
+
+    /**
+     * Creates the CacheTarget wrapping the given cache implementation
+     * @param cacheClassName simple class name of the cache, e.g. "LRUCache"
+     * @return a new, not yet set up, CacheTarget
+     */
+    static CacheTarget cache(String cacheClassName) {
+        return newInstance(cacheClassName + "Target", CacheTarget.class);
+    }
+
+    /**
+     * Creates the ListTarget wrapping the given list implementation
+     * @param listClassName simple class name of the list, e.g. "DoublyLinkedList"
+     * @return a new, not yet set up, ListTarget
+     */
+    static ListTarget list(String listClassName) {
+        return newInstance(listClassName + "Target", ListTarget.class);
+    }
+
+    /**
+     * Creates the LruMapTarget wrapping the given map implementation
+     * @param mapName name of the map, e.g. "ArrayLruMap"
+     * @return a new, not yet set up, LruMapTarget
+     */
+    static LruMapTarget lruMap(String mapName) {
+        return newInstance(mapName + "Target", LruMapTarget.class);
+    }
+
+    private static <A> A newInstance(String className, Class<A> type) {
+        try {
+            return type.cast(Class.forName(className).getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("No benchmark target named " + className, e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ArrayLruMapTests {
+    private final BenchmarkItem[] items = new BenchmarkItem[5];
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new BenchmarkItem(Integer.toString(i));
+        }
+    }
+
+    @Test
+    public void putEvictsAndReturnsTheLeastRecentlyUsedItem() {
+        ArrayLruMap<BenchmarkItem> map = new ArrayLruMap<>(3);
+        assertNull(map.put(items[1]));
+        assertNull(map.put(items[2]));
+        assertNull(map.put(items[3]));
+        assertSame(items[1], map.get("1"));
+
+        assertSame(items[2], map.put(items[4]));
+        assertEquals(3, map.size());
+        assertNull(map.get("2"));
+        assertSame(items[3], map.eldest());
+    }
+
+    @Test
+    public void putOfACachedIdReplacesTheItemWithoutEvicting() {
+        ArrayLruMap<BenchmarkItem> map = new ArrayLruMap<>(2);
+        map.put(items[1]);
+        map.put(items[2]);
+
+        BenchmarkItem replacement = new BenchmarkItem("1");
+        assertNull(map.put(replacement));
+        assertSame(replacement, map.get("1"));
+        assertEquals(2, map.size());
+        assertSame(items[2], map.eldest());
+    }
+
+    @Test
+    public void removedEntryIsReused() {
+        ArrayLruMap<BenchmarkItem> map = new ArrayLruMap<>(2);
+        map.put(items[1]);
+        map.put(items[2]);
+
+        assertSame(items[1], map.remove("1"));
+        assertNull(map.remove("1"));
+        assertNull(map.put(items[3]));
+        assertEquals(2, map.size());
+        assertSame(items[2], map.eldest());
+    }
+
+    @Test
+    public void matchesAnAccessOrderedLinkedHashMapUnderRandomChurn() {
+        int capacity = 64;
+        ArrayLruMap<BenchmarkItem> map = new ArrayLruMap<>(capacity);
+        Map<String, BenchmarkItem> model = new LinkedHashMap<>(16, 0.75f, true);
+
+        Random random = new Random(11);
+        for (int i = 0; i < 100_000; i++) {
+            BenchmarkItem item = new BenchmarkItem(Integer.toString(random.nextInt(200)));
+            String id = item.getID();
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertSame(model.get(id), map.get(id));
+                    break;
+                case 1:
+                    BenchmarkItem expectedEviction = null;
+                    if (!model.containsKey(id) && model.size() == capacity) {
+                        expectedEviction = model.remove(model.keySet().iterator().next());
+                    }
+                    model.put(id, item);
+                    assertSame(expectedEviction, map.put(item));
+                    break;
+                default:
+                    assertSame(model.remove(id), map.remove(id));
+            }
+            assertEquals(model.size(), map.size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructionFailsWithNonPositiveCapacity() {
+        new ArrayLruMap<BenchmarkItem>(0);
+    }
+}
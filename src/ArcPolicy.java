@@ -0,0 +1,172 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Adaptive Replacement Cache (ARC) eviction, after Megiddo and Modha.  Cached Nodes are split between two LRU lists:
+ * T1 holds items read only once since they were cached, and T2 items read at least twice.  Evicted keys are
+ * remembered, without their data, on the <em>ghost</em> lists B1 and B2.  A miss on a key in B1 means T1 was too
+ * small, so the target weight of T1 grows; a miss on a key in B2 shrinks it in favour of T2.  Either way the item
+ * re-enters the cache in T2.  Victims are taken from T1 while it is over its target, and from T2 otherwise, so the
+ * balance between recency and frequency follows the workload.
+ * <p>
+ * Sizes are measured in the cache's weight units.  T1 plus B1 are kept within the maximum weight, and all four lists
+ * together within twice the maximum weight.  Only Nodes evicted as victims are remembered on the ghost lists: an
+ * item that was invalidated or expired says nothing about whether T1 or T2 is too small.
+ *
+ * @param <T> type of elements held by the cached Nodes
+ */
+class ArcPolicy<T extends Cacheable> implements EvictionPolicy<T> {
+    static final byte T1 = 1;
+    static final byte T2 = 2;
+
+    private final DoublyLinkedList<T> t1 = new DoublyLinkedList<>();
+    private final DoublyLinkedList<T> t2 = new DoublyLinkedList<>();
+    // ghost lists, from cache ID to the weight of the evicted item, in order of eviction
+    private final LinkedHashMap<String, Integer> b1 = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Integer> b2 = new LinkedHashMap<>();
+
+    private long maximumWeight;
+    private long t1Weight;
+    private long t2Weight;
+    private long b1Weight;
+    private long b2Weight;
+    // target weight of T1
+    private double p;
+
+    /**
+     * @param maximumWeight the cache's maximum total weight
+     */
+    ArcPolicy(long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+    }
+
+    /**
+     * Resizes the target for T1 and the ghost lists, which if now over their maximum are trimmed by the next
+     * eviction
+     */
+    @Override
+    public void setMaximumWeight(long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+        p = Math.min(p, maximumWeight);
+    }
+
+    @Override
+    public boolean contains(DoublyLinkedList.Node<T> node) {
+        return node.region != 0;
+    }
+
+    @Override
+    public void onInsert(DoublyLinkedList.Node<T> node) {
+        String id = node.getData().getID();
+        int weight = node.weight;
+
+        Integer ghostWeight = b1.remove(id);
+        if (ghostWeight != null) {
+            b1Weight -= ghostWeight;
+            p = Math.min(maximumWeight, p + Math.max(weight, (double) weight * b2Weight / Math.max(1, b1Weight)));
+            insertIntoT2(node);
+            return;
+        }
+
+        ghostWeight = b2.remove(id);
+        if (ghostWeight != null) {
+            b2Weight -= ghostWeight;
+            p = Math.max(0, p - Math.max(weight, (double) weight * b1Weight / Math.max(1, b2Weight)));
+            insertIntoT2(node);
+            return;
+        }
+
+        node.region = T1;
+        t1.insertAsHead(node);
+        t1Weight += weight;
+    }
+
+    @Override
+    public void onAccess(DoublyLinkedList.Node<T> node) {
+        if (node.region == T1) {
+            t1.remove(node);
+            t1Weight -= node.weight;
+            insertIntoT2(node);
+        } else if (node.region == T2 && t2.head != node) {
+            t2.remove(node);
+            t2.insertAsHead(node);
+        }
+    }
+
+    @Override
+    public void onRemove(DoublyLinkedList.Node<T> node, RemovalCause cause) {
+        String id = node.getData().getID();
+        boolean evicted = cause == RemovalCause.SIZE;
+        if (node.region == T1) {
+            t1.remove(node);
+            t1Weight -= node.weight;
+            if (evicted) {
+                b1.put(id, node.weight);
+                b1Weight += node.weight;
+            }
+        } else if (node.region == T2) {
+            t2.remove(node);
+            t2Weight -= node.weight;
+            if (evicted) {
+                b2.put(id, node.weight);
+                b2Weight += node.weight;
+            }
+        }
+        node.region = 0;
+
+        while (t1Weight + b1Weight > maximumWeight && !b1.isEmpty()) {
+            b1Weight -= removeEldest(b1);
+        }
+        while (t1Weight + b1Weight + t2Weight + b2Weight > 2 * maximumWeight && !b2.isEmpty()) {
+            b2Weight -= removeEldest(b2);
+        }
+    }
+
+    /**
+     * Adjusts the weight of the Node's list, leaving the Node where it is
+     */
+    @Override
+    public void onWeightChanged(DoublyLinkedList.Node<T> node, int oldWeight) {
+        if (node.region == T1) {
+            t1Weight += node.weight - oldWeight;
+        } else if (node.region == T2) {
+            t2Weight += node.weight - oldWeight;
+        }
+    }
+
+    @Override
+    public DoublyLinkedList.Node<T> victim() {
+        if (t1.tail != null && (t1Weight > p || t2.tail == null)) {
+            return t1.tail;
+        }
+        return t2.tail;
+    }
+
+    @Override
+    public void forEachHottestFirst(Consumer<DoublyLinkedList.Node<T>> action) {
+        t2.forEachFromHead(action);
+        t1.forEachFromHead(action);
+    }
+
+    @Override
+    public void onRestore(DoublyLinkedList.Node<T> node) {
+        node.region = T1;
+        t1.insertAsTail(node);
+        t1Weight += node.weight;
+    }
+
+    private void insertIntoT2(DoublyLinkedList.Node<T> node) {
+        node.region = T2;
+        t2.insertAsHead(node);
+        t2Weight += node.weight;
+    }
+
+    private static int removeEldest(Map<String, Integer> ghosts) {
+        Iterator<Integer> eldest = ghosts.values().iterator();
+        int weight = eldest.next();
+        eldest.remove();
+        return weight;
+    }
+}
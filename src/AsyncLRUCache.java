@@ -0,0 +1,67 @@
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Non-blocking variant of {@link LRUCache}, whose lookups return a {@link CompletableFuture} rather than waiting for
+ * the backing data source.  Hits return an already completed future.  Misses query the data source on the executor
+ * supplied at construction, and the in-flight future is shared by every caller that misses on the same ID until it
+ * completes, so the data source is queried once however many callers are waiting.
+ * <p>
+ * Unless another executor is supplied, data source queries run on {@link DefaultExecutor#INSTANCE}.
+ *
+ * @param <T> concrete type of elements to be stored in the Cache.  Type must implement Cacheable interface
+ *           to ensure they have a unique ID to use as lookup key for the cache (and backing data source)
+ */
+public class AsyncLRUCache<T extends Cacheable> {
+    private final LRUCache<T> cache;
+    private final Executor executor;
+
+    /**
+     * Constructs a new AsyncLRUCache with the specified backing data source, capacity and executor
+     * @param dataSource the backing data source to be queried in order to satisfy a {@link #getFromCache(String)}
+     *                   request when a cache miss occurs
+     * @param maxCapacity maximum capacity of the cache, which when reached will result in the least-recently-used
+     *                    item in the cache being evicted the next time a new item needs to be added
+     * @param executor runs the backing data source queries
+     */
+    public AsyncLRUCache(DataSource<T> dataSource, int maxCapacity, Executor executor) {
+        this.cache = new LRUCache<>(dataSource, maxCapacity);
+        this.executor = executor;
+    }
+
+    /**
+     * Constructs a new AsyncLRUCache with the specified backing data source and capacity, which runs data source
+     * queries on the default executor
+     * @param dataSource the backing data source to be queried in order to satisfy a {@link #getFromCache(String)}
+     *                   request when a cache miss occurs
+     * @param maxCapacity maximum capacity of the cache, which when reached will result in the least-recently-used
+     *                    item in the cache being evicted the next time a new item needs to be added
+     */
+    public AsyncLRUCache(DataSource<T> dataSource, int maxCapacity) {
+        this(dataSource, maxCapacity, DefaultExecutor.INSTANCE);
+    }
+
+    /**
+     * Retrieves the item mapped to by the specified cacheID without blocking the calling thread.  If the item is
+     * currently in the cache then the returned future is already complete; otherwise it completes once the item
+     * has been retrieved from the backing data source
+     *
+     * @param cachedID unique ID of the item to be retrieved from the cache or, if not in the cache,
+     *                 the underlying data source
+     * @return a future completed with an Optional containing the retrieved item, or an empty Optional if it cannot
+     * be retrieved from the backing data source.  The future completes exceptionally with a
+     * {@link DataSourceRetrievalException} if an unrecoverable error occurs while querying the data source
+     */
+    public CompletableFuture<Optional<T>> getFromCache(String cachedID) {
+        return cache.getFromCacheAsync(cachedID, executor);
+    }
+
+    /**
+     * Returns a snapshot of the statistics recorded by this cache since it was constructed
+     * @return the cache's statistics
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
@@ -0,0 +1,182 @@
+import com.google.common.base.Preconditions;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Data source which gathers the single-ID lookups of every caller into batches, each retrieved from the data source
+ * it wraps with one call to {@link DataSource#getAllFromDataSource(Set)}, so that many threads missing on different
+ * IDs at once cost a few batch queries rather than a query each.
+ * <p>
+ * The first lookup after a batch is sent opens a new one, which stays open for a fixed window, or until it holds
+ * the maximum number of IDs, whichever comes first.  A batch filled up by a lookup is queried on that caller's
+ * thread; one whose window runs out is queried on the executor.  Every lookup waits for its batch, so each costs up
+ * to one window of extra latency, in exchange for far fewer queries under bursty load.  Lookups of an ID already in
+ * the open batch share its result, and if the batch query fails, every lookup in the batch fails with it.
+ * <p>
+ * Lookups of several IDs at once are already batched, so {@link #getAllFromDataSource(Set)} passes straight through.
+ * Can be wrapped around a cache's data source by {@link LRUCacheBuilder#batchLoads(long, TimeUnit, int)}.
+ *
+ * @param <T> Type of elements being cached
+ */
+public class BatchingDataSource<T extends Cacheable> implements DataSource<T> {
+    private final DataSource<T> delegate;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private Map<String, CompletableFuture<Optional<T>>> openBatch = new HashMap<>();
+
+    /**
+     * Wraps a data source, querying batches whose window runs out on the default executor
+     * @param delegate the data source to query in batches, which should implement
+     *                 {@link DataSource#getAllFromDataSource(Set)} with a single query
+     * @param window how long a batch stays open for more IDs after its first
+     * @param unit unit of the window
+     * @param maxBatchSize number of IDs at which a batch is queried without waiting for the rest of its window
+     */
+    public BatchingDataSource(DataSource<T> delegate, long window, TimeUnit unit, int maxBatchSize) {
+        this(delegate, unit.toNanos(window), maxBatchSize, DefaultExecutor.INSTANCE, DefaultExecutor.SCHEDULER);
+    }
+
+    /**
+     * Wraps a data source
+     * @param delegate the data source to query in batches
+     * @param windowNanos how long, in nanoseconds, a batch stays open for more IDs after its first
+     * @param maxBatchSize number of IDs at which a batch is queried without waiting for the rest of its window
+     * @param executor queries the batches whose window runs out
+     * @param scheduler closes batches once their window runs out
+     */
+    BatchingDataSource(DataSource<T> delegate, long windowNanos, int maxBatchSize, Executor executor,
+                       ScheduledExecutorService scheduler) {
+        Preconditions.checkArgument(delegate != null, "delegate cannot be NULL");
+        Preconditions.checkArgument(windowNanos > 0, "window must be positive");
+        Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+        this.delegate = delegate;
+        this.windowNanos = windowNanos;
+        this.maxBatchSize = maxBatchSize;
+        this.executor = executor;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Adds the ID to the open batch, and waits for that batch to be queried
+     */
+    @Override
+    public Optional<T> getFromDataSource(String ID) throws DataSourceRetrievalException {
+        CompletableFuture<Optional<T>> result;
+        Map<String, CompletableFuture<Optional<T>>> fullBatch = null;
+        Map<String, CompletableFuture<Optional<T>>> newBatch = null;
+        lock.lock();
+        try {
+            result = openBatch.get(ID);
+            if (result == null) {
+                result = new CompletableFuture<>();
+                openBatch.put(ID, result);
+                if (openBatch.size() >= maxBatchSize) {
+                    fullBatch = openBatch;
+                    openBatch = new HashMap<>();
+                } else if (openBatch.size() == 1) {
+                    newBatch = openBatch;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (fullBatch != null) {
+            query(fullBatch);
+        } else if (newBatch != null) {
+            Map<String, CompletableFuture<Optional<T>>> batch = newBatch;
+            try {
+                scheduler.schedule(() -> closeAndQuery(batch), windowNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                closeAndQuery(batch);
+            }
+        }
+        return await(ID, result);
+    }
+
+    @Override
+    public Map<String, T> getAllFromDataSource(Set<String> IDs) throws DataSourceRetrievalException {
+        return delegate.getAllFromDataSource(IDs);
+    }
+
+    /**
+     * Returns the number of IDs in the open batch
+     */
+    int openBatchSize() {
+        lock.lock();
+        try {
+            return openBatch.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes a batch whose window has run out, unless it filled up and was queried meanwhile, and queries it on the
+     * executor
+     */
+    private void closeAndQuery(Map<String, CompletableFuture<Optional<T>>> batch) {
+        lock.lock();
+        try {
+            if (openBatch != batch) {
+                return;
+            }
+            openBatch = new HashMap<>();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            executor.execute(() -> query(batch));
+        } catch (RuntimeException e) {
+            // executor rejected the query, so nobody else will complete the batch
+            batch.values().forEach(result -> result.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Queries a closed batch, completing each of its lookups with the item found, if any
+     */
+    private void query(Map<String, CompletableFuture<Optional<T>>> batch) {
+        try {
+            Map<String, T> found = delegate.getAllFromDataSource(batch.keySet());
+            batch.forEach((ID, result) -> result.complete(Optional.ofNullable(found.get(ID))));
+        } catch (Throwable t) {
+            batch.values().forEach(result -> result.completeExceptionally(t));
+        }
+    }
+
+    private Optional<T> await(String ID, CompletableFuture<Optional<T>> result) throws DataSourceRetrievalException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataSourceRetrievalException("Interrupted while waiting for ID " + ID +
+                    " to be retrieved from the data source", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DataSourceRetrievalException) {
+                throw (DataSourceRetrievalException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new DataSourceRetrievalException(cause);
+        }
+    }
+}
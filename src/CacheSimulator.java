@@ -0,0 +1,237 @@
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Replays a recorded access trace through {@link LRUCache}s of each eviction policy and a range of capacities, to
+ * find the smallest capacity that gives the hit ratio a service needs.  Every key in the trace is looked up with
+ * {@link LRUCache#getFromCache(String)}, against a data source which has an item for every key, and the resulting
+ * hit ratio, number of data source loads and throughput are reported for each policy and capacity.  The
+ * simulations of a sweep are independent, so they are run in parallel on a {@link ForkJoinPool}.
+ * <p>
+ * Can be run from the command line, printing the miss-ratio curve of each policy as CSV:
+ * <pre>
+ *     java CacheSimulator trace.txt [--format=plain|arc|umass] [--policies=lru,arc,...]
+ *                                   [--capacities=1000,10000,...] [--parallelism=N]
+ * </pre>
+ * By default every policy is simulated, at capacities doubling from 16 up to the number of distinct keys in the
+ * trace, on every available processor.
+ */
+public final class CacheSimulator {
+    private static final Map<String, EvictionPolicy.Factory<SimulatedItem>> POLICIES = new LinkedHashMap<>();
+
+    static {
+        POLICIES.put("lru", EvictionPolicy.lru());
+        POLICIES.put("fifo", EvictionPolicy.fifo());
+        POLICIES.put("clock", EvictionPolicy.clock());
+        POLICIES.put("slru", EvictionPolicy.slru());
+        POLICIES.put("arc", EvictionPolicy.arc());
+        POLICIES.put("wtinylfu", EvictionPolicy.windowTinyLfu());
+    }
+
+    private final String[] trace;
+
+    /**
+     * Creates a simulator replaying the given keys, e.g. as read by {@link TraceFormat#read(Path)}
+     * @param trace the keys looked up, in order
+     */
+    public CacheSimulator(List<String> trace) {
+        Preconditions.checkArgument(trace != null, "trace cannot be NULL");
+        this.trace = trace.toArray(new String[0]);
+    }
+
+    /**
+     * Returns the names of the eviction policies that can be simulated, e.g. "lru" and "arc"
+     * @return the policy names
+     */
+    public static List<String> policies() {
+        return Collections.unmodifiableList(new ArrayList<>(POLICIES.keySet()));
+    }
+
+    /**
+     * Replays the trace through a single cache, on the calling thread
+     * @param policy name of the eviction policy, one of {@link #policies()}
+     * @param capacity maximum capacity of the cache
+     * @return the simulation's outcome
+     * @throws IllegalArgumentException if the policy is unknown
+     */
+    public SimulationResult simulate(String policy, int capacity) {
+        EvictionPolicy.Factory<SimulatedItem> factory = POLICIES.get(policy);
+        Preconditions.checkArgument(factory != null, "unknown policy %s, expected one of %s", policy, POLICIES.keySet());
+        LRUCache<SimulatedItem> cache = new LRUCacheBuilder<>(SimulatedItem.DATA_SOURCE)
+                .maxCapacity(capacity)
+                .evictionPolicy(factory)
+                .executor(Runnable::run)
+                .build();
+
+        long start = System.nanoTime();
+        try {
+            for (String key : trace) {
+                cache.getFromCache(key);
+            }
+        } catch (DataSourceRetrievalException e) {
+            throw new AssertionError("the simulated data source never fails", e);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        CacheStats stats = cache.stats();
+        return new SimulationResult(policy, capacity, stats.getRequestCount(), stats.getHitCount(),
+                stats.getLoadSuccessCount(), elapsedNanos);
+    }
+
+    /**
+     * Replays the trace through a cache of every combination of the given policies and capacities, in parallel
+     * @param policies names of the eviction policies, from {@link #policies()}
+     * @param capacities maximum capacities of the caches
+     * @param parallelism maximum number of simulations to run at once
+     * @return the outcome of each simulation, by policy in the order given, then by capacity in the order given
+     * @throws IllegalArgumentException if a policy is unknown
+     */
+    public List<SimulationResult> sweep(List<String> policies, int[] capacities, int parallelism) {
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+        List<String> points = new ArrayList<>();
+        List<Integer> pointCapacities = new ArrayList<>();
+        for (String policy : policies) {
+            Preconditions.checkArgument(POLICIES.containsKey(policy), "unknown policy %s, expected one of %s",
+                    policy, POLICIES.keySet());
+            for (int capacity : capacities) {
+                Preconditions.checkArgument(capacity > 0, "capacities must be positive");
+                points.add(policy);
+                pointCapacities.add(capacity);
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new SweepTask(points, pointCapacities, 0, points.size()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns capacities doubling from 16 up to the number of distinct keys in the trace, beyond which every
+     * policy's miss ratio is the same
+     * @return the default capacities to sweep
+     */
+    public int[] defaultCapacities() {
+        int distinctKeys = Math.max(new HashSet<>(Arrays.asList(trace)).size(), 16);
+        List<Integer> capacities = new ArrayList<>();
+        for (long capacity = 16; capacity < distinctKeys; capacity *= 2) {
+            capacities.add((int) capacity);
+        }
+        capacities.add(distinctKeys);
+        return capacities.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Writes the results of a sweep as CSV, with a header line, one line per result
+     * @param results the results to write
+     * @param out where to write them
+     */
+    public static void writeCsv(List<SimulationResult> results, PrintStream out) {
+        out.println("policy,capacity,requests,hitRatio,missRatio,loads,throughput");
+        for (SimulationResult result : results) {
+            out.println(String.format(Locale.ROOT, "%s,%d,%d,%.6f,%.6f,%d,%.0f", result.getPolicy(),
+                    result.getCapacity(), result.getRequestCount(), result.getHitRatio(), result.getMissRatio(),
+                    result.getLoadCount(), result.getThroughput()));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: CacheSimulator <trace file> [--format=plain|arc|umass] " +
+                    "[--policies=lru,arc,...] [--capacities=1000,10000,...] [--parallelism=N]");
+            System.exit(2);
+        }
+
+        Path file = Paths.get(args[0]);
+        TraceFormat format = TraceFormat.PLAIN;
+        List<String> policies = policies();
+        int[] capacities = null;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        for (String arg : Arrays.asList(args).subList(1, args.length)) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--format=")) {
+                format = TraceFormat.valueOf(value.toUpperCase(Locale.ROOT));
+            } else if (arg.startsWith("--policies=")) {
+                policies = Arrays.asList(value.split(","));
+            } else if (arg.startsWith("--capacities=")) {
+                capacities = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+            } else if (arg.startsWith("--parallelism=")) {
+                parallelism = Integer.parseInt(value);
+            } else {
+                throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+
+        CacheSimulator simulator = new CacheSimulator(format.read(file));
+        if (capacities == null) {
+            capacities = simulator.defaultCapacities();
+        }
+        writeCsv(simulator.sweep(policies, capacities, parallelism), System.out);
+    }
+
+    /**
+     * Runs the simulations of a range of a sweep's points, splitting the range in half until a single point is left
+     */
+    private final class SweepTask extends RecursiveTask<List<SimulationResult>> {
+        private final List<String> policies;
+        private final List<Integer> capacities;
+        private final int from;
+        private final int to;
+
+        SweepTask(List<String> policies, List<Integer> capacities, int from, int to) {
+            this.policies = policies;
+            this.capacities = capacities;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<SimulationResult> compute() {
+            if (to - from <= 1) {
+                return (to == from) ? new ArrayList<>()
+                        : new ArrayList<>(Collections.singletonList(simulate(policies.get(from), capacities.get(from))));
+            }
+            int middle = (from + to) >>> 1;
+            SweepTask upper = new SweepTask(policies, capacities, middle, to);
+            upper.fork();
+            List<SimulationResult> results = new SweepTask(policies, capacities, from, middle).compute();
+            results.addAll(upper.join());
+            return results;
+        }
+    }
+
+    /**
+     * Item cached by the simulations, which holds nothing but its key
+     */
+    static final class SimulatedItem implements Cacheable {
+        static final DataSource<SimulatedItem> DATA_SOURCE = ID -> Optional.of(new SimulatedItem(ID));
+
+        private final String id;
+
+        SimulatedItem(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getID() {
+            return id;
+        }
+    }
+}
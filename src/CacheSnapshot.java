@@ -0,0 +1,89 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Contents of an {@link LRUCache} written to a local file, so a restarted process can warm its cache up again
+ * instead of starting empty.  Holds the cached IDs, hottest first (see {@link EvictionPolicy#forEachHottestFirst}),
+ * and optionally each item serialized by a {@link ValueCodec}.
+ * <p>
+ * The file starts with a magic number, a format version and whether values are included, followed by the number
+ * of entries and then each entry's ID and, if included, its value's length and bytes.  It is written to a
+ * temporary file that then replaces the target, so a crash while writing never leaves a truncated snapshot.
+ */
+class CacheSnapshot {
+    private static final int MAGIC = 0x4c525553;
+    private static final int VERSION = 1;
+
+    final List<String> ids;
+    // serialized items, in the same order as the IDs, or NULL if the snapshot only holds IDs
+    final List<byte[]> values;
+
+    CacheSnapshot(List<String> ids, List<byte[]> values) {
+        this.ids = ids;
+        this.values = values;
+    }
+
+    /**
+     * Writes this snapshot to the given file, replacing it if it exists
+     * @param file the snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    void write(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeBoolean(values != null);
+            out.writeInt(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                out.writeUTF(ids.get(i));
+                if (values != null) {
+                    out.writeInt(values.get(i).length);
+                    out.write(values.get(i));
+                }
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot previously written by {@link #write}
+     * @param file the snapshot file
+     * @return the snapshot
+     * @throws IOException if the file cannot be read, or is not a snapshot
+     */
+    static CacheSnapshot read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a cache snapshot");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(file + " is a version " + version + " cache snapshot, but only version " +
+                        VERSION + " is supported");
+            }
+
+            boolean hasValues = in.readBoolean();
+            int count = in.readInt();
+            List<String> ids = new ArrayList<>(count);
+            List<byte[]> values = hasValues ? new ArrayList<>(count) : null;
+            for (int i = 0; i < count; i++) {
+                ids.add(in.readUTF());
+                if (hasValues) {
+                    byte[] value = new byte[in.readInt()];
+                    in.readFully(value);
+                    values.add(value);
+                }
+            }
+            return new CacheSnapshot(ids, values);
+        }
+    }
+}
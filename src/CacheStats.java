@@ -0,0 +1,152 @@
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * Immutable snapshot of the statistics recorded by a cache, as returned by {@link LRUCache#stats()}.  All counts
+ * are cumulative since the cache was constructed.  If the cache was constructed with statistics disabled then
+ * every count is zero.
+ */
+public final class CacheStats {
+    static final CacheStats EMPTY = new CacheStats(0, 0, 0, 0, 0, 0, 0, new long[LoadTimeHistogram.BUCKET_COUNT]);
+
+    private final long hitCount;
+    private final long missCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTime;
+    private final long evictionCount;
+    private final long negativeHitCount;
+    private final long[] loadTimeBuckets;
+
+    CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount, long totalLoadTime,
+               long evictionCount, long negativeHitCount, long[] loadTimeBuckets) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCount = evictionCount;
+        this.negativeHitCount = negativeHitCount;
+        this.loadTimeBuckets = loadTimeBuckets;
+    }
+
+    /**
+     * Returns the number of lookups that found the requested item already in the cache
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups that did not find the requested item in the cache, including those that
+     * waited for another caller's in-flight load of the same item
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the total number of lookups, i.e. hits plus misses
+     * @return the request count
+     */
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * Returns the fraction of lookups that were hits, or 1.0 if there have been no lookups
+     * @return the hit rate, between 0.0 and 1.0
+     */
+    public double getHitRate() {
+        long requestCount = getRequestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    /**
+     * Returns the number of queries to the {@link DataSource} that completed normally, whether or not they
+     * found an item
+     * @return the load success count
+     */
+    public long getLoadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    /**
+     * Returns the number of queries to the {@link DataSource} that failed with a {@link DataSourceRetrievalException}
+     * @return the load failure count
+     */
+    public long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /**
+     * Returns the total time spent querying the {@link DataSource}, whether the queries succeeded or failed
+     * @return the total load time, in nanoseconds
+     */
+    public long getTotalLoadTime() {
+        return totalLoadTime;
+    }
+
+    /**
+     * Returns the average time spent on a query to the {@link DataSource}, or 0 if there have been none
+     * @return the average load time, in nanoseconds
+     */
+    public double getAverageLoadTime() {
+        long loadCount = loadSuccessCount + loadFailureCount;
+        return loadCount == 0 ? 0.0 : (double) totalLoadTime / loadCount;
+    }
+
+    /**
+     * Estimates the given percentile of the time spent on a query to the {@link DataSource}.  The estimate is
+     * within 25% of the true value
+     * @param percentile the percentile to estimate, between 0 and 100, e.g. 99 for the p99 load time
+     * @return the estimated load time, in nanoseconds, or 0 if there have been no queries
+     */
+    public long getLoadTimePercentile(double percentile) {
+        Preconditions.checkArgument(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100");
+        return LoadTimeHistogram.valueAtPercentile(loadTimeBuckets, percentile);
+    }
+
+    /**
+     * Returns the number of items evicted to make room for new ones
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the number of misses answered without querying the {@link DataSource}, because the ID was recently
+     * found to have no item or was ruled out by the Bloom filter.  These are also counted as misses
+     * @return the negative hit count
+     */
+    public long getNegativeHitCount() {
+        return negativeHitCount;
+    }
+
+    /**
+     * Combines these statistics with another set, e.g. to total up the segments of a {@link SegmentedLRUCache}
+     * @param other the statistics to add to these
+     * @return a new CacheStats holding the sum of both
+     */
+    public CacheStats plus(CacheStats other) {
+        long[] buckets = Arrays.copyOf(loadTimeBuckets, loadTimeBuckets.length);
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] += other.loadTimeBuckets[i];
+        }
+        return new CacheStats(hitCount + other.hitCount, missCount + other.missCount,
+                loadSuccessCount + other.loadSuccessCount, loadFailureCount + other.loadFailureCount,
+                totalLoadTime + other.totalLoadTime, evictionCount + other.evictionCount,
+                negativeHitCount + other.negativeHitCount, buckets);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hitCount=" + hitCount + ", missCount=" + missCount + ", loadSuccessCount=" +
+                loadSuccessCount + ", loadFailureCount=" + loadFailureCount + ", totalLoadTime=" + totalLoadTime +
+                ", evictionCount=" + evictionCount + ", negativeHitCount=" + negativeHitCount + "}";
+    }
+}
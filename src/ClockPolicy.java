@@ -0,0 +1,61 @@
+import java.util.function.Consumer;
+
+/**
+ * CLOCK eviction, an approximation of LRU.  Nodes are kept in insertion order, and a read only sets the Node's
+ * reference bit instead of relinking it, so hits are cheap.  To choose a victim the clock hand sweeps from the
+ * oldest Node: a referenced Node has its bit cleared and gets a second chance by moving to the back of the queue,
+ * and the first unreferenced Node found is the victim.
+ *
+ * @param <T> type of elements held by the cached Nodes
+ */
+class ClockPolicy<T extends Cacheable> implements EvictionPolicy<T> {
+    private static final byte REFERENCED = 1;
+
+    private final DoublyLinkedList<T> queue = new DoublyLinkedList<>();
+
+    @Override
+    public boolean contains(DoublyLinkedList.Node<T> node) {
+        return queue.contains(node);
+    }
+
+    @Override
+    public void onInsert(DoublyLinkedList.Node<T> node) {
+        node.region = 0;
+        queue.insertAsHead(node);
+    }
+
+    @Override
+    public void onAccess(DoublyLinkedList.Node<T> node) {
+        node.region = REFERENCED;
+    }
+
+    @Override
+    public void onRemove(DoublyLinkedList.Node<T> node, RemovalCause cause) {
+        queue.remove(node);
+        node.region = 0;
+    }
+
+    @Override
+    public DoublyLinkedList.Node<T> victim() {
+        // terminates within one full sweep, since every Node passed over has its bit cleared
+        DoublyLinkedList.Node<T> hand = queue.tail;
+        while (hand != null && hand.region == REFERENCED) {
+            hand.region = 0;
+            queue.remove(hand);
+            queue.insertAsHead(hand);
+            hand = queue.tail;
+        }
+        return hand;
+    }
+
+    @Override
+    public void forEachHottestFirst(Consumer<DoublyLinkedList.Node<T>> action) {
+        queue.forEachFromHead(action);
+    }
+
+    @Override
+    public void onRestore(DoublyLinkedList.Node<T> node) {
+        node.region = 0;
+        queue.insertAsTail(node);
+    }
+}
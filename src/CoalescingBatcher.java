@@ -0,0 +1,310 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+
+/**
+ * Collects values by ID and hands them to a {@link Sender} in batches, in the background, for
+ * {@link WriteBehindQueue} and {@link InvalidationBus}.  Values are coalesced per ID: adding a value for an ID that
+ * is already pending merges the two, and the ID keeps its place in the queue, so however often an ID is added
+ * between batches, it is sent once.
+ * <p>
+ * A flush starts once a full batch is pending, or once the interval has passed since the first value after the
+ * previous flush, whichever comes first.  Flushes run on the executor, one at a time so that an ID's values are sent
+ * in order, and send everything pending, a batch at a time, until nothing is left; at most one background flush is
+ * queued or running at once.  If the sender fails, the batch is put back at the front of the queue, in order, apart
+ * from the IDs added again meanwhile, and retried an interval later.
+ * <p>
+ * The number of pending IDs, counting those being sent, may be bounded: once the bound is reached, adding a new ID
+ * blocks until a send completes and makes room, which slows callers down to the rate the sender can take.  Adding a
+ * value for an ID that is already pending never blocks.
+ *
+ * @param <V> type of the values
+ * @param <E> type of the exception the sender fails with
+ */
+class CoalescingBatcher<V, E extends Exception> {
+    /**
+     * Sends a batch of values
+     * @param <V> type of the values
+     * @param <E> type of the exception the sender fails with
+     */
+    interface Sender<V, E extends Exception> {
+        /**
+         * @param batch the values to send, by ID, in the order their IDs were first added
+         * @throws E if the batch could not be sent, in which case it is retried later
+         */
+        void send(Map<String, V> batch) throws E;
+    }
+
+    private final Sender<V, E> sender;
+    private final BinaryOperator<V> merger;
+    private final int batchSize;
+    private final int maxPending;
+    private final long intervalNanos;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final LinkedHashMap<String, V> pending = new LinkedHashMap<>();
+    // the batch being sent, by ID, which lookups must still see until the send completes
+    private final Map<String, V> sending = new HashMap<>();
+    private boolean flushScheduled;
+    // whether a background flush is queued or running, and whether another was asked for meanwhile
+    private boolean backgroundFlush;
+    private boolean backgroundFlushRequested;
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicLong failedBatchCount = new AtomicLong();
+
+    /**
+     * Creates an empty batcher
+     * @param sender sends the batches
+     * @param merger combines the value pending for an ID with a newer one added for it
+     * @param batchSize maximum number of IDs per batch
+     * @param maxPending maximum number of IDs waiting to be sent, or {@link Integer#MAX_VALUE} for no bound
+     * @param intervalNanos maximum time, in nanoseconds, a value waits before its flush starts
+     * @param executor runs the flushes
+     * @param scheduler starts the flushes that are due to the interval
+     */
+    CoalescingBatcher(Sender<V, E> sender, BinaryOperator<V> merger, int batchSize, int maxPending,
+                      long intervalNanos, Executor executor, ScheduledExecutorService scheduler) {
+        this.sender = sender;
+        this.merger = merger;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.intervalNanos = intervalNanos;
+        this.executor = executor;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Queues a value to be sent, merging it with any value pending for the same ID
+     * @param id the value's ID
+     * @param value the value
+     * @throws InterruptedException if interrupted while waiting for room in the queue, which never happens when
+     * the number of pending IDs is not bounded
+     */
+    void add(String id, V value) throws InterruptedException {
+        boolean fullBatch;
+        boolean startTimer;
+        lock.lock();
+        try {
+            while (pending.size() + sending.size() >= maxPending && !pending.containsKey(id)) {
+                notFull.await();
+            }
+            pending.merge(id, value, merger);
+            fullBatch = pending.size() >= batchSize;
+            startTimer = !flushScheduled && !fullBatch;
+            flushScheduled = true;
+        } finally {
+            lock.unlock();
+        }
+
+        if (fullBatch) {
+            flushInBackground();
+        } else if (startTimer) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Returns the value waiting to be sent, or being sent, for the given ID, or null if there is none
+     */
+    V pendingValue(String id) {
+        lock.lock();
+        try {
+            V value = pending.get(id);
+            return value != null ? value : sending.get(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Passes every ID waiting to be sent, or being sent, to the given action
+     * @param action called once for each ID, while holding the batcher's lock
+     */
+    void forEachPendingID(Consumer<String> action) {
+        lock.lock();
+        try {
+            pending.keySet().forEach(action);
+            sending.keySet().forEach(action);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends everything pending on the calling thread, waiting for any background flush to finish first
+     * @throws E if the sender fails, in which case the failed batch is left pending
+     */
+    void flush() throws E {
+        flushLock.lock();
+        try {
+            while (sendBatch()) {
+                // keep going until nothing is pending
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of IDs waiting to be sent
+     */
+    int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of batches the sender has failed to send
+     */
+    long failedBatchCount() {
+        return failedBatchCount.get();
+    }
+
+    private void scheduleFlush() {
+        try {
+            scheduler.schedule(this::flushInBackground, intervalNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            flushInBackground();
+        }
+    }
+
+    /**
+     * Starts a flush on the executor, unless one is already queued or running, in which case that flush is asked
+     * to run again once it finishes
+     */
+    private void flushInBackground() {
+        lock.lock();
+        try {
+            if (backgroundFlush) {
+                backgroundFlushRequested = true;
+                return;
+            }
+            backgroundFlush = true;
+        } finally {
+            lock.unlock();
+        }
+        submitBackgroundFlush();
+    }
+
+    private void submitBackgroundFlush() {
+        try {
+            executor.execute(this::runBackgroundFlush);
+        } catch (RuntimeException e) {
+            // executor rejected the flush, so let the next value schedule another
+            lock.lock();
+            try {
+                backgroundFlush = false;
+                backgroundFlushRequested = false;
+                flushScheduled = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void runBackgroundFlush() {
+        boolean sent = false;
+        try {
+            flush();
+            sent = true;
+        } catch (Exception e) {
+            // left pending, and retried by the flush already scheduled
+        }
+
+        boolean again;
+        lock.lock();
+        try {
+            // values added after the flush emptied the queue, but before it was marked finished, are not left
+            // behind; after a failure, the retry already scheduled takes over
+            again = sent && (backgroundFlushRequested || !pending.isEmpty());
+            backgroundFlushRequested = false;
+            backgroundFlush = again;
+        } finally {
+            lock.unlock();
+        }
+        if (again) {
+            submitBackgroundFlush();
+        }
+    }
+
+    /**
+     * Sends the oldest batch of pending values.  Must be called while holding the flush lock
+     * @return whether there may be more values to send
+     */
+    private boolean sendBatch() throws E {
+        LinkedHashMap<String, V> batch = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            Iterator<Map.Entry<String, V>> oldest = pending.entrySet().iterator();
+            while (oldest.hasNext() && batch.size() < batchSize) {
+                Map.Entry<String, V> entry = oldest.next();
+                oldest.remove();
+                batch.put(entry.getKey(), entry.getValue());
+            }
+            if (batch.isEmpty()) {
+                flushScheduled = false;
+                return false;
+            }
+            sending.putAll(batch);
+        } finally {
+            lock.unlock();
+        }
+
+        boolean sent = false;
+        try {
+            sender.send(Collections.unmodifiableMap(batch));
+            sent = true;
+        } finally {
+            lock.lock();
+            try {
+                if (!sent) {
+                    failedBatchCount.incrementAndGet();
+                    requeueAtFront(batch);
+                }
+                sending.clear();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (!sent) {
+                scheduleFlush();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Puts a failed batch back ahead of everything pending, in its original order, skipping the IDs that have been
+     * added again since.  Must be called while holding the lock
+     */
+    private void requeueAtFront(LinkedHashMap<String, V> batch) {
+        LinkedHashMap<String, V> requeued = new LinkedHashMap<>();
+        batch.forEach((id, value) -> {
+            if (!pending.containsKey(id)) {
+                requeued.put(id, value);
+            }
+        });
+        requeued.putAll(pending);
+        pending.clear();
+        pending.putAll(requeued);
+    }
+}
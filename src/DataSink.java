@@ -0,0 +1,32 @@
+import java.util.Collection;
+
+/**
+ * Writer for the store behind a cache, through which {@link LRUCache#put(Cacheable)} persists items when the cache
+ * is built with {@link LRUCacheBuilder#writeThrough(DataSink)} or
+ * {@link LRUCacheBuilder#writeBehind(DataSink, int, int, long, java.util.concurrent.TimeUnit)}.  Usually the same
+ * object as the cache's {@link DataSource}
+ * @param <T> Type of elements being cached. Must implement the {@link Cacheable interface}
+ */
+public interface DataSink<T extends Cacheable> {
+    /**
+     * Writes an item to the underlying store, creating or replacing the element with the item's ID
+     * @param item the item to be written
+     * @throws DataSinkWriteException if there is an unrecoverable error while
+     * trying to write to the underlying store
+     */
+    public void write(T item) throws DataSinkWriteException;
+
+    /**
+     * Writes several items to the underlying store at once, as write-behind does for each batch.  Implementations
+     * able to write many items with a single statement should override this method; by default each item is
+     * written in turn with {@link #write(Cacheable)}.
+     * @param items the items to be written, no two of which have the same ID
+     * @throws DataSinkWriteException if there is an unrecoverable error while
+     * trying to write to the underlying store, in which case any of the items may or may not have been written
+     */
+    public default void writeAll(Collection<T> items) throws DataSinkWriteException {
+        for (T item : items) {
+            write(item);
+        }
+    }
+}
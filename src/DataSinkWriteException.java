@@ -0,0 +1,24 @@
+/**
+ * This class represents a checked Exception to be thrown when there is an unrecoverable error while attempting
+ * to write an item to the {@link DataSink}
+ */
+public class DataSinkWriteException extends Exception {
+    public DataSinkWriteException() {
+    }
+
+    public DataSinkWriteException(String message) {
+        super(message);
+    }
+
+    public DataSinkWriteException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public DataSinkWriteException(Throwable cause) {
+        super(cause);
+    }
+
+    public DataSinkWriteException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
@@ -1,4 +1,7 @@
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * simple interface to allow for 2nd-level data source to be injected at Cache construction.  2nd-level data
@@ -15,4 +18,24 @@ public interface DataSource<T extends Cacheable> {
      * trying to query the underlying data source
      */
     public Optional<T> getFromDataSource(String ID) throws DataSourceRetrievalException;
+
+    /**
+     * Attempts to retrieve several data items from the underlying data source at once.  Implementations able to
+     * look up many IDs with a single query should override this method; by default each ID is looked up in turn
+     * with {@link #getFromDataSource(String)}.
+     * @param IDs the unique IDs of the elements to be retrieved from the underlying data source
+     * @return a Map from ID to retrieved element, containing only those IDs for which an element was found
+     * @throws DataSourceRetrievalException if there is an unrecoverable error while
+     * trying to query the underlying data source
+     */
+    public default Map<String, T> getAllFromDataSource(Set<String> IDs) throws DataSourceRetrievalException {
+        Map<String, T> result = new HashMap<>();
+        for (String ID : IDs) {
+            Optional<T> element = getFromDataSource(ID);
+            if (element.isPresent()) {
+                result.put(ID, element.get());
+            }
+        }
+        return result;
+    }
 }
@@ -0,0 +1,38 @@
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Holds the executor that caches use for background data source queries when they are not given one.  Queries run
+ * on virtual threads when the Java runtime supports them (Java 21 and later), and otherwise on a shared, unbounded
+ * pool of daemon threads, since data source queries typically block on I/O.  Also holds the scheduler that delays
+ * background work, such as write-behind flushes, until it is due.  Its single thread only hands that work over to
+ * an executor, so it is shared by every cache.
+ */
+final class DefaultExecutor {
+    static final Executor INSTANCE = create();
+    static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("LRUCache-scheduler").setDaemon(true).build());
+
+    private DefaultExecutor() {
+    }
+
+    private static Executor create() {
+        try {
+            // looked up reflectively so the library still runs on Java versions without virtual threads
+            return (ExecutorService) MethodHandles.publicLookup()
+                    .findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class))
+                    .invoke();
+        } catch (Throwable noVirtualThreads) {
+            return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                    .setNameFormat("LRUCache-loader-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+    }
+}
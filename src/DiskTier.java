@@ -0,0 +1,526 @@
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Second, disk-backed tier for an {@link LRUCache}, holding items evicted from memory so that a later miss can be
+ * served from local disk rather than the data source (see {@link LRUCacheBuilder#diskTier}).
+ * <p>
+ * Items are serialized by a {@link ValueCodec} and appended to fixed-size segment files, each mapped into memory
+ * with {@link FileChannel#map}.  A record is the ID's length, the value's length, the ID and the value.  Only the
+ * index, from ID to segment and offset, is kept on the heap.  Records are never updated in place: re-writing or
+ * removing an ID just leaves its old record dead.  Once a full segment is mostly dead, it is compacted in the
+ * background by copying its live records to the end of the active segment, a chunk at a time so that lookups are
+ * never held up for long, and then recycling it.  When the tier reaches its maximum size, its oldest segment is
+ * dropped whole, so the tier as a whole evicts in FIFO order.  Dropped segments keep their file and mapping, and are
+ * reused for the next new segment, so the files never take up more than the maximum size: a mapping cannot be
+ * released on demand, so deleting the file would not free its disk space until the buffer is garbage collected.
+ * <p>
+ * Evicted items are handed to the tier by {@link #spill}, which only records them as pending, and are encoded and
+ * written on the executor.  A pending item can be taken back before it is written, and invalidating its ID cancels
+ * the write, so an invalidated item never reappears from the tier however late its write runs.
+ * <p>
+ * The index is not persisted, so segment files left in the directory by a previous run are deleted on startup.
+ * Memory-mapped files are only safe on a local filesystem, so network filesystems are rejected.
+ * <p>
+ * The tier's monitor guards only the index and the bookkeeping of segments, and is never held while encoding,
+ * decoding or touching the segment files.  Writes, including those of compactions, take a separate append lock, and
+ * record their index entries under the monitor once the bytes are in place.  A record's bytes stay intact until its
+ * segment is reused, which changes the segment's ID first, so {@link #take} copies them out without any lock and
+ * then checks the ID.  {@link #invalidate}, {@link #take} and {@link #spill} therefore never wait for disk I/O, and
+ * none of the methods call back into the cache, so they are safe to call while it holds its eviction lock.
+ *
+ * @param <T> type of the cached items
+ */
+class DiskTier<T extends Cacheable> {
+    static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".data";
+    private static final int HEADER_BYTES = 8;
+    // how many bytes of a segment a compaction scans before letting other callers in
+    private static final int COMPACTION_CHUNK_BYTES = 256 << 10;
+    private static final Set<String> NETWORK_FILESYSTEMS = new HashSet<>(Arrays.asList(
+            "nfs", "nfs4", "cifs", "smb", "smbfs", "smb2", "smb3", "afs", "ncpfs", "fuse.sshfs"));
+
+    private final Path directory;
+    private final ValueCodec<T> codec;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Executor executor;
+
+    // ID to location, as the segment ID in the high 32 bits and the record's offset in the low 32
+    private final Map<String, Long> index = new HashMap<>();
+    private final Map<Integer, Segment> segments = new HashMap<>();
+    // sealed segments, oldest first
+    private final ArrayDeque<Segment> sealed = new ArrayDeque<>();
+    // dropped segments, whose files and mappings are reused for new segments
+    private final ArrayDeque<Segment> free = new ArrayDeque<>();
+    // items evicted from memory but not yet written, by ID
+    private final Map<String, T> pendingSpills = new HashMap<>();
+    private int nextSegmentID;
+    private boolean compacting;
+
+    // serializes writes to the active segment, which it guards, and is taken before the monitor when both are needed
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private Segment active;
+
+    /**
+     * @param directory local directory to hold the segment files, which is created if necessary
+     * @param codec serializes items into, and deserializes them from, the segment files
+     * @param maximumBytes maximum total size of the segment files; at least two segments' worth
+     * @param segmentSize size of each segment file
+     * @param executor runs background compactions
+     * @throws IOException if the directory cannot be created or cleared, or is on a network filesystem
+     */
+    DiskTier(Path directory, ValueCodec<T> codec, long maximumBytes, int segmentSize, Executor executor)
+            throws IOException {
+        Preconditions.checkArgument(maximumBytes >= 2L * segmentSize,
+                "maximumBytes must allow for at least two segments");
+        this.directory = directory;
+        this.codec = codec;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.min(maximumBytes / segmentSize, Integer.MAX_VALUE);
+        this.executor = executor;
+
+        Files.createDirectories(directory);
+        String type = Files.getFileStore(directory).type();
+        if (NETWORK_FILESYSTEMS.contains(type.toLowerCase())) {
+            throw new IOException("Disk tier directory " + directory + " is on a " + type +
+                    " filesystem, but must be on a local one");
+        }
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stale) {
+                Files.delete(file);
+            }
+        }
+        active = newSegment();
+    }
+
+    /**
+     * Records an item evicted from memory as pending, and writes it to the tier on the executor, unless its ID is
+     * taken or invalidated first.  Cheap enough to call while the cache holds its eviction lock
+     * @param item the item evicted from memory
+     */
+    void spill(T item) {
+        synchronized (this) {
+            pendingSpills.put(item.getID(), item);
+        }
+        try {
+            executor.execute(() -> writeSpill(item));
+        } catch (RuntimeException e) {
+            // executor rejected the write, so the item is simply dropped as it would be without a disk tier
+            synchronized (this) {
+                pendingSpills.remove(item.getID(), item);
+            }
+        }
+    }
+
+    /**
+     * Writes an item to the tier, replacing any previous record for its ID.  Items too large for a segment are
+     * ignored
+     * @param item the item evicted from memory
+     */
+    void put(T item) {
+        write(item, false);
+    }
+
+    /**
+     * Reads and removes the item for the given ID, which is about to be promoted back into memory
+     * @param cachedID the ID missed in memory
+     * @return the item, or an empty Optional if the tier doesn't hold it
+     */
+    Optional<T> take(String cachedID) {
+        Segment segment;
+        long location;
+        synchronized (this) {
+            T pending = pendingSpills.remove(cachedID);
+            if (pending != null) {
+                // newer than any record already written for the ID
+                remove(cachedID);
+                return Optional.of(pending);
+            }
+            Long indexed = index.get(cachedID);
+            if (indexed == null) {
+                return Optional.empty();
+            }
+            location = indexed;
+            segment = segments.get(segmentIDOf(location));
+            remove(cachedID);
+        }
+
+        byte[] value;
+        try {
+            value = read(segment, location);
+        } catch (RuntimeException e) {
+            // the segment was reused while being read, which the check below reports
+            value = null;
+        }
+        synchronized (this) {
+            if (value == null || segment.id != segmentIDOf(location)) {
+                return Optional.empty();
+            }
+        }
+        maybeCompact();
+        return Optional.of(codec.decode(ByteBuffer.wrap(value)));
+    }
+
+    /**
+     * Discards the item for the given ID, if the tier holds it, e.g. because the ID was given a new item
+     * @param cachedID the ID invalidated
+     */
+    void invalidate(String cachedID) {
+        synchronized (this) {
+            pendingSpills.remove(cachedID);
+            remove(cachedID);
+        }
+        maybeCompact();
+    }
+
+    /**
+     * Discards every item
+     */
+    void invalidateAll() {
+        synchronized (this) {
+            pendingSpills.clear();
+            index.clear();
+            for (Segment segment : segments.values()) {
+                segment.records.clear();
+                segment.liveBytes = 0;
+            }
+        }
+        maybeCompact();
+    }
+
+    /**
+     * Returns the number of items held, including those not written yet
+     */
+    synchronized int size() {
+        int size = index.size();
+        for (String cachedID : pendingSpills.keySet()) {
+            if (!index.containsKey(cachedID)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of segment files currently in use
+     */
+    synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Writes a spilled item, unless it has been taken, invalidated or spilled again since
+     */
+    private void writeSpill(T item) {
+        synchronized (this) {
+            if (pendingSpills.get(item.getID()) != item) {
+                return;
+            }
+        }
+        write(item, true);
+    }
+
+    /**
+     * Encodes and appends an item, then points the index at its record
+     * @param spilled whether the item is a pending spill, which is only indexed if it is still pending once written,
+     *                and otherwise is left as a dead record
+     */
+    private void write(T item, boolean spilled) {
+        String cachedID = item.getID();
+        byte[] key = cachedID.getBytes(StandardCharsets.UTF_8);
+        byte[] value = codec.encode(item);
+        int length = HEADER_BYTES + key.length + value.length;
+        if (length > segmentSize) {
+            if (spilled) {
+                synchronized (this) {
+                    pendingSpills.remove(cachedID, item);
+                }
+            }
+            return;
+        }
+
+        appendLock.lock();
+        try {
+            long location;
+            try {
+                location = append(key, value);
+            } catch (IOException e) {
+                // the tier is only an optimization, so lose the item rather than fail the caller's eviction
+                location = -1;
+            }
+            synchronized (this) {
+                if (spilled && !pendingSpills.remove(cachedID, item)) {
+                    return;
+                }
+                remove(cachedID);
+                if (location >= 0) {
+                    index(cachedID, location, length);
+                }
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        maybeCompact();
+    }
+
+    /**
+     * Appends a record to the active segment, sealing it and starting a new one if it is full.  Must be called while
+     * holding the append lock
+     * @return the record's location
+     */
+    private long append(byte[] key, byte[] value) throws IOException {
+        int length = HEADER_BYTES + key.length + value.length;
+        if (active.buffer.remaining() < length) {
+            synchronized (this) {
+                // already sealed if starting its successor failed last time
+                if (!sealed.contains(active)) {
+                    sealed.add(active);
+                }
+                while (segments.size() >= maxSegments && !sealed.isEmpty()) {
+                    drop(sealed.poll());
+                }
+            }
+            active = newSegment();
+        }
+
+        int offset = active.buffer.position();
+        active.buffer.putInt(key.length).putInt(value.length).put(key).put(value);
+        return ((long) active.id << 32) | offset;
+    }
+
+    /**
+     * Copies a record's value out of its segment
+     */
+    private static byte[] read(Segment segment, long location) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position((int) location);
+        int keyLength = buffer.getInt();
+        byte[] value = new byte[buffer.getInt()];
+        buffer.position(buffer.position() + keyLength);
+        buffer.get(value);
+        return value;
+    }
+
+    /**
+     * Points the index at a record.  Must be called while holding the monitor
+     */
+    private void index(String cachedID, long location, int length) {
+        Segment segment = segments.get(segmentIDOf(location));
+        index.put(cachedID, location);
+        segment.records.put(cachedID, length);
+        segment.liveBytes += length;
+    }
+
+    /**
+     * Removes an ID from the index, leaving its record dead.  Must be called while holding the monitor
+     */
+    private void remove(String cachedID) {
+        Long location = index.remove(cachedID);
+        if (location != null) {
+            Segment segment = segments.get(segmentIDOf(location));
+            segment.liveBytes -= segment.records.remove(cachedID);
+        }
+    }
+
+    /**
+     * Schedules a background compaction of the sealed segment with the fewest live bytes, if less than half of it
+     * is live and no compaction is already running
+     */
+    private void maybeCompact() {
+        Segment toCompact;
+        int segmentID;
+        synchronized (this) {
+            if (compacting) {
+                return;
+            }
+            Segment sparsest = null;
+            for (Segment segment : sealed) {
+                if (sparsest == null || segment.liveBytes < sparsest.liveBytes) {
+                    sparsest = segment;
+                }
+            }
+            if (sparsest == null || sparsest.liveBytes > segmentSize / 2) {
+                return;
+            }
+            compacting = true;
+            toCompact = sparsest;
+            segmentID = sparsest.id;
+        }
+
+        try {
+            executor.execute(() -> compact(toCompact, segmentID));
+        } catch (RuntimeException e) {
+            // executor rejected the compaction, so try again after a later write
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    /**
+     * Copies the records the index still points at from a segment to the active segment, then recycles it.  Takes
+     * the append lock for one chunk of the segment at a time, so that other writes wait for a chunk at most
+     */
+    private void compact(Segment segment, int segmentID) {
+        try {
+            int offset = 0;
+            while (compactChunk(segment, segmentID, offset)) {
+                offset += COMPACTION_CHUNK_BYTES;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    /**
+     * Copies the live records starting within the given chunk of a segment, and recycles the segment once they
+     * have all been copied.  The records are read and copied holding only the append lock, and each is re-indexed
+     * under the monitor only if the index still points at its old location
+     * @return whether there are more chunks to copy
+     */
+    private boolean compactChunk(Segment segment, int segmentID, int from) throws IOException {
+        appendLock.lock();
+        try {
+            synchronized (this) {
+                if (segment.id != segmentID || !sealed.contains(segment)) {
+                    // dropped since the compaction started, as the oldest segment, so nothing is left to copy
+                    return false;
+                }
+            }
+
+            // sealed, so nothing writes to it, and only a write can drop it, which the append lock keeps out
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.flip();
+            buffer.position(Math.min(from, buffer.limit()));
+            int to = from + COMPACTION_CHUNK_BYTES;
+            while (buffer.remaining() >= HEADER_BYTES && buffer.position() < to) {
+                int offset = buffer.position();
+                byte[] key = new byte[buffer.getInt()];
+                byte[] value = new byte[buffer.getInt()];
+                buffer.get(key).get(value);
+
+                String cachedID = new String(key, StandardCharsets.UTF_8);
+                long oldLocation = ((long) segmentID << 32) | offset;
+                synchronized (this) {
+                    Long location = index.get(cachedID);
+                    if (location == null || location != oldLocation) {
+                        continue;
+                    }
+                }
+                long newLocation = append(key, value);
+                synchronized (this) {
+                    Long location = index.get(cachedID);
+                    if (location != null && location == oldLocation) {
+                        remove(cachedID);
+                        index(cachedID, newLocation, HEADER_BYTES + key.length + value.length);
+                    }
+                    if (segment.id != segmentID || !sealed.contains(segment)) {
+                        // dropped by that append to make room, taking its remaining records with it
+                        return false;
+                    }
+                }
+            }
+            if (buffer.remaining() >= HEADER_BYTES) {
+                return true;
+            }
+
+            synchronized (this) {
+                if (segment.id == segmentID && sealed.remove(segment)) {
+                    drop(segment);
+                }
+            }
+            return false;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private static int segmentIDOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    /**
+     * Starts a new segment, reusing a dropped one's file if there is one.  Must be called while holding the append
+     * lock, or from the constructor
+     */
+    private Segment newSegment() throws IOException {
+        int id;
+        synchronized (this) {
+            id = nextSegmentID++;
+            Segment recycled = free.poll();
+            if (recycled != null) {
+                recycled.id = id;
+                segments.put(id, recycled);
+                return recycled;
+            }
+        }
+
+        Path file = directory.resolve(SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+        Segment segment;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            segment = new Segment(id, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        }
+        synchronized (this) {
+            segments.put(id, segment);
+        }
+        return segment;
+    }
+
+    /**
+     * Discards a segment and every index entry pointing into it, keeping its file and mapping to be reused.  Must be
+     * called while holding both the append lock and the monitor
+     */
+    private void drop(Segment segment) {
+        for (String cachedID : segment.records.keySet()) {
+            index.remove(cachedID);
+        }
+        segment.records.clear();
+        segments.remove(segment.id);
+        segment.buffer.clear();
+        segment.liveBytes = 0;
+        free.add(segment);
+    }
+
+    private static class Segment {
+        // changes when the segment is reused, so that stale index entries can never point into it
+        int id;
+        final Path file;
+        final MappedByteBuffer buffer;
+        // the length of each record the index points at, by ID, so that dropping the segment visits only its own
+        final Map<String, Integer> records = new HashMap<>();
+        long liveBytes;
+
+        Segment(int id, Path file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.function.Consumer;
 
 class DoublyLinkedList<T extends Cacheable> {
     Node<T> head;
@@ -135,6 +136,55 @@ class DoublyLinkedList<T extends Cacheable> {
         ++size;
     }
 
+    /**
+     * Inserts the provided Node as the new tail of this DoublyLinkedList (i.e., the very last element).
+     * The new tail will have the previous tail as its predecessor.
+     * @param newTail the Node to be inserted as the new tail of this list
+     */
+    public void insertAsTail(Node<T> newTail) {
+        Preconditions.checkArgument(newTail != null, "Node to be newly inserted as " +
+                "the tail of the LinkedList cannot be NULL");
+
+        if (newTail == tail) {
+            // already at the tail of the list, so don't do anything
+            return;
+        }
+
+        Node<T> currentTail = tail;
+        if (currentTail != null) {
+            currentTail.next = newTail;
+        }
+
+        newTail.prev = currentTail;
+        tail = newTail;
+
+        if (head == null) {
+            // no head currently, so set this new node as the head as well
+            head = newTail;
+        }
+        ++size;
+    }
+
+    /**
+     * Passes each Node of this DoublyLinkedList to the given action, in order from head to tail
+     * @param action called for each Node; must not modify the list
+     */
+    void forEachFromHead(Consumer<Node<T>> action) {
+        for (Node<T> node = head; node != null; node = node.next) {
+            action.accept(node);
+        }
+    }
+
+    /**
+     * Checks whether the provided Node is currently part of this DoublyLinkedList, in constant time.  Assumes the
+     * Node is not part of some other list
+     * @param node the Node to check
+     * @return TRUE if the Node is linked into this list, otherwise FALSE
+     */
+    public boolean contains(Node<T> node) {
+        return node == head || node.prev != null;
+    }
+
     /**
      * Returns the current size of this DoublyLinkedList
      * @return the current size of this list as an int
@@ -168,10 +218,30 @@ class DoublyLinkedList<T extends Cacheable> {
     }
 
     static class Node<T extends Cacheable> {
-        private T data;
+        private volatile T data;
         private Node<T> prev;
         private Node<T> next;
 
+        // weight of the data, as calculated by the cache's Weigher when it was stored
+        int weight;
+
+        // state kept by the eviction policy, e.g. which of its lists the Node is in, or CLOCK's reference bit
+        byte region;
+
+        // timestamps, in Ticker nanoseconds, of when the data was stored and last read; only maintained by
+        // caches with time-based expiry or refresh
+        volatile long writeTime;
+        volatile long accessTime;
+
+        // version of the data as of when its load started or it was put, from the cache's InvalidationBus if it has
+        // one, so that a late put, refresh or invalidation can tell whether the data is newer than it
+        long version;
+
+        // position in a TimerWheel, kept separately from prev/next so a Node can be in both structures at once
+        long expirationTime;
+        Node<T> prevInWheel;
+        Node<T> nextInWheel;
+
         public Node(T data) {
             this.data = data;
         }
@@ -180,6 +250,10 @@ class DoublyLinkedList<T extends Cacheable> {
             return this.data;
         }
 
+        void setData(T data) {
+            this.data = data;
+        }
+
         Node<T> getPrev() {
             return prev;
         }
@@ -0,0 +1,152 @@
+import java.util.function.Consumer;
+
+/**
+ * Decides which cached item to evict when an {@link LRUCache} grows beyond its maximum weight.  The cache calls
+ * the hooks below as items are stored, read and removed, and asks for a {@link #victim()} whenever it needs to make
+ * room.  Every hook is called while holding the cache's eviction lock, so implementations need not be thread-safe;
+ * reads are recorded in batches, so {@link #onAccess} may arrive some time after the read itself.
+ * <p>
+ * The built-in policies are created through the factories below and chosen with
+ * {@link LRUCacheBuilder#evictionPolicy(Factory)}; plain LRU is the default.
+ * @param <T> type of elements held by the cached Nodes
+ */
+public interface EvictionPolicy<T extends Cacheable> {
+    /**
+     * Checks whether the Node is currently held by this policy, i.e. it has been inserted and not yet removed
+     * @param node the Node to check
+     * @return TRUE if the Node is held by this policy
+     */
+    boolean contains(DoublyLinkedList.Node<T> node);
+
+    /**
+     * Called when a Node is added to the cache, with its weight already set.  The cache may be over its maximum
+     * weight afterwards, in which case it evicts {@link #victim() victims} until it fits, which may include this Node
+     * @param node the newly cached Node
+     */
+    void onInsert(DoublyLinkedList.Node<T> node);
+
+    /**
+     * Called when a cached Node is read
+     * @param node the Node that was read
+     */
+    void onAccess(DoublyLinkedList.Node<T> node);
+
+    /**
+     * Called when a Node leaves the cache
+     * @param node the Node being removed, which is held by this policy
+     * @param cause why it is leaving: {@link RemovalCause#SIZE} when it is the {@link #victim()} of an eviction,
+     *              which is the only removal that says anything about the policy's choices
+     */
+    void onRemove(DoublyLinkedList.Node<T> node, RemovalCause cause);
+
+    /**
+     * Called when the item of a cached Node is replaced by one of a different weight, with the Node's weight already
+     * updated.  This is not a read, so the Node should stay where it is; policies that keep the weight of their
+     * regions should just adjust it.  The cache may be over its maximum weight afterwards, in which case it evicts
+     * {@link #victim() victims} until it fits.  By default, does nothing
+     * @param node the Node whose weight changed
+     * @param oldWeight the Node's weight before the change
+     */
+    default void onWeightChanged(DoublyLinkedList.Node<T> node, int oldWeight) {
+    }
+
+    /**
+     * Chooses the next Node to evict, without removing it; the cache will then call {@link #onRemove}
+     * @return the Node to evict, or NULL if this policy holds no Nodes
+     */
+    DoublyLinkedList.Node<T> victim();
+
+    /**
+     * Passes every Node held to the given action, starting with the one this policy would evict last and ending
+     * with the next {@link #victim()}, e.g. from most to least recently used for LRU.  Used to write snapshots
+     * @param action called for each Node; must not modify the cache
+     */
+    void forEachHottestFirst(Consumer<DoublyLinkedList.Node<T>> action);
+
+    /**
+     * Called instead of {@link #onInsert} when restoring a snapshot, with Nodes in the order given by
+     * {@link #forEachHottestFirst} when the snapshot was written.  Each restored Node should therefore be placed
+     * as the next to be evicted, so that the policy ends up in the order it was in.  By default, just inserts it
+     * @param node the restored Node, with its weight already set
+     */
+    default void onRestore(DoublyLinkedList.Node<T> node) {
+        onInsert(node);
+    }
+
+    /**
+     * Called when the cache's maximum weight changes, e.g. by {@link LRUCacheBuilder#adaptiveCapacity adaptive
+     * capacity}, before the cache evicts any victims needed to fit within the new maximum.  Policies that size their
+     * regions by the maximum weight should resize them; by default, does nothing
+     * @param maximumWeight the cache's new maximum total weight
+     */
+    default void setMaximumWeight(long maximumWeight) {
+    }
+
+    /**
+     * Creates a new, empty policy for each cache (or each segment of a {@link SegmentedLRUCache})
+     * @param <T> type of elements held by the cached Nodes
+     */
+    interface Factory<T extends Cacheable> {
+        /**
+         * @param maximumWeight the maximum total weight of the cache the policy is for
+         * @return a new policy
+         */
+        EvictionPolicy<T> create(long maximumWeight);
+    }
+
+    /**
+     * Least-recently-used: evicts the item that has gone longest without being read.  The default policy
+     * @param <T> type of elements held by the cached Nodes
+     * @return a factory for {@link LruPolicy}
+     */
+    static <T extends Cacheable> Factory<T> lru() {
+        return maximumWeight -> new LruPolicy<>();
+    }
+
+    /**
+     * First-in-first-out: evicts the item that was stored longest ago, ignoring reads
+     * @param <T> type of elements held by the cached Nodes
+     * @return a factory for {@link FifoPolicy}
+     */
+    static <T extends Cacheable> Factory<T> fifo() {
+        return maximumWeight -> new FifoPolicy<>();
+    }
+
+    /**
+     * CLOCK, an approximation of LRU where a read only sets a reference bit, rather than relinking the item
+     * @param <T> type of elements held by the cached Nodes
+     * @return a factory for {@link ClockPolicy}
+     */
+    static <T extends Cacheable> Factory<T> clock() {
+        return maximumWeight -> new ClockPolicy<>();
+    }
+
+    /**
+     * Segmented LRU: items read more than once are protected from eviction by items only read once
+     * @param <T> type of elements held by the cached Nodes
+     * @return a factory for {@link SlruPolicy}
+     */
+    static <T extends Cacheable> Factory<T> slru() {
+        return SlruPolicy::new;
+    }
+
+    /**
+     * Adaptive Replacement Cache: balances recency against frequency, adapting to the workload by remembering
+     * recently evicted keys
+     * @param <T> type of elements held by the cached Nodes
+     * @return a factory for {@link ArcPolicy}
+     */
+    static <T extends Cacheable> Factory<T> arc() {
+        return ArcPolicy::new;
+    }
+
+    /**
+     * W-TinyLFU: only admits a new item in place of an existing one if it is estimated to be used more often, so
+     * frequently used items stay cached through scans
+     * @param <T> type of elements held by the cached Nodes
+     * @return a factory for {@link WindowTinyLfu}
+     */
+    static <T extends Cacheable> Factory<T> windowTinyLfu() {
+        return WindowTinyLfu::new;
+    }
+}
@@ -0,0 +1,46 @@
+import java.util.function.Consumer;
+
+/**
+ * First-in-first-out eviction: Nodes are kept in the order they were cached and reads are ignored, so the oldest
+ * Node (the tail) is always the next victim
+ *
+ * @param <T> type of elements held by the cached Nodes
+ */
+class FifoPolicy<T extends Cacheable> implements EvictionPolicy<T> {
+    private final DoublyLinkedList<T> queue = new DoublyLinkedList<>();
+
+    @Override
+    public boolean contains(DoublyLinkedList.Node<T> node) {
+        return queue.contains(node);
+    }
+
+    @Override
+    public void onInsert(DoublyLinkedList.Node<T> node) {
+        queue.insertAsHead(node);
+    }
+
+    @Override
+    public void onAccess(DoublyLinkedList.Node<T> node) {
+        // insertion order is all that matters
+    }
+
+    @Override
+    public void onRemove(DoublyLinkedList.Node<T> node, RemovalCause cause) {
+        queue.remove(node);
+    }
+
+    @Override
+    public DoublyLinkedList.Node<T> victim() {
+        return queue.tail;
+    }
+
+    @Override
+    public void forEachHottestFirst(Consumer<DoublyLinkedList.Node<T>> action) {
+        queue.forEachFromHead(action);
+    }
+
+    @Override
+    public void onRestore(DoublyLinkedList.Node<T> node) {
+        queue.insertAsTail(node);
+    }
+}
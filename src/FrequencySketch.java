@@ -0,0 +1,125 @@
+/*
+ * This sketch, including its hash seeds and counter layout, is derived from the Caffeine caching library
+ * (https://github.com/ben-manes/caffeine), Copyright Ben Manes, licensed under the Apache License, Version 2.0:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * the specific language governing permissions and limitations under the License.  Modified for this project.
+ */
+
+/**
+ * Count-min sketch estimating how often each key has been used recently, for {@link WindowTinyLfu}'s admission
+ * decisions.  Each key maps to four 4-bit counters (so estimates saturate at 15), packed sixteen to a long, using
+ * roughly 8 bytes per cached item.  Once the number of increments reaches ten times the table size, every counter
+ * is halved, so the estimates favour recent history and keys that were only popular long ago are forgotten.
+ * <p>
+ * Not thread-safe; must only be used while holding the owning cache's eviction lock.
+ */
+class FrequencySketch {
+    private static final long[] SEED = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private long[] table;
+    private int tableMask;
+    private int sampleSize;
+    private int size;
+
+    /**
+     * Creates a sketch suited to a cache of the given number of items
+     * @param expectedItems the expected number of cached items
+     */
+    FrequencySketch(long expectedItems) {
+        allocate(expectedItems);
+    }
+
+    /**
+     * Grows the sketch, discarding its counts, if it is too small for the given number of items
+     * @param expectedItems the expected number of cached items
+     */
+    void ensureCapacity(long expectedItems) {
+        if (expectedItems > table.length && table.length < (1 << 30)) {
+            allocate(expectedItems);
+        }
+    }
+
+    /**
+     * Returns the estimated number of recent uses of the key, between 0 and 15
+     * @param key the key to look up
+     * @return the estimated frequency
+     */
+    int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records a use of the key, halving all counts if the sample period has ended
+     * @param key the key used
+     */
+    void increment(String key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+
+        if (added && (++size == sampleSize)) {
+            reset();
+        }
+    }
+
+    private void allocate(long expectedItems) {
+        int maximum = (int) Math.min(Math.max(expectedItems, 1), 1 << 30);
+        table = new long[ceilingPowerOfTwo(maximum)];
+        tableMask = table.length - 1;
+        sampleSize = 10 * maximum > 0 ? 10 * maximum : Integer.MAX_VALUE;
+        size = 0;
+    }
+
+    private boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = (0xfL << offset);
+        if ((table[i] & mask) != mask) {
+            table[i] += (1L << offset);
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        int oddCounts = 0;
+        for (int i = 0; i < table.length; i++) {
+            oddCounts += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (oddCounts >>> 2);
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEED[i]) * SEED[i];
+        hash += (hash >>> 32);
+        return ((int) hash) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return 1 << (32 - Integer.numberOfLeadingZeros(Math.max(1, x) - 1));
+    }
+}
@@ -0,0 +1,60 @@
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Transport connecting caches within one process, e.g. to test several "instances" of a service in a single JVM.
+ * Every transport created by {@link #newPeer()}, directly or indirectly, is on the same network as the one it was
+ * created from.  Batches are delivered to every other open peer, on the publishing thread, and are never lost.
+ */
+public class InMemoryInvalidationTransport implements InvalidationTransport {
+    private final List<InMemoryInvalidationTransport> network;
+    private volatile Consumer<InvalidationBatch> receiver;
+
+    /**
+     * Creates a transport on a network of its own
+     */
+    public InMemoryInvalidationTransport() {
+        this(new CopyOnWriteArrayList<>());
+    }
+
+    private InMemoryInvalidationTransport(List<InMemoryInvalidationTransport> network) {
+        this.network = network;
+        network.add(this);
+    }
+
+    /**
+     * Creates another transport on the same network as this one
+     * @return the new transport
+     */
+    public InMemoryInvalidationTransport newPeer() {
+        return new InMemoryInvalidationTransport(network);
+    }
+
+    @Override
+    public void publish(InvalidationBatch batch) {
+        Preconditions.checkArgument(batch != null, "batch cannot be NULL");
+        for (InMemoryInvalidationTransport peer : network) {
+            Consumer<InvalidationBatch> peerReceiver = peer.receiver;
+            if (peer != this && peerReceiver != null) {
+                peerReceiver.accept(batch);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<InvalidationBatch> receiver) {
+        Preconditions.checkArgument(receiver != null, "receiver cannot be NULL");
+        this.receiver = receiver;
+    }
+
+    /**
+     * Leaves the network, after which no more batches are delivered to this transport
+     */
+    @Override
+    public void close() {
+        network.remove(this);
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Intrusive LRU list over a preallocated range of slot indexes, for caches that keep their entries in parallel
+ * arrays instead of per-entry objects ({@link LongLRUCache}, and the benchmarks' {@code ArrayLruMap}).  Each slot's
+ * neighbours are held in int arrays, so relinking touches two small arrays rather than chasing pointers between Node
+ * objects spread across the heap, and costs 8 bytes per slot against the 16 bytes of references (and object header)
+ * of a {@link DoublyLinkedList.Node}.  Slots not in the list are chained together, through the same next array, as a
+ * free list from which new entries are allocated.
+ * <p>
+ * Not thread-safe.
+ */
+class IndexedLruList {
+    static final int NONE = -1;
+
+    private final int[] prev;
+    private final int[] next;
+    private int head = NONE;
+    private int tail = NONE;
+    private int free;
+    private int size;
+
+    /**
+     * Creates an empty list, with every slot from 0 to capacity - 1 free
+     * @param capacity the number of slots
+     */
+    IndexedLruList(int capacity) {
+        prev = new int[capacity];
+        next = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            next[i] = (i + 1 < capacity) ? i + 1 : NONE;
+        }
+        free = (capacity > 0) ? 0 : NONE;
+    }
+
+    /**
+     * Takes a slot off the free list and inserts it as the head
+     * @return the slot, or NONE if every slot is in use
+     */
+    int allocate() {
+        int slot = free;
+        if (slot != NONE) {
+            free = next[slot];
+            insertAsHead(slot);
+            ++size;
+        }
+        return slot;
+    }
+
+    /**
+     * Unlinks a slot from the list and returns it to the free list
+     * @param slot a slot previously returned by {@link #allocate()}
+     */
+    void release(int slot) {
+        unlink(slot);
+        next[slot] = free;
+        free = slot;
+        --size;
+    }
+
+    /**
+     * Moves a slot to the head of the list, i.e. marks it as the most recently used
+     * @param slot a slot in the list
+     */
+    void moveToHead(int slot) {
+        if (slot != head) {
+            unlink(slot);
+            insertAsHead(slot);
+        }
+    }
+
+    /**
+     * Returns the most recently used slot, or NONE if the list is empty
+     */
+    int head() {
+        return head;
+    }
+
+    /**
+     * Returns the least recently used slot, or NONE if the list is empty
+     */
+    int tail() {
+        return tail;
+    }
+
+    /**
+     * Returns the slot after the given one, i.e. the next less recently used, or NONE
+     */
+    int next(int slot) {
+        return next[slot];
+    }
+
+    /**
+     * Returns the number of slots in use
+     */
+    int size() {
+        return size;
+    }
+
+    private void insertAsHead(int slot) {
+        prev[slot] = NONE;
+        next[slot] = head;
+        if (head != NONE) {
+            prev[head] = slot;
+        }
+        head = slot;
+        if (tail == NONE) {
+            tail = slot;
+        }
+    }
+
+    private void unlink(int slot) {
+        int before = prev[slot];
+        int after = next[slot];
+        if (before != NONE) {
+            next[before] = after;
+        } else {
+            head = after;
+        }
+        if (after != NONE) {
+            prev[after] = before;
+        } else {
+            tail = before;
+        }
+    }
+}
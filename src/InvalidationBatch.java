@@ -0,0 +1,127 @@
+import com.google.common.base.Preconditions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A batch of invalidations published by one cache to its peers through an {@link InvalidationTransport}: the IDs
+ * put or invalidated since the previous batch, each with the version of its latest change, and the version of the
+ * latest {@link LRUCache#invalidateAll()}, if any.  A peer discards its copy of an ID only if that copy is older
+ * than the version, so an invalidation that arrives late never discards a newer item.
+ * <p>
+ * Transports that carry bytes can use {@link #toBytes()} and {@link #fromBytes(byte[], int, int)}.
+ */
+public final class InvalidationBatch {
+    private static final int MAGIC = 0x4c525549;
+
+    private final String senderID;
+    private final Map<String, Long> versions;
+    private final long invalidateAllVersion;
+
+    /**
+     * @param senderID unique ID of the cache that published the batch, so that it can ignore its own batches
+     * @param versions the version of each ID's latest change, by ID
+     */
+    public InvalidationBatch(String senderID, Map<String, Long> versions) {
+        this(senderID, versions, 0);
+    }
+
+    /**
+     * @param senderID unique ID of the cache that published the batch, so that it can ignore its own batches
+     * @param versions the version of each ID's latest change, by ID
+     * @param invalidateAllVersion the version at which the sender invalidated every ID, or 0 if it did not
+     */
+    public InvalidationBatch(String senderID, Map<String, Long> versions, long invalidateAllVersion) {
+        Preconditions.checkArgument(senderID != null, "senderID cannot be NULL");
+        Preconditions.checkArgument(versions != null, "versions cannot be NULL");
+        Preconditions.checkArgument(invalidateAllVersion >= 0, "invalidateAllVersion cannot be negative");
+        this.senderID = senderID;
+        this.versions = Collections.unmodifiableMap(new LinkedHashMap<>(versions));
+        this.invalidateAllVersion = invalidateAllVersion;
+    }
+
+    /**
+     * Returns the unique ID of the cache that published the batch
+     * @return the sender's ID
+     */
+    public String getSenderID() {
+        return senderID;
+    }
+
+    /**
+     * Returns the IDs invalidated, each with the version of its latest change
+     * @return the versions, by ID, in the order the IDs were first changed
+     */
+    public Map<String, Long> getVersions() {
+        return versions;
+    }
+
+    /**
+     * Returns the version at which the sender invalidated every ID, upon which peers discard every item older than
+     * it, or 0 if the sender has not done so since the previous batch
+     * @return the version of the latest invalidation of every ID, or 0
+     */
+    public long getInvalidateAllVersion() {
+        return invalidateAllVersion;
+    }
+
+    /**
+     * Encodes the batch, e.g. to send it in a datagram
+     * @return the encoded batch
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeUTF(senderID);
+            out.writeLong(invalidateAllVersion);
+            out.writeInt(versions.size());
+            for (Map.Entry<String, Long> version : versions.entrySet()) {
+                out.writeUTF(version.getKey());
+                out.writeLong(version.getValue());
+            }
+        } catch (IOException e) {
+            throw new AssertionError("writing to a byte array never fails", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a batch encoded by {@link #toBytes()}
+     * @param bytes holds the encoded batch
+     * @param offset where the encoded batch starts
+     * @param length length of the encoded batch
+     * @return the batch
+     * @throws IOException if the bytes are not an encoded batch
+     */
+    public static InvalidationBatch fromBytes(byte[] bytes, int offset, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, offset, length));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not an invalidation batch");
+        }
+        String senderID = in.readUTF();
+        long invalidateAllVersion = in.readLong();
+        int count = in.readInt();
+        if (invalidateAllVersion < 0 || count < 0) {
+            throw new IOException("corrupt invalidation batch, invalidateAllVersion " + invalidateAllVersion +
+                    ", count " + count);
+        }
+        Map<String, Long> versions = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            versions.put(in.readUTF(), in.readLong());
+        }
+        return new InvalidationBatch(senderID, versions, invalidateAllVersion);
+    }
+
+    @Override
+    public String toString() {
+        return "InvalidationBatch{senderID=" + senderID + ", versions=" + versions +
+                ", invalidateAllVersion=" + invalidateAllVersion + "}";
+    }
+}
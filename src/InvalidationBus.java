@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Publishes the IDs put or invalidated in a cache, and its invalidations of every ID, to its peers through an
+ * {@link InvalidationTransport}, and hands the batches its peers publish to the cache, so that each discards its
+ * copies of items changed elsewhere.
+ * <p>
+ * Published IDs are coalesced and sent in batches by a {@link CoalescingBatcher}: an ID changed several times
+ * between batches is sent once, with the version of its latest change.  A batch is sent once it holds the maximum
+ * number of IDs, or once the window has passed since the first ID after the previous batch, whichever comes first.
+ * Batches are sent on the cache's executor, one at a time.  If the transport fails, the batch's IDs are put back
+ * and retried a window later.
+ * <p>
+ * Versions come from a hybrid logical clock: the wall-clock time in milliseconds, shifted left 16 bits, with the
+ * low bits counting changes within a millisecond, and never behind any version received from a peer.  Versions
+ * are therefore comparable across processes whose clocks are synchronized, e.g. by NTP, to well within the time a
+ * load takes.  Each cached item is stamped with the version at which its load started, and is not discarded by an
+ * invalidation with an earlier version.  Recently received invalidations are remembered, so that a load which started
+ * before one of them but finished after it is not cached either.
+ */
+class InvalidationBus {
+    // how many received invalidations are remembered, to stop loads in flight when they arrived from being cached
+    private static final int RECENT_INVALIDATIONS = 4096;
+    // queued in place of an ID to publish an invalidation of every ID; no cached item can have a null ID
+    private static final String ALL_IDS = null;
+
+    private final InvalidationTransport transport;
+    private final String senderID = UUID.randomUUID().toString();
+    private final AtomicLong clock = new AtomicLong();
+    private final CoalescingBatcher<Long, IOException> batcher;
+
+    private final Map<String, Long> recentInvalidations = new LinkedHashMap<String, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > RECENT_INVALIDATIONS;
+        }
+    };
+    // version of the latest invalidation of every ID received, guarded by recentInvalidations
+    private long allInvalidatedVersion;
+
+    /**
+     * Creates a bus and subscribes it to the transport
+     * @param transport carries batches to and from the peers
+     * @param windowNanos maximum time, in nanoseconds, an ID waits before its batch is sent
+     * @param maxBatchSize number of IDs at which a batch is sent without waiting for the rest of its window
+     * @param executor sends the batches
+     * @param scheduler starts the sends that are due to the window
+     * @param receiver applies the batches published by peers to the cache
+     */
+    InvalidationBus(InvalidationTransport transport, long windowNanos, int maxBatchSize, Executor executor,
+                    ScheduledExecutorService scheduler, Consumer<InvalidationBatch> receiver) {
+        this.transport = transport;
+        this.batcher = new CoalescingBatcher<>(this::send, Math::max, maxBatchSize, Integer.MAX_VALUE, windowNanos,
+                executor, scheduler);
+        transport.subscribe(batch -> {
+            if (!batch.getSenderID().equals(senderID)) {
+                received(batch);
+                receiver.accept(batch);
+            }
+        });
+    }
+
+    /**
+     * Returns a version later than any this bus has handed out or received
+     */
+    long nextVersion() {
+        long physical = System.currentTimeMillis() << 16;
+        return clock.updateAndGet(last -> Math.max(physical, last + 1));
+    }
+
+    /**
+     * Queues an ID to be published, keeping the later version if it is already pending
+     * @param cachedID the ID put or invalidated
+     * @param version the version of the change, from {@link #nextVersion()}
+     */
+    void publish(String cachedID, long version) {
+        queue(cachedID, version);
+    }
+
+    /**
+     * Queues an invalidation of every ID to be published, upon which peers discard every item older than it
+     * @param version the version of the invalidation, from {@link #nextVersion()}
+     */
+    void publishInvalidateAll(long version) {
+        queue(ALL_IDS, version);
+    }
+
+    /**
+     * Returns whether an invalidation of the given ID, or of every ID, with the given version or a later one has been
+     * received recently, in which case an item loaded at that version may be stale
+     */
+    boolean invalidatedSince(String cachedID, long version) {
+        synchronized (recentInvalidations) {
+            Long invalidated = recentInvalidations.get(cachedID);
+            return allInvalidatedVersion >= version || (invalidated != null && invalidated >= version);
+        }
+    }
+
+    /**
+     * Sends everything pending on the calling thread, waiting for any background send to finish first
+     * @throws IOException if the transport fails, in which case the failed batch is left pending
+     */
+    void flush() throws IOException {
+        batcher.flush();
+    }
+
+    /**
+     * Returns the number of IDs waiting to be published
+     */
+    int size() {
+        return batcher.size();
+    }
+
+    /**
+     * Returns the number of batches the transport has failed to send
+     */
+    long failedPublishCount() {
+        return batcher.failedBatchCount();
+    }
+
+    private void queue(String cachedID, long version) {
+        try {
+            batcher.add(cachedID, version);
+        } catch (InterruptedException e) {
+            throw new AssertionError("the number of pending IDs is not bounded, so adding one never waits", e);
+        }
+    }
+
+    private void send(Map<String, Long> batch) throws IOException {
+        Map<String, Long> versions = new LinkedHashMap<>(batch);
+        Long invalidateAllVersion = versions.remove(ALL_IDS);
+        transport.publish(new InvalidationBatch(senderID, versions,
+                invalidateAllVersion != null ? invalidateAllVersion : 0));
+    }
+
+    /**
+     * Advances the clock past the versions received from a peer, and remembers them
+     */
+    private void received(InvalidationBatch batch) {
+        long latest = batch.getInvalidateAllVersion();
+        synchronized (recentInvalidations) {
+            allInvalidatedVersion = Math.max(allInvalidatedVersion, batch.getInvalidateAllVersion());
+            for (Map.Entry<String, Long> version : batch.getVersions().entrySet()) {
+                recentInvalidations.merge(version.getKey(), version.getValue(), Math::max);
+                latest = Math.max(latest, version.getValue());
+            }
+        }
+        long received = latest;
+        clock.updateAndGet(last -> Math.max(last, received));
+    }
+}
@@ -0,0 +1,29 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Carries {@link InvalidationBatch invalidation batches} between the caches of several processes, so that an item
+ * put or invalidated in one is discarded by the others (see
+ * {@link LRUCacheBuilder#invalidationBus(InvalidationTransport, long, java.util.concurrent.TimeUnit, int)}).  Each
+ * cache needs a transport of its own.  Delivery may be best-effort, e.g. over UDP, in which case a lost batch
+ * leaves peers serving their copies until they expire.
+ * <p>
+ * {@link InMemoryInvalidationTransport} connects caches within one process, e.g. for tests, and
+ * {@link MulticastInvalidationTransport} connects processes over UDP multicast.
+ */
+public interface InvalidationTransport extends Closeable {
+    /**
+     * Sends a batch to every peer, but not back to this transport's own receiver
+     * @param batch the batch to send
+     * @throws IOException if the batch could not be sent
+     */
+    public void publish(InvalidationBatch batch) throws IOException;
+
+    /**
+     * Sets the receiver of the batches published by peers, which is called on a thread of the transport's choosing.
+     * Called once, by the cache the transport belongs to
+     * @param receiver applies each batch received
+     */
+    public void subscribe(Consumer<InvalidationBatch> receiver);
+}
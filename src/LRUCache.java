@@ -1,20 +1,124 @@
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Simple implementation of an in-memory cache that uses a least-recently-used eviction policy once
- * it has reached its maximum capacity
+ * it has reached its maximum capacity.  Capacity is normally a number of items, but can instead be a total weight
+ * calculated by a {@link Weigher}, e.g. for items whose sizes vary widely.  Other {@link EvictionPolicy eviction
+ * policies}, such as CLOCK, ARC or W-TinyLFU, can be used in place of LRU to suit the workload.
+ * <p>
+ * Cache hits never block: items are looked up in a concurrent map and the access is recorded in a {@link ReadBuffer}
+ * rather than by relinking the LRU list right away.  Recorded accesses are replayed onto the LRU list in batches by
+ * whichever thread next holds the eviction lock, which is always done before an item is evicted.  Under heavy
+ * contention some accesses may be dropped from the buffer, making eviction order approximately, rather than exactly,
+ * least-recently-used.
+ * <p>
+ * Items can also be made to expire a fixed time after they were written or last read, using
+ * {@link LRUCacheBuilder}.  Expired items are never returned, and are reclaimed by a {@link TimerWheel} whenever
+ * the eviction lock is held, at a cost that stays constant however many items are cached.  Items can be
+ * refreshed in the background once they reach a certain age, so that callers are not kept waiting for them.
+ * Items evicted to make room can be kept in a {@link DiskTier disk tier}, which is checked before the data source
+ * on a miss.  The cache's contents can be written to a snapshot file and reloaded after a restart, hottest first, so that a
+ * new process does not start with an empty cache.
+ * <p>
+ * IDs for which the data source has no item can be remembered for a while, in a {@link NegativeCache}, so that
+ * repeated lookups of them do not query it every time.  A Bloom filter of the data source's IDs can also be put in
+ * front of the cache, rejecting most lookups of absent IDs before the cache is even consulted.
+ * <p>
+ * Items can be put into the cache directly, and written to a {@link DataSink} either straight away (write-through)
+ * or later, in coalesced batches (write-behind), and can be invalidated.  A {@link RemovalListener} can be told
+ * about every item removed from the cache, and why, on an executor so that it never delays the cache itself
+ * <p>
+ * The caches of several processes can be connected by an {@link InvalidationBus}, so that items put or invalidated
+ * in one are discarded by the others rather than served stale
  * @param <T> concrete type of elements to be stored in the Cache.  Type must implement Cacheable interface
  *           to ensure they have a unique ID to use as lookup key for the cache (and backing data source)
  */
 public class LRUCache<T extends Cacheable> {
     private Map<String, DoublyLinkedList.Node<T>> cache;
-    private DoublyLinkedList<T> lruList;
+    private final EvictionPolicy<T> evictionPolicy;
+    private ReadBuffer<DoublyLinkedList.Node<T>> readBuffer = new ReadBuffer<>();
+    private ReentrantLock evictionLock = new ReentrantLock();
+    private Map<String, CompletableFuture<Optional<T>>> loadsInFlight = new ConcurrentHashMap<>();
     private DataSource<T> dataSource;
-    private int maxCapacity;
+    private volatile long maximumWeight;
+    private long totalWeight;
+    private Weigher<? super T> weigher;
+    private StatsCounter statsCounter;
+    private Ticker ticker;
+    private long expireAfterWriteNanos;
+    private long expireAfterAccessNanos;
+    private long refreshAfterWriteNanos;
+    private TimerWheel<T> timerWheel;
+    private Executor executor;
+    private Set<String> refreshesInFlight = ConcurrentHashMap.newKeySet();
+    private DiskTier<T> diskTier;
+    private NegativeCache negativeCache;
+    private volatile BloomFilter<CharSequence> bloomFilter;
+    // the builder's data source, whose IDs the Bloom filter is built from, even when lookups go through a batcher
+    private ListableDataSource<T> bloomFilterSource;
+    // the filter being rebuilt, if any, which IDs added meanwhile must go into as well; both guarded by bloomLock
+    private BloomFilter<CharSequence> rebuildingBloomFilter;
+    private final Object bloomLock = new Object();
+    private final Object bloomRebuildLock = new Object();
+    private long bloomFilterExpectedIDs;
+    private double bloomFilterFalsePositiveRate;
+    private DataSink<T> writeThroughSink;
+    private WriteBehindQueue<T> writeBehindQueue;
+    private InvalidationBus invalidationBus;
+    // puts and invalidations of IDs in the same stripe take its lock, so that each ID's sink and cache see them in
+    // the same order
+    private final ReentrantLock[] writeLocks = new ReentrantLock[WRITE_STRIPES];
+    // the version of the latest put or invalidation of any ID in each stripe, which a load that started earlier must
+    // not be cached over
+    private final AtomicLongArray writeVersions = new AtomicLongArray(WRITE_STRIPES);
+    // the version of the latest invalidateAll, guarded by the eviction lock
+    private long invalidatedAllVersion;
+    // hands out versions when there is no invalidation bus to
+    private final AtomicLong localClock = new AtomicLong();
+    private RemovalListener<? super T> removalListener;
+    private Executor removalListenerExecutor;
+    private MissRatioCurveEstimator missRatioCurveEstimator;
+    // lookups sampled for the miss-ratio curve, recorded without a lock and replayed into the estimator by maintenance
+    private ReadBuffer<String> sampleBuffer;
+    private long sampledSinceCapacityReview;
+    private double adaptiveTargetHitRate;
+    private int adaptiveMinCapacity;
+    private int adaptiveMaxCapacity;
 
-    private static final int DEFAULT_MAX_CAPACITY = 1000;
+    static final int DEFAULT_MAX_CAPACITY = 1000;
+    // how many sampled lookups adaptive capacity waits for between reviews of the capacity
+    private static final int CAPACITY_REVIEW_PERIOD = 1000;
+    private static final int SNAPSHOT_BATCH_SIZE = 100;
+    private static final int WRITE_STRIPES = 64;
 
     /**
      * Constructs a new LRUCache with the specified backing data source and capacity
@@ -22,12 +126,22 @@ public class LRUCache<T extends Cacheable> {
      *                   request when a cache miss occurs
      * @param maxCapacity maximum capacity of the cache, which when reached will result in the least-recently-used
      *                    item in the cache being evicted the next time a new item needs to be added
+     * @param recordStats whether to record the statistics reported by {@link #stats()}.  When FALSE, recording
+     *                    costs nothing and {@link #stats()} reports zero for every count
+     */
+    public LRUCache(DataSource<T> dataSource, int maxCapacity, boolean recordStats) {
+        this(new LRUCacheBuilder<>(dataSource).maxCapacity(maxCapacity).recordStats(recordStats));
+    }
+
+    /**
+     * Constructs a new LRUCache with the specified backing data source and capacity, which records statistics
+     * @param dataSource the backing data source to be queried in order to satisfy a {@link #getFromCache(String)}
+     *                   request when a cache miss occurs
+     * @param maxCapacity maximum capacity of the cache, which when reached will result in the least-recently-used
+     *                    item in the cache being evicted the next time a new item needs to be added
      */
     public LRUCache(DataSource<T> dataSource, int maxCapacity) {
-        this.dataSource = dataSource;
-        this.maxCapacity = maxCapacity;
-        cache = new HashMap<>(2*maxCapacity-1);
-        lruList = new DoublyLinkedList<>();
+        this(dataSource, maxCapacity, true);
     }
 
     /**
@@ -39,10 +153,93 @@ public class LRUCache<T extends Cacheable> {
         this(dataSource, DEFAULT_MAX_CAPACITY);
     }
 
+    /**
+     * Constructs a new LRUCache with the options set on the given builder
+     * @param builder the builder holding this cache's configuration
+     */
+    LRUCache(LRUCacheBuilder<T> builder) {
+        this.executor = builder.executor;
+        for (int i = 0; i < WRITE_STRIPES; i++) {
+            writeLocks[i] = new ReentrantLock();
+        }
+        if (builder.batchLoadWindowNanos > 0) {
+            this.dataSource = new BatchingDataSource<>(builder.dataSource, builder.batchLoadWindowNanos,
+                    builder.batchLoadMaxBatchSize, executor, DefaultExecutor.SCHEDULER);
+        } else {
+            this.dataSource = builder.dataSource;
+        }
+        if (builder.weigher == null) {
+            // bounded by number of items, which is the same as every item weighing 1
+            this.weigher = item -> 1;
+            this.maximumWeight = builder.maxCapacity;
+        } else {
+            this.weigher = builder.weigher;
+            this.maximumWeight = builder.maximumWeight;
+        }
+        this.statsCounter = builder.recordStats ? new StatsCounter() : StatsCounter.DISABLED;
+        this.ticker = builder.ticker;
+        this.expireAfterWriteNanos = builder.expireAfterWriteNanos;
+        this.expireAfterAccessNanos = builder.expireAfterAccessNanos;
+        this.refreshAfterWriteNanos = builder.refreshAfterWriteNanos;
+        // a weighted cache's item count is unknown up front, so just size its map for the default capacity
+        int expectedSize = builder.weigher == null ? builder.maxCapacity : DEFAULT_MAX_CAPACITY;
+        cache = new ConcurrentHashMap<>(2*expectedSize-1);
+        evictionPolicy = builder.evictionPolicyFactory.create(maximumWeight);
+
+        if (expires()) {
+            timerWheel = new TimerWheel<>(ticker.read());
+        }
+        if (builder.diskTierDirectory != null) {
+            try {
+                diskTier = new DiskTier<>(builder.diskTierDirectory, builder.diskTierCodec,
+                        builder.diskTierMaximumBytes, builder.diskTierSegmentSize, executor);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (builder.negativeCacheMaxCapacity > 0) {
+            negativeCache = new NegativeCache(builder.negativeCacheMaxCapacity, builder.negativeCacheTtlNanos, ticker);
+        }
+        if (builder.bloomFilterExpectedIDs > 0) {
+            bloomFilterSource = (ListableDataSource<T>) builder.dataSource;
+            bloomFilterExpectedIDs = builder.bloomFilterExpectedIDs;
+            bloomFilterFalsePositiveRate = builder.bloomFilterFalsePositiveRate;
+            rebuildBloomFilter();
+        }
+        writeThroughSink = builder.writeThroughSink;
+        removalListener = builder.removalListener;
+        removalListenerExecutor = builder.removalListenerExecutor != null ? builder.removalListenerExecutor : executor;
+        if (builder.adaptiveMaxCapacity > 0) {
+            adaptiveTargetHitRate = builder.adaptiveTargetHitRate;
+            adaptiveMinCapacity = builder.adaptiveMinCapacity;
+            adaptiveMaxCapacity = builder.adaptiveMaxCapacity;
+            missRatioCurveEstimator = new MissRatioCurveEstimator(
+                    Math.max(adaptiveMaxCapacity, builder.missRatioCurveMaxCapacity));
+        } else if (builder.missRatioCurveMaxCapacity > 0) {
+            missRatioCurveEstimator = new MissRatioCurveEstimator(builder.missRatioCurveMaxCapacity);
+        }
+        if (missRatioCurveEstimator != null) {
+            sampleBuffer = new ReadBuffer<>();
+        }
+        if (builder.writeBehindSink != null) {
+            writeBehindQueue = new WriteBehindQueue<>(builder.writeBehindSink, builder.writeBehindBatchSize,
+                    builder.writeBehindMaxPendingWrites, builder.writeBehindFlushIntervalNanos, executor,
+                    DefaultExecutor.SCHEDULER, this::written);
+        }
+        if (builder.invalidationTransport != null) {
+            // last, since peers' invalidations may be applied as soon as it subscribes
+            invalidationBus = new InvalidationBus(builder.invalidationTransport, builder.invalidationWindowNanos,
+                    builder.invalidationMaxBatchSize, executor, DefaultExecutor.SCHEDULER,
+                    this::applyPeerInvalidations);
+        }
+    }
+
     /**
      * Retrieves the item mapped to by the specified cacheID from the cache and returns it. If the item is not
      * currently in the cache then an attempt is made to retrieve it from the backing data source specified in
-     * the constructor
+     * the constructor.  Cache hits do not take any lock.  The backing data source is queried without holding
+     * the cache's lock, so other callers continue to be served while the retrieval is in progress.  Concurrent misses on the same ID
+     * result in a single query, whose result (or exception) is shared by all of the callers
      *
      * @param cachedID unique ID of the item to be retrieved from the cache or, if not in the cache,
      *                 the underlying data source
@@ -51,44 +248,1361 @@ public class LRUCache<T extends Cacheable> {
      * @throws DataSourceRetrievalException if the desired item is not currently in the cache and
      * an unrecoverable error occurs while trying to retrieve it from the backing data source
      */
-    public synchronized Optional<T> getFromCache(String cachedID) throws DataSourceRetrievalException {
-        DoublyLinkedList.Node<T> result = cache.get(cachedID);
+    public Optional<T> getFromCache(String cachedID) throws DataSourceRetrievalException {
+        if (ruledOutByBloomFilter(cachedID)) {
+            return Optional.empty();
+        }
+        sampleLookup(cachedID);
+        Optional<T> cached = getIfCached(cachedID);
+        if (cached.isPresent()) {
+            statsCounter.recordHit();
+            return cached;
+        }
+        statsCounter.recordMiss();
+        if (negativelyCached(cachedID)) {
+            return Optional.empty();
+        }
 
-        if (result != null) {
-            // Got a cache hit, so we need to remove the Node from its current location
-            // in the LinkedList so that it can be placed at the head
+        // cache miss, so retrieve from source DB without holding the eviction lock.  A slow query
+        // must not stall callers whose items are already cached.  Only the first thread to miss on
+        // a given ID queries the data source; any others missing on it meanwhile wait for that result
+        CompletableFuture<Optional<T>> newLoad = new CompletableFuture<>();
+        CompletableFuture<Optional<T>> inFlight = loadsInFlight.putIfAbsent(cachedID, newLoad);
 
-            if (lruList.head != result) {
-                //if result is already at the head of the LinkedList, no modifications would be needed
-                lruList.remove(result);
+        if (inFlight == null) {
+            inFlight = newLoad;
+            try {
+                newLoad.complete(load(cachedID));
+            } catch (Throwable t) {
+                newLoad.completeExceptionally(t);
+            } finally {
+                loadsInFlight.remove(cachedID, newLoad);
             }
-        } else {
-            // cache miss, so retrieve from source DB and store in the cache
+        }
+
+        return awaitLoad(cachedID, inFlight);
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #getFromCache(String)}, used by {@link AsyncLRUCache}.  A hit returns an
+     * already completed future.  A miss queries the backing data source on the given executor, sharing the
+     * in-flight load with any other caller, synchronous or asynchronous, that misses on the same ID meanwhile
+     *
+     * @param cachedID unique ID of the item to be retrieved from the cache or, if not in the cache,
+     *                 the underlying data source
+     * @param executor runs the data source query on a miss
+     * @return a future completed with the retrieved item (or an empty Optional if there is none), or completed
+     * exceptionally with the {@link DataSourceRetrievalException} the data source failed with
+     */
+    CompletableFuture<Optional<T>> getFromCacheAsync(String cachedID, Executor executor) {
+        if (ruledOutByBloomFilter(cachedID)) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        sampleLookup(cachedID);
+        Optional<T> cached = getIfCached(cachedID);
+        if (cached.isPresent()) {
+            statsCounter.recordHit();
+            return CompletableFuture.completedFuture(cached);
+        }
+        statsCounter.recordMiss();
+        if (negativelyCached(cachedID)) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        CompletableFuture<Optional<T>> newLoad = new CompletableFuture<>();
+        CompletableFuture<Optional<T>> inFlight = loadsInFlight.putIfAbsent(cachedID, newLoad);
+
+        if (inFlight == null) {
+            inFlight = newLoad;
+            try {
+                executor.execute(() -> {
+                    try {
+                        newLoad.complete(load(cachedID));
+                    } catch (Throwable t) {
+                        newLoad.completeExceptionally(t);
+                    } finally {
+                        loadsInFlight.remove(cachedID, newLoad);
+                    }
+                });
+            } catch (RuntimeException e) {
+                // executor rejected the load, so nobody else will complete it
+                newLoad.completeExceptionally(e);
+                loadsInFlight.remove(cachedID, newLoad);
+            }
+        }
+
+        // hand out a dependent future, so a caller completing or cancelling theirs cannot affect anyone else's
+        return inFlight.thenApply(result -> result);
+    }
+
+    /**
+     * Retrieves the items mapped to by each of the specified IDs.  Items already in the cache are returned
+     * straight away; all of the others are retrieved from the backing data source together, through a single
+     * call to {@link DataSource#getAllFromDataSource(Set)}.  IDs that another caller is already
+     * retrieving are not queried again, and their results are shared instead
+     *
+     * @param cachedIDs unique IDs of the items to be retrieved from the cache or, if not in the cache,
+     *                  the underlying data source.  Duplicates are ignored
+     * @return a Map from ID to item, in the order the IDs were given, containing only those IDs for which an
+     * item was either cached or found in the backing data source
+     * @throws DataSourceRetrievalException if any of the desired items are not currently in the cache and
+     * an unrecoverable error occurs while trying to retrieve them from the backing data source
+     */
+    public Map<String, T> getAllFromCache(Collection<String> cachedIDs) throws DataSourceRetrievalException {
+        Map<String, T> found = new HashMap<>();
+        Map<String, CompletableFuture<Optional<T>>> ownLoads = new LinkedHashMap<>();
+        Map<String, CompletableFuture<Optional<T>>> otherLoads = new HashMap<>();
+        Set<String> knownAbsent = new HashSet<>();
+
+        for (String cachedID : cachedIDs) {
+            if (found.containsKey(cachedID) || ownLoads.containsKey(cachedID) || otherLoads.containsKey(cachedID)
+                    || knownAbsent.contains(cachedID)) {
+                continue;
+            }
+
+            if (ruledOutByBloomFilter(cachedID)) {
+                knownAbsent.add(cachedID);
+                continue;
+            }
+            sampleLookup(cachedID);
+            Optional<T> cached = getIfCached(cachedID);
+            if (cached.isPresent()) {
+                statsCounter.recordHit();
+                found.put(cachedID, cached.get());
+                continue;
+            }
+            statsCounter.recordMiss();
+            if (negativelyCached(cachedID)) {
+                knownAbsent.add(cachedID);
+                continue;
+            }
+
+            CompletableFuture<Optional<T>> newLoad = new CompletableFuture<>();
+            CompletableFuture<Optional<T>> inFlight = loadsInFlight.putIfAbsent(cachedID, newLoad);
+            if (inFlight == null) {
+                ownLoads.put(cachedID, newLoad);
+            } else {
+                otherLoads.put(cachedID, inFlight);
+            }
+        }
+
+        if (!ownLoads.isEmpty()) {
+            try {
+                Map<String, T> loaded = loadAll(ownLoads.keySet());
+                ownLoads.forEach((cachedID, load) -> load.complete(Optional.ofNullable(loaded.get(cachedID))));
+            } catch (Throwable t) {
+                ownLoads.values().forEach(load -> load.completeExceptionally(t));
+            } finally {
+                ownLoads.forEach(loadsInFlight::remove);
+            }
+        }
+
+        otherLoads.putAll(ownLoads);
+        for (Map.Entry<String, CompletableFuture<Optional<T>>> load : otherLoads.entrySet()) {
+            awaitLoad(load.getKey(), load.getValue()).ifPresent(item -> found.put(load.getKey(), item));
+        }
+
+        Map<String, T> result = new LinkedHashMap<>();
+        for (String cachedID : cachedIDs) {
+            T item = found.get(cachedID);
+            if (item != null) {
+                result.put(cachedID, item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores an item in the cache, replacing any item cached for its ID, as the most recently used.  If the cache was
+     * built with {@link LRUCacheBuilder#writeThrough(DataSink) write-through}, the item is first written to the
+     * sink, and if that fails the cache is left unchanged.  If it was built with
+     * {@link LRUCacheBuilder#writeBehind(DataSink, int, int, long, java.util.concurrent.TimeUnit) write-behind}, the
+     * item is queued to be written later, which blocks while the queue is full.  Otherwise the item is only cached
+     *
+     * @param item the item to be cached
+     * @throws DataSinkWriteException if the item could not be written through to the sink, or the caller was
+     * interrupted while waiting for room in the write-behind queue
+     */
+    public void put(T item) throws DataSinkWriteException {
+        Preconditions.checkArgument(item != null, "item cannot be NULL");
+        String cachedID = item.getID();
+        int stripe = writeStripe(cachedID);
+        long version;
+        writeLocks[stripe].lock();
+        try {
+            if (writeThroughSink != null) {
+                writeThroughSink.write(item);
+            } else if (writeBehindQueue != null) {
+                try {
+                    writeBehindQueue.enqueue(item);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new DataSinkWriteException("Interrupted while waiting to queue ID " + cachedID +
+                            " to be written", e);
+                }
+            }
+            // only once the sink, or the write-behind queue, has the item, so that a load which may have missed it
+            // started before this version and is not cached over it
+            version = recordWrite(stripe);
+            addToBloomFilter(cachedID);
+
+            evictionLock.lock();
+            try {
+                long now = maintenance();
+                if (negativeCache != null) {
+                    negativeCache.remove(cachedID);
+                }
+                // under the eviction lock, so that no spill of the old item can follow it
+                if (diskTier != null) {
+                    diskTier.invalidate(cachedID);
+                }
+                DoublyLinkedList.Node<T> node = cache.get(cachedID);
+                if (node == null) {
+                    publishLocked(cachedID, item, now, version);
+                    if (!cache.containsKey(cachedID) && weigh(item) > maximumWeight) {
+                        // never cached, being heavier than the whole cache, so evicted as soon as it was put
+                        notifyRemoval(item, RemovalCause.SIZE);
+                        statsCounter.recordEviction();
+                    }
+                } else {
+                    if (expireAfterAccessNanos > 0) {
+                        node.accessTime = now;
+                    }
+                    evictionPolicy.onAccess(node);
+                    replaceLocked(node, item, now, version);
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        } finally {
+            writeLocks[stripe].unlock();
+        }
+        if (invalidationBus != null) {
+            invalidationBus.publish(cachedID, version);
+        }
+    }
+
+    /**
+     * Discards the item cached for the given ID, if any, so that the next lookup retrieves it from the data source
+     * again.  Does not affect the data source, nor any write of the ID still waiting in the write-behind queue
+     * @param cachedID unique ID of the item to be discarded
+     */
+    public void invalidate(String cachedID) {
+        int stripe = writeStripe(cachedID);
+        long version;
+        writeLocks[stripe].lock();
+        try {
+            // before the item is removed, so that a load still in flight, which may have read the old item, is not
+            // cached once it completes
+            version = recordWrite(stripe);
+            evictionLock.lock();
+            try {
+                maintenance();
+                DoublyLinkedList.Node<T> node = cache.get(cachedID);
+                if (node != null) {
+                    remove(node, RemovalCause.EXPLICIT);
+                }
+                if (diskTier != null) {
+                    diskTier.invalidate(cachedID);
+                }
+                if (negativeCache != null) {
+                    negativeCache.remove(cachedID);
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        } finally {
+            writeLocks[stripe].unlock();
+        }
+        if (invalidationBus != null) {
+            invalidationBus.publish(cachedID, version);
+        }
+    }
+
+    /**
+     * Discards every cached item, including those in the disk tier, and forgets every ID remembered as absent.  Like
+     * {@link #invalidate(String)}, does not affect the data source or the write-behind queue.  If the cache is on an
+     * {@link LRUCacheBuilder#invalidationBus(InvalidationTransport, long, java.util.concurrent.TimeUnit, int)
+     * invalidation bus}, its peers discard every item older than this call too
+     */
+    public void invalidateAll() {
+        long version = newVersion();
+        evictionLock.lock();
+        try {
+            invalidatedAllVersion = Math.max(invalidatedAllVersion, version);
+            maintenance();
+            for (DoublyLinkedList.Node<T> node : new ArrayList<>(cache.values())) {
+                remove(node, RemovalCause.EXPLICIT);
+            }
+            if (diskTier != null) {
+                diskTier.invalidateAll();
+            }
+            if (negativeCache != null) {
+                negativeCache.clear();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        if (invalidationBus != null) {
+            invalidationBus.publishInvalidateAll(version);
+        }
+    }
+
+    /**
+     * Writes every item waiting in the write-behind queue to the sink, on the calling thread, e.g. before shutting
+     * down.  Does nothing unless the cache was built with write-behind
+     * @throws DataSinkWriteException if the sink fails, in which case the items not yet written stay queued
+     */
+    public void flushWrites() throws DataSinkWriteException {
+        if (writeBehindQueue != null) {
+            writeBehindQueue.flush();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the statistics recorded by this cache since it was constructed.  Counters are read
+     * without stopping other callers, so the snapshot may be slightly inconsistent while lookups are in progress
+     * @return the cache's statistics, or all zeros if it was constructed with statistics disabled
+     */
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    /**
+     * Publishes every ID waiting to be sent to the cache's peers, on the calling thread, e.g. before shutting down.
+     * Does nothing unless the cache was built with an
+     * {@link LRUCacheBuilder#invalidationBus(InvalidationTransport, long, java.util.concurrent.TimeUnit, int)
+     * invalidation bus}
+     * @throws IOException if the transport fails, in which case the failed batch is left waiting to be sent
+     */
+    public void flushInvalidations() throws IOException {
+        if (invalidationBus != null) {
+            invalidationBus.flush();
+        }
+    }
+
+    /**
+     * Returns the cache's estimate of its hit ratio at other capacities, made from the lookups sampled so far
+     * @return the estimated miss-ratio curve
+     * @throws IllegalStateException if the cache was built without {@link LRUCacheBuilder#missRatioCurve(long)} or
+     * {@link LRUCacheBuilder#adaptiveCapacity(double, int, int)}
+     */
+    public MissRatioCurve missRatioCurve() {
+        Preconditions.checkState(missRatioCurveEstimator != null, "cache was not built to estimate its miss-ratio curve");
+        evictionLock.lock();
+        try {
+            maintenance();
+            return missRatioCurveEstimator.snapshot();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the cache's current maximum capacity or, if it is bounded by weight, its maximum total weight.  Only
+     * changes if the cache was built with {@link LRUCacheBuilder#adaptiveCapacity(double, int, int)}
+     * @return the maximum capacity or weight
+     */
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * Rebuilds the Bloom filter enabled by {@link LRUCacheBuilder#bloomFilter(long, double)} from the IDs currently
+     * in the data source, e.g. after items have been added to it, on the cache's executor.  The current filter
+     * stays in use until the new one is complete.  The new filter also holds the IDs of the cached items and of
+     * items waiting to be written behind, which may not have reached the data source yet, and any ID put into the
+     * cache or by a peer while it is being built.  If the data source fails to list its IDs, the current filter
+     * is kept, or if there is none yet, lookups keep passing through unfiltered
+     * @return a future completed once the new filter is in use, or completed exceptionally with the exception the
+     * data source failed with
+     * @throws IllegalStateException if the cache was not built with a Bloom filter
+     */
+    public CompletableFuture<Void> rebuildBloomFilter() {
+        Preconditions.checkState(bloomFilterExpectedIDs > 0, "cache was not built with a Bloom filter");
+        return CompletableFuture.runAsync(() -> {
+            try {
+                buildBloomFilter();
+            } catch (DataSourceRetrievalException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
 
-            Optional<T> fromDataSource = dataSource.getFromDataSource(cachedID);
+    private void buildBloomFilter() throws DataSourceRetrievalException {
+        // one rebuild at a time, so that each sees every ID added while it runs
+        synchronized (bloomRebuildLock) {
+            BloomFilter<CharSequence> rebuilt = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8),
+                    bloomFilterExpectedIDs, bloomFilterFalsePositiveRate);
+            synchronized (bloomLock) {
+                rebuildingBloomFilter = rebuilt;
+            }
+            try {
+                // a written-behind item leaves the queue only once written, so listing the data source last leaves
+                // no gap in which an item put before this rebuild is in neither
+                if (writeBehindQueue != null) {
+                    writeBehindQueue.forEachPendingID(rebuilt::put);
+                }
+                cache.keySet().forEach(rebuilt::put);
+                bloomFilterSource.forEachID(rebuilt::put);
+            } catch (DataSourceRetrievalException | RuntimeException e) {
+                synchronized (bloomLock) {
+                    rebuildingBloomFilter = null;
+                }
+                throw e;
+            }
+            synchronized (bloomLock) {
+                bloomFilter = rebuilt;
+                rebuildingBloomFilter = null;
+            }
+        }
+    }
 
-            if (!fromDataSource.isPresent()) {
+    /**
+     * Adds an ID that the data source may now hold an item for to the Bloom filter, and to any being rebuilt
+     */
+    private void addToBloomFilter(String cachedID) {
+        if (bloomFilterExpectedIDs == 0) {
+            return;
+        }
+        synchronized (bloomLock) {
+            if (bloomFilter != null) {
+                bloomFilter.put(cachedID);
+            }
+            if (rebuildingBloomFilter != null) {
+                rebuildingBloomFilter.put(cachedID);
+            }
+        }
+    }
+
+    /**
+     * Writes the IDs of the cached items to a snapshot file, hottest first (for LRU, most recently used first), so
+     * that a restarted process can warm its cache up with {@link #loadSnapshot(Path)} or
+     * {@link #prefetchSnapshot(Path, int, int)}.  Lookups continue while the snapshot is taken, apart from a pause
+     * while the IDs are copied.  The file is replaced atomically, so it can be written periodically
+     *
+     * @param file local file to write the snapshot to, replacing any existing one
+     * @throws IOException if the file cannot be written
+     */
+    public void writeSnapshot(Path file) throws IOException {
+        writeSnapshot(file, null);
+    }
+
+    /**
+     * Writes the cached items to a snapshot file, hottest first, serialized by the given codec.  A snapshot with
+     * values can be loaded by {@link #loadSnapshot(Path, ValueCodec)} without querying the data source at all.
+     * Items are serialized after the eviction lock has been released
+     *
+     * @param file local file to write the snapshot to, replacing any existing one
+     * @param codec serializes each cached item
+     * @throws IOException if the file cannot be written
+     */
+    public void writeSnapshot(Path file, ValueCodec<T> codec) throws IOException {
+        List<T> items = new ArrayList<>();
+        evictionLock.lock();
+        try {
+            long now = maintenance();
+            evictionPolicy.forEachHottestFirst(node -> {
+                if (!(expires() && hasExpired(node, now))) {
+                    items.add(node.getData());
+                }
+            });
+        } finally {
+            evictionLock.unlock();
+        }
+
+        List<String> ids = new ArrayList<>(items.size());
+        List<byte[]> values = (codec != null) ? new ArrayList<>(items.size()) : null;
+        for (T item : items) {
+            ids.add(item.getID());
+            if (codec != null) {
+                values.add(codec.encode(item));
+            }
+        }
+        new CacheSnapshot(ids, values).write(file);
+    }
+
+    /**
+     * Eagerly warms the cache up from a snapshot written by {@link #writeSnapshot(Path)}, retrieving its items
+     * from the data source in batches of 100 before returning.  Items are restored hottest first, behind any items
+     * already cached, until the snapshot is exhausted or the cache is full, and end up in the same order they
+     * were in when the snapshot was written.  Restored items count as freshly retrieved from the data source
+     *
+     * @param file the snapshot file
+     * @return the number of items restored
+     * @throws IOException if the file cannot be read
+     * @throws DataSourceRetrievalException if an unrecoverable error occurs while querying the data source
+     */
+    public int loadSnapshot(Path file) throws IOException, DataSourceRetrievalException {
+        return loadSnapshot(file, null);
+    }
+
+    /**
+     * Eagerly warms the cache up from a snapshot, like {@link #loadSnapshot(Path)}, except that if the snapshot
+     * holds values (see {@link #writeSnapshot(Path, ValueCodec)}) they are deserialized by the given codec rather
+     * than retrieved from the data source
+     *
+     * @param file the snapshot file
+     * @param codec deserializes the items held by the snapshot
+     * @return the number of items restored
+     * @throws IOException if the file cannot be read
+     * @throws DataSourceRetrievalException if the snapshot only holds IDs, and an unrecoverable error occurs while
+     * querying the data source
+     */
+    public int loadSnapshot(Path file, ValueCodec<T> codec) throws IOException, DataSourceRetrievalException {
+        CacheSnapshot snapshot = CacheSnapshot.read(file);
+        AtomicInteger restored = new AtomicInteger();
+
+        if (snapshot.values != null && codec != null) {
+            Map<String, T> items = new HashMap<>();
+            for (byte[] value : snapshot.values) {
+                T item = codec.decode(ByteBuffer.wrap(value));
+                items.put(item.getID(), item);
+            }
+            restore(snapshot.ids, items, restored);
+            return restored.get();
+        }
+
+        for (List<String> batch : Lists.partition(snapshot.ids, SNAPSHOT_BATCH_SIZE)) {
+            if (!restore(batch, querySnapshotBatch(batch), restored)) {
+                break;
+            }
+        }
+        return restored.get();
+    }
+
+    /**
+     * Lazily warms the cache up from a snapshot, in the background: the snapshot's IDs are split into batches,
+     * which are retrieved from the data source on the {@link LRUCacheBuilder#executor(Executor) executor}, with
+     * up to the given number of batches in flight at a time.  Batches are started hottest first, and restored in
+     * order as they arrive, so the hottest items are available soonest and items end up in the order they were in
+     * when the snapshot was written.  Lookups are served as usual meanwhile; an item looked up before its batch
+     * arrives is simply retrieved from the data source then.  A batch the data source fails to retrieve is skipped
+     *
+     * @param file the snapshot file
+     * @param batchSize the maximum number of IDs to retrieve per query of the data source
+     * @param parallelism the maximum number of queries of the data source to have in flight at a time
+     * @return a future completed with the number of items restored, once every batch has been dealt with
+     * @throws IOException if the file cannot be read
+     */
+    public CompletableFuture<Integer> prefetchSnapshot(Path file, int batchSize, int parallelism) throws IOException {
+        Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+        CacheSnapshot snapshot = CacheSnapshot.read(file);
+        AtomicInteger restored = new AtomicInteger();
+        AtomicBoolean full = new AtomicBoolean();
+
+        List<CompletableFuture<Map<String, T>>> queries = new ArrayList<>();
+        CompletableFuture<Void> restoredInOrder = CompletableFuture.completedFuture(null);
+        for (List<String> batch : Lists.partition(snapshot.ids, batchSize)) {
+            // each query waits for a slot, i.e. for the query started parallelism batches earlier to finish
+            int i = queries.size();
+            CompletableFuture<?> slot = (i < parallelism)
+                    ? CompletableFuture.completedFuture(null)
+                    : queries.get(i - parallelism);
+            CompletableFuture<Map<String, T>> query = slot.handle((result, failure) -> null).thenApplyAsync(ignored -> {
+                if (full.get()) {
+                    return Collections.<String, T>emptyMap();
+                }
+                try {
+                    return querySnapshotBatch(batch);
+                } catch (DataSourceRetrievalException | RuntimeException e) {
+                    return Collections.<String, T>emptyMap();
+                }
+            }, executor);
+            queries.add(query);
+
+            restoredInOrder = restoredInOrder.thenCombine(query, (ignored, items) -> {
+                if (!full.get() && !restore(batch, items, restored)) {
+                    full.set(true);
+                }
+                return null;
+            });
+        }
+        return restoredInOrder.thenApply(ignored -> restored.get());
+    }
+
+    /**
+     * Returns the number of items currently cached, including any that have expired but not yet been reclaimed
+     */
+    int size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the total weight of the items currently cached, which is their number unless a {@link Weigher} is used
+     */
+    long weightedSize() {
+        evictionLock.lock();
+        try {
+            return totalWeight;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the item cached for the given ID, if any, recording the access so that it will be moved to the head
+     * of the LRU list.  Expired items are treated as absent
+     */
+    private Optional<T> getIfCached(String cachedID) {
+        DoublyLinkedList.Node<T> result = cache.get(cachedID);
+
+        if (result == null) {
+            return Optional.empty();
+        }
+
+        if (tracksTime()) {
+            long now = ticker.read();
+            if (hasExpired(result, now)) {
+                // left in place for the load that replaces it, or the timer wheel, to reclaim
                 return Optional.empty();
             }
+            if (expireAfterAccessNanos > 0) {
+                result.accessTime = now;
+            }
+            if (refreshAfterWriteNanos > 0 && now - result.writeTime >= refreshAfterWriteNanos) {
+                refresh(cachedID, result);
+            }
+        }
 
-            T missingData = fromDataSource.get();
+        // Got a cache hit, so record it rather than relinking the list under a lock.  If this thread's
+        // buffer is full, help out by replaying the buffered accesses, unless another thread already is
+        if (readBuffer.offer(result) == ReadBuffer.FULL && evictionLock.tryLock()) {
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        return Optional.of(result.getData());
+    }
 
-            result = new DoublyLinkedList.Node<>(missingData);
+    /**
+     * Retrieves the item for the given ID from the data source and publishes it to the cache.  Runs as the
+     * single in-flight load for that ID
+     */
+    private Optional<T> load(String cachedID) throws DataSourceRetrievalException {
+        long version = newVersion();
+        // a previous load for this ID may have been published between our cache miss and registering this load
+        Optional<T> cached = getIfCached(cachedID);
+        if (cached.isPresent()) {
+            return cached;
+        }
 
-            if (cache.size() == maxCapacity) {
-                //evict LRU item, which is simply the tail of our list
-                T oldTail = lruList.removeTail();
-                cache.remove(oldTail.getID());
+        Optional<T> spilled = takeFromDiskTier(cachedID);
+        if (!spilled.isPresent()) {
+            spilled = pendingWrite(cachedID);
+        }
+        if (spilled.isPresent()) {
+            return Optional.of(publish(cachedID, spilled.get(), version));
+        }
+
+        Optional<T> fromDataSource = queryDataSource(cachedID);
+
+        if (!fromDataSource.isPresent()) {
+            rememberAbsent(cachedID, version);
+            return Optional.empty();
+        }
+
+        return Optional.of(publish(cachedID, fromDataSource.get(), version));
+    }
+
+    /**
+     * Queries the data source for a single ID, recording the load's outcome and duration
+     */
+    private Optional<T> queryDataSource(String cachedID) throws DataSourceRetrievalException {
+        long loadStart = statsCounter.loadStartTime();
+        Optional<T> fromDataSource;
+        try {
+            fromDataSource = dataSource.getFromDataSource(cachedID);
+        } catch (DataSourceRetrievalException | RuntimeException e) {
+            statsCounter.recordLoadFailureSince(loadStart);
+            throw e;
+        }
+        statsCounter.recordLoadSuccessSince(loadStart);
+        return fromDataSource;
+    }
+
+    /**
+     * Starts a background query of the data source for the given ID, unless one is already in flight, whose
+     * result will replace the item held by the given Node
+     */
+    private void refresh(String cachedID, DoublyLinkedList.Node<T> node) {
+        if (!refreshesInFlight.add(cachedID)) {
+            return;
+        }
+
+        T current = node.getData();
+        long version = newVersion();
+        try {
+            executor.execute(() -> {
+                try {
+                    replace(cachedID, node, current, queryDataSource(cachedID), version);
+                } catch (DataSourceRetrievalException | RuntimeException e) {
+                    // keep serving the current item; the next lookup past the refresh threshold tries again
+                } finally {
+                    refreshesInFlight.remove(cachedID);
+                }
+            });
+        } catch (RuntimeException e) {
+            // executor rejected the refresh, so allow a later lookup to try again
+            refreshesInFlight.remove(cachedID);
+        }
+    }
+
+    /**
+     * Replaces the item held by the given Node with a refreshed one, in place, so the Node keeps its position in
+     * the LRU list.  If the data source no longer has an item for the ID then the Node is removed.  Does nothing
+     * if the Node has been evicted, or its item replaced, since the refresh started
+     */
+    private void replace(String cachedID, DoublyLinkedList.Node<T> node, T current, Optional<T> refreshed,
+                         long version) {
+        evictionLock.lock();
+        try {
+            long now = maintenance();
+            if (cache.get(cachedID) != node || node.getData() != current) {
+                return;
             }
 
+            if (!refreshed.isPresent()) {
+                remove(node, RemovalCause.EXPLICIT);
+                rememberAbsent(cachedID, version);
+                return;
+            }
+            replaceLocked(node, refreshed.get(), now, version);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the item held by a cached Node, in place, so the Node keeps its position in the LRU list, then evicts
+     * the Node if the new item is too heavy to cache.  Does nothing if the cached item is newer than the given
+     * version.  Must be called while holding the eviction lock
+     */
+    private void replaceLocked(DoublyLinkedList.Node<T> node, T item, long now, long version) {
+        if (version < node.version) {
+            // the cached item was loaded after this one was written, so is at least as new
+            return;
+        }
+        int weight = weigh(item);
+        if (node.getData() != item) {
+            notifyRemoval(node.getData(), RemovalCause.REPLACED);
+        }
+        node.setData(item);
+        if (weight > maximumWeight) {
+            // the new item replaces the old one but, being heavier than the whole cache, is evicted straight away
+            evict(node, RemovalCause.SIZE);
+            return;
+        }
+
+        node.writeTime = now;
+        node.version = version;
+        if (weight != node.weight) {
+            int oldWeight = node.weight;
+            totalWeight += weight - oldWeight;
+            node.weight = weight;
+            evictionPolicy.onWeightChanged(node, oldWeight);
+        }
+        if (expires()) {
+            node.expirationTime = expirationTime(node);
+            timerWheel.reschedule(node);
+        }
+        while (totalWeight > maximumWeight) {
+            evictToMakeRoom(evictionPolicy.victim());
+        }
+    }
+
+    /**
+     * Retrieves the items for the given IDs from the data source with a single query and publishes them to the
+     * cache.  Runs as the in-flight load for all of those IDs
+     *
+     * @return the items found, by ID; IDs the data source has no item for are left out
+     */
+    private Map<String, T> loadAll(Collection<String> cachedIDs) throws DataSourceRetrievalException {
+        long version = newVersion();
+        Map<String, T> loaded = new HashMap<>();
+        Set<String> toQuery = new HashSet<>();
+
+        // previous loads for some of these IDs may have been published since our cache misses
+        Map<String, T> spilled = new HashMap<>();
+        for (String cachedID : cachedIDs) {
+            Optional<T> cached = getIfCached(cachedID);
+            if (cached.isPresent()) {
+                loaded.put(cachedID, cached.get());
+                continue;
+            }
+            Optional<T> fromDiskTier = takeFromDiskTier(cachedID);
+            if (!fromDiskTier.isPresent()) {
+                fromDiskTier = pendingWrite(cachedID);
+            }
+            if (fromDiskTier.isPresent()) {
+                spilled.put(cachedID, fromDiskTier.get());
+            } else {
+                toQuery.add(cachedID);
+            }
+        }
+
+        if (!spilled.isEmpty()) {
+            loaded.putAll(publishAll(spilled, version));
+        }
+        if (toQuery.isEmpty()) {
+            return loaded;
+        }
+
+        long loadStart = statsCounter.loadStartTime();
+        Map<String, T> fromDataSource;
+        try {
+            fromDataSource = dataSource.getAllFromDataSource(toQuery);
+        } catch (DataSourceRetrievalException | RuntimeException e) {
+            statsCounter.recordLoadFailureSince(loadStart);
+            throw e;
+        }
+        statsCounter.recordLoadSuccessSince(loadStart);
+
+        // ignore anything returned that wasn't asked for
+        Map<String, T> requested = new HashMap<>();
+        fromDataSource.forEach((cachedID, item) -> {
+            if (toQuery.contains(cachedID)) {
+                requested.put(cachedID, item);
+            }
+        });
+        for (String cachedID : toQuery) {
+            if (!requested.containsKey(cachedID)) {
+                rememberAbsent(cachedID, version);
+            }
+        }
+        loaded.putAll(publishAll(requested, version));
+        return loaded;
+    }
+
+    /**
+     * Waits for an in-flight load to complete, rethrowing any exception it failed with
+     */
+    private Optional<T> awaitLoad(String cachedID, CompletableFuture<Optional<T>> inFlight) throws DataSourceRetrievalException {
+        try {
+            return inFlight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataSourceRetrievalException("Interrupted while waiting for ID " + cachedID +
+                    " to be retrieved from the data source", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DataSourceRetrievalException) {
+                throw (DataSourceRetrievalException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new DataSourceRetrievalException(cause);
+        }
+    }
+
+    /**
+     * Stores an item that was retrieved from the backing data source, evicting the LRU item if the cache is full.
+     * If another thread already stored an item for the same ID while this one was querying the data source, then
+     * that item is kept (and returned) so that every caller sees the same cached instance
+     *
+     * @param cachedID unique ID of the item retrieved from the data source
+     * @param missingData the item retrieved from the data source
+     * @param version the version as of when the load started
+     * @return the item now cached for the given ID
+     */
+    private T publish(String cachedID, T missingData, long version) {
+        evictionLock.lock();
+        try {
+            // bring the LRU list up to date first, so that the item evicted really is the least-recently-used one
+            long now = maintenance();
+            return publishLocked(cachedID, missingData, now, version);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Stores a batch of items retrieved from the backing data source, taking the eviction lock only once.
+     * Behaves like {@link #publish(String, Cacheable, long)} for each item
+     *
+     * @param missingData the items retrieved from the data source, by ID
+     * @param version the version as of when the load started
+     * @return the items now cached for the given IDs
+     */
+    private Map<String, T> publishAll(Map<String, T> missingData, long version) {
+        Map<String, T> published = new HashMap<>();
+        evictionLock.lock();
+        try {
+            long now = maintenance();
+            missingData.forEach((cachedID, item) -> published.put(cachedID,
+                    publishLocked(cachedID, item, now, version)));
+        } finally {
+            evictionLock.unlock();
+        }
+        return published;
+    }
+
+    /**
+     * Stores a single item, unless its ID has been put or invalidated, here or by a peer, since the given version.
+     * Must be called while holding the eviction lock
+     */
+    private T publishLocked(String cachedID, T missingData, long now, long version) {
+        DoublyLinkedList.Node<T> result = cache.get(cachedID);
+
+        if (result != null && expires() && hasExpired(result, now)) {
+            evict(result, RemovalCause.EXPIRED);
+            result = null;
+        }
+
+        if (result == null) {
+            if (changedSince(cachedID, version)) {
+                // loaded before a change of the item, so possibly stale; hand it back without caching it
+                return missingData;
+            }
+            int weight = weigh(missingData);
+            if (weight > maximumWeight) {
+                // evicting everything else still wouldn't make room, so hand the item back without caching it
+                return missingData;
+            }
+
+            result = newNode(missingData, weight, now, version);
             cache.put(cachedID, result);
+            totalWeight += weight;
+            evictionPolicy.onInsert(result);
+
+            while (totalWeight > maximumWeight) {
+                //evict the policy's victims (by default the least-recently-used items) until the new item fits.  An
+                //admission policy such as W-TinyLFU may choose to evict the new item itself instead
+                evictToMakeRoom(evictionPolicy.victim());
+            }
+            return missingData;
         }
 
-        // finally, before returning result set it as the new head of the
-        // list, if it's not already the head, to reflect its status as MRU
-        if (lruList.head != result) {
-            lruList.insertAsHead(result);
+        evictionPolicy.onAccess(result);
+        return result.getData();
+    }
+
+    /**
+     * Creates a Node for a newly stored item, scheduling its expiry if need be.  Must be called while holding the
+     * eviction lock
+     */
+    private DoublyLinkedList.Node<T> newNode(T item, int weight, long now, long version) {
+        DoublyLinkedList.Node<T> node = new DoublyLinkedList.Node<>(item);
+        node.weight = weight;
+        node.version = version;
+        if (tracksTime()) {
+            node.writeTime = now;
+            node.accessTime = now;
+        }
+        if (expires()) {
+            node.expirationTime = expirationTime(node);
+            timerWheel.schedule(node);
+        }
+        return node;
+    }
+
+    /**
+     * Evicts a Node from the cache, due to capacity or expiry.  Must be called while holding the eviction lock
+     */
+    private void evict(DoublyLinkedList.Node<T> node, RemovalCause cause) {
+        remove(node, cause);
+        statsCounter.recordEviction();
+    }
+
+    /**
+     * Retrieves a batch of a snapshot's items from the data source, skipping any already cached
+     */
+    private Map<String, T> querySnapshotBatch(List<String> cachedIDs) throws DataSourceRetrievalException {
+        Set<String> toQuery = new HashSet<>();
+        for (String cachedID : cachedIDs) {
+            if (!cache.containsKey(cachedID)) {
+                toQuery.add(cachedID);
+            }
+        }
+        if (toQuery.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        long loadStart = statsCounter.loadStartTime();
+        try {
+            Map<String, T> fromDataSource = dataSource.getAllFromDataSource(toQuery);
+            statsCounter.recordLoadSuccessSince(loadStart);
+            return fromDataSource;
+        } catch (DataSourceRetrievalException | RuntimeException e) {
+            statsCounter.recordLoadFailureSince(loadStart);
+            throw e;
         }
-        return Optional.of(result.getData());
     }
+
+    /**
+     * Stores items restored from a snapshot, in the snapshot's order, each behind all of the items already cached
+     * so that the policy's order is rebuilt.  IDs already cached, or missing from the given items, are skipped
+     *
+     * @param cachedIDs the snapshot's IDs, hottest first
+     * @param items the items found for those IDs
+     * @param restored incremented for each item stored
+     * @return FALSE if the cache filled up before every item could be stored
+     */
+    private boolean restore(List<String> cachedIDs, Map<String, T> items, AtomicInteger restored) {
+        evictionLock.lock();
+        try {
+            long now = maintenance();
+            for (String cachedID : cachedIDs) {
+                T item = items.get(cachedID);
+                if (item == null || cache.containsKey(cachedID)) {
+                    continue;
+                }
+
+                int weight = weigh(item);
+                if (totalWeight + weight > maximumWeight) {
+                    return false;
+                }
+                // version 0, so that any invalidation received from a peer discards a restored item
+                DoublyLinkedList.Node<T> node = newNode(item, weight, now, 0L);
+                cache.put(cachedID, node);
+                totalWeight += weight;
+                evictionPolicy.onRestore(node);
+                restored.incrementAndGet();
+            }
+            return true;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Evicts a Node to bring the cache back within its maximum weight, spilling its item to the disk tier, if any,
+     * which writes it in the background.  Must be called while holding the eviction lock, so that an invalidation
+     * of the ID, which also takes it, always comes before or after the spill and cancels it
+     */
+    private void evictToMakeRoom(DoublyLinkedList.Node<T> node) {
+        evict(node, RemovalCause.SIZE);
+        if (diskTier != null) {
+            diskTier.spill(node.getData());
+        }
+    }
+
+    /**
+     * Removes a Node from the cache entirely, telling the removal listener, if any.  Must be called while holding the
+     * eviction lock
+     */
+    private void remove(DoublyLinkedList.Node<T> node, RemovalCause cause) {
+        totalWeight -= node.weight;
+        evictionPolicy.onRemove(node, cause);
+        cache.remove(node.getData().getID(), node);
+        if (timerWheel != null) {
+            timerWheel.deschedule(node);
+        }
+        notifyRemoval(node.getData(), cause);
+    }
+
+    /**
+     * Hands the removal listener, if any, a notification of an item's removal, to be run on its executor once the
+     * caller has let go of the eviction lock
+     */
+    private void notifyRemoval(T item, RemovalCause cause) {
+        if (removalListener == null) {
+            return;
+        }
+        try {
+            removalListenerExecutor.execute(() -> removalListener.onRemoval(item.getID(), item, cause));
+        } catch (RuntimeException e) {
+            // executor rejected the notification, so it is dropped rather than failing the cache operation
+        }
+    }
+
+    /**
+     * Brings the cache's bookkeeping up to date: replays the accesses recorded by cache hits onto the LRU list and the
+     * sampled lookups into the miss-ratio curve, and reclaims expired items.  Must be called while holding the
+     * eviction lock
+     *
+     * @return the current time according to the ticker, or 0 if the cache does not track time
+     */
+    private long maintenance() {
+        long now = tracksTime() ? ticker.read() : 0L;
+
+        drainReadBuffer();
+        if (expires()) {
+            timerWheel.advance(now, node -> {
+                long expirationTime = expirationTime(node);
+                if (expirationTime - now > 0) {
+                    // read since it was scheduled, so not expired after all
+                    node.expirationTime = expirationTime;
+                    return false;
+                }
+                evict(node, RemovalCause.EXPIRED);
+                return true;
+            });
+        }
+        if (sampleBuffer != null) {
+            sampleBuffer.drainTo(this::recordSample);
+        }
+        return now;
+    }
+
+    /**
+     * Replays the accesses recorded by cache hits onto the LRU list.  Must be called while holding the eviction lock
+     */
+    private void drainReadBuffer() {
+        readBuffer.drainTo(node -> {
+            // skip nodes that were evicted after the hit was recorded
+            if (evictionPolicy.contains(node)) {
+                evictionPolicy.onAccess(node);
+                if (expireAfterAccessNanos > 0) {
+                    node.expirationTime = expirationTime(node);
+                    timerWheel.reschedule(node);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the item the disk tier holds for the given ID, if any, removing it from the tier
+     */
+    private Optional<T> takeFromDiskTier(String cachedID) {
+        return diskTier != null ? diskTier.take(cachedID) : Optional.empty();
+    }
+
+    /**
+     * Returns a version later than any handed out before, from the invalidation bus if the cache has one
+     */
+    private long newVersion() {
+        return invalidationBus != null ? invalidationBus.nextVersion() : localClock.incrementAndGet();
+    }
+
+    /**
+     * Returns the stripe of write locks and versions the given ID belongs to
+     */
+    private static int writeStripe(String cachedID) {
+        // spread the higher bits downward, as HashMap does, since String hashes often differ only in high bits
+        int h = cachedID.hashCode();
+        return (h ^ (h >>> 16)) & (WRITE_STRIPES - 1);
+    }
+
+    /**
+     * Records a put or invalidation of an ID in the given stripe.  Must be called while holding the stripe's lock
+     * @return the version of the change
+     */
+    private long recordWrite(int stripe) {
+        long version = newVersion();
+        writeVersions.accumulateAndGet(stripe, version, Math::max);
+        return version;
+    }
+
+    /**
+     * Returns whether the given ID may have been put or invalidated, here or by a peer, after the given version, in
+     * which case an item loaded at that version may be stale.  IDs in the same stripe share a version, so a change of
+     * one makes the others' loads look stale too, which only costs them being loaded again.  Must be called while
+     * holding the eviction lock
+     */
+    private boolean changedSince(String cachedID, long version) {
+        return invalidatedAllVersion > version || writeVersions.get(writeStripe(cachedID)) > version
+                || (invalidationBus != null && invalidationBus.invalidatedSince(cachedID, version));
+    }
+
+    /**
+     * Discards the items a peer has put or invalidated, unless the cached item is newer than the peer's change.
+     * Lookups never wait for this, since cache hits do not take the eviction lock
+     *
+     * @param batch the version of each ID's change, by ID, and of the peer's invalidation of every ID, if any
+     */
+    private void applyPeerInvalidations(InvalidationBatch batch) {
+        Map<String, Long> versions = batch.getVersions();
+        long invalidateAllVersion = batch.getInvalidateAllVersion();
+        evictionLock.lock();
+        try {
+            maintenance();
+            if (invalidateAllVersion > 0) {
+                for (DoublyLinkedList.Node<T> node : new ArrayList<>(cache.values())) {
+                    if (node.version <= invalidateAllVersion) {
+                        remove(node, RemovalCause.EXPLICIT);
+                    }
+                }
+                if (diskTier != null) {
+                    diskTier.invalidateAll();
+                }
+            }
+            versions.forEach((cachedID, version) -> {
+                DoublyLinkedList.Node<T> node = cache.get(cachedID);
+                // on a tie, the item may have been loaded before the change, so discard it to be safe
+                if (node != null && node.version <= version) {
+                    remove(node, RemovalCause.EXPLICIT);
+                }
+                // records on disk carry no version, so discard them whatever their age
+                if (diskTier != null) {
+                    diskTier.invalidate(cachedID);
+                }
+                // a peer may have put an item for an ID that was absent until now.  Under the eviction lock, so that
+                // a load which found it absent earlier, and checks the bus under the lock, cannot remember it again
+                if (negativeCache != null) {
+                    negativeCache.remove(cachedID);
+                }
+            });
+            if (invalidateAllVersion > 0 && negativeCache != null) {
+                negativeCache.clear();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+
+        // nor must the Bloom filter rule the ID out
+        versions.keySet().forEach(this::addToBloomFilter);
+    }
+
+    /**
+     * Records a lookup for the miss-ratio curve, if the cache estimates one and the ID is sampled.  Like a cache hit,
+     * the lookup is only buffered, and replayed into the estimator by the next maintenance, so that sampled lookups
+     * do not contend on the estimator; it is dropped if the buffer is contended
+     */
+    private void sampleLookup(String cachedID) {
+        if (sampleBuffer == null || !missRatioCurveEstimator.isSampled(cachedID)) {
+            return;
+        }
+        // if this thread's buffer is full, help out by replaying the buffered lookups, and then this one, unless
+        // another thread already is
+        if (sampleBuffer.offer(cachedID) == ReadBuffer.FULL && evictionLock.tryLock()) {
+            try {
+                maintenance();
+                recordSample(cachedID);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Records a sampled lookup in the miss-ratio curve, and reviews the capacity once enough lookups have been
+     * sampled since the last review.  Must be called while holding the eviction lock, once the accesses recorded by
+     * cache hits have been replayed
+     */
+    private void recordSample(String cachedID) {
+        missRatioCurveEstimator.record(cachedID);
+        if (adaptiveMaxCapacity > 0 && ++sampledSinceCapacityReview >= CAPACITY_REVIEW_PERIOD) {
+            sampledSinceCapacityReview = 0;
+            reviewCapacity();
+        }
+    }
+
+    /**
+     * Resizes the cache to the smallest capacity within the adaptive bounds at which the estimated hit ratio reaches
+     * the target, ignoring changes of less than 5% so that the capacity does not wander with noise in the estimate.
+     * Must be called while holding the eviction lock, once the accesses recorded by cache hits have been replayed
+     */
+    private void reviewCapacity() {
+        long capacity = missRatioCurveEstimator.snapshot().capacityForHitRatio(adaptiveTargetHitRate);
+        if (capacity < 0) {
+            capacity = adaptiveMaxCapacity;
+        }
+        capacity = Math.max(adaptiveMinCapacity, Math.min(capacity, adaptiveMaxCapacity));
+        if (Math.abs(capacity - maximumWeight) * 20 < maximumWeight) {
+            return;
+        }
+
+        maximumWeight = capacity;
+        evictionPolicy.setMaximumWeight(capacity);
+        while (totalWeight > maximumWeight) {
+            evictToMakeRoom(evictionPolicy.victim());
+        }
+    }
+
+    /**
+     * Returns the item waiting in the write-behind queue for the given ID, if any, which is newer than what the data
+     * source holds
+     */
+    private Optional<T> pendingWrite(String cachedID) {
+        return writeBehindQueue != null ? writeBehindQueue.pendingItem(cachedID) : Optional.empty();
+    }
+
+    /**
+     * Returns whether the Bloom filter rules out the data source having an item for the given ID, recording the
+     * lookup as a negative hit if so.  IDs are never ruled out before the filter has been built
+     */
+    private boolean ruledOutByBloomFilter(String cachedID) {
+        BloomFilter<CharSequence> filter = bloomFilter;
+        if (filter == null || filter.mightContain(cachedID)) {
+            return false;
+        }
+        statsCounter.recordMiss();
+        statsCounter.recordNegativeHit();
+        return true;
+    }
+
+    /**
+     * Tells the cache's peers, if any, about the IDs of items the write-behind queue has written.  Their put was
+     * published before the sink had the item, so a peer may have loaded the old item since, with a later version;
+     * publishing them again, at a new version, has the peer discard that too
+     */
+    private void written(Collection<T> items) {
+        if (invalidationBus == null) {
+            return;
+        }
+        for (T item : items) {
+            invalidationBus.publish(item.getID(), invalidationBus.nextVersion());
+        }
+    }
+
+    /**
+     * Returns whether the data source was recently found to have no item for the given ID, recording the lookup as
+     * a negative hit if so.  The lookup must already have been recorded as a miss
+     */
+    private boolean negativelyCached(String cachedID) {
+        if (negativeCache == null || !negativeCache.contains(cachedID)) {
+            return false;
+        }
+        statsCounter.recordNegativeHit();
+        return true;
+    }
+
+    /**
+     * Remembers that the data source had no item for the given ID, unless the ID has been put or invalidated since the
+     * load started, in which case the put or invalidation has already forgotten it and it may no longer be absent
+     * @param version the version as of when the load started
+     */
+    private void rememberAbsent(String cachedID, long version) {
+        if (negativeCache == null) {
+            return;
+        }
+        evictionLock.lock();
+        try {
+            if (!changedSince(cachedID, version)) {
+                negativeCache.add(cachedID);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private boolean expires() {
+        return expireAfterWriteNanos > 0 || expireAfterAccessNanos > 0;
+    }
+
+    private int weigh(T item) {
+        int weight = weigher.weigh(item);
+        Preconditions.checkState(weight >= 0, "Weigher returned a negative weight for item " + item.getID());
+        return weight;
+    }
+
+    private boolean tracksTime() {
+        return expires() || refreshAfterWriteNanos > 0;
+    }
+
+    private boolean hasExpired(DoublyLinkedList.Node<T> node, long now) {
+        return (expireAfterWriteNanos > 0 && now - node.writeTime >= expireAfterWriteNanos)
+                || (expireAfterAccessNanos > 0 && now - node.accessTime >= expireAfterAccessNanos);
+    }
+
+    /**
+     * Returns the time at which the given Node expires, based on its current timestamps
+     */
+    private long expirationTime(DoublyLinkedList.Node<T> node) {
+        long expirationTime = Long.MAX_VALUE;
+        if (expireAfterWriteNanos > 0) {
+            expirationTime = node.writeTime + expireAfterWriteNanos;
+        }
+        if (expireAfterAccessNanos > 0) {
+            expirationTime = Math.min(expirationTime, node.accessTime + expireAfterAccessNanos);
+        }
+        return expirationTime;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,436 @@
+import com.google.common.base.Preconditions;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds an {@link LRUCache} with options beyond those taken by its constructors, such as time-based expiry.
+ * Every option has a default, so only the backing data source is required:
+ * <pre>
+ *     LRUCache&lt;Item&gt; cache = new LRUCacheBuilder&lt;&gt;(dataSource)
+ *             .maxCapacity(10_000)
+ *             .expireAfterWrite(5, TimeUnit.MINUTES)
+ *             .build();
+ * </pre>
+ * @param <T> concrete type of elements to be stored in the Cache
+ */
+public class LRUCacheBuilder<T extends Cacheable> {
+    final DataSource<T> dataSource;
+    int maxCapacity = LRUCache.DEFAULT_MAX_CAPACITY;
+    long maximumWeight;
+    Weigher<? super T> weigher;
+    boolean recordStats = true;
+    EvictionPolicy.Factory<T> evictionPolicyFactory = EvictionPolicy.lru();
+    long expireAfterWriteNanos;
+    long expireAfterAccessNanos;
+    long refreshAfterWriteNanos;
+    Ticker ticker = Ticker.systemTicker();
+    Executor executor = DefaultExecutor.INSTANCE;
+    Path diskTierDirectory;
+    ValueCodec<T> diskTierCodec;
+    long diskTierMaximumBytes;
+    int diskTierSegmentSize = DiskTier.DEFAULT_SEGMENT_SIZE;
+    int negativeCacheMaxCapacity;
+    long negativeCacheTtlNanos;
+    long bloomFilterExpectedIDs;
+    double bloomFilterFalsePositiveRate;
+    DataSink<T> writeThroughSink;
+    DataSink<T> writeBehindSink;
+    int writeBehindBatchSize;
+    int writeBehindMaxPendingWrites;
+    long writeBehindFlushIntervalNanos;
+    long batchLoadWindowNanos;
+    int batchLoadMaxBatchSize;
+    RemovalListener<? super T> removalListener;
+    InvalidationTransport invalidationTransport;
+    long invalidationWindowNanos;
+    int invalidationMaxBatchSize;
+    Executor removalListenerExecutor;
+    long missRatioCurveMaxCapacity;
+    double adaptiveTargetHitRate;
+    int adaptiveMinCapacity;
+    int adaptiveMaxCapacity;
+
+    /**
+     * Starts building a cache with the specified backing data source
+     * @param dataSource the backing data source to be queried in order to satisfy a
+     *                   {@link LRUCache#getFromCache(String)} request when a cache miss occurs
+     */
+    public LRUCacheBuilder(DataSource<T> dataSource) {
+        Preconditions.checkArgument(dataSource != null, "dataSource cannot be NULL");
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Sets the maximum capacity of the cache, which when reached will result in the least-recently-used item in
+     * the cache being evicted the next time a new item needs to be added.  Defaults to 1000
+     * @param maxCapacity the maximum number of items to cache
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> maxCapacity(int maxCapacity) {
+        Preconditions.checkArgument(maxCapacity > 0, "maxCapacity must be positive");
+        this.maxCapacity = maxCapacity;
+        return this;
+    }
+
+    /**
+     * Bounds the cache by the total weight of its items, as calculated by the {@link #weigher(Weigher) weigher},
+     * instead of by their number.  When storing an item would take the total over this maximum, the
+     * least-recently-used items are evicted until it fits.  An item heavier than the maximum on its own is returned
+     * to the caller but never cached.  Must be set together with a weigher, and replaces
+     * {@link #maxCapacity(int)}
+     * @param maximumWeight the maximum total weight of the cached items
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> maximumWeight(long maximumWeight) {
+        Preconditions.checkArgument(maximumWeight > 0, "maximumWeight must be positive");
+        this.maximumWeight = maximumWeight;
+        return this;
+    }
+
+    /**
+     * Sets the weigher used to calculate the weight of each item, for a cache bounded by
+     * {@link #maximumWeight(long)}
+     * @param weigher calculates the weight of an item when it is stored
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> weigher(Weigher<? super T> weigher) {
+        Preconditions.checkArgument(weigher != null, "weigher cannot be NULL");
+        this.weigher = weigher;
+        return this;
+    }
+
+    /**
+     * Sets the policy deciding which items to evict when the cache is full, instead of the default of
+     * least-recently-used, e.g. {@code evictionPolicy(EvictionPolicy.arc())}.  See {@link EvictionPolicy} for the
+     * policies available
+     * @param evictionPolicyFactory creates the policy for the cache
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> evictionPolicy(EvictionPolicy.Factory<T> evictionPolicyFactory) {
+        Preconditions.checkArgument(evictionPolicyFactory != null, "evictionPolicyFactory cannot be NULL");
+        this.evictionPolicyFactory = evictionPolicyFactory;
+        return this;
+    }
+
+    /**
+     * Sets whether to record the statistics reported by {@link LRUCache#stats()}.  Defaults to TRUE
+     * @param recordStats FALSE to make recording cost nothing, in which case every count is reported as zero
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> recordStats(boolean recordStats) {
+        this.recordStats = recordStats;
+        return this;
+    }
+
+    /**
+     * Makes items expire once the given duration has passed since they were retrieved from the data source.  An
+     * expired item is never returned; the next lookup retrieves it from the data source again
+     * @param duration how long items stay fresh after being retrieved
+     * @param unit unit of the duration
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> expireAfterWrite(long duration, TimeUnit unit) {
+        Preconditions.checkArgument(duration > 0, "duration must be positive");
+        this.expireAfterWriteNanos = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Makes items expire once the given duration has passed since they were last looked up (or retrieved from
+     * the data source, if they haven't been looked up since).  Can be combined with
+     * {@link #expireAfterWrite(long, TimeUnit)}, in which case items expire as soon as either duration has passed
+     * @param duration how long items stay fresh without being looked up
+     * @param unit unit of the duration
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> expireAfterAccess(long duration, TimeUnit unit) {
+        Preconditions.checkArgument(duration > 0, "duration must be positive");
+        this.expireAfterAccessNanos = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Makes items eligible for refresh once the given duration has passed since they were retrieved from the data
+     * source.  The first lookup of such an item still returns it straight away, but also starts a background
+     * query of the data source, on the {@link #executor(Executor) executor}, whose result replaces the item.  Only
+     * one refresh per ID is in flight at a time.  If the refresh fails the current item is kept, and the next
+     * lookup tries again.  Usually combined with a longer {@link #expireAfterWrite(long, TimeUnit)}, so that
+     * frequently used items are refreshed before they expire and callers never wait for them to be retrieved
+     * @param duration how long after being retrieved items become eligible for refresh
+     * @param unit unit of the duration
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> refreshAfterWrite(long duration, TimeUnit unit) {
+        Preconditions.checkArgument(duration > 0, "duration must be positive");
+        this.refreshAfterWriteNanos = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Sets the executor that background work, such as refreshing items, runs on.  Defaults to
+     * {@link DefaultExecutor#INSTANCE}
+     * @param executor the executor for background work
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> executor(Executor executor) {
+        Preconditions.checkArgument(executor != null, "executor cannot be NULL");
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Adds a second, disk-backed tier ({@link DiskTier}) holding items evicted from memory to make room for others,
+     * so that a later miss on one of them reads it back from local disk instead of querying the data source.
+     * Items are written to the tier on the {@link #executor(Executor) executor}, in 64 MiB memory-mapped segment
+     * files that are compacted in the background.  Any segment files already in the directory are deleted when the
+     * cache is built.  Cannot be combined with {@link #expireAfterWrite(long, TimeUnit)} or
+     * {@link #refreshAfterWrite(long, TimeUnit)}, since the tier does not keep track of items' ages
+     * @param directory directory on a local filesystem to hold the segment files
+     * @param codec serializes items into, and deserializes them from, the segment files
+     * @param maximumBytes maximum total size of the segment files, of at least 128 MiB; once reached, the oldest
+     *                     segment's items are dropped and its file is reused
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> diskTier(Path directory, ValueCodec<T> codec, long maximumBytes) {
+        Preconditions.checkArgument(directory != null, "directory cannot be NULL");
+        Preconditions.checkArgument(codec != null, "codec cannot be NULL");
+        this.diskTierDirectory = directory;
+        this.diskTierCodec = codec;
+        this.diskTierMaximumBytes = maximumBytes;
+        return this;
+    }
+
+    /**
+     * Sets the size of the disk tier's segment files, instead of 64 MiB
+     */
+    LRUCacheBuilder<T> diskTierSegmentSize(int segmentSize) {
+        this.diskTierSegmentSize = segmentSize;
+        return this;
+    }
+
+    /**
+     * Remembers IDs for which the data source has no item, so that looking one of them up again within the given
+     * duration returns an empty Optional straight away rather than querying the data source.  Remembered IDs are
+     * kept apart from the cached items, so they never displace any.  Once the given capacity is reached, the
+     * oldest ID is forgotten to make room for a new one
+     * @param maxCapacity maximum number of IDs to remember
+     * @param duration how long to remember each ID for
+     * @param unit unit of the duration
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> negativeCaching(int maxCapacity, long duration, TimeUnit unit) {
+        Preconditions.checkArgument(maxCapacity > 0, "maxCapacity must be positive");
+        Preconditions.checkArgument(duration > 0, "duration must be positive");
+        this.negativeCacheMaxCapacity = maxCapacity;
+        this.negativeCacheTtlNanos = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Guards the cache with a Bloom filter of every ID in the data source, so that a lookup of an ID the data
+     * source has no item for is usually answered with an empty Optional before the cache is even consulted.  The
+     * filter is built on the {@link #executor(Executor) executor} from the IDs the data source lists, so the data
+     * source must be a {@link ListableDataSource}; lookups pass through unfiltered until it is ready.  IDs put into
+     * this cache, or by peers on its
+     * {@link #invalidationBus(InvalidationTransport, long, TimeUnit, int) invalidation bus}, are added to the filter,
+     * but IDs added to the data source by other means are rejected until the filter is rebuilt with
+     * {@link LRUCache#rebuildBloomFilter()}
+     * @param expectedIDs number of IDs the data source is expected to hold
+     * @param falsePositiveRate fraction of absent IDs to let through, between 0 and 1 exclusive, e.g. 0.01
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> bloomFilter(long expectedIDs, double falsePositiveRate) {
+        Preconditions.checkArgument(expectedIDs > 0, "expectedIDs must be positive");
+        Preconditions.checkArgument(falsePositiveRate > 0 && falsePositiveRate < 1,
+                "falsePositiveRate must be between 0 and 1");
+        this.bloomFilterExpectedIDs = expectedIDs;
+        this.bloomFilterFalsePositiveRate = falsePositiveRate;
+        return this;
+    }
+
+    /**
+     * Sets a listener to be told about every item removed from the cache, and why, notified on the
+     * {@link #executor(Executor) executor}
+     * @param listener told about each item removed
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> removalListener(RemovalListener<? super T> listener) {
+        return removalListener(listener, null);
+    }
+
+    /**
+     * Sets a listener to be told about every item removed from the cache, and why, notified on the given executor.
+     * Notifications are handed to the executor while the cache holds its lock, and run once it has let go, unless
+     * the executor runs them on the calling thread
+     * @param listener told about each item removed
+     * @param executor runs the notifications, or NULL to use the {@link #executor(Executor) executor}
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> removalListener(RemovalListener<? super T> listener, Executor executor) {
+        Preconditions.checkArgument(listener != null, "listener cannot be NULL");
+        this.removalListener = listener;
+        this.removalListenerExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Connects the cache to the caches of other processes, e.g. the other instances of a service, so that an item
+     * {@link LRUCache#put(Cacheable) put} or {@link LRUCache#invalidate(String) invalidated} in one is discarded by
+     * the others, which retrieve it from the data source again on their next lookup.  Changed IDs are coalesced and
+     * sent in batches, once the batch is full or the window has passed, on the {@link #executor(Executor) executor}.
+     * Each cached item carries the version at which it was loaded, so a peer's invalidation that arrives late never
+     * discards an item loaded after the peer's change.  Versions are based on the wall clock, so the processes'
+     * clocks should be synchronized.
+     * <p>
+     * {@link LRUCache#invalidateAll()} is sent too, upon which peers discard every item loaded before it.  With
+     * {@link #writeBehind write-behind}, a put ID is sent again once its write reaches the sink, so that a peer
+     * which loaded the old item from the data source in the meantime discards that too
+     * @param transport carries the batches to and from the peers, and belongs to this cache alone
+     * @param window maximum time a changed ID waits before its batch is sent
+     * @param unit unit of the window
+     * @param maxBatchSize number of IDs at which a batch is sent without waiting for the rest of its window
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> invalidationBus(InvalidationTransport transport, long window, TimeUnit unit,
+                                              int maxBatchSize) {
+        Preconditions.checkArgument(transport != null, "transport cannot be NULL");
+        Preconditions.checkArgument(window > 0, "window must be positive");
+        Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+        this.invalidationTransport = transport;
+        this.invalidationWindowNanos = unit.toNanos(window);
+        this.invalidationMaxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * Makes the cache estimate its hit ratio at other capacities, up to the given one, from a sample of its lookups,
+     * as reported by {@link LRUCache#missRatioCurve()}.  Sampling costs a hash of each ID looked up, and a brief lock
+     * for the few that are sampled
+     * @param maxEstimatedCapacity the largest capacity to estimate the hit ratio for
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> missRatioCurve(long maxEstimatedCapacity) {
+        Preconditions.checkArgument(maxEstimatedCapacity > 0, "maxEstimatedCapacity must be positive");
+        this.missRatioCurveMaxCapacity = maxEstimatedCapacity;
+        return this;
+    }
+
+    /**
+     * Makes the cache adjust its maximum capacity, within the given bounds, to the smallest at which its estimated
+     * {@link #missRatioCurve(long) miss-ratio curve} reaches the target hit rate, so that an oversized cache gives
+     * back memory and one that thrashes grows.  If the target cannot be reached within the bounds, the cache grows to
+     * the upper bound.  The capacity is reviewed periodically as lookups are sampled, starting from
+     * {@link #maxCapacity(int)}, which must be within the bounds.  Cannot be combined with a
+     * {@link #weigher(Weigher) weigher}
+     * @param targetHitRate the hit rate to aim for, between 0 and 1, e.g. 0.95
+     * @param minCapacity the smallest capacity to shrink to
+     * @param maxCapacity the largest capacity to grow to
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> adaptiveCapacity(double targetHitRate, int minCapacity, int maxCapacity) {
+        Preconditions.checkArgument(targetHitRate > 0 && targetHitRate <= 1, "targetHitRate must be between 0 and 1");
+        Preconditions.checkArgument(minCapacity > 0 && minCapacity <= maxCapacity,
+                "minCapacity must be positive and no more than maxCapacity");
+        this.adaptiveTargetHitRate = targetHitRate;
+        this.adaptiveMinCapacity = minCapacity;
+        this.adaptiveMaxCapacity = maxCapacity;
+        return this;
+    }
+
+    /**
+     * Gathers the misses of every caller into batches, each retrieved with a single call to
+     * {@link DataSource#getAllFromDataSource(Set)}, by wrapping the data source in a {@link BatchingDataSource}.
+     * A batch is queried once the given window has passed since its first miss, or once it holds the maximum number
+     * of IDs, so each miss waits up to one window longer, but bursts of misses on different IDs cost a few batch
+     * queries rather than one query each.  Batches whose window runs out are queried on the
+     * {@link #executor(Executor) executor}
+     * @param window how long a batch waits for more misses after its first
+     * @param unit unit of the window
+     * @param maxBatchSize number of IDs at which a batch is queried without waiting for the rest of its window
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> batchLoads(long window, TimeUnit unit, int maxBatchSize) {
+        Preconditions.checkArgument(window > 0, "window must be positive");
+        Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+        this.batchLoadWindowNanos = unit.toNanos(window);
+        this.batchLoadMaxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * Makes {@link LRUCache#put(Cacheable)} write each item to the given sink before caching it, on the caller's
+     * thread, so that a put returns only once the item is stored.  If the sink fails, the cache is left unchanged.
+     * Cannot be combined with {@link #writeBehind(DataSink, int, int, long, TimeUnit)}
+     * @param sink the store items are written to, usually the same object as the data source
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> writeThrough(DataSink<T> sink) {
+        Preconditions.checkArgument(sink != null, "sink cannot be NULL");
+        this.writeThroughSink = sink;
+        return this;
+    }
+
+    /**
+     * Makes {@link LRUCache#put(Cacheable)} cache each item straight away and write it to the given sink later, in
+     * the background, in batches (see {@link WriteBehindQueue}).  Repeated puts of an ID before it is written are
+     * coalesced into a single write of the latest item.  A batch is written once it is full, or once the flush
+     * interval has passed since the first of its items was put.  Once the given number of IDs are waiting to be
+     * written, a put of another ID blocks until there is room.  Items waiting to be written are returned by
+     * lookups even if evicted meanwhile.  Cannot be combined with {@link #writeThrough(DataSink)}
+     * @param sink the store items are written to, usually the same object as the data source
+     * @param batchSize maximum number of items written to the sink at once
+     * @param maxPendingWrites maximum number of IDs waiting to be written, of at least the batch size
+     * @param flushInterval maximum time an item waits before it starts being written
+     * @param unit unit of the flush interval
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> writeBehind(DataSink<T> sink, int batchSize, int maxPendingWrites, long flushInterval,
+                                         TimeUnit unit) {
+        Preconditions.checkArgument(sink != null, "sink cannot be NULL");
+        Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
+        Preconditions.checkArgument(maxPendingWrites >= batchSize, "maxPendingWrites must be at least batchSize");
+        Preconditions.checkArgument(flushInterval > 0, "flushInterval must be positive");
+        this.writeBehindSink = sink;
+        this.writeBehindBatchSize = batchSize;
+        this.writeBehindMaxPendingWrites = maxPendingWrites;
+        this.writeBehindFlushIntervalNanos = unit.toNanos(flushInterval);
+        return this;
+    }
+
+    /**
+     * Sets the source of the current time used for expiry, refresh and negative caching.  Defaults to {@link Ticker#systemTicker()}
+     * @param ticker the time source
+     * @return this builder
+     */
+    public LRUCacheBuilder<T> ticker(Ticker ticker) {
+        Preconditions.checkArgument(ticker != null, "ticker cannot be NULL");
+        this.ticker = ticker;
+        return this;
+    }
+
+    /**
+     * Builds a new, empty cache with the options set on this builder
+     * @return the new cache
+     * @throws UncheckedIOException if a disk tier was requested but its directory cannot be used
+     */
+    public LRUCache<T> build() {
+        Preconditions.checkState((weigher == null) == (maximumWeight == 0),
+                "maximumWeight and weigher must be set together");
+        Preconditions.checkState(diskTierDirectory == null || (expireAfterWriteNanos == 0 && refreshAfterWriteNanos == 0),
+                "diskTier cannot be combined with expireAfterWrite or refreshAfterWrite");
+        Preconditions.checkState(writeThroughSink == null || writeBehindSink == null,
+                "writeThrough and writeBehind cannot be combined");
+        Preconditions.checkState(bloomFilterExpectedIDs == 0 || dataSource instanceof ListableDataSource,
+                "bloomFilter requires a ListableDataSource");
+        Preconditions.checkState(adaptiveMaxCapacity == 0 || weigher == null,
+                "adaptiveCapacity cannot be combined with a weigher");
+        Preconditions.checkState(adaptiveMaxCapacity == 0
+                        || (maxCapacity >= adaptiveMinCapacity && maxCapacity <= adaptiveMaxCapacity),
+                "maxCapacity must be within the adaptiveCapacity bounds");
+        return new LRUCache<>(this);
+    }
+}
@@ -0,0 +1,16 @@
+import java.util.function.Consumer;
+
+/**
+ * Data source that can also list the IDs of every element it holds, which a cache guarded by a Bloom filter (see
+ * {@link LRUCacheBuilder#bloomFilter(long, double)}) needs in order to build the filter
+ * @param <T> Type of elements being cached. Must implement the {@link Cacheable interface}
+ */
+public interface ListableDataSource<T extends Cacheable> extends DataSource<T> {
+    /**
+     * Passes the ID of every element in the underlying data source to the given action
+     * @param action called once for each ID
+     * @throws DataSourceRetrievalException if there is an unrecoverable error while
+     * trying to query the underlying data source
+     */
+    public void forEachID(Consumer<String> action) throws DataSourceRetrievalException;
+}
@@ -0,0 +1,83 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of load times, in nanoseconds, used to report load time percentiles.  Buckets are
+ * log-linear: every power of two is split into four equally sized buckets, so any reported value is within 25%
+ * of the true one while the whole range of a long fits in 248 buckets.  Each bucket is a {@link LongAdder}, so
+ * threads recording at the same time do not contend on a single counter.
+ */
+class LoadTimeHistogram {
+    static final int BUCKET_COUNT = 248;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+
+    LoadTimeHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a single load time
+     * @param nanos duration of the load, in nanoseconds
+     */
+    void record(long nanos) {
+        buckets[bucketIndex(nanos)].increment();
+    }
+
+    /**
+     * Returns the number of load times recorded in each bucket
+     * @return an array of BUCKET_COUNT counts
+     */
+    long[] snapshot() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * Estimates the value below which the given percentage of the recorded values fall
+     * @param counts bucket counts, as returned by {@link #snapshot()}
+     * @param percentile the percentile to estimate, between 0 and 100
+     * @return the estimated value, in nanoseconds, or 0 if nothing was recorded
+     */
+    static long valueAtPercentile(long[] counts, double percentile) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return bucketMidpoint(i);
+            }
+        }
+        return bucketMidpoint(counts.length - 1);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < 4) {
+            return (int) Math.max(0, value);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - 2)) & 3;
+        return 4 * (exponent - 1) + subBucket;
+    }
+
+    static long bucketMidpoint(int index) {
+        if (index < 4) {
+            return index;
+        }
+        int exponent = index / 4 + 1;
+        long lowerBound = (long) (4 + index % 4) << (exponent - 2);
+        return lowerBound + ((1L << (exponent - 2)) >>> 1);
+    }
+}
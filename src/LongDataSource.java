@@ -0,0 +1,17 @@
+import java.util.Optional;
+
+/**
+ * Data source for a {@link LongLRUCache}, whose items are looked up by a primitive long ID rather than a String
+ * @param <V> Type of elements being cached
+ */
+public interface LongDataSource<V> {
+    /**
+     * Attempts to retrieve desired data item from the underlying data source via an ID lookup.
+     * @param ID the unique ID of the element to be retrieved from the underlying data source
+     * @return an Optional containing either the retrieved element or null if no element
+     * was found for the provided ID
+     * @throws DataSourceRetrievalException if there is an unrecoverable error while
+     * trying to query the underlying data source
+     */
+    public Optional<V> getFromDataSource(long ID) throws DataSourceRetrievalException;
+}
@@ -0,0 +1,277 @@
+import com.google.common.base.Preconditions;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LRU cache specialized for items with numeric IDs, which avoids the String IDs, boxing and per-item Node objects
+ * of {@link LRUCache}.  A cache hit allocates nothing.
+ * <p>
+ * Every item occupies one <em>entry</em>, an index into parallel arrays holding its ID and its value, and into the
+ * {@link IndexedLruList} which orders the entries from most to least recently used.  IDs are
+ * found through an open-addressing hash table of entry indexes, with linear probing and at most 50% load, whose
+ * deletions shift later entries of a probe sequence back rather than leaving tombstones.  All of the arrays are
+ * allocated up front for the maximum capacity, and an evicted item's entry is reused by the item replacing it.
+ * Altogether an item costs about 32 bytes besides the value itself, against well over 100 bytes for a Node, map
+ * entry and ID String in {@link LRUCache}.
+ * <p>
+ * Hits relink the LRU list in place, so every lookup takes the cache's lock, briefly.  The backing data source is
+ * queried without holding it, and concurrent misses on the same ID result in a single query.
+ *
+ * @param <V> type of the cached items
+ */
+public class LongLRUCache<V> {
+    private static final int NONE = IndexedLruList.NONE;
+
+    private final LongDataSource<V> dataSource;
+    private final StatsCounter statsCounter;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Long, CompletableFuture<Optional<V>>> loadsInFlight = new ConcurrentHashMap<>();
+
+    // per entry
+    private final long[] ids;
+    private final Object[] values;
+    private final IndexedLruList lruList;
+
+    // hash table of entry index + 1, where 0 marks an empty slot
+    private final int[] table;
+    private final int tableMask;
+
+    /**
+     * Constructs a new LongLRUCache with the specified backing data source and capacity
+     * @param dataSource the backing data source to be queried in order to satisfy a {@link #getFromCache(long)}
+     *                   request when a cache miss occurs
+     * @param maxCapacity maximum capacity of the cache, which when reached will result in the least-recently-used
+     *                    item in the cache being evicted the next time a new item needs to be added
+     * @param recordStats whether to record the statistics reported by {@link #stats()}
+     */
+    public LongLRUCache(LongDataSource<V> dataSource, int maxCapacity, boolean recordStats) {
+        Preconditions.checkArgument(dataSource != null, "dataSource cannot be NULL");
+        Preconditions.checkArgument(maxCapacity > 0 && maxCapacity <= (1 << 29),
+                "maxCapacity must be between 1 and 2^29");
+        this.dataSource = dataSource;
+        this.statsCounter = recordStats ? new StatsCounter() : StatsCounter.DISABLED;
+
+        ids = new long[maxCapacity];
+        values = new Object[maxCapacity];
+        lruList = new IndexedLruList(maxCapacity);
+
+        table = new int[Integer.highestOneBit(maxCapacity - 1 | 1) << 2];
+        tableMask = table.length - 1;
+    }
+
+    /**
+     * Constructs a new LongLRUCache with the specified backing data source and capacity, which records statistics
+     * @param dataSource the backing data source to be queried in order to satisfy a {@link #getFromCache(long)}
+     *                   request when a cache miss occurs
+     * @param maxCapacity maximum capacity of the cache
+     */
+    public LongLRUCache(LongDataSource<V> dataSource, int maxCapacity) {
+        this(dataSource, maxCapacity, true);
+    }
+
+    /**
+     * Retrieves the item mapped to by the specified ID from the cache or, on a miss, from the backing data source.
+     * Returns NULL rather than an empty Optional when there is no item, so that hits allocate nothing
+     *
+     * @param id unique ID of the item to be retrieved from the cache or, if not in the cache, the underlying data
+     *           source
+     * @return the retrieved item or, if it is not in the cache and cannot be retrieved from the backing data
+     * source, NULL
+     * @throws DataSourceRetrievalException if the desired item is not currently in the cache and
+     * an unrecoverable error occurs while trying to retrieve it from the backing data source
+     */
+    public V getFromCache(long id) throws DataSourceRetrievalException {
+        V cached = getIfPresent(id);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<Optional<V>> newLoad = new CompletableFuture<>();
+        CompletableFuture<Optional<V>> inFlight = loadsInFlight.putIfAbsent(id, newLoad);
+
+        if (inFlight == null) {
+            inFlight = newLoad;
+            try {
+                newLoad.complete(load(id));
+            } catch (Throwable t) {
+                newLoad.completeExceptionally(t);
+            } finally {
+                loadsInFlight.remove(id, newLoad);
+            }
+        }
+
+        return awaitLoad(id, inFlight).orElse(null);
+    }
+
+    /**
+     * Returns the item cached for the specified ID, without querying the data source on a miss.  Records a hit or
+     * a miss, and allocates nothing
+     *
+     * @param id unique ID of the item to be retrieved from the cache
+     * @return the cached item, or NULL if it is not cached
+     */
+    public V getIfPresent(long id) {
+        lock.lock();
+        try {
+            int entry = find(id);
+            if (entry == NONE) {
+                statsCounter.recordMiss();
+                return null;
+            }
+            statsCounter.recordHit();
+            lruList.moveToHead(entry);
+            return value(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the statistics recorded by this cache since it was constructed
+     * @return the cache's statistics, or all zeros if it was constructed with statistics disabled
+     */
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    /**
+     * Returns the number of items currently cached
+     */
+    int size() {
+        lock.lock();
+        try {
+            return lruList.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Optional<V> load(long id) throws DataSourceRetrievalException {
+        long loadStart = statsCounter.loadStartTime();
+        Optional<V> fromDataSource;
+        try {
+            fromDataSource = dataSource.getFromDataSource(id);
+        } catch (DataSourceRetrievalException | RuntimeException e) {
+            statsCounter.recordLoadFailureSince(loadStart);
+            throw e;
+        }
+        statsCounter.recordLoadSuccessSince(loadStart);
+
+        if (!fromDataSource.isPresent()) {
+            return fromDataSource;
+        }
+        return Optional.of(publish(id, fromDataSource.get()));
+    }
+
+    /**
+     * Stores an item retrieved from the data source, evicting the least-recently-used item if the cache is full.
+     * If the ID was cached meanwhile, by a {@link #getIfPresent} miss racing with the load, that item is kept
+     */
+    private V publish(long id, V item) {
+        lock.lock();
+        try {
+            int entry = find(id);
+            if (entry != NONE) {
+                lruList.moveToHead(entry);
+                return value(entry);
+            }
+
+            entry = lruList.allocate();
+            if (entry == NONE) {
+                evict(lruList.tail());
+                entry = lruList.allocate();
+            }
+
+            ids[entry] = id;
+            values[entry] = item;
+            int slot = slotOf(id);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & tableMask;
+            }
+            table[slot] = entry + 1;
+            return item;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the entry holding the given ID, or NONE.  Must be called while holding the lock
+     */
+    private int find(long id) {
+        for (int slot = slotOf(id); table[slot] != 0; slot = (slot + 1) & tableMask) {
+            int entry = table[slot] - 1;
+            if (ids[entry] == id) {
+                return entry;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Removes an entry from the hash table and the LRU list, and returns it to the free list.  Must be called
+     * while holding the lock
+     */
+    private void evict(int entry) {
+        int slot = slotOf(ids[entry]);
+        while (table[slot] != entry + 1) {
+            slot = (slot + 1) & tableMask;
+        }
+
+        // shift back any later entry of the probe sequence that would no longer be reachable past the gap
+        int gap = slot;
+        for (int i = (gap + 1) & tableMask; table[i] != 0; i = (i + 1) & tableMask) {
+            int home = slotOf(ids[table[i] - 1]);
+            if (((i - home) & tableMask) >= ((i - gap) & tableMask)) {
+                table[gap] = table[i];
+                gap = i;
+            }
+        }
+        table[gap] = 0;
+
+        lruList.release(entry);
+        values[entry] = null;
+        statsCounter.recordEviction();
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int entry) {
+        return (V) values[entry];
+    }
+
+    private int slotOf(long id) {
+        // murmur3's 64-bit finalizer, so that sequential IDs spread across the table
+        long h = id;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & tableMask;
+    }
+
+    private Optional<V> awaitLoad(long id, CompletableFuture<Optional<V>> inFlight) throws DataSourceRetrievalException {
+        try {
+            return inFlight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataSourceRetrievalException("Interrupted while waiting for ID " + id +
+                    " to be retrieved from the data source", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DataSourceRetrievalException) {
+                throw (DataSourceRetrievalException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new DataSourceRetrievalException(cause);
+        }
+    }
+}
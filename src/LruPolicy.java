@@ -0,0 +1,50 @@
+import java.util.function.Consumer;
+
+/**
+ * Least-recently-used eviction: every cached Node is kept in a {@link DoublyLinkedList} ordered from most recently
+ * used (the head) to least recently used (the tail), which is the next victim
+ *
+ * @param <T> type of elements held by the cached Nodes
+ */
+class LruPolicy<T extends Cacheable> implements EvictionPolicy<T> {
+    private final DoublyLinkedList<T> lruList = new DoublyLinkedList<>();
+
+    @Override
+    public boolean contains(DoublyLinkedList.Node<T> node) {
+        return lruList.contains(node);
+    }
+
+    @Override
+    public void onInsert(DoublyLinkedList.Node<T> node) {
+        lruList.insertAsHead(node);
+    }
+
+    @Override
+    public void onAccess(DoublyLinkedList.Node<T> node) {
+        if (lruList.head != node) {
+            //if node is already at the head of the LinkedList, no modifications would be needed
+            lruList.remove(node);
+            lruList.insertAsHead(node);
+        }
+    }
+
+    @Override
+    public void onRemove(DoublyLinkedList.Node<T> node, RemovalCause cause) {
+        lruList.remove(node);
+    }
+
+    @Override
+    public DoublyLinkedList.Node<T> victim() {
+        return lruList.tail;
+    }
+
+    @Override
+    public void forEachHottestFirst(Consumer<DoublyLinkedList.Node<T>> action) {
+        lruList.forEachFromHead(action);
+    }
+
+    @Override
+    public void onRestore(DoublyLinkedList.Node<T> node) {
+        lruList.insertAsTail(node);
+    }
+}
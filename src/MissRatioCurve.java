@@ -0,0 +1,99 @@
+import com.google.common.base.Preconditions;
+
+/**
+ * Estimate of the hit ratio an {@link LRUCache} would have at other capacities, as returned by
+ * {@link LRUCache#missRatioCurve()}.  The estimate is made from the reuse distances of a sample of the cache's
+ * lookups (see {@link MissRatioCurveEstimator}), i.e. how many other distinct IDs were looked up between two lookups
+ * of the same ID, which tells whether an LRU cache of a given capacity would still have held the item.  It is exact
+ * for LRU, and a good guide for the other eviction policies, which usually do at least as well.
+ */
+public final class MissRatioCurve {
+    private final double samplingRate;
+    private final long maxEstimatedCapacity;
+    private final long[] reuseDistances;
+    private final long sampleCount;
+
+    /**
+     * @param samplingRate fraction of IDs whose lookups were sampled
+     * @param maxEstimatedCapacity largest capacity the estimate covers
+     * @param reuseDistances number of sampled lookups by sampled reuse distance
+     * @param coldCount number of sampled lookups of IDs not looked up before, or not within the distances tracked
+     */
+    MissRatioCurve(double samplingRate, long maxEstimatedCapacity, long[] reuseDistances, long coldCount) {
+        this.samplingRate = samplingRate;
+        this.maxEstimatedCapacity = maxEstimatedCapacity;
+        this.reuseDistances = reuseDistances;
+        long sampleCount = coldCount;
+        for (long count : reuseDistances) {
+            sampleCount += count;
+        }
+        this.sampleCount = sampleCount;
+    }
+
+    /**
+     * Estimates the fraction of lookups that would be hits at the given capacity
+     * @param capacity the capacity, between 1 and {@link #getMaxEstimatedCapacity()}; larger capacities are
+     *                 estimated as the maximum
+     * @return the estimated hit ratio, between 0.0 and 1.0, or 0.0 if no lookups have been sampled yet
+     */
+    public double getHitRatio(long capacity) {
+        Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+        if (sampleCount == 0) {
+            return 0.0;
+        }
+        long hits = 0;
+        double scaledCapacity = capacity * samplingRate;
+        for (int distance = 0; distance < reuseDistances.length && distance < scaledCapacity; distance++) {
+            hits += reuseDistances[distance];
+        }
+        return (double) hits / sampleCount;
+    }
+
+    /**
+     * Estimates the fraction of lookups that would be misses at the given capacity
+     * @param capacity the capacity, between 1 and {@link #getMaxEstimatedCapacity()}
+     * @return the estimated miss ratio, between 0.0 and 1.0, or 1.0 if no lookups have been sampled yet
+     */
+    public double getMissRatio(long capacity) {
+        return 1.0 - getHitRatio(capacity);
+    }
+
+    /**
+     * Estimates the smallest capacity at which the given fraction of lookups would be hits
+     * @param hitRatio the hit ratio wanted, between 0.0 and 1.0
+     * @return the estimated capacity, or -1 if the hit ratio would not be reached even at
+     * {@link #getMaxEstimatedCapacity()}, or no lookups have been sampled yet
+     */
+    public long capacityForHitRatio(double hitRatio) {
+        Preconditions.checkArgument(hitRatio >= 0 && hitRatio <= 1, "hitRatio must be between 0 and 1");
+        if (sampleCount == 0) {
+            return -1;
+        }
+        long hits = 0;
+        for (int distance = 0; distance < reuseDistances.length; distance++) {
+            hits += reuseDistances[distance];
+            if ((double) hits / sampleCount >= hitRatio) {
+                long capacity = (long) Math.ceil((distance + 1) / samplingRate);
+                return Math.max(1, Math.min(capacity, maxEstimatedCapacity));
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the largest capacity the estimate covers
+     * @return the capacity, in items
+     */
+    public long getMaxEstimatedCapacity() {
+        return maxEstimatedCapacity;
+    }
+
+    /**
+     * Returns the number of sampled lookups the estimate is based on, which decay over time so that the estimate
+     * follows changes in the workload
+     * @return the sample count
+     */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+}
@@ -0,0 +1,156 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks the reuse distances of a cache's lookups, from which {@link MissRatioCurve} estimates its hit ratio at other
+ * capacities, using spatial sampling (SHARDS, Waldspurger et al.) to keep the cost low whatever the capacity.
+ * <p>
+ * Only IDs whose hash falls below a threshold are sampled, so every lookup of a sampled ID is tracked and every
+ * lookup of any other ID is ignored.  Sampling a fraction R of the IDs scales reuse distances by R, so a sampled
+ * distance d stands for a distance of d / R.  The rate is chosen so that at most {@link #MAX_TRACKED_IDS} sampled IDs
+ * are needed to cover the largest capacity estimated; sampled IDs not looked up within that distance are forgotten.
+ * <p>
+ * Sampled IDs are kept in the order of their last lookup by stamping each lookup with an increasing timestamp, and
+ * a Fenwick tree over the timestamps counts how many IDs have been looked up since a given one, in logarithmic
+ * time.  Timestamps are renumbered from zero once they run out.  Counts are halved periodically so that the curve
+ * follows changes in the workload.
+ * <p>
+ * Not thread-safe; must only be used while holding the owning cache's eviction lock, into which the cache replays
+ * its sampled lookups from a lossy buffer.
+ */
+class MissRatioCurveEstimator {
+    static final int MAX_TRACKED_IDS = 4096;
+    private static final int HASH_BITS = 24;
+
+    private final long maxEstimatedCapacity;
+    private final double samplingRate;
+    private final int threshold;
+    private final int maxTrackedIDs;
+    private final long agingPeriod;
+
+    private final long[] reuseDistances;
+    private long coldCount;
+    private long sinceAging;
+
+    private final Map<String, Integer> timestamps = new HashMap<>();
+    private final String[] idAt;
+    private final int[] tree;
+    private int nextTimestamp;
+    private int oldest;
+
+    /**
+     * @param maxEstimatedCapacity largest capacity to estimate the hit ratio for
+     */
+    MissRatioCurveEstimator(long maxEstimatedCapacity) {
+        this.maxEstimatedCapacity = maxEstimatedCapacity;
+        this.samplingRate = Math.min(1.0, (double) MAX_TRACKED_IDS / maxEstimatedCapacity);
+        this.threshold = (int) Math.ceil(samplingRate * (1 << HASH_BITS));
+        this.maxTrackedIDs = (int) Math.min(MAX_TRACKED_IDS, maxEstimatedCapacity);
+        this.agingPeriod = 16L * maxTrackedIDs;
+        this.reuseDistances = new long[maxTrackedIDs];
+        this.idAt = new String[2 * maxTrackedIDs];
+        this.tree = new int[idAt.length + 1];
+    }
+
+    /**
+     * Returns whether lookups of the given ID are sampled.  Cheap, and safe to call without synchronization
+     */
+    boolean isSampled(String id) {
+        int h = id.hashCode() * 0x9e3779b9;
+        h ^= h >>> 16;
+        return (h & ((1 << HASH_BITS) - 1)) < threshold;
+    }
+
+    /**
+     * Records a lookup of a sampled ID
+     * @param id an ID for which {@link #isSampled} is TRUE
+     */
+    void record(String id) {
+        Integer timestamp = timestamps.remove(id);
+        if (timestamp == null) {
+            coldCount++;
+        } else {
+            // the number of sampled IDs looked up since this one was last
+            reuseDistances[timestamps.size() + 1 - prefixCount(timestamp)]++;
+            idAt[timestamp] = null;
+            add(timestamp, -1);
+        }
+
+        if (nextTimestamp == idAt.length) {
+            renumber();
+        }
+        idAt[nextTimestamp] = id;
+        add(nextTimestamp, 1);
+        timestamps.put(id, nextTimestamp++);
+
+        if (timestamps.size() > maxTrackedIDs) {
+            forgetOldest();
+        }
+        if (++sinceAging == agingPeriod) {
+            age();
+        }
+    }
+
+    /**
+     * Returns the curve estimated from the lookups recorded so far
+     */
+    MissRatioCurve snapshot() {
+        return new MissRatioCurve(samplingRate, maxEstimatedCapacity, reuseDistances.clone(), coldCount);
+    }
+
+    /**
+     * Returns the number of timestamps at or before the given one still in use, i.e. the number of sampled IDs last
+     * looked up no later than it
+     */
+    private int prefixCount(int timestamp) {
+        int count = 0;
+        for (int i = timestamp + 1; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    private void add(int timestamp, int delta) {
+        for (int i = timestamp + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    private void forgetOldest() {
+        while (idAt[oldest] == null) {
+            oldest++;
+        }
+        timestamps.remove(idAt[oldest]);
+        idAt[oldest] = null;
+        add(oldest, -1);
+    }
+
+    /**
+     * Renumbers the timestamps in use from zero, keeping their order, once the last has been handed out
+     */
+    private void renumber() {
+        Arrays.fill(tree, 0);
+        int next = 0;
+        for (int timestamp = 0; timestamp < idAt.length; timestamp++) {
+            String id = idAt[timestamp];
+            if (id != null) {
+                idAt[timestamp] = null;
+                idAt[next] = id;
+                timestamps.put(id, next);
+                add(next, 1);
+                next++;
+            }
+        }
+        nextTimestamp = next;
+        oldest = 0;
+    }
+
+    private void age() {
+        for (int distance = 0; distance < reuseDistances.length; distance++) {
+            reuseDistances[distance] >>>= 1;
+        }
+        coldCount >>>= 1;
+        sinceAging = 0;
+    }
+}
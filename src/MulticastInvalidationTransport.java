@@ -0,0 +1,151 @@
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Transport connecting the caches of several processes over UDP multicast: each batch is sent as one or more
+ * datagrams to a multicast group, which every peer has joined.  Delivery is best-effort, as UDP's is, so a lost
+ * datagram leaves peers serving their copies of its IDs until they expire or are changed again.  Batches too large
+ * for a single datagram are split.
+ * <p>
+ * By default the group is joined on the loopback interface, which connects the processes of a single host, e.g.
+ * several instances of a service, or tests.  To reach other hosts, pass the interface of a network that routes
+ * multicast.  Datagrams are sent and received through a {@link DatagramChannel}, with multicast loopback enabled so
+ * that peers on this host receive them.  Received batches are handed to the receiver on a daemon thread of the
+ * transport's own.
+ */
+public class MulticastInvalidationTransport implements InvalidationTransport {
+    // the largest UDP payload an IPv4 datagram can carry
+    static final int MAX_DATAGRAM_SIZE = 65_507;
+
+    private final InetSocketAddress group;
+    private final DatagramChannel channel;
+    private volatile Consumer<InvalidationBatch> receiver;
+
+    /**
+     * Joins a multicast group on the loopback interface, connecting the processes of this host
+     * @param group address of the multicast group, e.g. "239.255.42.99"
+     * @param port UDP port the group's peers listen on
+     * @throws IOException if the group cannot be joined, e.g. because the loopback interface does not support
+     * multicast
+     */
+    public MulticastInvalidationTransport(String group, int port) throws IOException {
+        this(InetAddress.getByName(group), port, NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress()));
+    }
+
+    /**
+     * Joins a multicast group on the given network interface
+     * @param group address of the multicast group
+     * @param port UDP port the group's peers listen on
+     * @param networkInterface the interface to send and receive on
+     * @throws IOException if the group cannot be joined
+     */
+    public MulticastInvalidationTransport(InetAddress group, int port, NetworkInterface networkInterface)
+            throws IOException {
+        Preconditions.checkArgument(group != null && group.isMulticastAddress(), "group must be a multicast address");
+        Preconditions.checkArgument(networkInterface != null, "networkInterface cannot be NULL");
+        this.group = new InetSocketAddress(group, port);
+        this.channel = DatagramChannel.open(
+                group instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET);
+        try {
+            // several peers on this host listen on the same port
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(port));
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+            channel.join(group, networkInterface);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        Thread receiverThread = new Thread(this::receive, "LRUCache-invalidation-receiver");
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+    }
+
+    /**
+     * Sends the batch to the group, split over as many datagrams as it needs.  Peers on this host receive it, but
+     * this transport's own receiver ignores it, being the sender
+     * @throws IOException if the batch could not be sent, or a single ID is too long to fit in a datagram
+     */
+    @Override
+    public void publish(InvalidationBatch batch) throws IOException {
+        byte[] bytes = batch.toBytes();
+        if (bytes.length <= MAX_DATAGRAM_SIZE) {
+            channel.send(ByteBuffer.wrap(bytes), group);
+            return;
+        }
+
+        List<Map.Entry<String, Long>> versions = new ArrayList<>(batch.getVersions().entrySet());
+        if (versions.size() == 1) {
+            throw new IOException("ID " + versions.get(0).getKey() + " is too long to send in a datagram");
+        }
+        int middle = versions.size() / 2;
+        publish(new InvalidationBatch(batch.getSenderID(), toMap(versions.subList(0, middle)),
+                batch.getInvalidateAllVersion()));
+        publish(new InvalidationBatch(batch.getSenderID(), toMap(versions.subList(middle, versions.size()))));
+    }
+
+    @Override
+    public void subscribe(Consumer<InvalidationBatch> receiver) {
+        Preconditions.checkArgument(receiver != null, "receiver cannot be NULL");
+        this.receiver = receiver;
+    }
+
+    /**
+     * Leaves the group and stops receiving
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Hands every batch received to the receiver, until the channel is closed
+     */
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+        while (channel.isOpen()) {
+            InvalidationBatch batch;
+            try {
+                buffer.clear();
+                channel.receive(buffer);
+                batch = InvalidationBatch.fromBytes(buffer.array(), 0, buffer.position());
+            } catch (IOException e) {
+                // closed, or a datagram that is not a batch, e.g. from another application using the group
+                continue;
+            }
+
+            Consumer<InvalidationBatch> current = receiver;
+            if (current != null) {
+                try {
+                    current.accept(batch);
+                } catch (RuntimeException e) {
+                    // keep receiving; the next batch may well apply
+                }
+            }
+        }
+    }
+
+    private static Map<String, Long> toMap(List<Map.Entry<String, Long>> versions) {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> version : versions) {
+            map.put(version.getKey(), version.getValue());
+        }
+        return map;
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers IDs for which the data source recently had no item, so that repeated lookups of them, e.g. by clients
+ * probing random IDs, are answered without querying the data source again.  Each ID is remembered until a fixed
+ * time after it was added, and once the maximum capacity is reached the oldest ID is forgotten to make room.
+ * Since every ID lives for the same time, the oldest is also the first to expire, so IDs are kept in a single
+ * insertion-ordered map whose head is both the next to expire and the next to evict.
+ * <p>
+ * Only misses consult it, and it holds no items, so a single lock guards it.
+ */
+class NegativeCache {
+    private final LinkedHashMap<String, Long> expirationTimes = new LinkedHashMap<>();
+    private final int maxCapacity;
+    private final long ttlNanos;
+    private final Ticker ticker;
+
+    /**
+     * Creates an empty negative cache
+     * @param maxCapacity maximum number of IDs to remember
+     * @param ttlNanos how long to remember each ID, in nanoseconds
+     * @param ticker source of the current time
+     */
+    NegativeCache(int maxCapacity, long ttlNanos, Ticker ticker) {
+        this.maxCapacity = maxCapacity;
+        this.ttlNanos = ttlNanos;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Returns whether the data source was found to have no item for the given ID within the last TTL
+     */
+    synchronized boolean contains(String id) {
+        Long expirationTime = expirationTimes.get(id);
+        if (expirationTime == null) {
+            return false;
+        }
+        if (ticker.read() - expirationTime >= 0) {
+            expirationTimes.remove(id);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remembers that the data source has no item for the given ID, for the next TTL
+     */
+    synchronized void add(String id) {
+        long now = ticker.read();
+        // re-adding moves the ID to the tail, keeping the map in expiration order
+        expirationTimes.remove(id);
+        expirationTimes.put(id, now + ttlNanos);
+
+        Iterator<Map.Entry<String, Long>> oldest = expirationTimes.entrySet().iterator();
+        while (oldest.hasNext()) {
+            Map.Entry<String, Long> entry = oldest.next();
+            if (expirationTimes.size() <= maxCapacity && now - entry.getValue() < 0) {
+                break;
+            }
+            oldest.remove();
+        }
+    }
+
+    /**
+     * Forgets the given ID, e.g. because an item for it has since been cached
+     */
+    synchronized void remove(String id) {
+        expirationTimes.remove(id);
+    }
+
+    /**
+     * Forgets every ID
+     */
+    synchronized void clear() {
+        expirationTimes.clear();
+    }
+
+    /**
+     * Returns the number of IDs remembered, including any that have expired but not yet been removed
+     */
+    synchronized int size() {
+        return expirationTimes.size();
+    }
+}
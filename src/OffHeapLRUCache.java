@@ -0,0 +1,419 @@
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * LRU cache that keeps its items outside the Java heap, so that caching a large number of large items does not
+ * lengthen garbage collection pauses.  Items are serialized by a {@link ValueCodec} into direct
+ * {@link ByteBuffer} slabs managed by a {@link SlabAllocator}, and the only per-item data left on the heap is the
+ * index entry mapping each item's ID to its address.  Every hit therefore deserializes a new copy of the item,
+ * which callers must not expect to be the same instance each time.
+ * <p>
+ * The cache is bounded by the bytes of slab memory it may allocate.  Each size class of the allocator keeps its
+ * own LRU list, and when there is no room for a new item the least-recently-used item <em>of the same class</em> is
+ * evicted, since only that frees a slot the item can use.  A class is given another class's slab instead, as
+ * memcached does, when that slab's items are all less recently used than the class's own LRU item, or when the
+ * class has no slab at all; every item in the slab is then evicted and the slab is reassigned.  Items too large for
+ * a slab are returned to the caller but never cached.
+ * <p>
+ * Hits take no lock: the ID is looked up in a concurrent index, the access is recorded in a {@link ReadBuffer}
+ * that is drained into the LRU lists later, and the item's bytes are copied out under an optimistic read of a
+ * {@link StampedLock}, retried under its read lock only if a store or eviction ran at the same time.
+ * Deserialization, like querying the data source on a miss, happens outside any lock.  As with {@link LRUCache},
+ * concurrent misses on the same ID result in a single query of the data source.
+ *
+ * @param <T> concrete type of elements to be stored in the Cache.  Type must implement Cacheable interface
+ *           to ensure they have a unique ID to use as lookup key for the cache (and backing data source)
+ */
+public class OffHeapLRUCache<T extends Cacheable> {
+    static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+    private final DataSource<T> dataSource;
+    private final ValueCodec<T> codec;
+    private final StatsCounter statsCounter;
+    private final SlabAllocator slabs;
+
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    // guards the LRU lists and the allocator; slotLock is also taken, for writing, around changes to the slabs
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final StampedLock slotLock = new StampedLock();
+    private final ReadBuffer<Entry> readBuffer = new ReadBuffer<>();
+    // per size class, the head (most recently used) and tail of its LRU list
+    private final Entry[] lruHeads;
+    private final Entry[] lruTails;
+    // per slab, by index, the head of the list of its entries, so that reclaiming a slab visits only its own items
+    private Entry[] slabMembers = new Entry[0];
+    private long tick;
+    private final Map<String, CompletableFuture<Optional<T>>> loadsInFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new OffHeapLRUCache with the specified backing data source, codec and off-heap capacity
+     * @param dataSource the backing data source to be queried in order to satisfy a {@link #getFromCache(String)}
+     *                   request when a cache miss occurs
+     * @param codec serializes items into, and deserializes them from, off-heap memory
+     * @param maximumBytes maximum number of bytes of off-heap memory to allocate, in 1 MiB slabs; at least 1 MiB
+     * @param recordStats whether to record the statistics reported by {@link #stats()}
+     */
+    public OffHeapLRUCache(DataSource<T> dataSource, ValueCodec<T> codec, long maximumBytes, boolean recordStats) {
+        this(dataSource, codec, maximumBytes, DEFAULT_SLAB_SIZE, recordStats);
+    }
+
+    /**
+     * Constructs a new OffHeapLRUCache with the specified backing data source, codec and off-heap capacity, which
+     * records statistics
+     * @param dataSource the backing data source to be queried in order to satisfy a {@link #getFromCache(String)}
+     *                   request when a cache miss occurs
+     * @param codec serializes items into, and deserializes them from, off-heap memory
+     * @param maximumBytes maximum number of bytes of off-heap memory to allocate, in 1 MiB slabs; at least 1 MiB
+     */
+    public OffHeapLRUCache(DataSource<T> dataSource, ValueCodec<T> codec, long maximumBytes) {
+        this(dataSource, codec, maximumBytes, true);
+    }
+
+    OffHeapLRUCache(DataSource<T> dataSource, ValueCodec<T> codec, long maximumBytes, int slabSize,
+                    boolean recordStats) {
+        Preconditions.checkArgument(dataSource != null, "dataSource cannot be NULL");
+        Preconditions.checkArgument(codec != null, "codec cannot be NULL");
+        this.dataSource = dataSource;
+        this.codec = codec;
+        this.slabs = new SlabAllocator(maximumBytes, slabSize);
+        int sizeClasses = slabs.sizeClassFor(slabs.maxItemSize()) + 1;
+        this.lruHeads = new Entry[sizeClasses];
+        this.lruTails = new Entry[sizeClasses];
+        this.statsCounter = recordStats ? new StatsCounter() : StatsCounter.DISABLED;
+    }
+
+    /**
+     * Retrieves the item mapped to by the specified cacheID, deserializing it from off-heap memory if cached,
+     * otherwise querying the backing data source and caching the result
+     *
+     * @param cachedID unique ID of the item to be retrieved from the cache or, if not in the cache,
+     *                 the underlying data source
+     * @return an Optional containing the retrieved item, or an empty Optional if it is not in the cache and
+     * cannot be retrieved from the backing data source
+     * @throws DataSourceRetrievalException if the desired item is not currently in the cache and
+     * an unrecoverable error occurs while trying to retrieve it from the backing data source
+     */
+    public Optional<T> getFromCache(String cachedID) throws DataSourceRetrievalException {
+        Optional<T> cached = getIfCached(cachedID);
+        if (cached.isPresent()) {
+            statsCounter.recordHit();
+            return cached;
+        }
+        statsCounter.recordMiss();
+
+        CompletableFuture<Optional<T>> newLoad = new CompletableFuture<>();
+        CompletableFuture<Optional<T>> inFlight = loadsInFlight.putIfAbsent(cachedID, newLoad);
+
+        if (inFlight == null) {
+            inFlight = newLoad;
+            try {
+                newLoad.complete(load(cachedID));
+            } catch (Throwable t) {
+                newLoad.completeExceptionally(t);
+            } finally {
+                loadsInFlight.remove(cachedID, newLoad);
+            }
+        }
+
+        return awaitLoad(cachedID, inFlight);
+    }
+
+    /**
+     * Returns a snapshot of the statistics recorded by this cache since it was constructed
+     * @return the cache's statistics, or all zeros if it was constructed with statistics disabled
+     */
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    /**
+     * Returns the number of items currently cached
+     */
+    int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns the number of bytes of off-heap slabs allocated so far
+     */
+    long allocatedBytes() {
+        evictionLock.lock();
+        try {
+            return slabs.allocatedBytes();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private Optional<T> getIfCached(String cachedID) {
+        Entry entry = index.get(cachedID);
+        if (entry == null) {
+            return Optional.empty();
+        }
+
+        byte[] bytes = read(entry);
+        if (bytes == null) {
+            return Optional.empty();
+        }
+        if (readBuffer.offer(entry) == ReadBuffer.FULL && evictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        return Optional.of(codec.decode(ByteBuffer.wrap(bytes)));
+    }
+
+    /**
+     * Copies an entry's bytes out of its slot
+     * @return the bytes, or null if the entry has been removed
+     */
+    private byte[] read(Entry entry) {
+        long stamp = slotLock.tryOptimisticRead();
+        if (stamp != 0) {
+            byte[] bytes;
+            boolean removed;
+            try {
+                bytes = slabs.read(entry.address);
+                removed = entry.removed;
+            } catch (RuntimeException e) {
+                // the slot was freed or reused while being read, which validation is about to report
+                bytes = null;
+                removed = false;
+            }
+            if (slotLock.validate(stamp)) {
+                return removed ? null : bytes;
+            }
+        }
+
+        stamp = slotLock.readLock();
+        try {
+            return entry.removed ? null : slabs.read(entry.address);
+        } finally {
+            slotLock.unlockRead(stamp);
+        }
+    }
+
+    private Optional<T> load(String cachedID) throws DataSourceRetrievalException {
+        // a previous load for this ID may have been published between our cache miss and registering this load
+        Optional<T> cached = getIfCached(cachedID);
+        if (cached.isPresent()) {
+            return cached;
+        }
+
+        long loadStart = statsCounter.loadStartTime();
+        Optional<T> fromDataSource;
+        try {
+            fromDataSource = dataSource.getFromDataSource(cachedID);
+        } catch (DataSourceRetrievalException | RuntimeException e) {
+            statsCounter.recordLoadFailureSince(loadStart);
+            throw e;
+        }
+        statsCounter.recordLoadSuccessSince(loadStart);
+
+        fromDataSource.ifPresent(item -> publish(cachedID, item));
+        return fromDataSource;
+    }
+
+    /**
+     * Serializes the item and stores it off-heap, evicting items of its size class, or reclaiming another class's
+     * slab, until it fits
+     */
+    private void publish(String cachedID, T item) {
+        byte[] bytes = codec.encode(item);
+        if (bytes.length > slabs.maxItemSize()) {
+            return;
+        }
+        int sizeClass = slabs.sizeClassFor(bytes.length);
+
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            long stamp = slotLock.writeLock();
+            try {
+                Entry previous = index.get(cachedID);
+                if (previous != null) {
+                    remove(previous);
+                }
+
+                long address = slabs.store(bytes);
+                while (address < 0 && makeRoom(sizeClass)) {
+                    address = slabs.store(bytes);
+                }
+                if (address < 0) {
+                    return;
+                }
+
+                Entry entry = new Entry(cachedID, address, sizeClass);
+                linkAsHead(entry);
+                linkToSlab(entry);
+                markAccessed(entry);
+                index.put(cachedID, entry);
+            } finally {
+                slotLock.unlockWrite(stamp);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Frees at least one slot of the given size class, either by evicting the class's least-recently-used item or,
+     * if another class has a slab whose items are all less recently used than that, by evicting that slab's items
+     * @return false if nothing could be evicted
+     */
+    private boolean makeRoom(int sizeClass) {
+        Entry tail = lruTails[sizeClass];
+        int victim = slabs.reclaimableSlab(sizeClass, (tail == null) ? Long.MAX_VALUE : tail.accessed);
+        if (victim >= 0) {
+            if (slabMembers[victim] == null) {
+                return false;
+            }
+            while (slabMembers[victim] != null) {
+                evict(slabMembers[victim]);
+            }
+            return true;
+        }
+
+        if (tail == null) {
+            return false;
+        }
+        evict(tail);
+        return true;
+    }
+
+    private void evict(Entry entry) {
+        remove(entry);
+        statsCounter.recordEviction();
+    }
+
+    private void remove(Entry entry) {
+        index.remove(entry.id, entry);
+        unlink(entry);
+        unlinkFromSlab(entry);
+        entry.removed = true;
+        slabs.free(entry.address);
+    }
+
+    private void drainReadBuffer() {
+        readBuffer.drainTo(entry -> {
+            if (!entry.removed) {
+                unlink(entry);
+                linkAsHead(entry);
+                markAccessed(entry);
+            }
+        });
+    }
+
+    private void markAccessed(Entry entry) {
+        entry.accessed = ++tick;
+        slabs.recordAccess(entry.address, entry.accessed);
+    }
+
+    private void linkAsHead(Entry entry) {
+        Entry head = lruHeads[entry.sizeClass];
+        entry.prev = null;
+        entry.next = head;
+        if (head != null) {
+            head.prev = entry;
+        } else {
+            lruTails[entry.sizeClass] = entry;
+        }
+        lruHeads[entry.sizeClass] = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            lruHeads[entry.sizeClass] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        } else {
+            lruTails[entry.sizeClass] = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    private void linkToSlab(Entry entry) {
+        int slab = SlabAllocator.slabIndexOf(entry.address);
+        if (slab >= slabMembers.length) {
+            slabMembers = Arrays.copyOf(slabMembers, slab + 1);
+        }
+        Entry head = slabMembers[slab];
+        entry.slabPrev = null;
+        entry.slabNext = head;
+        if (head != null) {
+            head.slabPrev = entry;
+        }
+        slabMembers[slab] = entry;
+    }
+
+    private void unlinkFromSlab(Entry entry) {
+        if (entry.slabPrev != null) {
+            entry.slabPrev.slabNext = entry.slabNext;
+        } else {
+            slabMembers[SlabAllocator.slabIndexOf(entry.address)] = entry.slabNext;
+        }
+        if (entry.slabNext != null) {
+            entry.slabNext.slabPrev = entry.slabPrev;
+        }
+        entry.slabPrev = null;
+        entry.slabNext = null;
+    }
+
+    private Optional<T> awaitLoad(String cachedID, CompletableFuture<Optional<T>> inFlight) throws DataSourceRetrievalException {
+        try {
+            return inFlight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataSourceRetrievalException("Interrupted while waiting for ID " + cachedID +
+                    " to be retrieved from the data source", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DataSourceRetrievalException) {
+                throw (DataSourceRetrievalException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new DataSourceRetrievalException(cause);
+        }
+    }
+
+    /**
+     * Index entry for a cached item: its slot address, its place in its size class's LRU list and its place among
+     * its slab's entries, which are guarded by the eviction lock
+     */
+    private static class Entry {
+        final String id;
+        final long address;
+        final int sizeClass;
+        Entry prev;
+        Entry next;
+        Entry slabPrev;
+        Entry slabNext;
+        long accessed;
+        // set, with the slot lock held for writing, before the slot is freed
+        boolean removed;
+
+        Entry(String id, long address, int sizeClass) {
+            this.id = id;
+            this.address = address;
+            this.sizeClass = sizeClass;
+        }
+    }
+}
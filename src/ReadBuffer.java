@@ -0,0 +1,104 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Striped, lossy set of bounded ring buffers used to record cache hits, and the lookups sampled for the miss-ratio
+ * curve, without taking the cache's lock.  Each thread is mapped to one stripe, so readers on different threads
+ * rarely touch the same buffer.  Elements are dropped, rather than waiting for space, whenever a stripe is full or
+ * another thread wins the race for the same slot; the recorded accesses are only a hint for the eviction policy, and
+ * the curve an estimate from a sample, so losing some of them is harmless.
+ * <p>
+ * Any number of threads may call {@link #offer(Object)} concurrently, but {@link #drainTo(Consumer)} must only be
+ * called by one thread at a time (i.e. while holding the cache's maintenance lock).
+ *
+ * @param <E> type of elements recorded in the buffer
+ */
+class ReadBuffer<E> {
+    static final int SUCCESS = 0;
+    static final int FULL = 1;
+    static final int FAILED = 2;
+
+    static final int BUFFER_SIZE = 16;
+    private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+    private static final int STRIPE_COUNT = ceilingPowerOfTwo(4 * Runtime.getRuntime().availableProcessors());
+
+    private final Stripe<E>[] stripes;
+
+    @SuppressWarnings("unchecked")
+    ReadBuffer() {
+        stripes = new Stripe[STRIPE_COUNT];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe<>();
+        }
+    }
+
+    /**
+     * Attempts to record an element in the calling thread's stripe
+     * @param e the element to record
+     * @return {@link #SUCCESS} if the element was recorded, {@link #FULL} if the stripe is full and should be
+     * drained, or {@link #FAILED} if the element was dropped due to contention with another thread
+     */
+    int offer(E e) {
+        return stripes[probe() & (stripes.length - 1)].offer(e);
+    }
+
+    /**
+     * Removes all of the currently recorded elements, in the order they were recorded within each stripe, and
+     * passes them to the given consumer
+     * @param consumer receives every drained element
+     */
+    void drainTo(Consumer<E> consumer) {
+        for (Stripe<E> stripe : stripes) {
+            stripe.drainTo(consumer);
+        }
+    }
+
+    private static int probe() {
+        // Fibonacci hashing of the thread's ID, so consecutively created threads land on different stripes
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return 1 << (32 - Integer.numberOfLeadingZeros(Math.max(1, x) - 1));
+    }
+
+    private static class Stripe<E> {
+        private final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(BUFFER_SIZE);
+        private final AtomicLong writeCounter = new AtomicLong();
+        private volatile long readCounter;
+
+        int offer(E e) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+
+            if (tail - head >= BUFFER_SIZE) {
+                return FULL;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                buffer.lazySet((int) (tail & BUFFER_MASK), e);
+                return SUCCESS;
+            }
+            return FAILED;
+        }
+
+        void drainTo(Consumer<E> consumer) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+
+            for (; head < tail; head++) {
+                int index = (int) (head & BUFFER_MASK);
+                E e = buffer.get(index);
+                if (e == null) {
+                    // slot has been claimed but the writer has not stored its element yet; resume from here next time
+                    break;
+                }
+                buffer.lazySet(index, null);
+                consumer.accept(e);
+            }
+            readCounter = head;
+        }
+    }
+}
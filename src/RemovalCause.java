@@ -0,0 +1,34 @@
+/**
+ * The reason an item was removed from an {@link LRUCache}, as passed to its {@link RemovalListener}
+ */
+public enum RemovalCause {
+    /**
+     * The item was evicted to keep the cache within its maximum capacity or weight
+     */
+    SIZE,
+
+    /**
+     * The item was evicted because it expired, a fixed time after it was written or last read
+     */
+    EXPIRED,
+
+    /**
+     * The item was removed by {@link LRUCache#invalidate(String)} or {@link LRUCache#invalidateAll()}, or because a
+     * refresh found that the data source no longer has an item for its ID
+     */
+    EXPLICIT,
+
+    /**
+     * The item was replaced by a newer one for the same ID, by {@link LRUCache#put(Cacheable)} or a refresh
+     */
+    REPLACED;
+
+    /**
+     * Returns whether the cache removed the item of its own accord, rather than because it was told to or the item
+     * was replaced
+     * @return TRUE for {@link #SIZE} and {@link #EXPIRED}
+     */
+    public boolean wasEvicted() {
+        return this == SIZE || this == EXPIRED;
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * Told about every item removed from an {@link LRUCache} (see {@link LRUCacheBuilder#removalListener}), e.g. to
+ * release resources tied to cached items.  Notifications are delivered on an executor, after the cache has let go of
+ * its lock, so a slow listener never delays lookups or evictions; they may therefore arrive after the cache has
+ * moved on, and in a different order from the removals.
+ * @param <T> type of the items being removed
+ */
+public interface RemovalListener<T extends Cacheable> {
+    /**
+     * Called once for each item removed from the cache
+     * @param cachedID unique ID of the item removed
+     * @param item the item removed
+     * @param cause why the item was removed
+     */
+    public void onRemoval(String cachedID, T item, RemovalCause cause);
+}
@@ -0,0 +1,153 @@
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * In-memory cache that splits its capacity across a number of independent {@link LRUCache} segments, each with
+ * its own map, LRU list and lock, so that callers working with different IDs rarely contend with each other.
+ * Every ID is hashed to exactly one segment, and an item is only ever cached in (and evicted from) that segment.
+ * <p>
+ * Eviction is therefore approximate-LRU: when a segment is full, the item evicted is the least-recently-used item
+ * <em>of that segment</em>, which need not be the least-recently-used item of the cache as a whole.  With IDs that
+ * hash evenly, each segment holds close to maxCapacity/segmentCount items (varying by roughly the square root of
+ * that number), so the cache retains approximately the maxCapacity most recently used items overall.  In the worst
+ * case, where all recently used IDs hash to the same segment, the items retained are only the
+ * maxCapacity/segmentCount most recently used ones, i.e. the cache behaves like an LRU cache of that size for
+ * such a working set.  Fewer segments means less drift from global LRU, while more segments means less contention.
+ *
+ * @param <T> concrete type of elements to be stored in the Cache.  Type must implement Cacheable interface
+ *           to ensure they have a unique ID to use as lookup key for the cache (and backing data source)
+ */
+public class SegmentedLRUCache<T extends Cacheable> {
+    private final LRUCache<T>[] segments;
+
+    private static final int DEFAULT_SEGMENT_COUNT = 16;
+
+    /**
+     * Constructs a new SegmentedLRUCache with the specified backing data source, capacity and number of segments
+     * @param dataSource the backing data source to be queried in order to satisfy a {@link #getFromCache(String)}
+     *                   request when a cache miss occurs
+     * @param maxCapacity maximum capacity of the cache as a whole, which is divided as evenly as possible between
+     *                    the segments
+     * @param segmentCount number of independent LRU segments; must be between 1 and maxCapacity
+     * @param recordStats whether to record the statistics reported by {@link #stats()}
+     */
+    @SuppressWarnings("unchecked")
+    public SegmentedLRUCache(DataSource<T> dataSource, int maxCapacity, int segmentCount, boolean recordStats) {
+        Preconditions.checkArgument(segmentCount > 0, "segmentCount must be positive");
+        Preconditions.checkArgument(segmentCount <= maxCapacity,
+                "segmentCount cannot exceed maxCapacity, since every segment needs room for at least one item");
+
+        segments = new LRUCache[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // spread the remainder over the first segments so that capacities sum to exactly maxCapacity
+            int segmentCapacity = maxCapacity / segmentCount + (i < maxCapacity % segmentCount ? 1 : 0);
+            segments[i] = new LRUCache<>(dataSource, segmentCapacity, recordStats);
+        }
+    }
+
+    /**
+     * Constructs a new SegmentedLRUCache with the specified backing data source, capacity and number of segments,
+     * which records statistics
+     * @param dataSource the backing data source to be queried in order to satisfy a {@link #getFromCache(String)}
+     *                   request when a cache miss occurs
+     * @param maxCapacity maximum capacity of the cache as a whole, which is divided as evenly as possible between
+     *                    the segments
+     * @param segmentCount number of independent LRU segments; must be between 1 and maxCapacity
+     */
+    public SegmentedLRUCache(DataSource<T> dataSource, int maxCapacity, int segmentCount) {
+        this(dataSource, maxCapacity, segmentCount, true);
+    }
+
+    /**
+     * Constructs a new SegmentedLRUCache with the specified backing data source and capacity, using 16 segments
+     * (or one per item, if maxCapacity is smaller than that)
+     * @param dataSource the backing data source to be queried in order to satisfy a {@link #getFromCache(String)}
+     *                   request when a cache miss occurs
+     * @param maxCapacity maximum capacity of the cache as a whole
+     */
+    public SegmentedLRUCache(DataSource<T> dataSource, int maxCapacity) {
+        this(dataSource, maxCapacity, Math.min(DEFAULT_SEGMENT_COUNT, maxCapacity));
+    }
+
+    /**
+     * Retrieves the item mapped to by the specified cacheID from the segment that ID hashes to.  Behaves exactly
+     * like {@link LRUCache#getFromCache(String)}, except that only that segment's lock is ever taken
+     *
+     * @param cachedID unique ID of the item to be retrieved from the cache or, if not in the cache,
+     *                 the underlying data source
+     * @return an Optional containing the retrieved item or, if it is not in the cache and cannot be
+     * retrieved from the backing data source, then NULL
+     * @throws DataSourceRetrievalException if the desired item is not currently in the cache and
+     * an unrecoverable error occurs while trying to retrieve it from the backing data source
+     */
+    public Optional<T> getFromCache(String cachedID) throws DataSourceRetrievalException {
+        return segments[segmentIndex(cachedID)].getFromCache(cachedID);
+    }
+
+    /**
+     * Retrieves the items mapped to by each of the specified IDs.  IDs are grouped by the segment they hash to and
+     * each group is retrieved as in {@link LRUCache#getAllFromCache(Collection)}, so the backing data source
+     * receives one batch query per segment that has misses, rather than one for the whole call
+     *
+     * @param cachedIDs unique IDs of the items to be retrieved from the cache or, if not in the cache,
+     *                  the underlying data source.  Duplicates are ignored
+     * @return a Map from ID to item, in the order the IDs were given, containing only those IDs for which an
+     * item was either cached or found in the backing data source
+     * @throws DataSourceRetrievalException if any of the desired items are not currently in the cache and
+     * an unrecoverable error occurs while trying to retrieve them from the backing data source
+     */
+    public Map<String, T> getAllFromCache(Collection<String> cachedIDs) throws DataSourceRetrievalException {
+        Map<Integer, List<String>> idsBySegment = new HashMap<>();
+        for (String cachedID : cachedIDs) {
+            idsBySegment.computeIfAbsent(segmentIndex(cachedID), index -> new ArrayList<>()).add(cachedID);
+        }
+
+        Map<String, T> found = new HashMap<>();
+        for (Map.Entry<Integer, List<String>> segmentIDs : idsBySegment.entrySet()) {
+            found.putAll(segments[segmentIDs.getKey()].getAllFromCache(segmentIDs.getValue()));
+        }
+
+        Map<String, T> result = new LinkedHashMap<>();
+        for (String cachedID : cachedIDs) {
+            T item = found.get(cachedID);
+            if (item != null) {
+                result.put(cachedID, item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the statistics recorded by all of the segments, added together
+     * @return the cache's statistics, or all zeros if it was constructed with statistics disabled
+     */
+    public CacheStats stats() {
+        CacheStats total = CacheStats.EMPTY;
+        for (LRUCache<T> segment : segments) {
+            total = total.plus(segment.stats());
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of independent segments this cache is divided into
+     * @return the segment count
+     */
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    int segmentIndex(String cachedID) {
+        // spread the higher bits downward, as HashMap does, since String hashes often differ only in high bits
+        int h = cachedID.hashCode();
+        h ^= (h >>> 16);
+        return Math.floorMod(h, segments.length);
+    }
+}
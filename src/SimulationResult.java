@@ -0,0 +1,84 @@
+/**
+ * Outcome of replaying a trace through a cache of one eviction policy and capacity, as reported by
+ * {@link CacheSimulator}.  Plotting the miss ratio against the capacity, for each policy, gives its miss-ratio curve.
+ */
+public final class SimulationResult {
+    private final String policy;
+    private final int capacity;
+    private final long requestCount;
+    private final long hitCount;
+    private final long loadCount;
+    private final long elapsedNanos;
+
+    SimulationResult(String policy, int capacity, long requestCount, long hitCount, long loadCount, long elapsedNanos) {
+        this.policy = policy;
+        this.capacity = capacity;
+        this.requestCount = requestCount;
+        this.hitCount = hitCount;
+        this.loadCount = loadCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the name of the eviction policy simulated, e.g. "lru"
+     * @return the policy's name
+     */
+    public String getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the maximum capacity of the cache simulated
+     * @return the capacity, in items
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of lookups replayed, i.e. the number of keys in the trace
+     * @return the request count
+     */
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * Returns the fraction of lookups that were hits, or 1.0 if the trace was empty
+     * @return the hit ratio, between 0.0 and 1.0
+     */
+    public double getHitRatio() {
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    /**
+     * Returns the fraction of lookups that were misses, or 0.0 if the trace was empty
+     * @return the miss ratio, between 0.0 and 1.0
+     */
+    public double getMissRatio() {
+        return 1.0 - getHitRatio();
+    }
+
+    /**
+     * Returns the number of queries the cache made to its {@link DataSource}
+     * @return the load count
+     */
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    /**
+     * Returns the number of lookups replayed per second.  Simulations of a sweep run in parallel, so this is only
+     * comparable between results of the same sweep
+     * @return the throughput, in lookups per second
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0.0 : requestCount * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SimulationResult{policy=" + policy + ", capacity=" + capacity + ", requestCount=" + requestCount +
+                ", hitRatio=" + getHitRatio() + ", loadCount=" + loadCount + ", throughput=" + getThroughput() + "}";
+    }
+}
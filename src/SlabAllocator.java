@@ -0,0 +1,279 @@
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Allocates space for serialized items in direct (off-heap) {@link ByteBuffer} slabs, for {@link OffHeapLRUCache}.
+ * <p>
+ * To limit fragmentation, each slab is carved into equal slots of a single <em>size class</em>, the powers of two
+ * from 64 bytes up to the slab size, and an item is stored in a slot of the smallest class that fits it along with
+ * its 4-byte length.  Space wasted inside a slot is therefore under half its size, and freed slots can always be
+ * reused by items of the same class.  Free slots are chained through their first 4 bytes, so the free lists take
+ * no heap memory.  Once every slot of a slab has been freed, the whole slab returns to a shared pool and can be
+ * reassigned to whichever size class next needs space, so the mix of classes follows the items being cached.
+ * <p>
+ * Slabs are allocated lazily, up to the maximum number of bytes.  An allocation fails, rather than blocking, when
+ * no slot of the needed class is free and no slab is left; the caller is expected to free other items of that
+ * class, or every item in a slab found by {@link #reclaimableSlab}, and retry.  To support that choice the
+ * allocator tracks, per slab, the most recent access to any of its items, as reported by the caller.
+ * <p>
+ * Not thread-safe; the owning cache must hold its lock while calling any method.  The one exception is
+ * {@link #read}, which may be called optimistically while another thread changes the slabs, as long as the caller
+ * then discards the result if there was such a change.
+ */
+class SlabAllocator {
+    private static final int MIN_SLOT_SHIFT = 6;
+    private static final int LENGTH_BYTES = 4;
+    private static final int NO_FREE_SLOT = -1;
+
+    private final int slabSize;
+    private final int maxSlabs;
+    // grown by copying, so that an optimistic reader always sees every slab that was allocated before its address
+    private Slab[] slabs = new Slab[0];
+    private final ArrayDeque<Slab> emptySlabs = new ArrayDeque<>();
+    // per size class, slabs that may have a free slot; entries are checked, and dropped if stale, when polled
+    private final ArrayDeque<Slab>[] availableSlabs;
+
+    /**
+     * @param maximumBytes the maximum number of bytes of slabs to allocate
+     * @param slabSize the size of each slab, which must be a power of two of at least 64 bytes
+     */
+    @SuppressWarnings("unchecked")
+    SlabAllocator(long maximumBytes, int slabSize) {
+        Preconditions.checkArgument(Integer.bitCount(slabSize) == 1 && slabSize >= (1 << MIN_SLOT_SHIFT),
+                "slabSize must be a power of two, of at least 64 bytes");
+        Preconditions.checkArgument(maximumBytes >= slabSize, "maximumBytes must allow for at least one slab");
+        this.slabSize = slabSize;
+        this.maxSlabs = (int) Math.min(maximumBytes / slabSize, Integer.MAX_VALUE);
+
+        int sizeClasses = Integer.numberOfTrailingZeros(slabSize) - MIN_SLOT_SHIFT + 1;
+        availableSlabs = new ArrayDeque[sizeClasses];
+        for (int i = 0; i < sizeClasses; i++) {
+            availableSlabs[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Returns the largest item, in bytes, that can be stored
+     */
+    int maxItemSize() {
+        return slabSize - LENGTH_BYTES;
+    }
+
+    /**
+     * Copies the bytes into a free slot
+     * @param bytes the serialized item, of at most {@link #maxItemSize()} bytes
+     * @return the address of the slot, to be passed to {@link #read} and {@link #free}, or -1 if there is no room
+     */
+    long store(byte[] bytes) {
+        Preconditions.checkArgument(bytes.length <= maxItemSize(), "item is larger than a slab");
+        int sizeClass = sizeClassFor(bytes.length);
+
+        Slab slab = availableSlab(sizeClass);
+        if (slab == null) {
+            return -1;
+        }
+
+        int offset = slab.allocate();
+        ByteBuffer buffer = slab.buffer.duplicate();
+        buffer.position(offset);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+        return ((long) slab.index << 32) | offset;
+    }
+
+    /**
+     * Returns the size class that an item of the given length is stored in
+     * @param length the length of the serialized item, of at most {@link #maxItemSize()} bytes
+     */
+    int sizeClassFor(int length) {
+        return sizeClassOf(length + LENGTH_BYTES);
+    }
+
+    /**
+     * Copies a stored item's bytes back onto the heap
+     * @param address the address returned by {@link #store}
+     * @return the serialized item
+     * @throws IllegalStateException if the slot holds no valid length, which can only happen when it has been
+     * freed or reused by a concurrent change that the caller will detect
+     */
+    byte[] read(long address) {
+        Slab slab = slabs[slabIndexOf(address)];
+        int offset = (int) address;
+        int length = slab.buffer.getInt(offset);
+        if (length < 0 || length > slab.buffer.capacity() - offset - LENGTH_BYTES) {
+            throw new IllegalStateException("Slot at " + address + " does not hold an item");
+        }
+        ByteBuffer buffer = slab.buffer.duplicate();
+        buffer.position(offset + LENGTH_BYTES);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the index of the slab that holds the item at the given address
+     * @param address the address returned by {@link #store}
+     */
+    static int slabIndexOf(long address) {
+        return (int) (address >>> 32);
+    }
+
+    /**
+     * Notes that the item at the given address was accessed, for {@link #reclaimableSlab}
+     * @param address the address returned by {@link #store}
+     * @param tick the caller's logical time of the access, which must never decrease
+     */
+    void recordAccess(long address, long tick) {
+        Slab slab = slabs[slabIndexOf(address)];
+        slab.newestAccess = Math.max(slab.newestAccess, tick);
+    }
+
+    /**
+     * Finds a slab of another size class that could be emptied to give its space to the given class.  Of the
+     * slabs whose items were all last accessed before the given tick, the one holding the fewest items is chosen,
+     * so that reassigning it evicts as little as possible.  A slab's newest access is only ever raised, so it may
+     * be overstated after its most recently used item is freed; such a slab is just passed over for longer.
+     * @param sizeClass the size class that needs a slot
+     * @param olderThan only slabs whose newest access is before this tick are considered
+     * @return the index of the slab, or -1 if there is none
+     */
+    int reclaimableSlab(int sizeClass, long olderThan) {
+        Slab best = null;
+        for (Slab slab : slabs) {
+            if (slab.sizeClass < 0 || slab.sizeClass == sizeClass || slab.newestAccess >= olderThan) {
+                continue;
+            }
+            if (best == null || slab.used < best.used
+                    || (slab.used == best.used && slab.newestAccess < best.newestAccess)) {
+                best = slab;
+            }
+        }
+        return (best == null) ? -1 : best.index;
+    }
+
+    /**
+     * Returns the size class that the given slab is currently assigned to, or -1 if it is empty
+     * @param slabIndex the slab's index, as returned by {@link #slabIndexOf} or {@link #reclaimableSlab}
+     */
+    int sizeClassOfSlab(int slabIndex) {
+        return slabs[slabIndex].sizeClass;
+    }
+
+    /**
+     * Releases a stored item's slot for reuse
+     * @param address the address returned by {@link #store}
+     */
+    void free(long address) {
+        Slab slab = slabs[slabIndexOf(address)];
+        slab.free((int) address);
+
+        if (slab.used == 0) {
+            // left in availableSlabs, if queued there, until polled and found to be stale
+            slab.reset();
+            emptySlabs.push(slab);
+        } else if (slab.queuedClass != slab.sizeClass) {
+            slab.queuedClass = slab.sizeClass;
+            availableSlabs[slab.sizeClass].push(slab);
+        }
+    }
+
+    /**
+     * Returns the number of bytes of slabs allocated so far
+     */
+    long allocatedBytes() {
+        return (long) slabs.length * slabSize;
+    }
+
+    private Slab availableSlab(int sizeClass) {
+        ArrayDeque<Slab> available = availableSlabs[sizeClass];
+        while (!available.isEmpty()) {
+            Slab slab = available.peek();
+            if (slab.sizeClass == sizeClass && slab.hasFreeSlot()) {
+                return slab;
+            }
+            available.pop();
+            if (slab.queuedClass == sizeClass) {
+                slab.queuedClass = -1;
+            }
+        }
+
+        Slab slab = emptySlabs.poll();
+        if (slab == null) {
+            if (slabs.length >= maxSlabs) {
+                return null;
+            }
+            slab = new Slab(slabs.length, ByteBuffer.allocateDirect(slabSize));
+            Slab[] grown = Arrays.copyOf(slabs, slabs.length + 1);
+            grown[slab.index] = slab;
+            slabs = grown;
+        }
+        slab.assign(sizeClass, 1 << (sizeClass + MIN_SLOT_SHIFT));
+        if (slab.queuedClass != sizeClass) {
+            slab.queuedClass = sizeClass;
+            available.push(slab);
+        }
+        return slab;
+    }
+
+    private static int sizeClassOf(int length) {
+        int shift = 32 - Integer.numberOfLeadingZeros(length - 1);
+        return Math.max(0, shift - MIN_SLOT_SHIFT);
+    }
+
+    private static class Slab {
+        final int index;
+        final ByteBuffer buffer;
+        int sizeClass = -1;
+        int slotSize;
+        // offset of the first slot never yet handed out, and head of the chain of freed slots
+        int bump;
+        int freeHead = NO_FREE_SLOT;
+        int used;
+        long newestAccess;
+        // size class whose availableSlabs the slab is queued in, or -1
+        int queuedClass = -1;
+
+        Slab(int index, ByteBuffer buffer) {
+            this.index = index;
+            this.buffer = buffer;
+        }
+
+        void assign(int sizeClass, int slotSize) {
+            this.sizeClass = sizeClass;
+            this.slotSize = slotSize;
+        }
+
+        boolean hasFreeSlot() {
+            return freeHead != NO_FREE_SLOT || bump + slotSize <= buffer.capacity();
+        }
+
+        int allocate() {
+            int offset;
+            if (freeHead != NO_FREE_SLOT) {
+                offset = freeHead;
+                freeHead = buffer.getInt(offset);
+            } else {
+                offset = bump;
+                bump += slotSize;
+            }
+            ++used;
+            return offset;
+        }
+
+        void free(int offset) {
+            buffer.putInt(offset, freeHead);
+            freeHead = offset;
+            --used;
+        }
+
+        void reset() {
+            sizeClass = -1;
+            bump = 0;
+            freeHead = NO_FREE_SLOT;
+            newestAccess = 0;
+        }
+    }
+}
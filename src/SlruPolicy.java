@@ -0,0 +1,115 @@
+import java.util.function.Consumer;
+
+/**
+ * Segmented LRU eviction.  New Nodes start on a <em>probation</em> LRU list, and are promoted to a
+ * <em>protected</em> LRU list (80% of the maximum weight) when read again.  Victims are taken from probation first,
+ * so items only used once, such as those read by a scan, cannot flush out the items that are used repeatedly.  When
+ * the protected list overflows, its least-recently-used Nodes are demoted back to the head of probation.
+ *
+ * @param <T> type of elements held by the cached Nodes
+ */
+class SlruPolicy<T extends Cacheable> implements EvictionPolicy<T> {
+    static final byte PROBATION = 1;
+    static final byte PROTECTED = 2;
+
+    private final DoublyLinkedList<T> probation = new DoublyLinkedList<>();
+    private final DoublyLinkedList<T> protectedList = new DoublyLinkedList<>();
+    private long maxProtectedWeight;
+    private long protectedWeight;
+
+    /**
+     * @param maximumWeight the cache's maximum total weight
+     */
+    SlruPolicy(long maximumWeight) {
+        setMaximumWeight(maximumWeight);
+    }
+
+    /**
+     * Resizes the protected list, which if now over its maximum is shrunk by the next promotion
+     */
+    @Override
+    public void setMaximumWeight(long maximumWeight) {
+        this.maxProtectedWeight = (long) (0.8 * maximumWeight);
+    }
+
+    @Override
+    public boolean contains(DoublyLinkedList.Node<T> node) {
+        return node.region != 0;
+    }
+
+    @Override
+    public void onInsert(DoublyLinkedList.Node<T> node) {
+        node.region = PROBATION;
+        probation.insertAsHead(node);
+    }
+
+    @Override
+    public void onAccess(DoublyLinkedList.Node<T> node) {
+        if (node.region == PROTECTED) {
+            if (protectedList.head != node) {
+                protectedList.remove(node);
+                protectedList.insertAsHead(node);
+            }
+        } else if (node.region == PROBATION) {
+            probation.remove(node);
+            node.region = PROTECTED;
+            protectedList.insertAsHead(node);
+            protectedWeight += node.weight;
+            demoteOverflow();
+        }
+    }
+
+    @Override
+    public void onRemove(DoublyLinkedList.Node<T> node, RemovalCause cause) {
+        if (node.region == PROBATION) {
+            probation.remove(node);
+        } else if (node.region == PROTECTED) {
+            protectedList.remove(node);
+            protectedWeight -= node.weight;
+        }
+        node.region = 0;
+    }
+
+    /**
+     * Adjusts the weight of the protected list if the Node is on it, leaving the Node where it is, and demotes that
+     * list's least-recently-used Nodes if it has grown over its maximum
+     */
+    @Override
+    public void onWeightChanged(DoublyLinkedList.Node<T> node, int oldWeight) {
+        if (node.region == PROTECTED) {
+            protectedWeight += node.weight - oldWeight;
+            demoteOverflow();
+        }
+    }
+
+    @Override
+    public DoublyLinkedList.Node<T> victim() {
+        return (probation.tail != null) ? probation.tail : protectedList.tail;
+    }
+
+    @Override
+    public void forEachHottestFirst(Consumer<DoublyLinkedList.Node<T>> action) {
+        protectedList.forEachFromHead(action);
+        probation.forEachFromHead(action);
+    }
+
+    @Override
+    public void onRestore(DoublyLinkedList.Node<T> node) {
+        // a snapshot doesn't record which Nodes were protected, so every restored Node starts on probation
+        node.region = PROBATION;
+        probation.insertAsTail(node);
+    }
+
+    /**
+     * Demotes the protected list's least-recently-used Nodes to the head of probation until it is within its maximum
+     */
+    private void demoteOverflow() {
+        while (protectedWeight > maxProtectedWeight && protectedList.getSize() > 1) {
+            DoublyLinkedList.Node<T> demoted = protectedList.tail;
+            protectedList.remove(demoted);
+            protectedWeight -= demoted.weight;
+            demoted.region = PROBATION;
+            probation.insertAsHead(demoted);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the statistics reported by {@link LRUCache#stats()}.  Counters are {@link LongAdder}s, so recording
+ * from many threads at once does not contend on shared memory.  When statistics are disabled the cache uses
+ * {@link #DISABLED}, whose methods do nothing, and which does not even read the clock to time loads.
+ */
+class StatsCounter {
+    static final StatsCounter DISABLED = new StatsCounter() {
+        @Override
+        void recordHit() {
+        }
+
+        @Override
+        void recordMiss() {
+        }
+
+        @Override
+        long loadStartTime() {
+            return 0L;
+        }
+
+        @Override
+        void recordLoadSuccess(long loadTime) {
+        }
+
+        @Override
+        void recordLoadSuccessSince(long loadStartTime) {
+        }
+
+        @Override
+        void recordLoadFailure(long loadTime) {
+        }
+
+        @Override
+        void recordLoadFailureSince(long loadStartTime) {
+        }
+
+        @Override
+        void recordEviction() {
+        }
+
+        @Override
+        void recordNegativeHit() {
+        }
+
+        @Override
+        CacheStats snapshot() {
+            return CacheStats.EMPTY;
+        }
+    };
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder negativeHitCount = new LongAdder();
+    private final LoadTimeHistogram loadTimes = new LoadTimeHistogram();
+
+    void recordHit() {
+        hitCount.increment();
+    }
+
+    void recordMiss() {
+        missCount.increment();
+    }
+
+    /**
+     * Returns the time at which a load is starting, to be passed to {@link #recordLoadSuccessSince(long)} or
+     * {@link #recordLoadFailureSince(long)} once it ends
+     */
+    long loadStartTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * @param loadStartTime the time the load started, from {@link #loadStartTime()}
+     */
+    void recordLoadSuccessSince(long loadStartTime) {
+        recordLoadSuccess(System.nanoTime() - loadStartTime);
+    }
+
+    /**
+     * @param loadStartTime the time the failed load started, from {@link #loadStartTime()}
+     */
+    void recordLoadFailureSince(long loadStartTime) {
+        recordLoadFailure(System.nanoTime() - loadStartTime);
+    }
+
+    /**
+     * @param loadTime time spent querying the data source, in nanoseconds
+     */
+    void recordLoadSuccess(long loadTime) {
+        loadSuccessCount.increment();
+        totalLoadTime.add(loadTime);
+        loadTimes.record(loadTime);
+    }
+
+    /**
+     * @param loadTime time spent querying the data source before it failed, in nanoseconds
+     */
+    void recordLoadFailure(long loadTime) {
+        loadFailureCount.increment();
+        totalLoadTime.add(loadTime);
+        loadTimes.record(loadTime);
+    }
+
+    void recordEviction() {
+        evictionCount.increment();
+    }
+
+    void recordNegativeHit() {
+        negativeHitCount.increment();
+    }
+
+    /**
+     * Returns the current values of all counters.  Counters are read one at a time while other threads may be
+     * recording, so the snapshot is not an atomic view across counters
+     */
+    CacheStats snapshot() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(), loadFailureCount.sum(),
+                totalLoadTime.sum(), evictionCount.sum(), negativeHitCount.sum(), loadTimes.snapshot());
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * Source of the current time for a cache with time-based expiry.  Caches use {@link #systemTicker()} unless
+ * another Ticker is provided, which lets tests control the passage of time.
+ */
+public interface Ticker {
+    /**
+     * Returns the number of nanoseconds elapsed since some fixed but arbitrary point in time
+     * @return the current time, in nanoseconds
+     */
+    public long read();
+
+    /**
+     * Returns a Ticker that reads {@link System#nanoTime()}
+     * @return the system Ticker
+     */
+    public static Ticker systemTicker() {
+        return System::nanoTime;
+    }
+}
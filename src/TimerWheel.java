@@ -0,0 +1,160 @@
+/*
+ * This timer wheel, including its bucket counts and spans, is derived from the Caffeine caching library
+ * (https://github.com/ben-manes/caffeine), Copyright Ben Manes, licensed under the Apache License, Version 2.0:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * the specific language governing permissions and limitations under the License.  Modified for this project.
+ */
+
+import java.util.function.Predicate;
+
+/**
+ * Hierarchical timer wheel used to find expired cache entries in amortized O(1) time, rather than by scanning the
+ * whole cache.  Entries are placed in a bucket according to their expiration time, on one of five wheels whose
+ * buckets span roughly 1 second, 1 minute, 1 hour, 0.8 days and 3.3 days respectively.  As time advances, the
+ * buckets that time has passed over are emptied; entries in them that have expired are evicted, and the rest are
+ * moved down to a finer-grained wheel.  An entry is therefore touched at most once per wheel over its lifetime.
+ * <p>
+ * Not thread-safe; must only be used while holding the owning cache's eviction lock.
+ *
+ * @param <T> type of elements held by the scheduled Nodes
+ */
+class TimerWheel<T extends Cacheable> {
+    private static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    private static final long[] SPANS = {
+            1L << 30,   // 1.07s
+            1L << 36,   // 1.14m
+            1L << 42,   // 1.22h
+            1L << 46,   // 0.81d
+            1L << 48,   // 3.26d
+            1L << 48,   // 3.26d
+    };
+    private static final int[] SHIFT = {
+            Long.numberOfTrailingZeros(SPANS[0]),
+            Long.numberOfTrailingZeros(SPANS[1]),
+            Long.numberOfTrailingZeros(SPANS[2]),
+            Long.numberOfTrailingZeros(SPANS[3]),
+            Long.numberOfTrailingZeros(SPANS[4]),
+    };
+
+    private final DoublyLinkedList.Node<T>[][] wheel;
+    private long nanos;
+
+    @SuppressWarnings("unchecked")
+    TimerWheel(long currentTimeNanos) {
+        wheel = new DoublyLinkedList.Node[BUCKETS.length][];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new DoublyLinkedList.Node[BUCKETS[i]];
+            for (int j = 0; j < wheel[i].length; j++) {
+                DoublyLinkedList.Node<T> sentinel = new DoublyLinkedList.Node<>(null);
+                sentinel.prevInWheel = sentinel;
+                sentinel.nextInWheel = sentinel;
+                wheel[i][j] = sentinel;
+            }
+        }
+        nanos = currentTimeNanos;
+    }
+
+    /**
+     * Adds a Node to the wheel, in the bucket for its {@code expirationTime}
+     * @param node a Node that is not currently scheduled
+     */
+    void schedule(DoublyLinkedList.Node<T> node) {
+        DoublyLinkedList.Node<T> sentinel = findBucket(node.expirationTime);
+        node.prevInWheel = sentinel.prevInWheel;
+        node.nextInWheel = sentinel;
+        sentinel.prevInWheel.nextInWheel = node;
+        sentinel.prevInWheel = node;
+    }
+
+    /**
+     * Moves a Node to the bucket for its (updated) {@code expirationTime}, scheduling it if it wasn't already
+     * @param node the Node to reschedule
+     */
+    void reschedule(DoublyLinkedList.Node<T> node) {
+        deschedule(node);
+        schedule(node);
+    }
+
+    /**
+     * Removes a Node from the wheel, if it is scheduled
+     * @param node the Node to remove
+     */
+    void deschedule(DoublyLinkedList.Node<T> node) {
+        if (node.nextInWheel != null) {
+            node.nextInWheel.prevInWheel = node.prevInWheel;
+            node.prevInWheel.nextInWheel = node.nextInWheel;
+            node.nextInWheel = null;
+            node.prevInWheel = null;
+        }
+    }
+
+    /**
+     * Advances the wheel to the given time, offering every Node in the buckets passed over to the evictor.  Nodes
+     * that are not evicted, either because they have not expired yet or because the evictor declined, are
+     * rescheduled according to their {@code expirationTime}
+     *
+     * @param currentTimeNanos the current time, in nanoseconds
+     * @param evictor evicts an expired Node from the cache, returning FALSE if the Node turns out not to have
+     *                expired after all (e.g. because it was read since it was scheduled)
+     */
+    void advance(long currentTimeNanos, Predicate<DoublyLinkedList.Node<T>> evictor) {
+        long previousTimeNanos = nanos;
+        nanos = currentTimeNanos;
+
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previousTimeNanos >>> SHIFT[i];
+            long currentTicks = currentTimeNanos >>> SHIFT[i];
+            long delta = currentTicks - previousTicks;
+            if (delta <= 0L) {
+                // a coarser wheel can only turn once this one has wrapped around
+                break;
+            }
+            expire(i, previousTicks, delta, evictor);
+        }
+    }
+
+    private void expire(int index, long previousTicks, long delta, Predicate<DoublyLinkedList.Node<T>> evictor) {
+        DoublyLinkedList.Node<T>[] timerWheel = wheel[index];
+        int mask = timerWheel.length - 1;
+
+        // include the bucket time was in before advancing, as it may hold entries due before the current time
+        int steps = (int) Math.min(1 + delta, timerWheel.length);
+        int start = (int) (previousTicks & mask);
+        int end = start + steps;
+
+        for (int i = start; i < end; i++) {
+            DoublyLinkedList.Node<T> sentinel = timerWheel[i & mask];
+            DoublyLinkedList.Node<T> node = sentinel.nextInWheel;
+            sentinel.prevInWheel = sentinel;
+            sentinel.nextInWheel = sentinel;
+
+            while (node != sentinel) {
+                DoublyLinkedList.Node<T> next = node.nextInWheel;
+                node.prevInWheel = null;
+                node.nextInWheel = null;
+
+                if ((node.expirationTime - nanos) > 0 || !evictor.test(node)) {
+                    schedule(node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    private DoublyLinkedList.Node<T> findBucket(long time) {
+        long duration = time - nanos;
+        int length = wheel.length - 1;
+        for (int i = 0; i < length; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = time >>> SHIFT[i];
+                int index = (int) (ticks & (wheel[i].length - 1));
+                return wheel[i][index];
+            }
+        }
+        return wheel[length][0];
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Formats of the access traces replayed by {@link CacheSimulator}.  Each line of a trace is turned into one or more
+ * keys, in the order they were accessed.
+ */
+public enum TraceFormat {
+    /**
+     * One key per line, e.g. as logged by a service, or the block numbers of the LIRS traces.  Blank lines and lines
+     * starting with '#' are skipped
+     */
+    PLAIN {
+        @Override
+        void parse(String line, Consumer<String> keys) {
+            String key = line.trim();
+            if (!key.isEmpty() && !key.startsWith("#")) {
+                keys.accept(key);
+            }
+        }
+    },
+
+    /**
+     * The traces published with the ARC paper (Megiddo and Modha), whose lines are "start count ignored
+     * requestNumber": a request for the count consecutive blocks from start
+     */
+    ARC {
+        @Override
+        void parse(String line, Consumer<String> keys) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields.length < 2) {
+                return;
+            }
+            long start = Long.parseLong(fields[0]);
+            int count = Integer.parseInt(fields[1]);
+            for (int i = 0; i < count; i++) {
+                keys.accept(Long.toString(start + i));
+            }
+        }
+    },
+
+    /**
+     * The UMass Trace Repository's storage traces (SPC format, e.g. Financial and WebSearch), whose lines are
+     * "ASU,LBA,Size,Opcode,Timestamp": a request for Size bytes from the 512-byte sector LBA of the application
+     * storage unit ASU.  Each sector touched is a key
+     */
+    UMASS {
+        @Override
+        void parse(String line, Consumer<String> keys) {
+            String[] fields = line.trim().split(",");
+            if (fields.length < 3) {
+                return;
+            }
+            String unit = fields[0].trim();
+            long sector = Long.parseLong(fields[1].trim());
+            long size = Long.parseLong(fields[2].trim());
+            long sectors = Math.max(1, (size + SECTOR_SIZE - 1) / SECTOR_SIZE);
+            for (long i = 0; i < sectors; i++) {
+                keys.accept(unit + ':' + (sector + i));
+            }
+        }
+    };
+
+    private static final int SECTOR_SIZE = 512;
+
+    /**
+     * Turns one line of a trace into the keys it accesses, passing them to the given consumer in order
+     */
+    abstract void parse(String line, Consumer<String> keys);
+
+    /**
+     * Reads every key accessed by a trace file, in order
+     * @param trace the trace file, in this format
+     * @return the keys accessed
+     * @throws IOException if the file cannot be read
+     * @throws NumberFormatException if a line is not in this format
+     */
+    public List<String> read(Path trace) throws IOException {
+        List<String> keys = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(trace, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                parse(line, keys::add);
+            }
+        }
+        return keys;
+    }
+}
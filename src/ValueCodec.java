@@ -0,0 +1,64 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts cached items to and from bytes, so that {@link OffHeapLRUCache} can hold them outside the Java heap.
+ * An item must decode to an equal item with the same {@link Cacheable#getID() ID}.
+ * @param <T> type of the items being converted
+ */
+public interface ValueCodec<T extends Cacheable> {
+    /**
+     * Serializes an item
+     * @param item the item about to be cached
+     * @return the item's serialized form
+     */
+    public byte[] encode(T item);
+
+    /**
+     * Deserializes an item previously serialized by {@link #encode}
+     * @param bytes the serialized form, from its position up to its limit
+     * @return the item
+     */
+    public T decode(ByteBuffer bytes);
+
+    /**
+     * Returns a codec using standard Java serialization, for items that are {@link Serializable}.  Convenient, but
+     * both slower and more verbose than a codec written for the item type
+     * @param <T> type of the items being converted
+     * @return a codec using {@link ObjectOutputStream} and {@link ObjectInputStream}
+     */
+    static <T extends Cacheable & Serializable> ValueCodec<T> serializing() {
+        return new ValueCodec<T>() {
+            @Override
+            public byte[] encode(T item) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                    out.writeObject(item);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return bytes.toByteArray();
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T decode(ByteBuffer bytes) {
+                byte[] array = new byte[bytes.remaining()];
+                bytes.get(array);
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(array))) {
+                    return (T) in.readObject();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalStateException("Cannot deserialize cached item", e);
+                }
+            }
+        };
+    }
+}
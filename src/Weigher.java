@@ -0,0 +1,14 @@
+/**
+ * Calculates the weight of cached items, for caches whose capacity is bounded by total weight rather than by
+ * number of items (see {@link LRUCacheBuilder#maximumWeight(long)}).  The weight of an item is calculated once,
+ * when it is stored, so it must not change while the item is cached.
+ * @param <T> type of the items being weighed
+ */
+public interface Weigher<T extends Cacheable> {
+    /**
+     * Returns the weight of an item, in whatever unit the cache's maximum weight is given in (e.g. bytes)
+     * @param item the item about to be cached
+     * @return the item's weight, which must not be negative
+     */
+    public int weigh(T item);
+}
@@ -0,0 +1,222 @@
+import java.util.function.Consumer;
+
+/**
+ * W-TinyLFU eviction and admission policy, which keeps a higher hit rate than plain LRU on skewed workloads and is
+ * not flushed by one-off scans.  New items enter a small LRU <em>window</em> (1% of the capacity).  Items leaving
+ * the window become candidates for the <em>main</em> region, a segmented LRU made up of a <em>probation</em> list
+ * and a <em>protected</em> list (80% of the main region) that items are promoted to when used again while on
+ * probation.  When the cache is full, the oldest candidate is only admitted to probation if a
+ * {@link FrequencySketch} estimates it has been used more often recently than the main region's victim; otherwise
+ * it is evicted itself.  A scan therefore only ever churns the window and the candidates, leaving the frequently
+ * used items in place.
+ * <p>
+ * Every region is a {@link DoublyLinkedList}, and sizes are measured in the same weight units as the cache.
+ *
+ * @param <T> type of elements held by the cached Nodes
+ */
+class WindowTinyLfu<T extends Cacheable> implements EvictionPolicy<T> {
+    static final byte WINDOW = 1;
+    static final byte PROBATION = 2;
+    static final byte PROTECTED = 3;
+    static final byte CANDIDATE = 4;
+
+    private final DoublyLinkedList<T> window = new DoublyLinkedList<>();
+    // Nodes moved out of the window and not yet judged against the main region, newest first
+    private final DoublyLinkedList<T> candidates = new DoublyLinkedList<>();
+    private final DoublyLinkedList<T> probation = new DoublyLinkedList<>();
+    private final DoublyLinkedList<T> protectedList = new DoublyLinkedList<>();
+    private final FrequencySketch sketch;
+
+    private long maxWindowWeight;
+    private long maxProtectedWeight;
+    private long windowWeight;
+    private long protectedWeight;
+    private long size;
+
+    /**
+     * @param maximumWeight the cache's maximum total weight
+     */
+    WindowTinyLfu(long maximumWeight) {
+        setMaximumWeight(maximumWeight);
+        // the number of items a weighted cache holds is unknown up front, so start small and grow as it fills
+        this.sketch = new FrequencySketch(Math.min(maximumWeight, LRUCache.DEFAULT_MAX_CAPACITY));
+    }
+
+    /**
+     * Resizes the window and the protected list, which if now over their maximum are shrunk by the next insertion
+     * or promotion.  The sketch keeps growing with the number of items, as it does anyway
+     */
+    @Override
+    public void setMaximumWeight(long maximumWeight) {
+        this.maxWindowWeight = Math.max(1, maximumWeight / 100);
+        this.maxProtectedWeight = (long) (0.8 * (maximumWeight - maxWindowWeight));
+    }
+
+    @Override
+    public boolean contains(DoublyLinkedList.Node<T> node) {
+        return node.region != 0;
+    }
+
+    /**
+     * Adds a newly cached Node to the head of the window, moving items that overflow the window to probation
+     * @param node the Node being cached
+     */
+    @Override
+    public void onInsert(DoublyLinkedList.Node<T> node) {
+        sketch.ensureCapacity(++size);
+        sketch.increment(node.getData().getID());
+
+        node.region = WINDOW;
+        window.insertAsHead(node);
+        windowWeight += node.weight;
+        overflowWindow();
+    }
+
+    /**
+     * Records a cache hit on the Node, moving it to the head of its region or promoting it from probation, or from
+     * among the candidates, since being used again shows it is worth keeping
+     * @param node the Node that was read
+     */
+    @Override
+    public void onAccess(DoublyLinkedList.Node<T> node) {
+        sketch.increment(node.getData().getID());
+
+        if (node.region == WINDOW) {
+            moveToHead(window, node);
+        } else if (node.region == PROTECTED) {
+            moveToHead(protectedList, node);
+        } else if (node.region == PROBATION || node.region == CANDIDATE) {
+            (node.region == PROBATION ? probation : candidates).remove(node);
+            node.region = PROTECTED;
+            protectedList.insertAsHead(node);
+            protectedWeight += node.weight;
+            demoteOverflow();
+        }
+    }
+
+    /**
+     * Removes a Node from whichever region holds it
+     * @param node the Node leaving the cache
+     * @param cause why it is leaving
+     */
+    @Override
+    public void onRemove(DoublyLinkedList.Node<T> node, RemovalCause cause) {
+        --size;
+        if (node.region == WINDOW) {
+            window.remove(node);
+            windowWeight -= node.weight;
+        } else if (node.region == PROBATION) {
+            probation.remove(node);
+        } else if (node.region == CANDIDATE) {
+            candidates.remove(node);
+        } else if (node.region == PROTECTED) {
+            protectedList.remove(node);
+            protectedWeight -= node.weight;
+        }
+        node.region = 0;
+    }
+
+    /**
+     * Chooses the Node to evict next.  The oldest candidate is pitted against the least-recently-used Node of the
+     * main region, and whichever has the lower estimated frequency loses; ties go against the candidate, so that a
+     * scan cannot displace items of equal popularity.  A candidate that wins is admitted to probation, leaving the
+     * next candidate to face the next victim.  While the main region is empty, as when the cache first fills up,
+     * the oldest candidate stands in as its victim
+     * @return the Node to evict, which is still held by this policy
+     */
+    @Override
+    public DoublyLinkedList.Node<T> victim() {
+        DoublyLinkedList.Node<T> victim = (probation.tail != null) ? probation.tail : protectedList.tail;
+        DoublyLinkedList.Node<T> candidate = candidates.tail;
+        if (victim == null && candidate != null && candidate.getPrev() != null) {
+            victim = candidate;
+            candidate = candidate.getPrev();
+        }
+
+        if (candidate == null) {
+            return (victim != null) ? victim : window.tail;
+        }
+        if (victim == null) {
+            return candidate;
+        }
+        if (sketch.frequency(candidate.getData().getID()) > sketch.frequency(victim.getData().getID())) {
+            candidates.remove(candidate);
+            candidate.region = PROBATION;
+            probation.insertAsHead(candidate);
+            return victim;
+        }
+        return candidate;
+    }
+
+    @Override
+    public void forEachHottestFirst(Consumer<DoublyLinkedList.Node<T>> action) {
+        window.forEachFromHead(action);
+        protectedList.forEachFromHead(action);
+        candidates.forEachFromHead(action);
+        probation.forEachFromHead(action);
+    }
+
+    /**
+     * Places a restored Node at the tail of probation, bypassing the window and the admission filter, since it was
+     * already admitted before the snapshot was written
+     * @param node the restored Node
+     */
+    @Override
+    public void onRestore(DoublyLinkedList.Node<T> node) {
+        sketch.ensureCapacity(++size);
+        sketch.increment(node.getData().getID());
+        node.region = PROBATION;
+        probation.insertAsTail(node);
+    }
+
+    /**
+     * Adjusts the weight of the Node's region, leaving the Node where it is and its frequency as it was, then moves
+     * any overflow out of the region as an insertion or promotion would
+     * @param node the Node whose weight changed
+     * @param oldWeight the Node's weight before the change
+     */
+    @Override
+    public void onWeightChanged(DoublyLinkedList.Node<T> node, int oldWeight) {
+        if (node.region == WINDOW) {
+            windowWeight += node.weight - oldWeight;
+            overflowWindow();
+        } else if (node.region == PROTECTED) {
+            protectedWeight += node.weight - oldWeight;
+            demoteOverflow();
+        }
+    }
+
+    /**
+     * Moves the window's least-recently-used Nodes to the candidates for the main region, until the window is within
+     * its maximum
+     */
+    private void overflowWindow() {
+        while (windowWeight > maxWindowWeight && window.getSize() > 0) {
+            DoublyLinkedList.Node<T> candidate = window.tail;
+            window.remove(candidate);
+            windowWeight -= candidate.weight;
+            candidate.region = CANDIDATE;
+            candidates.insertAsHead(candidate);
+        }
+    }
+
+    /**
+     * Makes room by demoting the protected region's least-recently-used Nodes back to probation
+     */
+    private void demoteOverflow() {
+        while (protectedWeight > maxProtectedWeight && protectedList.getSize() > 1) {
+            DoublyLinkedList.Node<T> demoted = protectedList.tail;
+            protectedList.remove(demoted);
+            protectedWeight -= demoted.weight;
+            demoted.region = PROBATION;
+            probation.insertAsHead(demoted);
+        }
+    }
+
+    private void moveToHead(DoublyLinkedList<T> list, DoublyLinkedList.Node<T> node) {
+        if (list.head != node) {
+            list.remove(node);
+            list.insertAsHead(node);
+        }
+    }
+}
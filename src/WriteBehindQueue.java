@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * Holds the items put into a write-behind cache until they are written to its {@link DataSink}, in batches, in the
+ * background.  Writes are coalesced per ID: putting an item whose ID is already pending replaces the pending item,
+ * which keeps its place in the queue, so however often an ID is put between flushes, it is written once.
+ * <p>
+ * Batching, flushing and retrying are done by a {@link CoalescingBatcher}: a flush starts once a full batch is
+ * pending, or once the flush interval has passed since the first write after the previous flush, and flushes run on
+ * the cache's executor one at a time, so that an ID's writes reach the sink in order.  If the sink fails, the batch's
+ * items are put back at the front of the queue, unless written again meanwhile, and retried a flush interval later.
+ * <p>
+ * The number of pending IDs, counting those being written, is bounded: once the bound is reached, putting a new ID
+ * blocks until a write completes and makes room, which slows writers down to the rate the sink can take.
+ * Replacing an item that is already pending never blocks.
+ * <p>
+ * Once a batch has been written, its items are handed to a callback, e.g. so that the cache's peers can be told
+ * that the sink now holds them.
+ *
+ * @param <T> type of the items
+ */
+class WriteBehindQueue<T extends Cacheable> {
+    private final CoalescingBatcher<T, DataSinkWriteException> batcher;
+
+    /**
+     * Creates an empty queue
+     * @param sink the store the items are written to
+     * @param batchSize maximum number of items per call to {@link DataSink#writeAll}
+     * @param maxPendingWrites maximum number of IDs waiting to be written
+     * @param flushIntervalNanos maximum time, in nanoseconds, an item waits before its flush starts
+     * @param executor runs the flushes
+     * @param scheduler starts the flushes that are due to the flush interval
+     * @param onWritten called with each batch of items once the sink has written them, on the flushing thread
+     */
+    WriteBehindQueue(DataSink<T> sink, int batchSize, int maxPendingWrites, long flushIntervalNanos,
+                     Executor executor, ScheduledExecutorService scheduler, Consumer<Collection<T>> onWritten) {
+        this.batcher = new CoalescingBatcher<>(batch -> {
+                    List<T> items = new ArrayList<>(batch.values());
+                    sink.writeAll(items);
+                    onWritten.accept(items);
+                }, (pendingItem, newItem) -> newItem, batchSize, maxPendingWrites, flushIntervalNanos, executor,
+                scheduler);
+    }
+
+    /**
+     * Queues an item to be written, replacing any item pending for the same ID
+     * @param item the item put into the cache
+     * @throws InterruptedException if interrupted while waiting for room in the queue
+     */
+    void enqueue(T item) throws InterruptedException {
+        batcher.add(item.getID(), item);
+    }
+
+    /**
+     * Returns the item waiting to be written for the given ID, if any, which is newer than whatever the data
+     * source holds for it
+     */
+    Optional<T> pendingItem(String cachedID) {
+        return Optional.ofNullable(batcher.pendingValue(cachedID));
+    }
+
+    /**
+     * Passes the ID of every item waiting to be written, or being written, to the given action
+     * @param action called once for each ID, while holding the queue's lock
+     */
+    void forEachPendingID(Consumer<String> action) {
+        batcher.forEachPendingID(action);
+    }
+
+    /**
+     * Writes everything pending on the calling thread, waiting for any background flush to finish first
+     * @throws DataSinkWriteException if the sink fails, in which case the failed batch is left pending
+     */
+    void flush() throws DataSinkWriteException {
+        batcher.flush();
+    }
+
+    /**
+     * Returns the number of IDs waiting to be written
+     */
+    int size() {
+        return batcher.size();
+    }
+
+    /**
+     * Returns the number of batches the sink has failed to write
+     */
+    long failedWriteCount() {
+        return batcher.failedBatchCount();
+    }
+}
@@ -0,0 +1,110 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AsyncLRUCacheTests {
+    @Test
+    public void missIsRetrievedOnExecutorAndHitCompletesImmediately() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        testDataSource.addDataItem("5", new TestType(5));
+        TestExecutor executor = new TestExecutor();
+        AsyncLRUCache<TestType> cache = new AsyncLRUCache<>(testDataSource, 10, executor);
+
+        CompletableFuture<Optional<TestType>> miss = cache.getFromCache("5");
+        assertFalse("miss should not be retrieved on the calling thread", miss.isDone());
+        assertEquals(0, testDataSource.getQueryCount());
+
+        executor.runAll();
+        assertEquals(new TestType(5), miss.get().get());
+
+        CompletableFuture<Optional<TestType>> hit = cache.getFromCache("5");
+        assertTrue(hit.isDone());
+        assertEquals(new TestType(5), hit.get().get());
+        assertEquals(1, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void concurrentMissesOnSameIDShareSingleRetrieval() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        testDataSource.addDataItem("5", new TestType(5));
+        TestExecutor executor = new TestExecutor();
+        AsyncLRUCache<TestType> cache = new AsyncLRUCache<>(testDataSource, 10, executor);
+
+        List<CompletableFuture<Optional<TestType>>> misses = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            misses.add(cache.getFromCache("5"));
+        }
+        assertEquals(1, executor.tasks.size());
+
+        executor.runAll();
+        for (CompletableFuture<Optional<TestType>> miss : misses) {
+            assertEquals(new TestType(5), miss.get().get());
+        }
+        assertEquals(1, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void cancellingOneCallersFutureDoesNotAffectOthers() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        testDataSource.addDataItem("5", new TestType(5));
+        TestExecutor executor = new TestExecutor();
+        AsyncLRUCache<TestType> cache = new AsyncLRUCache<>(testDataSource, 10, executor);
+
+        CompletableFuture<Optional<TestType>> cancelled = cache.getFromCache("5");
+        CompletableFuture<Optional<TestType>> other = cache.getFromCache("5");
+        cancelled.cancel(true);
+
+        executor.runAll();
+        assertEquals(new TestType(5), other.get().get());
+    }
+
+    @Test
+    public void dataSourceExceptionCompletesFutureExceptionally() throws Exception {
+        DataSourceRetrievalException failure = new DataSourceRetrievalException("backend unavailable");
+        DataSource<TestType> failingDataSource = id -> {
+            throw failure;
+        };
+        TestExecutor executor = new TestExecutor();
+        AsyncLRUCache<TestType> cache = new AsyncLRUCache<>(failingDataSource, 10, executor);
+
+        CompletableFuture<Optional<TestType>> miss = cache.getFromCache("5");
+        executor.runAll();
+
+        try {
+            miss.get();
+            fail("expected retrieval to fail with a DataSourceRetrievalException");
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+        assertEquals(1, cache.stats().getLoadFailureCount());
+    }
+
+    @Test
+    public void itemMissingFromDataSourceCompletesWithEmptyOptional() throws Exception {
+        AsyncLRUCache<TestType> cache = new AsyncLRUCache<>(new TestDataSource(), 10);
+
+        assertFalse(cache.getFromCache("5").get(5, TimeUnit.SECONDS).isPresent());
+    }
+
+    @Test
+    public void defaultExecutorRetrievesMissesOffTheCallingThread() throws Exception {
+        Thread caller = Thread.currentThread();
+        List<Thread> loaderThreads = new ArrayList<>();
+        DataSource<TestType> recordingDataSource = id -> {
+            loaderThreads.add(Thread.currentThread());
+            return Optional.of(new TestType(Integer.parseInt(id)));
+        };
+        AsyncLRUCache<TestType> cache = new AsyncLRUCache<>(recordingDataSource, 10);
+
+        assertEquals(new TestType(5), cache.getFromCache("5").get(5, TimeUnit.SECONDS).get());
+        assertEquals(1, loaderThreads.size());
+        assertNotSame(caller, loaderThreads.get(0));
+    }
+}
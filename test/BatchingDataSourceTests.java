@@ -0,0 +1,156 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BatchingDataSourceTests {
+    private TestDataSource testDataSource;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService callers;
+
+    @Before
+    public void setUp() {
+        testDataSource = new TestDataSource(true);
+        for (int i = 0; i < 10; i++) {
+            testDataSource.addDataItem(Integer.toString(i), new TestType(i));
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        callers = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void lookupsFromSeveralThreadsAreQueriedInOneBatchOnceItIsFull() throws Exception {
+        BatchingDataSource<TestType> batching = new BatchingDataSource<>(testDataSource,
+                TimeUnit.HOURS.toNanos(1), 4, Runnable::run, scheduler);
+
+        List<Future<Optional<TestType>>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String id = Integer.toString(i);
+            results.add(callers.submit(() -> batching.getFromDataSource(id)));
+        }
+        awaitOpenBatchSize(batching, 3);
+        assertEquals(0, testDataSource.getBatchQueryCount());
+
+        assertEquals(new TestType(3), batching.getFromDataSource("3").get());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(new TestType(i), results.get(i).get(10, TimeUnit.SECONDS).get());
+        }
+        assertEquals(1, testDataSource.getBatchQueryCount());
+        assertEquals(0, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void partialBatchIsQueriedOnceItsWindowRunsOut() throws Exception {
+        BatchingDataSource<TestType> batching = new BatchingDataSource<>(testDataSource,
+                TimeUnit.MILLISECONDS.toNanos(20), 100, Runnable::run, scheduler);
+
+        Future<Optional<TestType>> first = callers.submit(() -> batching.getFromDataSource("1"));
+        assertEquals(new TestType(2), batching.getFromDataSource("2").get());
+        assertEquals(new TestType(1), first.get(10, TimeUnit.SECONDS).get());
+        assertFalse(batching.getFromDataSource("missing").isPresent());
+        assertEquals(2, testDataSource.getBatchQueryCount());
+    }
+
+    @Test
+    public void lookupsOfTheSameIdShareOneEntryInTheBatch() throws Exception {
+        BatchingDataSource<TestType> batching = new BatchingDataSource<>(testDataSource,
+                TimeUnit.HOURS.toNanos(1), 2, Runnable::run, scheduler);
+
+        Future<Optional<TestType>> first = callers.submit(() -> batching.getFromDataSource("1"));
+        awaitOpenBatchSize(batching, 1);
+        Future<Optional<TestType>> second = callers.submit(() -> batching.getFromDataSource("1"));
+        Thread.sleep(50);
+        assertEquals(1, batching.openBatchSize());
+
+        batching.getFromDataSource("2");
+        assertEquals(new TestType(1), first.get(10, TimeUnit.SECONDS).get());
+        assertEquals(new TestType(1), second.get(10, TimeUnit.SECONDS).get());
+        assertEquals(1, testDataSource.getBatchQueryCount());
+    }
+
+    @Test
+    public void failedBatchQueryFailsEveryLookupInTheBatch() throws Exception {
+        DataSource<TestType> failing = new DataSource<TestType>() {
+            @Override
+            public Optional<TestType> getFromDataSource(String ID) {
+                throw new AssertionError("should only be queried in batches");
+            }
+
+            @Override
+            public Map<String, TestType> getAllFromDataSource(Set<String> IDs) throws DataSourceRetrievalException {
+                throw new DataSourceRetrievalException("backend down");
+            }
+        };
+        BatchingDataSource<TestType> batching = new BatchingDataSource<>(failing,
+                TimeUnit.HOURS.toNanos(1), 2, Runnable::run, scheduler);
+
+        Future<Optional<TestType>> first = callers.submit(() -> batching.getFromDataSource("1"));
+        awaitOpenBatchSize(batching, 1);
+        try {
+            batching.getFromDataSource("2");
+            fail("expected the batch query to fail");
+        } catch (DataSourceRetrievalException expected) {
+        }
+        try {
+            first.get(10, TimeUnit.SECONDS);
+            fail("expected the batch query to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DataSourceRetrievalException);
+        }
+    }
+
+    @Test
+    public void concurrentCacheMissesOnDifferentIdsAreQueriedTogether() throws Exception {
+        BatchingDataSource<TestType> batching = new BatchingDataSource<>(testDataSource,
+                TimeUnit.HOURS.toNanos(1), 3, Runnable::run, scheduler);
+        LRUCache<TestType> cache = new LRUCache<>(batching, 10);
+
+        Future<Optional<TestType>> first = callers.submit(() -> cache.getFromCache("1"));
+        Future<Optional<TestType>> second = callers.submit(() -> cache.getFromCache("2"));
+        awaitOpenBatchSize(batching, 2);
+
+        assertEquals(new TestType(3), cache.getFromCache("3").get());
+        assertEquals(new TestType(1), first.get(10, TimeUnit.SECONDS).get());
+        assertEquals(new TestType(2), second.get(10, TimeUnit.SECONDS).get());
+        assertEquals(1, testDataSource.getBatchQueryCount());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void cacheBuiltWithBatchLoadsQueriesMissesInBatches() throws Exception {
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .batchLoads(20, TimeUnit.MILLISECONDS, 100)
+                .build();
+
+        assertEquals(new TestType(1), cache.getFromCache("1").get());
+        assertEquals(1, testDataSource.getBatchQueryCount());
+        assertEquals(0, testDataSource.getQueryCount());
+    }
+
+    private static void awaitOpenBatchSize(BatchingDataSource<?> batching, int size) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (batching.openBatchSize() < size && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(size, batching.openBatchSize());
+    }
+}
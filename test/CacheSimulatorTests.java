@@ -0,0 +1,123 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CacheSimulatorTests {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void plainTraceHasOneKeyPerLineSkippingBlanksAndComments() throws Exception {
+        Path trace = write("# recorded by a service", "a", "", "  b  ", "a");
+        assertEquals(Arrays.asList("a", "b", "a"), TraceFormat.PLAIN.read(trace));
+    }
+
+    @Test
+    public void arcTraceLinesExpandToConsecutiveBlocks() throws Exception {
+        Path trace = write("100 3 0 1", "7 1 0 2");
+        assertEquals(Arrays.asList("100", "101", "102", "7"), TraceFormat.ARC.read(trace));
+    }
+
+    @Test
+    public void umassTraceLinesExpandToTheSectorsOfEachUnitTouched() throws Exception {
+        Path trace = write("0,20941264,8192,w,0.551706", "1,5,512,r,0.6", "1,9,0,r,0.7");
+        List<String> keys = TraceFormat.UMASS.read(trace);
+        assertEquals(18, keys.size());
+        assertEquals("0:20941264", keys.get(0));
+        assertEquals("0:20941279", keys.get(15));
+        assertEquals(Arrays.asList("1:5", "1:9"), keys.subList(16, 18));
+    }
+
+    @Test
+    public void simulationCountsHitsAndLoads() {
+        CacheSimulator simulator = new CacheSimulator(Arrays.asList("a", "b", "a", "c", "b", "a"));
+
+        // a, b, hit a, c evicts b, b evicts a, a evicts c
+        SimulationResult result = simulator.simulate("lru", 2);
+        assertEquals(6, result.getRequestCount());
+        assertEquals(1.0 / 6, result.getHitRatio(), 1e-9);
+        assertEquals(5, result.getLoadCount());
+        assertTrue(result.getThroughput() > 0);
+    }
+
+    @Test
+    public void lruMissRatioNeverRisesWithCapacity() {
+        Random random = new Random(3);
+        List<String> trace = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            // a skewed distribution, so the curve has a shape
+            trace.add(Integer.toString((int) (Math.pow(random.nextDouble(), 3) * 2000)));
+        }
+        CacheSimulator simulator = new CacheSimulator(trace);
+
+        int[] capacities = simulator.defaultCapacities();
+        List<SimulationResult> results = simulator.sweep(Arrays.asList("lru", "arc"), capacities, 4);
+        assertEquals(2 * capacities.length, results.size());
+        for (int i = 1; i < capacities.length; i++) {
+            assertEquals("lru", results.get(i).getPolicy());
+            assertEquals(capacities[i], results.get(i).getCapacity());
+            assertTrue(results.get(i).getMissRatio() <= results.get(i - 1).getMissRatio());
+        }
+        assertEquals("arc", results.get(capacities.length).getPolicy());
+
+        // at the number of distinct keys, only compulsory misses are left
+        SimulationResult largest = results.get(capacities.length - 1);
+        assertEquals(capacities[capacities.length - 1], largest.getLoadCount());
+    }
+
+    @Test
+    public void windowTinyLfuBeatsLruOnAHotSetInterruptedByScans() {
+        Random random = new Random(7);
+        List<String> trace = new ArrayList<>();
+        int scanKey = 1_000_000;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 2_000; i++) {
+                trace.add(Integer.toString(random.nextInt(80)));
+            }
+            // each scan reads twice the capacity's worth of keys that are never read again
+            for (int i = 0; i < 200; i++) {
+                trace.add(Integer.toString(scanKey++));
+            }
+        }
+        CacheSimulator simulator = new CacheSimulator(trace);
+
+        double lru = simulator.simulate("lru", 100).getHitRatio();
+        double windowTinyLfu = simulator.simulate("wtinylfu", 100).getHitRatio();
+        assertTrue("W-TinyLFU " + windowTinyLfu + " should beat LRU " + lru, windowTinyLfu > lru);
+    }
+
+    @Test
+    public void csvHasAHeaderAndOneLinePerResult() {
+        CacheSimulator simulator = new CacheSimulator(Arrays.asList("a", "a"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CacheSimulator.writeCsv(simulator.sweep(CacheSimulator.policies(), new int[] {1, 2}, 2),
+                new PrintStream(out, true));
+
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\\R");
+        assertEquals(1 + 2 * CacheSimulator.policies().size(), lines.length);
+        assertTrue(lines[1].startsWith("lru,1,2,0.500000,0.500000,1,"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownPolicyIsRejected() {
+        new CacheSimulator(Arrays.asList("a")).simulate("mru", 10);
+    }
+
+    private Path write(String... lines) throws Exception {
+        Path trace = folder.newFile().toPath();
+        Files.write(trace, Arrays.asList(lines), StandardCharsets.UTF_8);
+        return trace;
+    }
+}
@@ -0,0 +1,127 @@
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class CacheSnapshotTests {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestDataSource testDataSource;
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        testDataSource = new TestDataSource(true);
+        for (int i = 0; i < 10; i++) {
+            testDataSource.addDataItem(Integer.toString(i), new TestType(i));
+        }
+        file = folder.getRoot().toPath().resolve("cache.snapshot");
+    }
+
+    @Test
+    public void loadSnapshotRestoresItemsInLeastRecentlyUsedOrder() throws Exception {
+        writeSnapshotOfWarmCache(false);
+
+        LRUCache<TestType> restarted = new LRUCache<>(testDataSource, 5);
+        testDataSource.resetQueryCount();
+        assertEquals(5, restarted.loadSnapshot(file));
+        assertEquals(5, restarted.size());
+        assertEquals(1, testDataSource.getBatchQueryCount());
+
+        // item 2 was the least recently used before the restart, so it's still the first to be evicted
+        restarted.getFromCache("6");
+        testDataSource.resetQueryCount();
+        restarted.getFromCache("1");
+        restarted.getFromCache("3");
+        assertEquals(0, testDataSource.getQueryCount());
+        restarted.getFromCache("2");
+        assertEquals(1, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void snapshotWithValuesIsRestoredWithoutQueryingTheDataSource() throws Exception {
+        writeSnapshotOfWarmCache(true);
+
+        LRUCache<TestType> restarted = new LRUCache<>(testDataSource, 5);
+        testDataSource.resetQueryCount();
+        assertEquals(5, restarted.loadSnapshot(file, new TestTypeCodec(8)));
+
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(new TestType(i), restarted.getFromCache(Integer.toString(i)).get());
+        }
+        assertEquals(0, testDataSource.getQueryCount());
+        assertEquals(0, testDataSource.getBatchQueryCount());
+    }
+
+    @Test
+    public void smallerCacheRestoresOnlyTheHottestItems() throws Exception {
+        writeSnapshotOfWarmCache(true);
+
+        LRUCache<TestType> restarted = new LRUCache<>(testDataSource, 3);
+        assertEquals(3, restarted.loadSnapshot(file, new TestTypeCodec(8)));
+
+        testDataSource.resetQueryCount();
+        restarted.getFromCache("1");
+        restarted.getFromCache("5");
+        restarted.getFromCache("4");
+        assertEquals(0, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void prefetchRestoresBatchesInTheBackgroundHottestFirst() throws Exception {
+        writeSnapshotOfWarmCache(false);
+
+        TestExecutor executor = new TestExecutor();
+        LRUCache<TestType> restarted = new LRUCacheBuilder<>(testDataSource).maxCapacity(5).executor(executor).build();
+        testDataSource.resetQueryCount();
+        CompletableFuture<Integer> prefetched = restarted.prefetchSnapshot(file, 2, 1);
+        assertFalse(prefetched.isDone());
+        assertEquals(0, restarted.size());
+
+        // only one batch in flight at a time, so the hottest pair arrives first
+        executor.tasks.poll().run();
+        assertEquals(2, restarted.size());
+        executor.runAll();
+        assertEquals(Integer.valueOf(5), prefetched.get());
+        assertEquals(3, testDataSource.getBatchQueryCount());
+
+        restarted.getFromCache("6");
+        testDataSource.resetQueryCount();
+        restarted.getFromCache("3");
+        assertEquals(0, testDataSource.getQueryCount());
+        restarted.getFromCache("2");
+        assertEquals(1, testDataSource.getQueryCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void loadingAFileThatIsNotASnapshotFails() throws Exception {
+        Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        new LRUCache<>(testDataSource, 5).loadSnapshot(file);
+    }
+
+    /**
+     * Fills a cache with items 1 to 5, then reads item 1 again, so that from most to least recently used the
+     * items are 1, 5, 4, 3, 2, and writes its snapshot
+     */
+    private void writeSnapshotOfWarmCache(boolean withValues) throws Exception {
+        LRUCache<TestType> cache = new LRUCache<>(testDataSource, 5);
+        for (int i = 1; i <= 5; i++) {
+            cache.getFromCache(Integer.toString(i));
+        }
+        cache.getFromCache("1");
+
+        if (withValues) {
+            cache.writeSnapshot(file, new TestTypeCodec(8));
+        } else {
+            cache.writeSnapshot(file);
+        }
+    }
+}
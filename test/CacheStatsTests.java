@@ -0,0 +1,79 @@
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CacheStatsTests {
+    @Test
+    public void loadTimePercentilesAreWithinTwentyFivePercentOfRecordedValues() throws Exception {
+        StatsCounter counter = new StatsCounter();
+        for (long nanos = 1; nanos <= 1000; nanos++) {
+            counter.recordLoadSuccess(nanos * 1000);
+        }
+
+        CacheStats stats = counter.snapshot();
+        assertEquals(1000, stats.getLoadSuccessCount());
+        assertWithinTwentyFivePercent(500_000, stats.getLoadTimePercentile(50));
+        assertWithinTwentyFivePercent(990_000, stats.getLoadTimePercentile(99));
+        assertWithinTwentyFivePercent(1_000_000, stats.getLoadTimePercentile(100));
+        assertEquals(500_500.0, stats.getAverageLoadTime(), 0.001);
+    }
+
+    @Test
+    public void histogramBucketsCoverWholeRangeOfLongWithoutGaps() throws Exception {
+        int previousIndex = LoadTimeHistogram.bucketIndex(0);
+        for (int exponent = 0; exponent < 63; exponent++) {
+            long value = 1L << exponent;
+            int index = LoadTimeHistogram.bucketIndex(value);
+            assertTrue(index >= previousIndex && index <= previousIndex + 4);
+            assertWithinTwentyFivePercent(value, LoadTimeHistogram.bucketMidpoint(index));
+            previousIndex = index;
+        }
+        assertEquals(LoadTimeHistogram.BUCKET_COUNT - 1, LoadTimeHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void plusAddsEveryCount() throws Exception {
+        StatsCounter first = new StatsCounter();
+        first.recordHit();
+        first.recordMiss();
+        first.recordLoadSuccess(100);
+        StatsCounter second = new StatsCounter();
+        second.recordHit();
+        second.recordLoadFailure(300);
+        second.recordEviction();
+
+        CacheStats total = first.snapshot().plus(second.snapshot());
+
+        assertEquals(2, total.getHitCount());
+        assertEquals(1, total.getMissCount());
+        assertEquals(1, total.getLoadSuccessCount());
+        assertEquals(1, total.getLoadFailureCount());
+        assertEquals(400, total.getTotalLoadTime());
+        assertEquals(1, total.getEvictionCount());
+        assertWithinTwentyFivePercent(300, total.getLoadTimePercentile(100));
+    }
+
+    @Test
+    public void loadsAreTimedOnlyWhenStatsAreEnabled() throws Exception {
+        StatsCounter counter = new StatsCounter();
+        long start = counter.loadStartTime();
+        counter.recordLoadSuccessSince(start);
+        counter.recordLoadFailureSince(start);
+        assertEquals(1, counter.snapshot().getLoadSuccessCount());
+        assertEquals(1, counter.snapshot().getLoadFailureCount());
+
+        assertEquals(0, StatsCounter.DISABLED.loadStartTime());
+        StatsCounter.DISABLED.recordLoadSuccessSince(0);
+        assertSame(CacheStats.EMPTY, StatsCounter.DISABLED.snapshot());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void percentileOutsideZeroToHundredIsRejected() throws Exception {
+        CacheStats.EMPTY.getLoadTimePercentile(101);
+    }
+
+    private static void assertWithinTwentyFivePercent(long expected, long actual) {
+        assertTrue("expected " + actual + " to be within 25% of " + expected,
+                Math.abs(actual - expected) <= expected / 4);
+    }
+}
@@ -0,0 +1,327 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CacheWriteTests {
+    private TestDataSource testDataSource;
+    private TestDataSink testDataSink;
+    private TestExecutor executor;
+
+    @Before
+    public void setUp() {
+        testDataSource = new TestDataSource();
+        for (int i = 0; i < 10; i++) {
+            testDataSource.addDataItem(Integer.toString(i), new TestType(i));
+        }
+        testDataSink = new TestDataSink();
+        executor = new TestExecutor();
+    }
+
+    @Test
+    public void putReplacesTheCachedItemWithoutQueryingTheDataSource() throws Exception {
+        LRUCache<TestType> cache = new LRUCache<>(testDataSource, 5);
+        cache.getFromCache("1");
+
+        TestType replacement = new TestType(1);
+        cache.put(replacement);
+        assertSame(replacement, cache.getFromCache("1").get());
+        assertEquals(1, testDataSource.getQueryCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void putOfANewIdEvictsTheLeastRecentlyUsedItem() throws Exception {
+        LRUCache<TestType> cache = new LRUCache<>(testDataSource, 2);
+        cache.getFromCache("1");
+        cache.getFromCache("2");
+
+        cache.put(new TestType(3));
+        assertEquals(2, cache.size());
+        testDataSource.resetQueryCount();
+        cache.getFromCache("3");
+        cache.getFromCache("2");
+        assertEquals(0, testDataSource.getQueryCount());
+        cache.getFromCache("1");
+        assertEquals(1, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void invalidatedItemIsRetrievedAgain() throws Exception {
+        LRUCache<TestType> cache = new LRUCache<>(testDataSource, 5);
+        cache.getFromCache("1");
+        cache.getFromCache("2");
+
+        cache.invalidate("1");
+        cache.invalidate("missing");
+        assertEquals(1, cache.size());
+        cache.getFromCache("1");
+        assertEquals(3, testDataSource.getQueryCount());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        cache.getFromCache("2");
+        assertEquals(4, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void itemLoadedBeforeAnInvalidationIsNotCached() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch invalidated = new CountDownLatch(1);
+        LRUCache<TestType> cache = new LRUCache<>(blockingDataSource(loading, invalidated), 5);
+
+        CompletableFuture<Optional<TestType>> lookup = lookUpAsync(cache, "1");
+        loading.await();
+        TestType stale = testDataSource.valuesToReturn.get("1");
+        testDataSource.addDataItem("1", new TestType(1));
+        cache.invalidate("1");
+        invalidated.countDown();
+
+        assertSame(stale, lookup.get(10, TimeUnit.SECONDS).get());
+        assertEquals(0, cache.size());
+        assertNotSame(stale, cache.getFromCache("1").get());
+    }
+
+    @Test
+    public void concurrentPutsOfAnIdLeaveTheCacheHoldingTheLastItemWritten() throws Exception {
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource).writeThrough(testDataSink).build();
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Void>> writers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            writers.add(CompletableFuture.runAsync(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < 1000; j++) {
+                        cache.put(new TestType(1));
+                    }
+                } catch (InterruptedException | DataSinkWriteException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        start.countDown();
+        for (CompletableFuture<Void> writer : writers) {
+            writer.get(10, TimeUnit.SECONDS);
+        }
+
+        List<TestType> lastBatch = testDataSink.batches.get(testDataSink.batches.size() - 1);
+        assertSame(lastBatch.get(0), cache.getFromCache("1").get());
+    }
+
+    @Test
+    public void writeThroughWritesEachItemBeforeCachingIt() throws Exception {
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource).writeThrough(testDataSink).build();
+
+        TestType item = new TestType(1);
+        cache.put(item);
+        assertEquals(1, testDataSink.batches.size());
+        assertSame(item, testDataSink.batches.get(0).get(0));
+        assertSame(item, cache.getFromCache("1").get());
+    }
+
+    @Test
+    public void failedWriteThroughLeavesTheCacheUnchanged() throws Exception {
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource).writeThrough(testDataSink).build();
+        TestType cached = cache.getFromCache("1").get();
+
+        testDataSink.failures = 1;
+        try {
+            cache.put(new TestType(1));
+            fail("expected the write to fail");
+        } catch (DataSinkWriteException expected) {
+        }
+        assertSame(cached, cache.getFromCache("1").get());
+    }
+
+    @Test
+    public void writeBehindCoalescesWritesAndFlushesFullBatches() throws Exception {
+        LRUCache<TestType> cache = writeBehindCache(5, 2, 10);
+
+        TestType latest = new TestType(1);
+        cache.put(new TestType(1));
+        cache.put(latest);
+        assertTrue(executor.tasks.isEmpty());
+        assertSame(latest, cache.getFromCache("1").get());
+
+        cache.put(new TestType(2));
+        executor.runAll();
+        assertEquals(1, testDataSink.batches.size());
+        assertEquals(2, testDataSink.batches.get(0).size());
+        assertSame(latest, testDataSink.batches.get(0).get(0));
+    }
+
+    @Test
+    public void flushWritesEverythingPendingInBatches() throws Exception {
+        LRUCache<TestType> cache = writeBehindCache(10, 3, 10);
+        for (int i = 0; i < 7; i++) {
+            cache.put(new TestType(i));
+        }
+        executor.tasks.clear();
+
+        cache.flushWrites();
+        int written = 0;
+        for (List<TestType> batch : testDataSink.batches) {
+            assertTrue(batch.size() <= 3);
+            written += batch.size();
+        }
+        assertEquals(7, written);
+    }
+
+    @Test
+    public void evictedItemWaitingToBeWrittenIsReturnedInsteadOfTheDataSourceItem() throws Exception {
+        LRUCache<TestType> cache = writeBehindCache(1, 5, 10);
+
+        TestType unwritten = new TestType(5);
+        cache.put(unwritten);
+        cache.put(new TestType(6));
+        assertEquals(1, cache.size());
+
+        assertSame(unwritten, cache.getFromCache("5").get());
+        assertEquals(0, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void failedBatchStaysQueuedAndIsRetried() throws Exception {
+        LRUCache<TestType> cache = writeBehindCache(5, 5, 10);
+        cache.put(new TestType(1));
+
+        testDataSink.failures = 1;
+        try {
+            cache.flushWrites();
+            fail("expected the write to fail");
+        } catch (DataSinkWriteException expected) {
+        }
+        assertTrue(testDataSink.batches.isEmpty());
+
+        cache.flushWrites();
+        assertEquals(1, testDataSink.batches.size());
+    }
+
+    @Test
+    public void onlyOneBackgroundFlushIsQueuedAtATime() throws Exception {
+        LRUCache<TestType> cache = writeBehindCache(20, 2, 20);
+        for (int i = 0; i < 10; i++) {
+            cache.put(new TestType(i));
+        }
+        assertEquals(1, executor.tasks.size());
+
+        executor.runAll();
+        assertEquals(5, testDataSink.batches.size());
+    }
+
+    @Test
+    public void failedBatchIsRetriedBeforeLaterWrites() throws Exception {
+        LRUCache<TestType> cache = writeBehindCache(10, 2, 10);
+        testDataSink.failures = 1;
+        cache.put(new TestType(1));
+        cache.put(new TestType(2));
+        cache.put(new TestType(3));
+        executor.runAll();
+        assertTrue(testDataSink.batches.isEmpty());
+
+        cache.flushWrites();
+        assertEquals(Arrays.asList(new TestType(1), new TestType(2)), testDataSink.batches.get(0));
+        assertEquals(Arrays.asList(new TestType(3)), testDataSink.batches.get(1));
+    }
+
+    @Test
+    public void putOfANewIdBlocksWhileTheQueueIsFull() throws Exception {
+        LRUCache<TestType> cache = writeBehindCache(10, 2, 2);
+        cache.put(new TestType(1));
+        cache.put(new TestType(2));
+
+        Thread writer = new Thread(() -> {
+            try {
+                cache.put(new TestType(3));
+            } catch (DataSinkWriteException e) {
+                throw new AssertionError(e);
+            }
+        });
+        writer.start();
+        writer.join(200);
+        assertTrue(writer.isAlive());
+
+        // replacing an item that is already queued doesn't need room
+        cache.put(new TestType(1));
+
+        executor.runAll();
+        writer.join(10_000);
+        assertFalse(writer.isAlive());
+        cache.flushWrites();
+        assertEquals(2, testDataSink.batches.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void writeThroughAndWriteBehindCannotBeCombined() {
+        new LRUCacheBuilder<>(testDataSource)
+                .writeThrough(testDataSink)
+                .writeBehind(testDataSink, 1, 1, 1, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Returns a data source that, on each query, counts down the first latch, then waits for the second before
+     * answering from the test data source
+     */
+    private DataSource<TestType> blockingDataSource(CountDownLatch loading, CountDownLatch release) {
+        return ID -> {
+            TestType item = testDataSource.valuesToReturn.get(ID);
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Optional.ofNullable(item);
+        };
+    }
+
+    private static CompletableFuture<Optional<TestType>> lookUpAsync(LRUCache<TestType> cache, String cachedID) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return cache.getFromCache(cachedID);
+            } catch (DataSourceRetrievalException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private LRUCache<TestType> writeBehindCache(int maxCapacity, int batchSize, int maxPendingWrites) {
+        // an hour's flush interval, so only full batches and explicit flushes are written during the test
+        return new LRUCacheBuilder<>(testDataSource)
+                .maxCapacity(maxCapacity)
+                .executor(executor)
+                .writeBehind(testDataSink, batchSize, maxPendingWrites, 1, TimeUnit.HOURS)
+                .build();
+    }
+
+    private static class TestDataSink implements DataSink<TestType> {
+        final List<List<TestType>> batches = new CopyOnWriteArrayList<>();
+        volatile int failures;
+
+        @Override
+        public void write(TestType item) throws DataSinkWriteException {
+            writeAll(Collections.singletonList(item));
+        }
+
+        @Override
+        public void writeAll(Collection<TestType> items) throws DataSinkWriteException {
+            if (failures > 0) {
+                failures--;
+                throw new DataSinkWriteException("failing as requested");
+            }
+            batches.add(new ArrayList<>(items));
+        }
+    }
+}
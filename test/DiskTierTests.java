@@ -0,0 +1,226 @@
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class DiskTierTests {
+    // records of a 1000-byte value plus an 8-byte header and a short ID, so four fit in each segment
+    private static final int SEGMENT_SIZE = 4096;
+    private static final int VALUE_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private TestExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.newFolder("tier").toPath();
+        executor = new TestExecutor();
+    }
+
+    @Test
+    public void takeReturnsAndRemovesThePutItem() throws Exception {
+        DiskTier<TestType> tier = newTier(3 * SEGMENT_SIZE);
+        tier.put(new TestType(1));
+        tier.put(new TestType(2));
+
+        assertEquals(new TestType(1), tier.take("1").get());
+        assertFalse(tier.take("1").isPresent());
+        assertEquals(1, tier.size());
+    }
+
+    @Test
+    public void oldestSegmentIsDroppedWhenTheTierIsFull() throws Exception {
+        DiskTier<TestType> tier = newTier(3 * SEGMENT_SIZE);
+        for (int i = 0; i < 12; i++) {
+            tier.put(new TestType(i));
+        }
+        assertEquals(12, tier.size());
+        assertEquals(3, tier.segmentCount());
+
+        tier.put(new TestType(12));
+        assertEquals(9, tier.size());
+        assertEquals(3, tier.segmentCount());
+        assertFalse(tier.take("0").isPresent());
+        assertFalse(tier.take("3").isPresent());
+        assertEquals(new TestType(4), tier.take("4").get());
+        // the dropped segment's file is reused rather than deleted, so the files never outgrow the maximum size
+        assertEquals(3, segmentFileCount());
+    }
+
+    @Test
+    public void mostlyDeadSegmentIsCompactedInTheBackground() throws Exception {
+        DiskTier<TestType> tier = newTier(3 * SEGMENT_SIZE);
+        for (int i = 0; i < 8; i++) {
+            tier.put(new TestType(i));
+        }
+        tier.take("0");
+        assertTrue(executor.tasks.isEmpty());
+
+        // with half of the first segment dead, its two live records are copied into the active segment
+        tier.take("1");
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+
+        assertEquals(2, tier.segmentCount());
+        assertEquals(3, segmentFileCount());
+        assertEquals(6, tier.size());
+        assertEquals(new TestType(2), tier.take("2").get());
+        assertEquals(new TestType(3), tier.take("3").get());
+        assertEquals(new TestType(7), tier.take("7").get());
+    }
+
+    @Test
+    public void filesStayWithinTheMaximumSizeThroughCompactionAndDrops() throws Exception {
+        DiskTier<TestType> tier = newTier(3 * SEGMENT_SIZE);
+        for (int i = 0; i < 200; i++) {
+            tier.put(new TestType(i));
+            if (i % 2 == 0) {
+                tier.take(Integer.toString(i));
+            }
+            executor.runAll();
+        }
+        assertTrue(segmentFileCount() <= 3);
+        assertEquals(new TestType(199), tier.take("199").get());
+    }
+
+    @Test
+    public void spilledItemCanBeTakenBeforeItIsWritten() throws Exception {
+        DiskTier<TestType> tier = newTier(3 * SEGMENT_SIZE);
+        tier.spill(new TestType(1));
+        assertEquals(1, tier.size());
+
+        assertEquals(new TestType(1), tier.take("1").get());
+        executor.runAll();
+        assertEquals(0, tier.size());
+    }
+
+    @Test
+    public void invalidationCancelsAPendingSpill() throws Exception {
+        DiskTier<TestType> tier = newTier(3 * SEGMENT_SIZE);
+        tier.spill(new TestType(1));
+        tier.invalidate("1");
+        executor.runAll();
+
+        assertFalse(tier.take("1").isPresent());
+    }
+
+    @Test
+    public void invalidationDoesNotWaitForASpillBeingWritten() throws Exception {
+        CountDownLatch encoding = new CountDownLatch(1);
+        CountDownLatch invalidated = new CountDownLatch(1);
+        TestTypeCodec slowCodec = new TestTypeCodec(VALUE_SIZE) {
+            @Override
+            public byte[] encode(TestType item) {
+                encoding.countDown();
+                try {
+                    invalidated.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.encode(item);
+            }
+        };
+        DiskTier<TestType> tier = new DiskTier<>(directory, slowCodec, 3 * SEGMENT_SIZE, SEGMENT_SIZE,
+                task -> new Thread(task).start());
+        tier.spill(new TestType(1));
+        encoding.await();
+
+        CompletableFuture<Void> invalidation = CompletableFuture.runAsync(() -> tier.invalidate("1"));
+        try {
+            invalidation.get(10, TimeUnit.SECONDS);
+        } finally {
+            invalidated.countDown();
+        }
+        assertFalse(tier.take("1").isPresent());
+    }
+
+    @Test
+    public void invalidatedItemIsNotServedFromDiskWhenItsSpillRunsLate() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        testDataSource.addDataItem("1", new TestType(1));
+        testDataSource.addDataItem("2", new TestType(2));
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .maxCapacity(1)
+                .executor(executor)
+                .diskTier(directory, new TestTypeCodec(VALUE_SIZE), 3 * SEGMENT_SIZE)
+                .diskTierSegmentSize(SEGMENT_SIZE)
+                .build();
+        cache.getFromCache("1");
+        // evicts item 1, whose write to disk waits on the executor
+        cache.getFromCache("2");
+
+        TestType updated = new TestType(1);
+        testDataSource.addDataItem("1", updated);
+        cache.invalidate("1");
+        executor.runAll();
+
+        assertSame(updated, cache.getFromCache("1").get());
+    }
+
+    @Test
+    public void segmentFilesFromAPreviousRunAreDeleted() throws Exception {
+        Path stale = Files.createFile(directory.resolve("segment-99.data"));
+        Path unrelated = Files.createFile(directory.resolve("notes.txt"));
+
+        newTier(3 * SEGMENT_SIZE);
+        assertFalse(Files.exists(stale));
+        assertTrue(Files.exists(unrelated));
+    }
+
+    @Test
+    public void cacheServesEvictedItemsFromTheDiskTier() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        for (int i = 0; i < 3; i++) {
+            testDataSource.addDataItem(Integer.toString(i), new TestType(i));
+        }
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .maxCapacity(2)
+                .executor(Runnable::run)
+                .diskTier(directory, new TestTypeCodec(VALUE_SIZE), 3 * SEGMENT_SIZE)
+                .diskTierSegmentSize(SEGMENT_SIZE)
+                .build();
+        for (int i = 0; i < 3; i++) {
+            cache.getFromCache(Integer.toString(i));
+        }
+
+        testDataSource.resetQueryCount();
+        assertEquals(new TestType(0), cache.getFromCache("0").get());
+        assertEquals(0, testDataSource.getQueryCount());
+
+        // promoting item 0 evicted item 1 in turn, which is now on disk as well
+        assertEquals(new TestType(1), cache.getFromCache("1").get());
+        assertEquals(0, testDataSource.getQueryCount());
+        assertFalse(cache.getFromCache("missing").isPresent());
+        assertEquals(1, testDataSource.getQueryCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void diskTierCannotBeCombinedWithExpireAfterWrite() throws Exception {
+        new LRUCacheBuilder<>(new TestDataSource())
+                .diskTier(directory, new TestTypeCodec(VALUE_SIZE), 3 * SEGMENT_SIZE)
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .build();
+    }
+
+    private long segmentFileCount() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private DiskTier<TestType> newTier(long maximumBytes) throws Exception {
+        return new DiskTier<>(directory, new TestTypeCodec(VALUE_SIZE), maximumBytes, SEGMENT_SIZE, executor);
+    }
+}
@@ -53,6 +53,25 @@ public class DoublyLinkedListTests {
         checkThatListIsConsistent(dll, secondNodeAdded, firstNodeAdded, expectedElements);
     }
 
+    @Test
+    public void insertNewTailPutsNewElementsAtTheEndOfListInOrder() throws Exception {
+        DoublyLinkedList<TestType> dll = new DoublyLinkedList<>();
+        DoublyLinkedList.Node<TestType> firstNodeAdded = new DoublyLinkedList.Node<>(new TestType(5));
+        dll.insertAsTail(firstNodeAdded);
+
+        checkThatListIsConsistent(dll, firstNodeAdded, firstNodeAdded, Lists.newArrayList(new TestType(5)));
+
+        DoublyLinkedList.Node<TestType> secondNodeAdded = new DoublyLinkedList.Node<>(new TestType(10));
+        dll.insertAsTail(secondNodeAdded);
+
+        checkThatListIsConsistent(dll, firstNodeAdded, secondNodeAdded,
+                Lists.newArrayList(new TestType(5), new TestType(10)));
+
+        List<TestType> visited = new ArrayList<>();
+        dll.forEachFromHead(node -> visited.add(node.getData()));
+        assertEquals(Lists.newArrayList(new TestType(5), new TestType(10)), visited);
+    }
+
     @Test
     public void removeTailOnEmptyListThrowsNoSuchElementException() throws Exception {
         DoublyLinkedList<Cacheable> dll = new DoublyLinkedList<>();
@@ -296,6 +315,27 @@ public class DoublyLinkedListTests {
         assertNull("expected removed node's next pointer to be NULL", secondNodeAdded.getNext());
     }
 
+    @Test
+    public void containsReflectsWhetherNodeIsCurrentlyLinked() throws Exception {
+        DoublyLinkedList<TestType> dll = new DoublyLinkedList<>();
+        DoublyLinkedList.Node<TestType> firstNodeAdded = new DoublyLinkedList.Node<>(new TestType(5));
+        DoublyLinkedList.Node<TestType> secondNodeAdded = new DoublyLinkedList.Node<>(new TestType(10));
+
+        assertFalse(dll.contains(firstNodeAdded));
+
+        dll.insertAsHead(firstNodeAdded);
+        dll.insertAsHead(secondNodeAdded);
+        assertTrue(dll.contains(firstNodeAdded));
+        assertTrue(dll.contains(secondNodeAdded));
+
+        dll.removeTail();
+        assertFalse(dll.contains(firstNodeAdded));
+        assertTrue(dll.contains(secondNodeAdded));
+
+        dll.remove(secondNodeAdded);
+        assertFalse(dll.contains(secondNodeAdded));
+    }
+
 
     private void checkThatListIsConsistent(DoublyLinkedList<TestType> dll) {
         checkThatListIsConsistent(dll, null, null, null);
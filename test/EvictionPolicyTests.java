@@ -0,0 +1,187 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class EvictionPolicyTests {
+
+    @Test
+    public void lruEvictsTheLeastRecentlyReadNode() throws Exception {
+        EvictionPolicy<TestType> policy = EvictionPolicy.<TestType>lru().create(3);
+        List<DoublyLinkedList.Node<TestType>> nodes = insertNodes(policy, 3);
+
+        policy.onAccess(nodes.get(0));
+        assertSame(nodes.get(1), policy.victim());
+    }
+
+    @Test
+    public void fifoIgnoresReads() throws Exception {
+        EvictionPolicy<TestType> policy = EvictionPolicy.<TestType>fifo().create(3);
+        List<DoublyLinkedList.Node<TestType>> nodes = insertNodes(policy, 3);
+
+        policy.onAccess(nodes.get(0));
+        assertSame(nodes.get(0), policy.victim());
+    }
+
+    @Test
+    public void clockGivesReferencedNodesASecondChance() throws Exception {
+        EvictionPolicy<TestType> policy = EvictionPolicy.<TestType>clock().create(3);
+        List<DoublyLinkedList.Node<TestType>> nodes = insertNodes(policy, 3);
+
+        policy.onAccess(nodes.get(0));
+        policy.onAccess(nodes.get(1));
+        assertSame(nodes.get(2), policy.victim());
+
+        // once every Node has been referenced, the sweep clears the bits and comes back round to the oldest
+        policy.onAccess(nodes.get(2));
+        assertSame(nodes.get(0), policy.victim());
+    }
+
+    @Test
+    public void slruEvictsFromProbationBeforeProtected() throws Exception {
+        EvictionPolicy<TestType> policy = EvictionPolicy.<TestType>slru().create(10);
+        List<DoublyLinkedList.Node<TestType>> nodes = insertNodes(policy, 3);
+
+        // the oldest Node is promoted to protected by a second read, so the next oldest becomes the victim
+        policy.onAccess(nodes.get(0));
+        assertSame(nodes.get(1), policy.victim());
+
+        policy.onRemove(nodes.get(1), RemovalCause.SIZE);
+        policy.onRemove(nodes.get(2), RemovalCause.SIZE);
+        assertFalse(policy.contains(nodes.get(1)));
+        assertSame(nodes.get(0), policy.victim());
+    }
+
+    @Test
+    public void arcReadmitsGhostHitsAsFrequentlyUsed() throws Exception {
+        EvictionPolicy<TestType> policy = EvictionPolicy.<TestType>arc().create(2);
+        List<DoublyLinkedList.Node<TestType>> nodes = insertNodes(policy, 2);
+        policy.onAccess(nodes.get(1));
+        assertSame(nodes.get(0), policy.victim());
+
+        // evicting Node 0 remembers its key, so when it's cached again it goes straight to T2 and grows T1's target
+        policy.onRemove(nodes.get(0), RemovalCause.SIZE);
+        DoublyLinkedList.Node<TestType> readmitted = node(0);
+        policy.onInsert(readmitted);
+        assertTrue(policy.contains(readmitted));
+        assertEquals(ArcPolicy.T2, readmitted.region);
+
+        DoublyLinkedList.Node<TestType> newcomer = node(2);
+        policy.onInsert(newcomer);
+        assertEquals(ArcPolicy.T1, newcomer.region);
+        // T1's target now covers the newcomer, so the least-recently-used Node in T2 is evicted instead
+        assertSame(nodes.get(1), policy.victim());
+    }
+
+    @Test
+    public void arcWeightChangeLeavesTheNodeInPlace() throws Exception {
+        EvictionPolicy<TestType> policy = EvictionPolicy.<TestType>arc().create(10);
+        List<DoublyLinkedList.Node<TestType>> nodes = insertNodes(policy, 3);
+
+        nodes.get(0).weight = 3;
+        policy.onWeightChanged(nodes.get(0), 1);
+        // not a re-reference, so the Node stays in T1 as the next victim
+        assertEquals(ArcPolicy.T1, nodes.get(0).region);
+        assertSame(nodes.get(0), policy.victim());
+    }
+
+    @Test
+    public void arcOnlyRemembersEvictedNodesAsGhosts() throws Exception {
+        EvictionPolicy<TestType> policy = EvictionPolicy.<TestType>arc().create(10);
+        List<DoublyLinkedList.Node<TestType>> nodes = insertNodes(policy, 3);
+        policy.onRemove(nodes.get(0), RemovalCause.EXPLICIT);
+        policy.onRemove(nodes.get(1), RemovalCause.EXPIRED);
+        policy.onRemove(nodes.get(2), RemovalCause.SIZE);
+
+        // only the evicted Node is readmitted as frequently used
+        DoublyLinkedList.Node<TestType> invalidated = node(0);
+        DoublyLinkedList.Node<TestType> expired = node(1);
+        DoublyLinkedList.Node<TestType> evicted = node(2);
+        policy.onInsert(invalidated);
+        policy.onInsert(expired);
+        policy.onInsert(evicted);
+        assertEquals(ArcPolicy.T1, invalidated.region);
+        assertEquals(ArcPolicy.T1, expired.region);
+        assertEquals(ArcPolicy.T2, evicted.region);
+    }
+
+    @Test
+    public void slruWeightChangeKeepsTheNodeProtected() throws Exception {
+        EvictionPolicy<TestType> policy = EvictionPolicy.<TestType>slru().create(10);
+        List<DoublyLinkedList.Node<TestType>> nodes = insertNodes(policy, 3);
+        policy.onAccess(nodes.get(0));
+        policy.onAccess(nodes.get(1));
+
+        nodes.get(1).weight = 2;
+        policy.onWeightChanged(nodes.get(1), 1);
+        assertEquals(SlruPolicy.PROTECTED, nodes.get(1).region);
+        assertSame(nodes.get(2), policy.victim());
+
+        // growing past the protected list's maximum demotes its least-recently-used Node instead
+        nodes.get(1).weight = 8;
+        policy.onWeightChanged(nodes.get(1), 2);
+        assertEquals(SlruPolicy.PROTECTED, nodes.get(1).region);
+        assertEquals(SlruPolicy.PROBATION, nodes.get(0).region);
+    }
+
+    @Test
+    public void reweighedItemKeepsItsPlaceInTheCache() throws Exception {
+        DataSource<TestType> dataSource = id -> Optional.of(new TestType(Integer.parseInt(id)));
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(dataSource)
+                .maximumWeight(100).weigher(item -> item.data < 0 ? 5 : 1)
+                .evictionPolicy(EvictionPolicy.slru()).build();
+        for (int i = 0; i < 3; i++) {
+            cache.getFromCache(Integer.toString(i));
+        }
+        cache.getFromCache("0");
+
+        TestType heavier = new TestType(-1) {
+            @Override
+            public String getID() {
+                return "0";
+            }
+        };
+        cache.put(heavier);
+        assertSame(heavier, cache.getFromCache("0").get());
+        assertEquals(3, cache.size());
+        assertEquals(0, cache.stats().getEvictionCount());
+    }
+
+    @Test
+    public void everyPolicyKeepsTheCacheWithinCapacity() throws Exception {
+        List<EvictionPolicy.Factory<TestType>> factories = Arrays.asList(EvictionPolicy.lru(), EvictionPolicy.fifo(),
+                EvictionPolicy.clock(), EvictionPolicy.slru(), EvictionPolicy.arc(), EvictionPolicy.windowTinyLfu());
+        DataSource<TestType> dataSource = id -> Optional.of(new TestType(Integer.parseInt(id)));
+
+        for (EvictionPolicy.Factory<TestType> factory : factories) {
+            LRUCache<TestType> cache = new LRUCacheBuilder<>(dataSource).maxCapacity(10).evictionPolicy(factory).build();
+            for (int i = 0; i < 200; i++) {
+                String id = Integer.toString(i % 7 == 0 ? 0 : i);
+                assertEquals(Integer.parseInt(id), cache.getFromCache(id).get().data);
+                assertTrue(cache.size() <= 10);
+            }
+            assertEquals(cache.stats().getLoadSuccessCount() - cache.size(), cache.stats().getEvictionCount());
+        }
+    }
+
+    private static List<DoublyLinkedList.Node<TestType>> insertNodes(EvictionPolicy<TestType> policy, int count) {
+        List<DoublyLinkedList.Node<TestType>> nodes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            DoublyLinkedList.Node<TestType> node = node(i);
+            policy.onInsert(node);
+            assertTrue(policy.contains(node));
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    private static DoublyLinkedList.Node<TestType> node(int data) {
+        DoublyLinkedList.Node<TestType> node = new DoublyLinkedList.Node<>(new TestType(data));
+        node.weight = 1;
+        return node;
+    }
+}
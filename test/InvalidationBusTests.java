@@ -0,0 +1,300 @@
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class InvalidationBusTests {
+    private TestDataSource testDataSource;
+    private InMemoryInvalidationTransport network;
+    private List<InvalidationBatch> published;
+
+    @Before
+    public void setUp() {
+        testDataSource = new TestDataSource();
+        for (int i = 0; i < 10; i++) {
+            testDataSource.addDataItem(Integer.toString(i), new TestType(i));
+        }
+        network = new InMemoryInvalidationTransport();
+        published = Collections.synchronizedList(new ArrayList<>());
+        // records every batch sent on the network
+        network.subscribe(published::add);
+    }
+
+    @After
+    public void tearDown() {
+        network.close();
+    }
+
+    @Test
+    public void putInOneCacheDiscardsThePeersCopy() throws Exception {
+        LRUCache<TestType> first = cache(network.newPeer(), 100);
+        LRUCache<TestType> second = cache(network.newPeer(), 100);
+        TestType original = second.getFromCache("1").get();
+
+        TestType replacement = new TestType(1);
+        testDataSource.addDataItem("1", replacement);
+        first.put(replacement);
+        assertSame(original, second.getFromCache("1").get());
+
+        first.flushInvalidations();
+        assertSame(replacement, second.getFromCache("1").get());
+        assertEquals(2, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void writtenBehindPutIsSentAgainOnceTheSinkHasIt() throws Exception {
+        LRUCache<TestType> first = new LRUCacheBuilder<>(testDataSource)
+                .writeBehind(item -> testDataSource.addDataItem(item.getID(), item), 100, 100, 1, TimeUnit.HOURS)
+                .invalidationBus(network.newPeer(), 1, TimeUnit.MINUTES, 100).executor(Runnable::run).build();
+        LRUCache<TestType> second = cache(network.newPeer(), 100);
+        TestType original = second.getFromCache("1").get();
+
+        TestType replacement = new TestType(1);
+        first.put(replacement);
+        first.flushInvalidations();
+        // the sink does not have the replacement yet, so the peer loads the original again, at a later version
+        assertSame(original, second.getFromCache("1").get());
+
+        first.flushWrites();
+        first.flushInvalidations();
+        assertSame(replacement, second.getFromCache("1").get());
+    }
+
+    @Test
+    public void invalidateIsSentToPeersButNotBackToItsSender() throws Exception {
+        LRUCache<TestType> first = cache(network.newPeer(), 100);
+        LRUCache<TestType> second = cache(network.newPeer(), 100);
+        first.getFromCache("1");
+        second.getFromCache("1");
+
+        first.invalidate("1");
+        first.flushInvalidations();
+        assertEquals(0, first.size());
+        assertEquals(0, second.size());
+        assertEquals(1, published.size());
+
+        // applying a peer's invalidation publishes nothing further
+        second.flushInvalidations();
+        assertEquals(1, published.size());
+    }
+
+    @Test
+    public void invalidateAllIsSentToPeers() throws Exception {
+        LRUCache<TestType> first = cache(network.newPeer(), 100);
+        LRUCache<TestType> second = cache(network.newPeer(), 100);
+        second.getFromCache("1");
+        second.getFromCache("2");
+        // the caches' clocks only order changes made within the same millisecond once they have heard from each other
+        Thread.sleep(2);
+
+        first.invalidateAll();
+        first.flushInvalidations();
+        assertEquals(0, second.size());
+        assertEquals(1, published.size());
+        assertTrue(published.get(0).getInvalidateAllVersion() > 0);
+        assertTrue(published.get(0).getVersions().isEmpty());
+    }
+
+    @Test
+    public void changesAreCoalescedAndBatched() throws Exception {
+        LRUCache<TestType> cache = cache(network.newPeer(), 2);
+        cache.invalidate("1");
+        cache.invalidate("1");
+        assertTrue(published.isEmpty());
+
+        // the second ID fills a batch, which is sent straight away
+        cache.invalidate("2");
+        assertEquals(1, published.size());
+        assertEquals(Arrays.asList("1", "2"), new ArrayList<>(published.get(0).getVersions().keySet()));
+
+        for (int i = 3; i < 6; i++) {
+            cache.invalidate(Integer.toString(i));
+        }
+        cache.flushInvalidations();
+        assertEquals(3, published.size());
+        assertEquals(Collections.singleton("5"), published.get(2).getVersions().keySet());
+    }
+
+    @Test
+    public void partialBatchIsSentOnceItsWindowHasPassed() throws Exception {
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .invalidationBus(network.newPeer(), 10, TimeUnit.MILLISECONDS, 100).build();
+        cache.invalidate("1");
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (published.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, published.size());
+    }
+
+    @Test
+    public void lateInvalidationDoesNotDiscardANewerItem() throws Exception {
+        LRUCache<TestType> cache = cache(network.newPeer(), 100);
+        long before = System.currentTimeMillis() << 16;
+        cache.getFromCache("1");
+
+        network.publish(batch("1", before - 1));
+        assertEquals(1, cache.size());
+
+        network.publish(batch("1", (System.currentTimeMillis() + 1) << 16));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void itemLoadedBeforeAnInvalidationThatArrivedDuringTheLoadIsNotCached() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch invalidated = new CountDownLatch(1);
+        DataSource<TestType> slowDataSource = ID -> {
+            loading.countDown();
+            try {
+                invalidated.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return testDataSource.getFromDataSource(ID);
+        };
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(slowDataSource)
+                .invalidationBus(network.newPeer(), 1, TimeUnit.MINUTES, 100).build();
+
+        CompletableFuture<Optional<TestType>> lookup = CompletableFuture.supplyAsync(() -> {
+            try {
+                return cache.getFromCache("1");
+            } catch (DataSourceRetrievalException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        loading.await();
+        network.publish(batch("1", (System.currentTimeMillis() + 1) << 16));
+        invalidated.countDown();
+
+        assertEquals(Optional.of(new TestType(1)), lookup.get(10, TimeUnit.SECONDS));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void failedBatchIsRetried() throws Exception {
+        FailingTransport transport = new FailingTransport();
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .invalidationBus(transport, 1, TimeUnit.MINUTES, 100).executor(Runnable::run).build();
+        cache.invalidate("1");
+
+        transport.failing = true;
+        try {
+            cache.flushInvalidations();
+            fail("expected the transport to fail");
+        } catch (IOException expected) {
+        }
+        transport.failing = false;
+        cache.flushInvalidations();
+        assertEquals(Collections.singleton("1"), transport.sent.get(0).getVersions().keySet());
+    }
+
+    @Test
+    public void batchSurvivesEncoding() throws Exception {
+        Map<String, Long> versions = new LinkedHashMap<>();
+        versions.put("b", 2L);
+        versions.put("a", Long.MAX_VALUE);
+        byte[] bytes = new InvalidationBatch("sender", versions, 7L).toBytes();
+
+        byte[] padded = new byte[bytes.length + 3];
+        System.arraycopy(bytes, 0, padded, 3, bytes.length);
+        InvalidationBatch decoded = InvalidationBatch.fromBytes(padded, 3, bytes.length);
+        assertEquals("sender", decoded.getSenderID());
+        assertEquals(versions, decoded.getVersions());
+        assertEquals(7L, decoded.getInvalidateAllVersion());
+        assertEquals(Arrays.asList("b", "a"), new ArrayList<>(decoded.getVersions().keySet()));
+    }
+
+    @Test(expected = IOException.class)
+    public void bytesThatAreNotABatchAreRejected() throws Exception {
+        InvalidationBatch.fromBytes(new byte[]{1, 2, 3, 4, 5}, 0, 5);
+    }
+
+    @Test
+    public void multicastConnectsCachesOnThisHost() throws Exception {
+        int port = 20_000 + new Random().nextInt(20_000);
+        MulticastInvalidationTransport firstTransport;
+        MulticastInvalidationTransport secondTransport;
+        try {
+            firstTransport = new MulticastInvalidationTransport("239.255.42.99", port);
+            secondTransport = new MulticastInvalidationTransport("239.255.42.99", port);
+        } catch (IOException | RuntimeException e) {
+            Assume.assumeNoException("multicast is not available on the loopback interface", e);
+            return;
+        }
+
+        try {
+            LRUCache<TestType> first = cache(firstTransport, 100);
+            LRUCache<TestType> second = cache(secondTransport, 100);
+            first.getFromCache("1");
+            second.getFromCache("1");
+            second.getFromCache("2");
+
+            // enough IDs to need several datagrams
+            for (int i = 0; i < 10_000; i++) {
+                first.invalidate(String.format("%01000d", i));
+            }
+            first.invalidate("1");
+            first.flushInvalidations();
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (second.size() > 1 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            Assume.assumeTrue("multicast datagrams are not delivered on the loopback interface", second.size() == 1);
+            assertEquals(0, first.size());
+            assertEquals(Optional.of(new TestType(2)), second.getFromCache("2"));
+            assertEquals(3, testDataSource.getQueryCount());
+        } finally {
+            firstTransport.close();
+            secondTransport.close();
+        }
+    }
+
+    private LRUCache<TestType> cache(InvalidationTransport transport, int maxBatchSize) {
+        return new LRUCacheBuilder<>(testDataSource)
+                .invalidationBus(transport, 1, TimeUnit.MINUTES, maxBatchSize).executor(Runnable::run).build();
+    }
+
+    private static InvalidationBatch batch(String cachedID, long version) {
+        return new InvalidationBatch("peer", Collections.singletonMap(cachedID, version));
+    }
+
+    private static class FailingTransport implements InvalidationTransport {
+        final List<InvalidationBatch> sent = new ArrayList<>();
+        volatile boolean failing;
+
+        @Override
+        public void publish(InvalidationBatch batch) throws IOException {
+            if (failing) {
+                throw new IOException("network down");
+            }
+            sent.add(batch);
+        }
+
+        @Override
+        public void subscribe(Consumer<InvalidationBatch> receiver) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
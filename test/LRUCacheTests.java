@@ -1,6 +1,14 @@
 import org.junit.Test;
 
-import static org.junit.Assert.assertEquals;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
 
 public class LRUCacheTests {
     @Test
@@ -118,4 +126,528 @@ public class LRUCacheTests {
         assertEquals(1, testDataSource.getQueryCount());
         assertEquals("5", testDataSource.getLastRetrievedID());
     }
+
+    @Test
+    public void cacheHitsAreServedWhileDataSourceRetrievalIsInProgress() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        testDataSource.addDataItem("5", new TestType(5));
+        testDataSource.addDataItem("10", new TestType(10));
+        CountDownLatch retrievalStarted = new CountDownLatch(1);
+        CountDownLatch releaseRetrieval = new CountDownLatch(1);
+
+        DataSource<TestType> slowDataSource = id -> {
+            if ("10".equals(id)) {
+                retrievalStarted.countDown();
+                awaitUninterruptibly(releaseRetrieval);
+            }
+            return testDataSource.getFromDataSource(id);
+        };
+        LRUCache<TestType> cache = new LRUCache<>(slowDataSource);
+        cache.getFromCache("5");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // start a slow retrieval of '10' and wait until it is blocked inside the data source
+            Future<Optional<TestType>> slowMiss = executor.submit(() -> cache.getFromCache("10"));
+            assertTrue(retrievalStarted.await(5, TimeUnit.SECONDS));
+
+            // a hit on '5' must not have to wait for the retrieval of '10' to complete
+            Future<Optional<TestType>> hit = executor.submit(() -> cache.getFromCache("5"));
+            assertEquals(new TestType(5), hit.get(5, TimeUnit.SECONDS).get());
+            assertFalse(slowMiss.isDone());
+
+            releaseRetrieval.countDown();
+            assertEquals(new TestType(10), slowMiss.get(5, TimeUnit.SECONDS).get());
+        } finally {
+            releaseRetrieval.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrentMissesOnSameIDResultInSingleDataSourceQuery() throws Exception {
+        int threadCount = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+        try {
+            for (int round = 0; round < 20; round++) {
+                TestDataSource testDataSource = new TestDataSource();
+                TestType dataItem = new TestType(round);
+                testDataSource.addDataItem(dataItem.getID(), dataItem);
+                DataSource<TestType> slowDataSource = id -> {
+                    sleepUninterruptibly(20);
+                    return testDataSource.getFromDataSource(id);
+                };
+                LRUCache<TestType> cache = new LRUCache<>(slowDataSource);
+
+                CyclicBarrier startTogether = new CyclicBarrier(threadCount);
+                List<Future<Optional<TestType>>> results = new ArrayList<>();
+                for (int i = 0; i < threadCount; i++) {
+                    results.add(executor.submit(() -> {
+                        startTogether.await();
+                        return cache.getFromCache(dataItem.getID());
+                    }));
+                }
+
+                for (Future<Optional<TestType>> result : results) {
+                    assertEquals(dataItem, result.get(5, TimeUnit.SECONDS).get());
+                }
+                assertEquals(1, testDataSource.getQueryCount());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrentMissesOnSameIDAllReceiveDataSourceException() throws Exception {
+        int threadCount = 8;
+        AtomicInteger queryCount = new AtomicInteger();
+        DataSourceRetrievalException failure = new DataSourceRetrievalException("backend unavailable");
+        DataSource<TestType> failingDataSource = id -> {
+            queryCount.incrementAndGet();
+            sleepUninterruptibly(50);
+            throw failure;
+        };
+        LRUCache<TestType> cache = new LRUCache<>(failingDataSource);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            CyclicBarrier startTogether = new CyclicBarrier(threadCount);
+            List<Future<Optional<TestType>>> results = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                results.add(executor.submit(() -> {
+                    startTogether.await();
+                    return cache.getFromCache("5");
+                }));
+            }
+
+            for (Future<Optional<TestType>> result : results) {
+                try {
+                    result.get(5, TimeUnit.SECONDS);
+                    fail("expected retrieval to fail with a DataSourceRetrievalException");
+                } catch (ExecutionException e) {
+                    assertSame(failure, e.getCause());
+                }
+            }
+            assertEquals(1, queryCount.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrentHitsStillLeaveLeastRecentlyUsedItemToBeEvicted() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        for (int i = 0; i <= 10; i++) {
+            testDataSource.addDataItem(Integer.toString(i), new TestType(i));
+        }
+        LRUCache<TestType> cache = new LRUCache<>(testDataSource, 10);
+        for (int i = 0; i < 10; i++) {
+            cache.getFromCache(Integer.toString(i));
+        }
+
+        // hammer items 1-9 from several threads, enough to fill and drain the read buffers many times over
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                readers.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        assertEquals(new TestType(1 + i % 9), cache.getFromCache(Integer.toString(1 + i % 9)).get());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> reader : readers) {
+                reader.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(10, testDataSource.getQueryCount());
+
+        // item 0 was never read again, so it is the one evicted to make room for item 10
+        cache.getFromCache("10");
+        testDataSource.resetQueryCount();
+        cache.getFromCache("0");
+        assertEquals(1, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void statsReportHitsMissesLoadsAndEvictions() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        testDataSource.addDataItem("5", new TestType(5));
+        testDataSource.addDataItem("10", new TestType(10));
+        testDataSource.addDataItem("15", new TestType(15));
+        LRUCache<TestType> cache = new LRUCache<>(testDataSource, 2);
+
+        cache.getFromCache("5");
+        cache.getFromCache("10");
+        cache.getFromCache("5");
+        cache.getFromCache("15");
+        cache.getFromCache("20");
+
+        CacheStats stats = cache.stats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(4, stats.getMissCount());
+        assertEquals(0.2, stats.getHitRate(), 0.0001);
+        assertEquals(4, stats.getLoadSuccessCount());
+        assertEquals(0, stats.getLoadFailureCount());
+        assertEquals(1, stats.getEvictionCount());
+        assertTrue(stats.getTotalLoadTime() > 0);
+    }
+
+    @Test
+    public void statsCountDataSourceExceptionsAsLoadFailures() throws Exception {
+        DataSource<TestType> failingDataSource = id -> {
+            throw new DataSourceRetrievalException("backend unavailable");
+        };
+        LRUCache<TestType> cache = new LRUCache<>(failingDataSource);
+
+        try {
+            cache.getFromCache("5");
+            fail("expected retrieval to fail with a DataSourceRetrievalException");
+        } catch (DataSourceRetrievalException expected) {
+        }
+
+        CacheStats stats = cache.stats();
+        assertEquals(1, stats.getMissCount());
+        assertEquals(0, stats.getLoadSuccessCount());
+        assertEquals(1, stats.getLoadFailureCount());
+    }
+
+    @Test
+    public void statsAreAllZeroWhenRecordingIsDisabled() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        testDataSource.addDataItem("5", new TestType(5));
+        LRUCache<TestType> cache = new LRUCache<>(testDataSource, 1, false);
+
+        cache.getFromCache("5");
+        cache.getFromCache("5");
+        cache.getFromCache("10");
+
+        CacheStats stats = cache.stats();
+        assertEquals(0, stats.getRequestCount());
+        assertEquals(0, stats.getLoadSuccessCount());
+        assertEquals(0, stats.getLoadTimePercentile(99));
+    }
+
+    @Test
+    public void getAllReturnsHitsAndLoadsAllMissesWithSingleBatchQuery() throws Exception {
+        TestDataSource testDataSource = new TestDataSource(true);
+        for (int i = 0; i < 10; i++) {
+            testDataSource.addDataItem(Integer.toString(i), new TestType(i));
+        }
+        LRUCache<TestType> cache = new LRUCache<>(testDataSource);
+        cache.getFromCache("1");
+        cache.getFromCache("2");
+        testDataSource.resetQueryCount();
+
+        Map<String, TestType> result = cache.getAllFromCache(Arrays.asList("3", "1", "4", "42", "2", "3", "5"));
+
+        // items come back in the requested order, without duplicates or the unknown ID '42'
+        assertEquals(Arrays.asList("3", "1", "4", "2", "5"), new ArrayList<>(result.keySet()));
+        assertEquals(new TestType(4), result.get("4"));
+        assertEquals(1, testDataSource.getBatchQueryCount());
+        assertEquals(0, testDataSource.getQueryCount());
+
+        // the loaded items are now cached
+        assertEquals(new TestType(5), cache.getFromCache("5").get());
+        assertEquals(1, testDataSource.getBatchQueryCount());
+        assertEquals(0, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void getAllFallsBackToOneQueryPerMissForDataSourceWithoutBatchSupport() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        for (int i = 0; i < 5; i++) {
+            testDataSource.addDataItem(Integer.toString(i), new TestType(i));
+        }
+        LRUCache<TestType> cache = new LRUCache<>(testDataSource);
+        cache.getFromCache("0");
+
+        Map<String, TestType> result = cache.getAllFromCache(Arrays.asList("0", "1", "2"));
+
+        assertEquals(3, result.size());
+        assertEquals(3, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void getAllEvictsLeastRecentlyUsedItemsToMakeRoomForLoadedItems() throws Exception {
+        TestDataSource testDataSource = new TestDataSource(true);
+        for (int i = 0; i < 5; i++) {
+            testDataSource.addDataItem(Integer.toString(i), new TestType(i));
+        }
+        LRUCache<TestType> cache = new LRUCache<>(testDataSource, 3);
+        cache.getFromCache("0");
+        cache.getFromCache("1");
+        cache.getFromCache("2");
+        cache.getFromCache("0");
+
+        cache.getAllFromCache(Arrays.asList("3", "4"));
+        assertEquals(2, cache.stats().getEvictionCount());
+
+        // '0' was used most recently before the batch, so it survives while '1' and '2' are evicted
+        testDataSource.resetQueryCount();
+        cache.getFromCache("0");
+        assertEquals(0, testDataSource.getQueryCount());
+        cache.getFromCache("1");
+        assertEquals(1, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void getAllPropagatesDataSourceException() throws Exception {
+        DataSourceRetrievalException failure = new DataSourceRetrievalException("backend unavailable");
+        DataSource<TestType> failingDataSource = id -> {
+            throw failure;
+        };
+        LRUCache<TestType> cache = new LRUCache<>(failingDataSource);
+
+        try {
+            cache.getAllFromCache(Arrays.asList("1", "2"));
+            fail("expected retrieval to fail with a DataSourceRetrievalException");
+        } catch (DataSourceRetrievalException e) {
+            assertSame(failure, e);
+        }
+        assertEquals(1, cache.stats().getLoadFailureCount());
+    }
+
+    @Test
+    public void itemIsRetrievedAgainOnceExpiredAfterWrite() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        testDataSource.addDataItem("5", new TestType(5));
+        TestTicker ticker = new TestTicker();
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .expireAfterWrite(10, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .build();
+
+        cache.getFromCache("5");
+        ticker.advance(9, TimeUnit.SECONDS);
+        cache.getFromCache("5");
+        assertEquals(1, testDataSource.getQueryCount());
+
+        // reading the item does not extend its lifetime
+        ticker.advance(1, TimeUnit.SECONDS);
+        cache.getFromCache("5");
+        assertEquals(2, testDataSource.getQueryCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void itemExpiresAfterAccessOnlyOnceNotReadForExpiryDuration() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        testDataSource.addDataItem("5", new TestType(5));
+        TestTicker ticker = new TestTicker();
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .expireAfterAccess(10, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .build();
+
+        cache.getFromCache("5");
+        for (int i = 0; i < 5; i++) {
+            ticker.advance(9, TimeUnit.SECONDS);
+            cache.getFromCache("5");
+        }
+        assertEquals(1, testDataSource.getQueryCount());
+
+        ticker.advance(10, TimeUnit.SECONDS);
+        cache.getFromCache("5");
+        assertEquals(2, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void expiredItemsAreReclaimedWithoutBeingLookedUpAgain() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        for (int i = 0; i <= 100; i++) {
+            testDataSource.addDataItem(Integer.toString(i), new TestType(i));
+        }
+        TestTicker ticker = new TestTicker();
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .ticker(ticker)
+                .build();
+
+        for (int i = 0; i < 100; i++) {
+            cache.getFromCache(Integer.toString(i));
+        }
+        assertEquals(100, cache.size());
+
+        // loading an unrelated item advances the timer wheel, which reclaims everything that has expired
+        ticker.advance(2, TimeUnit.MINUTES);
+        cache.getFromCache("100");
+        assertEquals(1, cache.size());
+        assertEquals(100, cache.stats().getEvictionCount());
+    }
+
+    @Test
+    public void builderWithoutOptionsBehavesLikeConstructor() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        testDataSource.addDataItem("5", new TestType(5));
+        testDataSource.addDataItem("10", new TestType(10));
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource).maxCapacity(1).build();
+
+        cache.getFromCache("5");
+        cache.getFromCache("10");
+        cache.getFromCache("5");
+        assertEquals(3, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void itemPastRefreshThresholdIsReturnedImmediatelyAndReplacedInBackground() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        testDataSource.addDataItem("5", new TestType(5));
+        TestTicker ticker = new TestTicker();
+        TestExecutor executor = new TestExecutor();
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .refreshAfterWrite(10, TimeUnit.SECONDS)
+                .executor(executor)
+                .ticker(ticker)
+                .build();
+
+        cache.getFromCache("5");
+        ticker.advance(10, TimeUnit.SECONDS);
+        testDataSource.addDataItem("5", new TestType(6));
+
+        // the stale item is returned straight away, with a single refresh queued however many lookups there are
+        assertEquals(new TestType(5), cache.getFromCache("5").get());
+        assertEquals(new TestType(5), cache.getFromCache("5").get());
+        assertEquals(1, executor.tasks.size());
+        assertEquals(1, testDataSource.getQueryCount());
+
+        executor.runAll();
+        assertEquals(2, testDataSource.getQueryCount());
+        assertEquals(new TestType(6), cache.getFromCache("5").get());
+
+        // the refresh reset the item's age
+        assertTrue(executor.tasks.isEmpty());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void failedRefreshKeepsCurrentItemAndIsRetriedOnNextLookup() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        testDataSource.addDataItem("5", new TestType(5));
+        boolean[] failing = {false};
+        DataSource<TestType> flakyDataSource = id -> {
+            if (failing[0]) {
+                throw new DataSourceRetrievalException("backend unavailable");
+            }
+            return testDataSource.getFromDataSource(id);
+        };
+        TestTicker ticker = new TestTicker();
+        TestExecutor executor = new TestExecutor();
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(flakyDataSource)
+                .refreshAfterWrite(10, TimeUnit.SECONDS)
+                .executor(executor)
+                .ticker(ticker)
+                .build();
+
+        cache.getFromCache("5");
+        ticker.advance(10, TimeUnit.SECONDS);
+        failing[0] = true;
+        cache.getFromCache("5");
+        executor.runAll();
+        assertEquals(1, cache.stats().getLoadFailureCount());
+
+        failing[0] = false;
+        testDataSource.addDataItem("5", new TestType(6));
+        assertEquals(new TestType(5), cache.getFromCache("5").get());
+        executor.runAll();
+        assertEquals(new TestType(6), cache.getFromCache("5").get());
+    }
+
+    @Test
+    public void refreshRemovesItemThatNoLongerExistsInDataSource() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        testDataSource.addDataItem("5", new TestType(5));
+        TestTicker ticker = new TestTicker();
+        TestExecutor executor = new TestExecutor();
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .refreshAfterWrite(10, TimeUnit.SECONDS)
+                .executor(executor)
+                .ticker(ticker)
+                .build();
+
+        cache.getFromCache("5");
+        ticker.advance(10, TimeUnit.SECONDS);
+        testDataSource.valuesToReturn.remove("5");
+        cache.getFromCache("5");
+        executor.runAll();
+
+        assertEquals(0, cache.size());
+        assertFalse(cache.getFromCache("5").isPresent());
+    }
+
+    @Test
+    public void weightedCacheEvictsLeastRecentlyUsedItemsUntilNewItemFits() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        for (int i = 1; i <= 10; i++) {
+            testDataSource.addDataItem(Integer.toString(i), new TestType(i));
+        }
+        // each item weighs its own value
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .maximumWeight(10)
+                .weigher(item -> item.data)
+                .build();
+
+        cache.getFromCache("2");
+        cache.getFromCache("3");
+        cache.getFromCache("4");
+        assertEquals(9, cache.weightedSize());
+        assertEquals(0, cache.stats().getEvictionCount());
+
+        // '5' only fits once both '2' and '3' have been evicted
+        cache.getFromCache("5");
+        assertEquals(9, cache.weightedSize());
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.stats().getEvictionCount());
+
+        testDataSource.resetQueryCount();
+        cache.getFromCache("4");
+        cache.getFromCache("5");
+        assertEquals(0, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void itemHeavierThanMaximumWeightIsReturnedButNotCached() throws Exception {
+        TestDataSource testDataSource = new TestDataSource();
+        testDataSource.addDataItem("2", new TestType(2));
+        testDataSource.addDataItem("20", new TestType(20));
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .maximumWeight(10)
+                .weigher(item -> item.data)
+                .build();
+        cache.getFromCache("2");
+
+        assertEquals(new TestType(20), cache.getFromCache("20").get());
+        assertEquals(new TestType(20), cache.getFromCache("20").get());
+        assertEquals(3, testDataSource.getQueryCount());
+
+        // nothing was evicted in a futile attempt to make room
+        assertEquals(2, cache.weightedSize());
+        assertEquals(0, cache.stats().getEvictionCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void maximumWeightWithoutWeigherIsRejected() throws Exception {
+        new LRUCacheBuilder<>(new TestDataSource()).maximumWeight(10).build();
+    }
+
+    private static void sleepUninterruptibly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
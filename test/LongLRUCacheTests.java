@@ -0,0 +1,94 @@
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LongLRUCacheTests {
+    private final AtomicInteger queryCount = new AtomicInteger();
+    private final LongDataSource<String> dataSource = id -> {
+        queryCount.incrementAndGet();
+        return id < 0 ? Optional.empty() : Optional.of("item" + id);
+    };
+
+    @Test
+    public void missLoadsFromDataSourceAndHitDoesNot() throws Exception {
+        LongLRUCache<String> cache = new LongLRUCache<>(dataSource, 10);
+
+        assertEquals("item42", cache.getFromCache(42));
+        assertEquals("item42", cache.getFromCache(42));
+        assertEquals(1, queryCount.get());
+        assertEquals(1, cache.stats().getHitCount());
+        assertEquals(1, cache.stats().getMissCount());
+    }
+
+    @Test
+    public void missingItemReturnsNullAndIsNotCached() throws Exception {
+        LongLRUCache<String> cache = new LongLRUCache<>(dataSource, 10);
+
+        assertNull(cache.getFromCache(-1));
+        assertNull(cache.getIfPresent(-1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void getIfPresentDoesNotQueryTheDataSource() throws Exception {
+        LongLRUCache<String> cache = new LongLRUCache<>(dataSource, 10);
+
+        assertNull(cache.getIfPresent(7));
+        assertEquals(0, queryCount.get());
+        cache.getFromCache(7);
+        assertEquals("item7", cache.getIfPresent(7));
+    }
+
+    @Test
+    public void leastRecentlyUsedItemIsEvicted() throws Exception {
+        LongLRUCache<String> cache = new LongLRUCache<>(dataSource, 3);
+        cache.getFromCache(1);
+        cache.getFromCache(2);
+        cache.getFromCache(3);
+        cache.getFromCache(1);
+
+        cache.getFromCache(4);
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.stats().getEvictionCount());
+        assertNull(cache.getIfPresent(2));
+        assertEquals("item1", cache.getIfPresent(1));
+        assertEquals("item3", cache.getIfPresent(3));
+        assertEquals("item4", cache.getIfPresent(4));
+    }
+
+    @Test
+    public void matchesAnAccessOrderedLinkedHashMapUnderRandomChurn() throws Exception {
+        // colliding and sequential IDs exercise the probe sequences and the back-shifting on deletion
+        int capacity = 64;
+        LongLRUCache<String> cache = new LongLRUCache<>(dataSource, capacity);
+        Map<Long, String> model = new LinkedHashMap<Long, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                return size() > capacity;
+            }
+        };
+
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            long id = (random.nextBoolean() ? random.nextInt(100) : random.nextInt(100) * 1024L);
+            String expected = model.get(id);
+            assertEquals(expected, cache.getIfPresent(id));
+            if (expected == null) {
+                assertEquals("item" + id, cache.getFromCache(id));
+                model.put(id, "item" + id);
+            }
+            assertEquals(model.size(), cache.size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructionFailsWithNonPositiveCapacity() throws Exception {
+        new LongLRUCache<>(dataSource, 0);
+    }
+}
@@ -0,0 +1,181 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class MissRatioCurveTests {
+    @Test
+    public void curveIsExactForLruWhenEveryLookupIsSampled() {
+        MissRatioCurveEstimator estimator = new MissRatioCurveEstimator(16);
+        for (String id : Arrays.asList("a", "b", "a", "c", "b", "a")) {
+            assertTrue(estimator.isSampled(id));
+            estimator.record(id);
+        }
+
+        // reuse distances: a 1, b 2, a 2
+        MissRatioCurve curve = estimator.snapshot();
+        assertEquals(6, curve.getSampleCount());
+        assertEquals(0.0, curve.getHitRatio(1), 1e-9);
+        assertEquals(1.0 / 6, curve.getHitRatio(2), 1e-9);
+        assertEquals(0.5, curve.getHitRatio(3), 1e-9);
+        assertEquals(0.5, curve.getMissRatio(16), 1e-9);
+        assertEquals(3, curve.capacityForHitRatio(0.5));
+        assertEquals(-1, curve.capacityForHitRatio(0.6));
+    }
+
+    @Test
+    public void emptyCurveHasNoHitsAndNoCapacity() {
+        MissRatioCurve curve = new MissRatioCurveEstimator(100).snapshot();
+        assertEquals(0, curve.getSampleCount());
+        assertEquals(0.0, curve.getHitRatio(100), 1e-9);
+        assertEquals(-1, curve.capacityForHitRatio(0.1));
+    }
+
+    @Test
+    public void curveMatchesSimulatedLruHitRatio() {
+        assertCurveMatchesSimulation(skewedTrace(50_000, 2_000), 2_000, new int[]{100, 500, 1000, 2000}, 0.02);
+    }
+
+    @Test
+    public void sampledCurveApproximatesSimulatedLruHitRatio() {
+        // about one ID in 12 is sampled
+        assertCurveMatchesSimulation(skewedTrace(200_000, 50_000), 50_000, new int[]{1000, 10_000, 50_000}, 0.05);
+    }
+
+    @Test
+    public void cacheReportsItsCurve() throws Exception {
+        TestDataSource dataSource = new TestDataSource();
+        for (int i = 0; i < 10; i++) {
+            dataSource.addDataItem(Integer.toString(i), new TestType(i));
+        }
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(dataSource).missRatioCurve(100).build();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 10; i++) {
+                cache.getFromCache(Integer.toString(i));
+            }
+        }
+
+        MissRatioCurve curve = cache.missRatioCurve();
+        assertEquals(100, curve.getSampleCount());
+        assertEquals(0.0, curve.getHitRatio(9), 1e-9);
+        assertEquals(0.9, curve.getHitRatio(10), 1e-9);
+        assertEquals(10, curve.capacityForHitRatio(0.9));
+    }
+
+    @Test
+    public void lookupsSampledOnManyThreadsAreReplayedIntoTheCurve() throws Exception {
+        TestDataSource dataSource = dataSource(100);
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(dataSource).missRatioCurve(100).build();
+        int threads = 8;
+        int lookupsPerThread = 10_000;
+        List<Thread> readers = new ArrayList<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int t = 0; t < threads; t++) {
+            Thread reader = new Thread(() -> {
+                try {
+                    for (int i = 0; i < lookupsPerThread; i++) {
+                        cache.getFromCache(Integer.toString(i % 100));
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+        // lookups dropped by a contended buffer are missing from the sample, but none is counted twice
+        MissRatioCurve curve = cache.missRatioCurve();
+        assertTrue(curve.getSampleCount() > 0);
+        assertTrue(curve.getSampleCount() <= (long) threads * lookupsPerThread);
+        assertEquals(1.0, curve.getHitRatio(100), 0.01);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void curveIsUnavailableUnlessEnabled() {
+        new LRUCacheBuilder<>(new TestDataSource()).build().missRatioCurve();
+    }
+
+    @Test
+    public void adaptiveCapacityShrinksToTheWorkingSet() throws Exception {
+        TestDataSource dataSource = dataSource(1000);
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(dataSource)
+                .maxCapacity(1000).adaptiveCapacity(0.9, 10, 1000).build();
+        for (int i = 0; i < 1000; i++) {
+            cache.getFromCache(Integer.toString(i));
+        }
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.getFromCache(Integer.toString(i));
+            }
+        }
+        // replays the lookups still buffered, the last of which is due a capacity review
+        cache.missRatioCurve();
+
+        assertEquals(50, cache.getMaximumWeight());
+        assertTrue(cache.size() <= 50);
+    }
+
+    @Test
+    public void adaptiveCapacityGrowsWithinItsBounds() throws Exception {
+        TestDataSource dataSource = dataSource(1000);
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(dataSource)
+                .maxCapacity(100).adaptiveCapacity(0.95, 100, 300).build();
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 1000; i++) {
+                cache.getFromCache(Integer.toString(i));
+            }
+        }
+
+        // a scan of 1000 IDs never hits below a capacity of 1000, so the cache grows as far as it may
+        assertEquals(300, cache.getMaximumWeight());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void maxCapacityMustBeWithinTheAdaptiveBounds() {
+        new LRUCacheBuilder<>(new TestDataSource()).maxCapacity(1000).adaptiveCapacity(0.9, 10, 500).build();
+    }
+
+    private static void assertCurveMatchesSimulation(List<String> trace, int maxEstimatedCapacity, int[] capacities,
+                                                     double tolerance) {
+        MissRatioCurveEstimator estimator = new MissRatioCurveEstimator(maxEstimatedCapacity);
+        for (String id : trace) {
+            if (estimator.isSampled(id)) {
+                estimator.record(id);
+            }
+        }
+        MissRatioCurve curve = estimator.snapshot();
+
+        CacheSimulator simulator = new CacheSimulator(trace);
+        for (int capacity : capacities) {
+            assertEquals("capacity " + capacity, simulator.simulate("lru", capacity).getHitRatio(),
+                    curve.getHitRatio(capacity), tolerance);
+        }
+    }
+
+    private static List<String> skewedTrace(int length, int distinctIDs) {
+        Random random = new Random(7);
+        List<String> trace = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            trace.add(Integer.toString((int) (Math.pow(random.nextDouble(), 3) * distinctIDs)));
+        }
+        return trace;
+    }
+
+    private static TestDataSource dataSource(int size) {
+        TestDataSource dataSource = new TestDataSource();
+        for (int i = 0; i < size; i++) {
+            dataSource.addDataItem(Integer.toString(i), new TestType(i));
+        }
+        return dataSource;
+    }
+}
@@ -0,0 +1,209 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class NegativeCachingTests {
+    private TestDataSource testDataSource;
+    private TestTicker ticker;
+
+    @Before
+    public void setUp() {
+        testDataSource = new TestDataSource(true);
+        for (int i = 0; i < 100; i++) {
+            testDataSource.addDataItem(Integer.toString(i), new TestType(i));
+        }
+        ticker = new TestTicker();
+    }
+
+    @Test
+    public void absentIdIsNotQueriedAgainUntilItsTimeToLiveHasPassed() throws Exception {
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .negativeCaching(10, 1, TimeUnit.MINUTES).ticker(ticker).build();
+
+        assertFalse(cache.getFromCache("missing").isPresent());
+        assertFalse(cache.getFromCache("missing").isPresent());
+        assertEquals(1, testDataSource.getQueryCount());
+        assertEquals(2, cache.stats().getMissCount());
+        assertEquals(1, cache.stats().getNegativeHitCount());
+        assertEquals(0, cache.size());
+
+        ticker.advance(1, TimeUnit.MINUTES);
+        assertFalse(cache.getFromCache("missing").isPresent());
+        assertEquals(2, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void oldestAbsentIdIsForgottenOnceCapacityIsReached() throws Exception {
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .negativeCaching(2, 1, TimeUnit.MINUTES).ticker(ticker).build();
+        cache.getFromCache("a");
+        cache.getFromCache("b");
+        cache.getFromCache("c");
+
+        testDataSource.resetQueryCount();
+        cache.getFromCache("c");
+        cache.getFromCache("b");
+        assertEquals(0, testDataSource.getQueryCount());
+        cache.getFromCache("a");
+        assertEquals(1, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void batchLookupRemembersAndSkipsAbsentIds() throws Exception {
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .negativeCaching(10, 1, TimeUnit.MINUTES).ticker(ticker).build();
+
+        assertEquals(1, cache.getAllFromCache(Arrays.asList("1", "missing")).size());
+        testDataSource.resetQueryCount();
+        assertEquals(1, cache.getAllFromCache(Arrays.asList("1", "missing", "missing")).size());
+        assertEquals(0, testDataSource.getBatchQueryCount());
+        assertEquals(1, cache.stats().getNegativeHitCount());
+    }
+
+    @Test
+    public void absentIdFoundByALoadThatRacedAnInvalidationIsNotRemembered() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch invalidated = new CountDownLatch(1);
+        DataSource<TestType> slowDataSource = ID -> {
+            Optional<TestType> item = testDataSource.getFromDataSource(ID);
+            loading.countDown();
+            try {
+                invalidated.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return item;
+        };
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(slowDataSource)
+                .negativeCaching(10, 1, TimeUnit.MINUTES).ticker(ticker).build();
+
+        CompletableFuture<Optional<TestType>> lookup = CompletableFuture.supplyAsync(() -> {
+            try {
+                return cache.getFromCache("missing");
+            } catch (DataSourceRetrievalException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        loading.await();
+        testDataSource.addDataItem("missing", new TestType(1000));
+        cache.invalidate("missing");
+        invalidated.countDown();
+
+        assertFalse(lookup.get(10, TimeUnit.SECONDS).isPresent());
+        assertEquals(Optional.of(new TestType(1000)), cache.getFromCache("missing"));
+    }
+
+    @Test
+    public void bloomFilterRejectsAbsentIdsWithoutQueryingTheDataSource() throws Exception {
+        TestExecutor executor = new TestExecutor();
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .bloomFilter(100, 0.01).executor(executor).build();
+
+        // lookups pass through until the filter has been built
+        assertFalse(cache.getFromCache("missing").isPresent());
+        assertEquals(1, testDataSource.getQueryCount());
+
+        executor.runAll();
+        testDataSource.resetQueryCount();
+        for (int i = 100; i < 200; i++) {
+            assertFalse(cache.getFromCache(Integer.toString(i)).isPresent());
+        }
+        assertTrue(testDataSource.getQueryCount() <= 5);
+        assertTrue(cache.stats().getNegativeHitCount() >= 95);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(new TestType(i), cache.getFromCache(Integer.toString(i)).get());
+        }
+    }
+
+    @Test
+    public void bloomFilterIsBuiltFromTheDataSourceBehindBatchedLoads() throws Exception {
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .batchLoads(1, TimeUnit.MILLISECONDS, 10).bloomFilter(100, 0.001).build();
+        cache.rebuildBloomFilter().get(10, TimeUnit.SECONDS);
+
+        assertFalse(cache.getFromCache("missing").isPresent());
+        assertEquals(0, testDataSource.getQueryCount());
+        assertEquals(new TestType(1), cache.getFromCache("1").get());
+    }
+
+    @Test
+    public void rebuiltBloomFilterLetsNewIdsThrough() throws Exception {
+        TestExecutor executor = new TestExecutor();
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .bloomFilter(100, 0.001).executor(executor).build();
+        executor.runAll();
+
+        testDataSource.addDataItem("new", new TestType(1000));
+        assertFalse(cache.getFromCache("new").isPresent());
+
+        cache.rebuildBloomFilter();
+        executor.runAll();
+        assertEquals(new TestType(1000), cache.getFromCache("new").get());
+    }
+
+    @Test
+    public void rebuildKeepsAnItemThatIsWaitingToBeWritten() throws Exception {
+        TestExecutor executor = new TestExecutor();
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource).maxCapacity(1)
+                .bloomFilter(100, 0.001).writeBehind(item -> { }, 10, 100, 1, TimeUnit.MINUTES)
+                .executor(executor).build();
+        executor.runAll();
+
+        cache.put(new TestType(1000));
+        // evicted from the cache, so only the write-behind queue holds it
+        cache.getFromCache("5");
+        cache.rebuildBloomFilter();
+        executor.runAll();
+        assertEquals(new TestType(1000), cache.getFromCache("1000").get());
+    }
+
+    @Test
+    public void idPutWhileTheFilterIsRebuiltIsKept() throws Exception {
+        AtomicReference<LRUCache<TestType>> cacheRef = new AtomicReference<>();
+        TestDataSource listing = new TestDataSource() {
+            @Override
+            public void forEachID(Consumer<String> action) {
+                if (cacheRef.get() != null) {
+                    try {
+                        cacheRef.get().put(new TestType(1000));
+                    } catch (DataSinkWriteException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+                super.forEachID(action);
+            }
+        };
+        TestExecutor executor = new TestExecutor();
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(listing)
+                .bloomFilter(100, 0.001).executor(executor).build();
+        executor.runAll();
+
+        cacheRef.set(cache);
+        cache.rebuildBloomFilter();
+        executor.runAll();
+        cache.invalidate("1000");
+        listing.addDataItem("1000", new TestType(1000));
+        assertEquals(new TestType(1000), cache.getFromCache("1000").get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void bloomFilterRequiresADataSourceThatCanListItsIds() {
+        DataSource<TestType> unlistable = cachedID -> Optional.empty();
+        new LRUCacheBuilder<>(unlistable).bloomFilter(100, 0.01).build();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rebuildingFailsWithoutABloomFilter() {
+        new LRUCache<>(testDataSource).rebuildBloomFilter();
+    }
+}
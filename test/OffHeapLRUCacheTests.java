@@ -0,0 +1,168 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class OffHeapLRUCacheTests {
+    private static final int SLAB_SIZE = 1024;
+
+    private TestDataSource testDataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        testDataSource = new TestDataSource();
+        for (int i = 0; i < 100; i++) {
+            testDataSource.addDataItem(Integer.toString(i), new TestType(i));
+        }
+    }
+
+    @Test
+    public void hitsAreDeserializedFromOffHeapMemory() throws Exception {
+        OffHeapLRUCache<TestType> cache = newCache(new TestTypeCodec(60), 2 * SLAB_SIZE);
+
+        Optional<TestType> loaded = cache.getFromCache("7");
+        Optional<TestType> cached = cache.getFromCache("7");
+
+        assertEquals(new TestType(7), cached.get());
+        assertNotSame(loaded.get(), cached.get());
+        assertEquals(1, testDataSource.getQueryCount());
+        assertEquals(1, cache.stats().getHitCount());
+        assertEquals(SLAB_SIZE, cache.allocatedBytes());
+    }
+
+    @Test
+    public void leastRecentlyUsedItemIsEvictedWhenSlabsAreFull() throws Exception {
+        // 60 bytes plus the length takes a 64-byte slot, so two slabs hold 32 items
+        OffHeapLRUCache<TestType> cache = newCache(new TestTypeCodec(60), 2 * SLAB_SIZE);
+        for (int i = 0; i < 32; i++) {
+            cache.getFromCache(Integer.toString(i));
+        }
+        cache.getFromCache("0");
+        assertEquals(32, cache.size());
+
+        cache.getFromCache("32");
+        assertEquals(32, cache.size());
+        assertEquals(1, cache.stats().getEvictionCount());
+        assertEquals(2 * SLAB_SIZE, cache.allocatedBytes());
+
+        testDataSource.resetQueryCount();
+        cache.getFromCache("0");
+        assertEquals(0, testDataSource.getQueryCount());
+        cache.getFromCache("1");
+        assertEquals(1, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void emptiedSlabsAreReusedBySizeClassesThatNeedThem() throws Exception {
+        TestTypeCodec codec = new TestTypeCodec(60);
+        OffHeapLRUCache<TestType> cache = newCache(codec, 2 * SLAB_SIZE);
+        for (int i = 0; i < 32; i++) {
+            cache.getFromCache(Integer.toString(i));
+        }
+
+        // each large item needs a whole slab, so the small items are evicted one slab's worth at a time
+        codec.size = SLAB_SIZE - 4;
+        cache.getFromCache("50");
+        assertEquals(17, cache.size());
+        cache.getFromCache("51");
+        assertEquals(2, cache.size());
+        assertEquals(2 * SLAB_SIZE, cache.allocatedBytes());
+
+        testDataSource.resetQueryCount();
+        assertEquals(new TestType(50), cache.getFromCache("50").get());
+        assertEquals(new TestType(51), cache.getFromCache("51").get());
+        assertEquals(0, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void onlyItemsOfTheNeededSizeClassAreEvicted() throws Exception {
+        TestTypeCodec codec = new TestTypeCodec(60);
+        OffHeapLRUCache<TestType> cache = newCache(codec, 2 * SLAB_SIZE);
+        for (int i = 0; i < 8; i++) {
+            cache.getFromCache(Integer.toString(i));
+        }
+        codec.size = SLAB_SIZE - 4;
+        cache.getFromCache("50");
+        codec.size = 60;
+        for (int i = 8; i < 16; i++) {
+            cache.getFromCache(Integer.toString(i));
+        }
+
+        // the small items 0 to 7 are less recently used than 50, but evicting them would not free a large slot
+        codec.size = SLAB_SIZE - 4;
+        cache.getFromCache("51");
+        assertEquals(1, cache.stats().getEvictionCount());
+        assertEquals(17, cache.size());
+
+        testDataSource.resetQueryCount();
+        codec.size = 60;
+        for (int i = 0; i < 16; i++) {
+            cache.getFromCache(Integer.toString(i));
+        }
+        assertEquals(0, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void concurrentHitsNeverSeeAnotherItemsBytes() throws Exception {
+        OffHeapLRUCache<TestType> cache = newCache(new TestTypeCodec(60), 2 * SLAB_SIZE);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; !done.get(); i = (i + 1) % 100) {
+                        assertEquals(new TestType(i), cache.getFromCache(Integer.toString(i)).get());
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            readers[t].start();
+        }
+        for (int round = 0; round < 200; round++) {
+            for (int i = 99; i >= 0; i--) {
+                cache.getFromCache(Integer.toString(i));
+            }
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(32, cache.size());
+    }
+
+    @Test
+    public void itemLargerThanASlabIsReturnedButNotCached() throws Exception {
+        OffHeapLRUCache<TestType> cache = newCache(new TestTypeCodec(SLAB_SIZE), 2 * SLAB_SIZE);
+
+        assertEquals(new TestType(3), cache.getFromCache("3").get());
+        assertEquals(new TestType(3), cache.getFromCache("3").get());
+        assertEquals(2, testDataSource.getQueryCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void missingItemIsNotCached() throws Exception {
+        OffHeapLRUCache<TestType> cache = newCache(new TestTypeCodec(60), 2 * SLAB_SIZE);
+
+        assertFalse(cache.getFromCache("missing").isPresent());
+        assertEquals(0, cache.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructionFailsWithLessThanOneSlab() throws Exception {
+        newCache(new TestTypeCodec(60), SLAB_SIZE - 1);
+    }
+
+    private OffHeapLRUCache<TestType> newCache(ValueCodec<TestType> codec, long maximumBytes) {
+        return new OffHeapLRUCache<>(testDataSource, codec, maximumBytes, SLAB_SIZE, true);
+    }
+}
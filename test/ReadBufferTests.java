@@ -0,0 +1,72 @@
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReadBufferTests {
+    @Test
+    public void drainReturnsOfferedElementsInOrder() throws Exception {
+        ReadBuffer<Integer> buffer = new ReadBuffer<>();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(ReadBuffer.SUCCESS, buffer.offer(i));
+        }
+
+        List<Integer> drained = new ArrayList<>();
+        buffer.drainTo(drained::add);
+
+        assertEquals(Lists.newArrayList(0, 1, 2, 3, 4), drained);
+    }
+
+    @Test
+    public void offerReportsFullOnceStripeHasNoSpaceAndSucceedsAgainAfterDrain() throws Exception {
+        ReadBuffer<Integer> buffer = new ReadBuffer<>();
+        for (int i = 0; i < ReadBuffer.BUFFER_SIZE; i++) {
+            assertEquals(ReadBuffer.SUCCESS, buffer.offer(i));
+        }
+        assertEquals(ReadBuffer.FULL, buffer.offer(-1));
+
+        List<Integer> drained = new ArrayList<>();
+        buffer.drainTo(drained::add);
+        assertEquals(ReadBuffer.BUFFER_SIZE, drained.size());
+        assertFalse("element offered while full should have been dropped", drained.contains(-1));
+
+        assertEquals(ReadBuffer.SUCCESS, buffer.offer(100));
+        drained.clear();
+        buffer.drainTo(drained::add);
+        assertEquals(Lists.newArrayList(100), drained);
+    }
+
+    @Test
+    public void drainOfEmptyBufferDoesNothing() throws Exception {
+        ReadBuffer<Integer> buffer = new ReadBuffer<>();
+        buffer.drainTo(e -> fail("nothing should have been drained"));
+    }
+
+    @Test
+    public void concurrentOffersAreNeverDrainedTwice() throws Exception {
+        ReadBuffer<Integer> buffer = new ReadBuffer<>();
+        List<Integer> drained = new ArrayList<>();
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int base = t * 100_000;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    buffer.offer(base + i);
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        while (writers.stream().anyMatch(Thread::isAlive)) {
+            buffer.drainTo(drained::add);
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        buffer.drainTo(drained::add);
+
+        assertEquals(drained.size(), drained.stream().distinct().count());
+    }
+}
@@ -0,0 +1,168 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RemovalListenerTests {
+    private TestDataSource testDataSource;
+    private TestExecutor listenerExecutor;
+    private List<String> removals;
+
+    @Before
+    public void setUp() {
+        testDataSource = new TestDataSource();
+        for (int i = 0; i < 10; i++) {
+            testDataSource.addDataItem(Integer.toString(i), new TestType(i));
+        }
+        listenerExecutor = new TestExecutor();
+        removals = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @Test
+    public void evictionToMakeRoomIsReportedAsSize() throws Exception {
+        LRUCache<TestType> cache = builder().maxCapacity(2).build();
+        cache.getFromCache("0");
+        cache.getFromCache("1");
+        cache.getFromCache("2");
+
+        // nothing is delivered until the executor runs the notification
+        assertTrue(removals.isEmpty());
+        listenerExecutor.runAll();
+        assertEquals(Collections.singletonList("0 SIZE"), removals);
+    }
+
+    @Test
+    public void expiryIsReportedAsExpired() throws Exception {
+        TestTicker ticker = new TestTicker();
+        LRUCache<TestType> cache = builder().expireAfterWrite(1, TimeUnit.MINUTES).ticker(ticker).build();
+        cache.getFromCache("0");
+        ticker.advance(1, TimeUnit.MINUTES);
+        cache.getFromCache("1");
+
+        listenerExecutor.runAll();
+        assertEquals(Collections.singletonList("0 EXPIRED"), removals);
+    }
+
+    @Test
+    public void invalidationIsReportedAsExplicit() throws Exception {
+        LRUCache<TestType> cache = builder().build();
+        cache.getFromCache("0");
+        cache.getFromCache("1");
+        cache.getFromCache("2");
+        cache.invalidate("0");
+        cache.invalidate("missing");
+        cache.invalidateAll();
+
+        listenerExecutor.runAll();
+        assertEquals("0 EXPLICIT", removals.get(0));
+        assertEquals(Arrays.asList("1 EXPLICIT", "2 EXPLICIT"), sorted(removals.subList(1, removals.size())));
+    }
+
+    @Test
+    public void putOverACachedItemReportsTheOldItemAsReplaced() throws Exception {
+        List<TestType> removed = new ArrayList<>();
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource)
+                .removalListener((cachedID, item, cause) -> removed.add(item), Runnable::run).build();
+        TestType original = cache.getFromCache("0").get();
+        cache.put(original);
+        assertTrue(removed.isEmpty());
+
+        TestType replacement = new TestType(0);
+        cache.put(replacement);
+        assertEquals(1, removed.size());
+        assertSame(original, removed.get(0));
+        assertSame(replacement, cache.getFromCache("0").get());
+    }
+
+    @Test
+    public void itemTooHeavyToCacheIsReportedAsEvictedForSize() throws Exception {
+        LRUCache<TestType> cache = builder().maximumWeight(10).weigher(item -> item.data).build();
+        cache.getFromCache("5");
+
+        cache.put(new TestType(20) {
+            @Override
+            public String getID() {
+                return "5";
+            }
+        });
+        cache.put(new TestType(30));
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.stats().getEvictionCount());
+
+        listenerExecutor.runAll();
+        assertEquals(Arrays.asList("5 REPLACED", "5 SIZE", "30 SIZE"), removals);
+    }
+
+    @Test
+    public void refreshReplacesOrRemovesTheItem() throws Exception {
+        TestTicker ticker = new TestTicker();
+        TestExecutor refreshExecutor = new TestExecutor();
+        LRUCache<TestType> cache = builder().refreshAfterWrite(1, TimeUnit.MINUTES).ticker(ticker)
+                .executor(refreshExecutor).build();
+        cache.getFromCache("0");
+        cache.getFromCache("1");
+        ticker.advance(1, TimeUnit.MINUTES);
+
+        testDataSource.addDataItem("0", new TestType(0));
+        testDataSource.valuesToReturn.remove("1");
+        cache.getFromCache("0");
+        cache.getFromCache("1");
+        refreshExecutor.runAll();
+
+        listenerExecutor.runAll();
+        assertEquals(Arrays.asList("0 REPLACED", "1 EXPLICIT"), sorted(removals));
+    }
+
+    @Test
+    public void slowListenerDoesNotDelayTheCache() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            LRUCache<TestType> cache = new LRUCacheBuilder<>(testDataSource).maxCapacity(1)
+                    .removalListener((cachedID, item, cause) -> {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }, executor).build();
+
+            for (int i = 0; i < 10; i++) {
+                assertEquals(Optional.of(new TestType(i)), cache.getFromCache(Integer.toString(i)));
+            }
+            assertEquals(1, cache.size());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void sizeAndExpiryAreEvictions() {
+        assertTrue(RemovalCause.SIZE.wasEvicted());
+        assertTrue(RemovalCause.EXPIRED.wasEvicted());
+        assertFalse(RemovalCause.EXPLICIT.wasEvicted());
+        assertFalse(RemovalCause.REPLACED.wasEvicted());
+    }
+
+    private LRUCacheBuilder<TestType> builder() {
+        return new LRUCacheBuilder<>(testDataSource)
+                .removalListener((cachedID, item, cause) -> removals.add(cachedID + " " + cause), listenerExecutor);
+    }
+
+    private static List<String> sorted(List<String> strings) {
+        List<String> copy = new ArrayList<>(strings);
+        Collections.sort(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,128 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SegmentedLRUCacheTests {
+    @Test
+    public void cacheReturnsAlreadyCachedItemWithoutHittingDataSource() throws Exception {
+        TestDataSource testDataSource = dataSourceWithItems(0, 100);
+        SegmentedLRUCache<TestType> cache = new SegmentedLRUCache<>(testDataSource, 400, 4);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(new TestType(i), cache.getFromCache(Integer.toString(i)).get());
+        }
+        assertEquals(100, testDataSource.getQueryCount());
+
+        // every segment has room for all of the items, so no further queries should be needed
+        for (int i = 0; i < 100; i++) {
+            assertEquals(new TestType(i), cache.getFromCache(Integer.toString(i)).get());
+        }
+        assertEquals(100, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void cacheReturnsEmptyOptionalForItemMissingFromDataSource() throws Exception {
+        SegmentedLRUCache<TestType> cache = new SegmentedLRUCache<>(new TestDataSource(), 10, 2);
+
+        assertFalse(cache.getFromCache("5").isPresent());
+    }
+
+    @Test
+    public void fullSegmentEvictsItsOwnLeastRecentlyUsedItem() throws Exception {
+        TestDataSource testDataSource = dataSourceWithItems(0, 1000);
+        SegmentedLRUCache<TestType> cache = new SegmentedLRUCache<>(testDataSource, 4, 2);
+
+        // find three IDs that share a segment; that segment only has room for two of them
+        List<String> sameSegment = new ArrayList<>();
+        for (int i = 0; sameSegment.size() < 3; i++) {
+            if (cache.segmentIndex(Integer.toString(i)) == 0) {
+                sameSegment.add(Integer.toString(i));
+            }
+        }
+
+        cache.getFromCache(sameSegment.get(0));
+        cache.getFromCache(sameSegment.get(1));
+        cache.getFromCache(sameSegment.get(0));
+        cache.getFromCache(sameSegment.get(2));
+        assertEquals(3, testDataSource.getQueryCount());
+
+        // the segment's LRU item was evicted even though the other segment still has spare capacity
+        cache.getFromCache(sameSegment.get(1));
+        assertEquals(4, testDataSource.getQueryCount());
+        assertEquals(sameSegment.get(1), testDataSource.getLastRetrievedID());
+    }
+
+    @Test
+    public void getAllReturnsItemsFromEverySegmentInRequestedOrder() throws Exception {
+        TestDataSource testDataSource = new TestDataSource(true);
+        for (int i = 0; i < 100; i++) {
+            testDataSource.addDataItem(Integer.toString(i), new TestType(i));
+        }
+        SegmentedLRUCache<TestType> cache = new SegmentedLRUCache<>(testDataSource, 400, 4);
+
+        List<String> ids = new ArrayList<>();
+        for (int i = 99; i >= 0; i -= 3) {
+            ids.add(Integer.toString(i));
+        }
+        Map<String, TestType> result = cache.getAllFromCache(ids);
+
+        assertEquals(ids, new ArrayList<>(result.keySet()));
+        assertTrue(testDataSource.getBatchQueryCount() <= cache.getSegmentCount());
+        assertEquals(0, testDataSource.getQueryCount());
+    }
+
+    @Test
+    public void defaultSegmentCountIsLimitedByCapacity() throws Exception {
+        assertEquals(16, new SegmentedLRUCache<>(new TestDataSource(), 1000).getSegmentCount());
+        assertEquals(3, new SegmentedLRUCache<>(new TestDataSource(), 3).getSegmentCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void segmentCountLargerThanCapacityIsRejected() throws Exception {
+        new SegmentedLRUCache<>(new TestDataSource(), 4, 8);
+    }
+
+    @Test
+    public void concurrentAccessAcrossSegmentsReturnsExpectedItems() throws Exception {
+        TestDataSource testDataSource = dataSourceWithItems(0, 500);
+        SegmentedLRUCache<TestType> cache = new SegmentedLRUCache<>(testDataSource, 200, 8);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int seed = t;
+                workers.add(executor.submit(() -> {
+                    for (int i = 0; i < 5000; i++) {
+                        int id = (i * 31 + seed * 7) % 500;
+                        Optional<TestType> result = cache.getFromCache(Integer.toString(id));
+                        assertEquals(new TestType(id), result.get());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static TestDataSource dataSourceWithItems(int from, int to) {
+        TestDataSource testDataSource = new TestDataSource();
+        for (int i = from; i < to; i++) {
+            testDataSource.addDataItem(Integer.toString(i), new TestType(i));
+        }
+        return testDataSource;
+    }
+}
@@ -1,25 +1,46 @@
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
-class TestDataSource implements DataSource<TestType> {
-    private int queryCount = 0;
-    private String lastRetrievedID;
+class TestDataSource implements ListableDataSource<TestType> {
+    private final AtomicInteger queryCount = new AtomicInteger();
+    private final AtomicInteger batchQueryCount = new AtomicInteger();
+    private final boolean supportsBatchQueries;
+    private volatile String lastRetrievedID;
 
-    Map<String, TestType> valuesToReturn = new HashMap<>();
+    Map<String, TestType> valuesToReturn = new ConcurrentHashMap<>();
 
-    public TestDataSource() {}
+    public TestDataSource() {
+        this(false);
+    }
+
+    /**
+     * @param supportsBatchQueries whether to answer {@link #getAllFromDataSource(Set)} with a single batch query,
+     *                             rather than the default of one query per ID
+     */
+    public TestDataSource(boolean supportsBatchQueries) {
+        this.supportsBatchQueries = supportsBatchQueries;
+    }
 
     void addDataItem(String cacheID, TestType dataItem) {
         valuesToReturn.put(cacheID, dataItem);
     }
 
     public int getQueryCount() {
-        return queryCount;
+        return queryCount.get();
+    }
+
+    public int getBatchQueryCount() {
+        return batchQueryCount.get();
     }
 
     public void resetQueryCount() {
-        this.queryCount = 0;
+        this.queryCount.set(0);
+        this.batchQueryCount.set(0);
     }
 
     public String getLastRetrievedID() {
@@ -27,9 +48,31 @@ class TestDataSource implements DataSource<TestType> {
     }
 
     @Override
-    public Optional getFromDataSource(String id) throws DataSourceRetrievalException {
-        ++queryCount;
+    public Optional<TestType> getFromDataSource(String id) throws DataSourceRetrievalException {
+        queryCount.incrementAndGet();
         lastRetrievedID = id;
         return Optional.ofNullable(valuesToReturn.get(id));
     }
+
+    @Override
+    public Map<String, TestType> getAllFromDataSource(Set<String> ids) throws DataSourceRetrievalException {
+        if (!supportsBatchQueries) {
+            return ListableDataSource.super.getAllFromDataSource(ids);
+        }
+
+        batchQueryCount.incrementAndGet();
+        Map<String, TestType> result = new HashMap<>();
+        for (String id : ids) {
+            TestType value = valuesToReturn.get(id);
+            if (value != null) {
+                result.put(id, value);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void forEachID(Consumer<String> action) {
+        valuesToReturn.keySet().forEach(action);
+    }
 }
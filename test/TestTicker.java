@@ -0,0 +1,15 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class TestTicker implements Ticker {
+    private final AtomicLong nanos = new AtomicLong();
+
+    void advance(long duration, TimeUnit unit) {
+        nanos.addAndGet(unit.toNanos(duration));
+    }
+
+    @Override
+    public long read() {
+        return nanos.get();
+    }
+}
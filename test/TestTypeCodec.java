@@ -0,0 +1,22 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes a TestType as its int data, padded with zeros to a configurable size
+ */
+class TestTypeCodec implements ValueCodec<TestType> {
+    int size;
+
+    TestTypeCodec(int size) {
+        this.size = size;
+    }
+
+    @Override
+    public byte[] encode(TestType item) {
+        return ByteBuffer.allocate(size).putInt(item.data).array();
+    }
+
+    @Override
+    public TestType decode(ByteBuffer bytes) {
+        return new TestType(bytes.getInt());
+    }
+}
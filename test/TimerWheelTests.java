@@ -0,0 +1,99 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TimerWheelTests {
+    private static final long[] DURATIONS = {
+            TimeUnit.MILLISECONDS.toNanos(500),
+            TimeUnit.SECONDS.toNanos(5),
+            TimeUnit.MINUTES.toNanos(3),
+            TimeUnit.HOURS.toNanos(2),
+            TimeUnit.DAYS.toNanos(1),
+            TimeUnit.DAYS.toNanos(10),
+    };
+
+    @Test
+    public void advanceEvictsExactlyTheNodesThatHaveExpiredAtEveryLevel() throws Exception {
+        TimerWheel<TestType> wheel = new TimerWheel<>(0);
+        for (int i = 0; i < DURATIONS.length; i++) {
+            wheel.schedule(nodeExpiringAt(i, DURATIONS[i]));
+        }
+
+        Set<Integer> evicted = new HashSet<>();
+        for (int i = 0; i < DURATIONS.length; i++) {
+            // just before the deadline nothing new is evicted; just after, exactly this node is
+            wheel.advance(DURATIONS[i] - 1, node -> evicted.add(node.getData().data));
+            assertEquals(i, evicted.size());
+
+            wheel.advance(DURATIONS[i] + TimeUnit.SECONDS.toNanos(2), node -> evicted.add(node.getData().data));
+            assertEquals(i + 1, evicted.size());
+            assertTrue(evicted.contains(i));
+        }
+    }
+
+    @Test
+    public void descheduledNodeIsNeverEvicted() throws Exception {
+        TimerWheel<TestType> wheel = new TimerWheel<>(0);
+        DoublyLinkedList.Node<TestType> kept = nodeExpiringAt(1, DURATIONS[1]);
+        DoublyLinkedList.Node<TestType> descheduled = nodeExpiringAt(2, DURATIONS[1]);
+        wheel.schedule(kept);
+        wheel.schedule(descheduled);
+        wheel.deschedule(descheduled);
+
+        List<Integer> evicted = new ArrayList<>();
+        wheel.advance(DURATIONS[1] * 2, node -> evicted.add(node.getData().data));
+
+        assertEquals(1, evicted.size());
+        assertEquals(Integer.valueOf(1), evicted.get(0));
+    }
+
+    @Test
+    public void nodeDeclinedByEvictorIsRescheduledAtItsNewExpirationTime() throws Exception {
+        TimerWheel<TestType> wheel = new TimerWheel<>(0);
+        DoublyLinkedList.Node<TestType> node = nodeExpiringAt(1, DURATIONS[1]);
+        wheel.schedule(node);
+
+        // the node was read just before it would have expired, which pushes its expiration time back
+        long extendedExpiration = DURATIONS[1] * 3;
+        wheel.advance(DURATIONS[1] * 2, expired -> {
+            expired.expirationTime = extendedExpiration;
+            return false;
+        });
+
+        List<Integer> evicted = new ArrayList<>();
+        wheel.advance(extendedExpiration - 1, expired -> evicted.add(expired.getData().data));
+        assertTrue(evicted.isEmpty());
+        wheel.advance(extendedExpiration + TimeUnit.SECONDS.toNanos(2), expired -> evicted.add(expired.getData().data));
+        assertEquals(1, evicted.size());
+    }
+
+    @Test
+    public void eachNodeIsOfferedToEvictorAtMostOncePerLevel() throws Exception {
+        TimerWheel<TestType> wheel = new TimerWheel<>(0);
+        int nodeCount = 10_000;
+        for (int i = 0; i < nodeCount; i++) {
+            wheel.schedule(nodeExpiringAt(i, TimeUnit.HOURS.toNanos(1) + i * TimeUnit.SECONDS.toNanos(1)));
+        }
+
+        int[] offered = {0};
+        for (long now = 0; now <= TimeUnit.HOURS.toNanos(5); now += TimeUnit.SECONDS.toNanos(1)) {
+            wheel.advance(now, node -> {
+                offered[0]++;
+                return true;
+            });
+        }
+        assertEquals(nodeCount, offered[0]);
+    }
+
+    private static DoublyLinkedList.Node<TestType> nodeExpiringAt(int data, long expirationTime) {
+        DoublyLinkedList.Node<TestType> node = new DoublyLinkedList.Node<>(new TestType(data));
+        node.expirationTime = expirationTime;
+        return node;
+    }
+}
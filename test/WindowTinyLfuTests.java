@@ -0,0 +1,127 @@
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class WindowTinyLfuTests {
+    private static final int CAPACITY = 100;
+    private static final int HOT_ITEMS = 80;
+
+    @Test
+    public void sketchEstimatesFrequenciesAndAgesThemOverTime() throws Exception {
+        FrequencySketch sketch = new FrequencySketch(512);
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("popular");
+        }
+        sketch.increment("rare");
+
+        assertTrue(sketch.frequency("popular") >= 5);
+        assertTrue(sketch.frequency("popular") > sketch.frequency("rare"));
+
+        // counters saturate at 15...
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("popular");
+        }
+        assertEquals(15, sketch.frequency("popular"));
+
+        // ...and are all halved once ten increments per expected item have been recorded
+        for (int i = 0; i < 10 * 512; i++) {
+            sketch.increment("key" + i);
+        }
+        assertTrue(sketch.frequency("popular") < 15);
+    }
+
+    @Test
+    public void victimIsTheNewCandidateWhenItIsLessPopular() throws Exception {
+        WindowTinyLfu<TestType> policy = new WindowTinyLfu<>(10);
+        DoublyLinkedList.Node<TestType> popular = node(1);
+        policy.onInsert(popular);
+        for (int i = 0; i < 5; i++) {
+            policy.onAccess(popular);
+        }
+
+        // the window holds a single item, so each insert pushes the previous one out to probation
+        DoublyLinkedList.Node<TestType> oneOff = node(2);
+        policy.onInsert(oneOff);
+        policy.onInsert(node(3));
+        assertSame(oneOff, policy.victim());
+
+        policy.onRemove(oneOff, RemovalCause.SIZE);
+        assertFalse(policy.contains(oneOff));
+        assertTrue(policy.contains(popular));
+    }
+
+    @Test
+    public void candidateThatWinsIsAdmittedToProbation() throws Exception {
+        WindowTinyLfu<TestType> policy = new WindowTinyLfu<>(10);
+        DoublyLinkedList.Node<TestType> main = node(1);
+        policy.onRestore(main);
+
+        DoublyLinkedList.Node<TestType> popular = node(2);
+        policy.onInsert(popular);
+        for (int i = 0; i < 3; i++) {
+            policy.onAccess(popular);
+        }
+        policy.onInsert(node(3));
+        assertSame(main, policy.victim());
+
+        // admitted, so now the main region's least-recently-used item rather than a candidate
+        policy.onRemove(main, RemovalCause.SIZE);
+        assertEquals(WindowTinyLfu.PROBATION, popular.region);
+        assertSame(popular, policy.victim());
+    }
+
+    @Test
+    public void scanDoesNotFlushFrequentlyUsedItems() throws Exception {
+        double lruHitRate = hitRateOfTrace(new LRUCacheBuilder<>(dataSource()).maxCapacity(CAPACITY));
+        double tinyLfuHitRate = hitRateOfTrace(new LRUCacheBuilder<>(dataSource())
+                .maxCapacity(CAPACITY)
+                .evictionPolicy(EvictionPolicy.windowTinyLfu()));
+
+        assertTrue("W-TinyLFU " + tinyLfuHitRate + " should beat LRU " + lruHitRate, tinyLfuHitRate > lruHitRate);
+    }
+
+    @Test
+    public void cacheStaysWithinCapacityWithWindowTinyLfu() throws Exception {
+        LRUCache<TestType> cache = new LRUCacheBuilder<>(dataSource())
+                .maxCapacity(CAPACITY)
+                .evictionPolicy(EvictionPolicy.windowTinyLfu())
+                .build();
+        for (int i = 0; i < 10 * CAPACITY; i++) {
+            assertEquals(i, cache.getFromCache(Integer.toString(i)).get().data);
+            assertTrue(cache.size() <= CAPACITY);
+        }
+        assertEquals(9 * CAPACITY, cache.stats().getEvictionCount());
+    }
+
+    /**
+     * Replays a trace of reads to a hot set of items, interrupted by scans over items that are only ever read once,
+     * and returns the hit rate over the whole trace
+     */
+    private static double hitRateOfTrace(LRUCacheBuilder<TestType> builder) throws Exception {
+        LRUCache<TestType> cache = builder.build();
+        Random random = new Random(42);
+        int scanID = 1_000_000;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 2_000; i++) {
+                cache.getFromCache(Integer.toString(random.nextInt(HOT_ITEMS)));
+            }
+            for (int i = 0; i < 2 * CAPACITY; i++) {
+                cache.getFromCache(Integer.toString(scanID++));
+            }
+        }
+        return cache.stats().getHitRate();
+    }
+
+    private static DataSource<TestType> dataSource() {
+        return id -> Optional.of(new TestType(Integer.parseInt(id)));
+    }
+
+    private static DoublyLinkedList.Node<TestType> node(int data) {
+        DoublyLinkedList.Node<TestType> node = new DoublyLinkedList.Node<>(new TestType(data));
+        node.weight = 1;
+        return node;
+    }
+}